@@ -25,20 +25,30 @@ package de.lmu.ifi.dbs.elki.algorithm;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
@@ -49,9 +59,9 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialNode;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
-import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.ResultUtil;
-import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
@@ -62,12 +72,17 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
  * Joins in a given spatial database to each object its k-nearest neighbors.
- * This algorithm only supports spatial databases based on a spatial index
- * structure.
  *
- * Since this method compares the MBR of every single leaf with every other
- * leaf, it is essentially quadratic in the number of leaves, which may not be
- * appropriate for large trees.
+ * With a spatial index structure, the leaves are processed in parallel, taking
+ * them from a shared work queue. For every leaf, the tree is traversed
+ * best-first by the minimum distance to the leaf MBR, and pruned with the
+ * largest kNN distance within the leaf. Every object has its own kNN heap,
+ * stored by DBID, which is only updated by the thread processing the leaf of
+ * the object. The index must support concurrent reads, as the in-memory trees
+ * do.
+ *
+ * Without a spatial index, parallel bulk kNN queries are used instead, which
+ * will use other index structures such as the M-tree or cover tree.
  *
  * @author Elke Achtert
  * @author Erich Schubert
@@ -108,108 +123,159 @@ public class KNNJoin<V extends NumberVector, N extends SpatialNode<N, E>, E exte
    */
   @SuppressWarnings("unchecked")
   public WritableDataStore<KNNList> run(Relation<V> relation) {
-    if(!(getDistanceFunction() instanceof SpatialPrimitiveDistanceFunction)) {
-      throw new IllegalStateException("Distance Function must be an instance of " + SpatialPrimitiveDistanceFunction.class.getName());
-    }
     Collection<SpatialIndexTree<N, E>> indexes = ResultUtil.filterResults(relation.getHierarchy(), relation, SpatialIndexTree.class);
-    if(indexes.size() != 1) {
-      throw new AbortException("KNNJoin found " + indexes.size() + " spatial indexes, expected exactly one.");
+    if(indexes.size() > 1) {
+      throw new AbortException("KNNJoin found " + indexes.size() + " spatial indexes, expected at most one.");
+    }
+    if(indexes.isEmpty() || !(getDistanceFunction() instanceof SpatialPrimitiveDistanceFunction)) {
+      // Use M-tree, cover tree, or linear scan queries.
+      return runBulk(relation);
     }
     // FIXME: Ensure were looking at the right relation!
-    SpatialIndexTree<N, E> index = indexes.iterator().next();
-    SpatialPrimitiveDistanceFunction<V> distFunction = (SpatialPrimitiveDistanceFunction<V>) getDistanceFunction();
+    final SpatialIndexTree<N, E> index = indexes.iterator().next();
+    final SpatialPrimitiveDistanceFunction<V> distFunction = (SpatialPrimitiveDistanceFunction<V>) getDistanceFunction();
     DBIDs ids = relation.getDBIDs();
 
     // data pages
-    List<E> ps_candidates = new ArrayList<>(index.getLeaves());
-    // knn heaps
-    List<List<KNNHeap>> heaps = new ArrayList<>(ps_candidates.size());
-    ComparableMinHeap<Task> pq = new ComparableMinHeap<>(ps_candidates.size() * ps_candidates.size() / 10);
-
-    // Initialize with the page self-pairing
-    for(int i = 0; i < ps_candidates.size(); i++) {
-      E pr_entry = ps_candidates.get(i);
-      N pr = index.getNode(pr_entry);
-      heaps.add(initHeaps(distFunction, pr));
-    }
-
-    // Build priority queue
-    final int sqsize = ps_candidates.size() * (ps_candidates.size() - 1) >> 1;
+    final List<E> ps_candidates = new ArrayList<>(index.getLeaves());
+    final int numleaves = ps_candidates.size();
     if(LOG.isDebuggingFine()) {
-      LOG.debugFine("Number of leaves: " + ps_candidates.size() + " so " + sqsize + " MBR computations.");
+      LOG.debugFine("Number of leaves: " + numleaves);
     }
-    FiniteProgress mprogress = LOG.isVerbose() ? new FiniteProgress("Comparing leaf MBRs", sqsize, LOG) : null;
-    for(int i = 0; i < ps_candidates.size(); i++) {
-      E pr_entry = ps_candidates.get(i);
-      List<KNNHeap> pr_heaps = heaps.get(i);
-      double pr_knn_distance = computeStopDistance(pr_heaps);
-
-      for(int j = i + 1; j < ps_candidates.size(); j++) {
-        E ps_entry = ps_candidates.get(j);
-        List<KNNHeap> ps_heaps = heaps.get(j);
-        double ps_knn_distance = computeStopDistance(ps_heaps);
-        double minDist = distFunction.minDist(pr_entry, ps_entry);
-        // Resolve immediately:
-        if(minDist <= 0.) {
-          N pr = index.getNode(ps_candidates.get(i));
-          N ps = index.getNode(ps_candidates.get(j));
-          processDataPages(distFunction, pr_heaps, ps_heaps, pr, ps);
-        }
-        else if(minDist <= pr_knn_distance || minDist <= ps_knn_distance) {
-          pq.add(new Task(minDist, i, j));
-        }
-        LOG.incrementProcessed(mprogress);
+    // Per-object kNN heaps. They are all allocated up front, so that the
+    // worker threads only read the storage; each heap is only modified by the
+    // thread processing the leaf of its object.
+    final WritableDataStore<KNNHeap> heaps = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, KNNHeap.class);
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      heaps.put(iter, DBIDUtil.newHeap(k));
+    }
+    // Shared work queue: next leaf to process
+    final AtomicInteger next = new AtomicInteger(0);
+    final FiniteProgress pageprog = LOG.isVerbose() ? new FiniteProgress("Number of processed data pages", numleaves, LOG) : null;
+    ParallelCore core = ParallelCore.getCore();
+    try {
+      core.connect();
+      final int numthreads = Math.max(Math.min(core.getParallelism(), numleaves), 1);
+      List<Future<Void>> futures = new ArrayList<>(numthreads);
+      for(int t = 0; t < numthreads; t++) {
+        futures.add(core.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for(int i = next.getAndIncrement(); i < numleaves; i = next.getAndIncrement()) {
+              processLeaf(index, distFunction, heaps, ps_candidates.get(i));
+              LOG.incrementProcessed(pageprog);
+            }
+            return null;
+          }
+        }));
       }
+      for(Future<Void> fut : futures) {
+        fut.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Processor execution failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new RuntimeException("Parallel execution interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+    LOG.ensureCompleted(pageprog);
+
+    WritableDataStore<KNNList> knnLists = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_STATIC, KNNList.class);
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      knnLists.put(iter, heaps.get(iter).toKNNList());
     }
-    LOG.ensureCompleted(mprogress);
+    heaps.destroy();
+    return knnLists;
+  }
+
+  /**
+   * Compute the kNN of all objects in one leaf, using a best-first traversal
+   * of the tree, ordered by the minimum distance to the leaf.
+   *
+   * @param index Index tree
+   * @param distFunction Distance function
+   * @param heaps kNN heaps of all objects
+   * @param pr_entry Leaf to process
+   */
+  private void processLeaf(SpatialIndexTree<N, E> index, SpatialPrimitiveDistanceFunction<V> distFunction, DataStore<KNNHeap> heaps, E pr_entry) {
+    N pr = index.getNode(pr_entry);
+    KNNHeap[] pr_heaps = initHeaps(distFunction, heaps, pr);
+    double pr_knn_distance = computeStopDistance(pr_heaps);
 
-    // Process the queue
-    FiniteProgress qprogress = LOG.isVerbose() ? new FiniteProgress("Processing queue", pq.size(), LOG) : null;
-    IndefiniteProgress fprogress = LOG.isVerbose() ? new IndefiniteProgress("Full comparisons", LOG) : null;
+    DoubleObjectMinHeap<E> pq = new DoubleObjectMinHeap<>();
+    pq.add(0., index.getRootEntry());
     while(!pq.isEmpty()) {
-      Task task = pq.poll();
-      List<KNNHeap> pr_heaps = heaps.get(task.i);
-      List<KNNHeap> ps_heaps = heaps.get(task.j);
-      double pr_knn_distance = computeStopDistance(pr_heaps);
-      double ps_knn_distance = computeStopDistance(ps_heaps);
-      boolean dor = task.mindist <= pr_knn_distance;
-      boolean dos = task.mindist <= ps_knn_distance;
-      if(dor || dos) {
-        N pr = index.getNode(ps_candidates.get(task.i));
-        N ps = index.getNode(ps_candidates.get(task.j));
-        if(dor && dos) {
-          processDataPages(distFunction, pr_heaps, ps_heaps, pr, ps);
+      if(pq.peekKey() > pr_knn_distance) {
+        break;
+      }
+      N ps = index.getNode(pq.peekValue());
+      pq.poll();
+      if(ps.isLeaf()) {
+        if(ps.getPageID() != pr.getPageID()) {
+          processDataPages(distFunction, pr_heaps, pr, ps);
+          pr_knn_distance = computeStopDistance(pr_heaps);
         }
-        else {
-          if(dor) {
-            processDataPages(distFunction, pr_heaps, null, pr, ps);
-          }
-          else /* dos */{
-            processDataPages(distFunction, ps_heaps, null, ps, pr);
-          }
+        continue;
+      }
+      for(int i = 0; i < ps.getNumEntries(); i++) {
+        E entry = ps.getEntry(i);
+        double minDist = distFunction.minDist(pr_entry, entry);
+        if(minDist <= pr_knn_distance) {
+          pq.add(minDist, entry);
         }
-        LOG.incrementProcessed(fprogress);
       }
-      LOG.incrementProcessed(qprogress);
     }
-    LOG.ensureCompleted(qprogress);
-    LOG.setCompleted(fprogress);
+  }
 
+  /**
+   * Compute the kNN of all objects using bulk queries in parallel, for
+   * non-spatial indexes such as the M-tree and cover tree.
+   *
+   * @param relation Relation to process
+   * @return result
+   */
+  protected WritableDataStore<KNNList> runBulk(Relation<V> relation) {
+    final KNNQuery<V> knnq = QueryUtil.getKNNQuery(relation, getDistanceFunction(), k, DatabaseQuery.HINT_BULK);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
     WritableDataStore<KNNList> knnLists = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_STATIC, KNNList.class);
-    FiniteProgress pageprog = LOG.isVerbose() ? new FiniteProgress("Number of processed data pages", ps_candidates.size(), LOG) : null;
-    for(int i = 0; i < ps_candidates.size(); i++) {
-      N pr = index.getNode(ps_candidates.get(i));
-      List<KNNHeap> pr_heaps = heaps.get(i);
-
-      // Finalize lists
-      for(int j = 0; j < pr.getNumEntries(); j++) {
-        knnLists.put(((LeafEntry) pr.getEntry(j)).getDBID(), pr_heaps.get(j).toKNNList());
+    ParallelCore core = ParallelCore.getCore();
+    try {
+      core.connect();
+      final int numparts = Math.max(Math.min(size, core.getParallelism() << 2), 1);
+      final int blocksize = (size + numparts - 1) / numparts;
+      List<ArrayDBIDs> blocks = new ArrayList<>(numparts);
+      List<Future<List<? extends KNNList>>> futures = new ArrayList<>(numparts);
+      for(int start = 0; start < size; start += blocksize) {
+        final ArrayDBIDs block = ids.slice(start, Math.min(start + blocksize, size));
+        blocks.add(block);
+        futures.add(core.submit(new Callable<List<? extends KNNList>>() {
+          @Override
+          public List<? extends KNNList> call() {
+            return knnq.getKNNForBulkDBIDs(block, k);
+          }
+        }));
+      }
+      for(int b = 0; b < blocks.size(); b++) {
+        Iterator<? extends KNNList> res = futures.get(b).get().iterator();
+        for(DBIDIter iter = blocks.get(b).iter(); iter.valid(); iter.advance()) {
+          knnLists.put(iter, res.next());
+        }
       }
-      // Forget heaps and pq
-      heaps.set(i, null);
-      LOG.incrementProcessed(pageprog);
     }
-    LOG.ensureCompleted(pageprog);
+    catch(ExecutionException e) {
+      throw new RuntimeException("Processor execution failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new RuntimeException("Parallel execution interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
     return knnLists;
   }
 
@@ -217,18 +283,19 @@ public class KNNJoin<V extends NumberVector, N extends SpatialNode<N, E>, E exte
    * Initialize the heaps.
    *
    * @param distFunction Distance function
+   * @param heaps kNN heaps of all objects
    * @param pr Node to initialize for
-   * @return List of heaps
+   * @return Heaps of the node entries
    */
-  private List<KNNHeap> initHeaps(SpatialPrimitiveDistanceFunction<V> distFunction, N pr) {
-    List<KNNHeap> pr_heaps = new ArrayList<>(pr.getNumEntries());
-    // Create for each data object a knn heap
-    for(int j = 0; j < pr.getNumEntries(); j++) {
-      pr_heaps.add(DBIDUtil.newHeap(k));
+  private KNNHeap[] initHeaps(SpatialPrimitiveDistanceFunction<V> distFunction, DataStore<KNNHeap> heaps, N pr) {
+    KNNHeap[] pr_heaps = new KNNHeap[pr.getNumEntries()];
+    // Get the knn heap of each data object
+    for(int j = 0; j < pr_heaps.length; j++) {
+      pr_heaps[j] = heaps.get(((LeafEntry) pr.getEntry(j)).getDBID());
     }
     // Self-join first, as this is expected to improve most and cannot be
     // pruned.
-    processDataPages(distFunction, pr_heaps, null, pr, pr);
+    processDataPages(distFunction, pr_heaps, pr, pr);
     return pr_heaps;
   }
 
@@ -240,9 +307,8 @@ public class KNNJoin<V extends NumberVector, N extends SpatialNode<N, E>, E exte
    * @param pr the first data page
    * @param ps the second data page
    * @param pr_heaps the knn lists for each data object
-   * @param ps_heaps the knn lists for each data object in ps
    */
-  private void processDataPages(SpatialPrimitiveDistanceFunction<? super V> df, List<KNNHeap> pr_heaps, List<KNNHeap> ps_heaps, N pr, N ps) {
+  private void processDataPages(SpatialPrimitiveDistanceFunction<? super V> df, KNNHeap[] pr_heaps, N pr, N ps) {
     // Compare pairwise
     for(int j = 0; j < ps.getNumEntries(); j++) {
       final SpatialPointLeafEntry s_e = (SpatialPointLeafEntry) ps.getEntry(j);
@@ -250,10 +316,7 @@ public class KNNJoin<V extends NumberVector, N extends SpatialNode<N, E>, E exte
       for(int i = 0; i < pr.getNumEntries(); i++) {
         final SpatialPointLeafEntry r_e = (SpatialPointLeafEntry) pr.getEntry(i);
         double distance = df.minDist(s_e, r_e);
-        pr_heaps.get(i).insert(distance, s_id);
-        if(pr != ps && ps_heaps != null) {
-          ps_heaps.get(j).insert(distance, r_e.getDBID());
-        }
+        pr_heaps[i].insert(distance, s_id);
       }
     }
   }
@@ -261,10 +324,10 @@ public class KNNJoin<V extends NumberVector, N extends SpatialNode<N, E>, E exte
   /**
    * Compute the maximum stop distance.
    *
-   * @param heaps Heaps list
+   * @param heaps Heaps of the node entries
    * @return the k-nearest neighbor distance of pr in ps
    */
-  private double computeStopDistance(List<KNNHeap> heaps) {
+  private double computeStopDistance(KNNHeap[] heaps) {
     // Update pruning distance
     double pr_knn_distance = Double.NaN;
     for(KNNHeap knnList : heaps) {
@@ -288,49 +351,6 @@ public class KNNJoin<V extends NumberVector, N extends SpatialNode<N, E>, E exte
     return LOG;
   }
 
-  /**
-   * Task in the processing queue.
-   *
-   * @author Erich Schubert
-   *
-   * @apiviz.exclude
-   */
-  private class Task implements Comparable<Task> {
-    /**
-     * Minimum distance.
-     */
-    final double mindist;
-
-    /**
-     * First offset.
-     */
-    final int i;
-
-    /**
-     * Second offset.
-     */
-    final int j;
-
-    /**
-     * Constructor.
-     *
-     * @param mindist Minimum distance
-     * @param i First offset
-     * @param j Second offset
-     */
-    public Task(double mindist, int i, int j) {
-      super();
-      this.mindist = mindist;
-      this.i = i;
-      this.j = j;
-    }
-
-    @Override
-    public int compareTo(Task o) {
-      return Double.compare(mindist, o.mindist);
-    }
-  }
-
   /**
    * Parameterization class.
    *
@@ -0,0 +1,39 @@
+package de.lmu.ifi.dbs.elki.algorithm;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Marker interface for algorithms that keep no per-run state in the algorithm
+ * instance, and only access shared database structures through synchronized
+ * helpers such as
+ * {@link de.lmu.ifi.dbs.elki.utilities.DatabaseUtil#precomputedKNNQuery}.
+ * 
+ * Such algorithms may be run concurrently with other algorithms on the same
+ * database, e.g., as members of an ensemble.
+ * 
+ * @author Erich Schubert
+ */
+public interface ThreadSafeAlgorithm extends Algorithm {
+  // Empty marker interface
+}
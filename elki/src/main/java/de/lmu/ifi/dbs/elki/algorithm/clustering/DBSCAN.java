@@ -129,7 +129,7 @@ public class DBSCAN<O> extends AbstractDistanceBasedAlgorithm<O, Clustering<Mode
     final int size = relation.size();
 
     resultList = new ArrayList<>();
-    noise = DBIDUtil.newHashSet();
+    noise = DBIDUtil.newBitmapOrHashSet(relation.getDBIDs());
     if(size < minpts) {
       // The can't be any clusters
       noise.addDBIDs(relation.getDBIDs());
@@ -160,7 +160,7 @@ public class DBSCAN<O> extends AbstractDistanceBasedAlgorithm<O, Clustering<Mode
     FiniteProgress objprog = LOG.isVerbose() ? new FiniteProgress("Processing objects", size, LOG) : null;
     IndefiniteProgress clusprog = LOG.isVerbose() ? new IndefiniteProgress("Number of clusters", LOG) : null;
 
-    processedIDs = DBIDUtil.newHashSet(size);
+    processedIDs = DBIDUtil.newBitmapOrHashSet(relation.getDBIDs());
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
       if(!processedIDs.contains(iditer)) {
         expandCluster(relation, rangeQuery, iditer, objprog, clusprog);
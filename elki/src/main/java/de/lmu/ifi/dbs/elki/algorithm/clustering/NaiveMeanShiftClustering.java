@@ -90,17 +90,17 @@ public class NaiveMeanShiftClustering<V extends NumberVector> extends AbstractDi
   /**
    * Density estimation kernel.
    */
-  KernelDensityFunction kernel = EpanechnikovKernelDensityFunction.KERNEL;
+  protected KernelDensityFunction kernel = EpanechnikovKernelDensityFunction.KERNEL;
 
   /**
    * Range of the kernel.
    */
-  double bandwidth;
+  protected double bandwidth;
 
   /**
    * Maximum number of iterations.
    */
-  static final int MAXITER = 1000;
+  protected static final int MAXITER = 1000;
 
   /**
    * Constructor.
@@ -242,12 +242,12 @@ public class NaiveMeanShiftClustering<V extends NumberVector> extends AbstractDi
     /**
      * Kernel function.
      */
-    KernelDensityFunction kernel = EpanechnikovKernelDensityFunction.KERNEL;
+    protected KernelDensityFunction kernel = EpanechnikovKernelDensityFunction.KERNEL;
 
     /**
      * Kernel radius.
      */
-    double range;
+    protected double range;
 
     @Override
     protected void makeOptions(Parameterization config) {
@@ -143,7 +143,7 @@ public class SNNClustering<O> extends AbstractAlgorithm<Clustering<Model>> imple
     IndefiniteProgress clusprog = LOG.isVerbose() ? new IndefiniteProgress("Number of clusters", LOG) : null;
     resultList = new ArrayList<>();
     noise = DBIDUtil.newHashSet();
-    processedIDs = DBIDUtil.newHashSet(relation.size());
+    processedIDs = DBIDUtil.newBitmapOrHashSet(relation.getDBIDs());
     if(relation.size() >= minpts) {
       for(DBIDIter id = relation.iterDBIDs(); id.valid(); id.advance()) {
         if(!processedIDs.contains(id)) {
@@ -25,6 +25,7 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithm;
@@ -40,6 +41,8 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
@@ -47,6 +50,7 @@ import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -230,34 +234,38 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
   /**
    * Recompute the covariance matrixes.
    * 
+   * The models are updated concurrently, each in a single pass over the data
+   * in the usual order, so the result does not depend on the number of
+   * threads.
+   * 
    * @param relation Vector data
    * @param probClusterIGivenX Object probabilities
    * @param models Cluster models to update
    */
-  public static void recomputeCovarianceMatrices(Relation<? extends NumberVector> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<?>> models) {
-    for(EMClusterModel<?> m : models) {
-      m.beginEStep();
-    }
-    double[] wsum = new double[models.size()];
-    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      double[] clusterProbabilities = probClusterIGivenX.get(iditer);
-      NumberVector instance = relation.get(iditer);
-      int i = 0;
-      for(EMClusterModel<?> m : models) {
-        final double prior = clusterProbabilities[i];
-        if(prior > 0.) {
-          m.updateE(instance, prior);
-        }
-        wsum[i] += prior;
-        ++i;
-      }
-    }
+  public static void recomputeCovarianceMatrices(final Relation<? extends NumberVector> relation, final WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<?>> models) {
+    List<Callable<Void>> tasks = new ArrayList<>(models.size());
     int i = 0;
-    for(EMClusterModel<?> m : models) {
-      m.finalizeEStep();
-      m.setWeight(wsum[i] / relation.size());
-      i++;
+    for(final EMClusterModel<?> m : models) {
+      final int c = i++;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          m.beginEStep();
+          double wsum = 0.;
+          for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
+            final double prior = probClusterIGivenX.get(iditer)[c];
+            if(prior > 0.) {
+              m.updateE(relation.get(iditer), prior);
+            }
+            wsum += prior;
+          }
+          m.finalizeEStep();
+          m.setWeight(wsum / relation.size());
+          return null;
+        }
+      });
     }
+    ParallelExecutor.call(tasks);
   }
 
   /**
@@ -265,44 +273,56 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
    * compute the expectation value of the current mixture of distributions.
    * 
    * Computed as the sum of the logarithms of the prior probability of each
-   * instance.
+   * instance. The instances are processed concurrently, but the logarithms are
+   * summed up in the usual order.
    * 
    * @param relation the database used for assignment to instances
    * @param models Cluster models
    * @param probClusterIGivenX Output storage for cluster probabilities
    * @return the expectation value of the current mixture of distributions
    */
-  public static double assignProbabilitiesToInstances(Relation<? extends NumberVector> relation, List<? extends EMClusterModel<?>> models, WritableDataStore<double[]> probClusterIGivenX) {
+  public static double assignProbabilitiesToInstances(final Relation<? extends NumberVector> relation, final List<? extends EMClusterModel<?>> models, final WritableDataStore<double[]> probClusterIGivenX) {
     final int k = models.size();
-    double emSum = 0.;
-
-    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      NumberVector vec = relation.get(iditer);
-      double[] probabilities = new double[k];
-      {
-        int i = 0;
-        for(EMClusterModel<?> m : models) {
-          probabilities[i] = m.estimateDensity(vec);
-          ++i;
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final double[] logPs = new double[ids.size()];
+    // The storage may not allow concurrent writes, so fill it afterwards.
+    final double[][] probs = new double[ids.size()][];
+    ParallelExecutor.run(ids, new ParallelExecutor.ArrayTask() {
+      @Override
+      public void process(DBIDArrayIter iditer) {
+        NumberVector vec = relation.get(iditer);
+        double[] probabilities = new double[k];
+        {
+          int i = 0;
+          for(EMClusterModel<?> m : models) {
+            probabilities[i] = m.estimateDensity(vec);
+            ++i;
+          }
         }
-      }
-      double priorProbability = 0.;
-      for(int i = 0; i < k; i++) {
-        priorProbability += probabilities[i];
-      }
-      double logP = Math.max(Math.log(priorProbability), MIN_LOGLIKELIHOOD);
-      emSum += (logP == logP) ? logP : 0.; /* avoid NaN */
-
-      double[] clusterProbabilities = new double[k];
-      if(priorProbability > 0.) {
+        double priorProbability = 0.;
         for(int i = 0; i < k; i++) {
-          // do not divide by zero!
-          clusterProbabilities[i] = probabilities[i] / priorProbability;
+          priorProbability += probabilities[i];
+        }
+        logPs[iditer.getOffset()] = Math.max(Math.log(priorProbability), MIN_LOGLIKELIHOOD);
+
+        double[] clusterProbabilities = new double[k];
+        if(priorProbability > 0.) {
+          for(int i = 0; i < k; i++) {
+            // do not divide by zero!
+            clusterProbabilities[i] = probabilities[i] / priorProbability;
+          }
         }
+        probs[iditer.getOffset()] = clusterProbabilities;
       }
-      probClusterIGivenX.put(iditer, clusterProbabilities);
+    });
+    for(DBIDArrayIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+      probClusterIGivenX.put(iditer, probs[iditer.getOffset()]);
     }
 
+    double emSum = 0.;
+    for(double logP : logPs) {
+      emSum += (logP == logP) ? logP : 0.; /* avoid NaN */
+    }
     return emSum / relation.size();
   }
 
@@ -23,6 +23,8 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.IOException;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
@@ -43,6 +45,8 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanD
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.checkpoint.Checkpoint;
+import de.lmu.ifi.dbs.elki.utilities.checkpoint.CheckpointManager;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
@@ -155,24 +159,47 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
       LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
     }
 
-    // Compute the initial (lower triangular) distance matrix.
+    // Initialize space for result:
     double[] scratch = new double[triangleSize(size)];
     DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-    boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(getDistanceFunction()));
-    initializeDistanceMatrix(scratch, dq, ix, iy, square);
-
-    // Initialize space for result:
     WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
     WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
     WritableIntegerDataStore csize = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, 1);
-    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
-      pi.put(it, it);
+    int wsize = size, start = 1;
+
+    Checkpoint cp = CheckpointManager.open(AGNES.class, ids);
+    try (Checkpoint.Reader in = cp != null ? cp.restore() : null) {
+      if(in != null) {
+        in.expectString("linkage", linkage.getClass().getName());
+        in.expectString("distance function", getDistanceFunction().getClass().getName());
+        start = in.readInt();
+        wsize = in.readInt();
+        for(int i = 0; i < scratch.length; i++) {
+          scratch[i] = in.readDouble();
+        }
+        in.readStore(pi);
+        in.readStore(lambda);
+        in.readStore(csize);
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Cannot resume from checkpoint.", e);
+    }
+    if(start == 1) {
+      // Compute the initial (lower triangular) distance matrix.
+      boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(getDistanceFunction()));
+      initializeDistanceMatrix(scratch, dq, ix, iy, square);
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        pi.put(it, it);
+      }
     }
 
     // Repeat until everything merged into 1 cluster
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
-    int wsize = size;
-    for(int i = 1; i < size; i++) {
+    if(prog != null && start > 1) {
+      prog.setProcessed(start - 1, LOG);
+    }
+    for(int i = start; i < size; i++) {
       int x = findMerge(wsize, scratch, ix, iy, pi, lambda, csize);
       if(x == wsize - 1) {
         --wsize;
@@ -181,8 +208,29 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
         }
       }
       LOG.incrementProcessed(prog);
+      if(cp != null && cp.due()) {
+        try (Checkpoint.Writer out = cp.write()) {
+          out.writeString(linkage.getClass().getName());
+          out.writeString(getDistanceFunction().getClass().getName());
+          out.writeInt(i + 1);
+          out.writeInt(wsize);
+          for(double d : scratch) {
+            out.writeDouble(d);
+          }
+          out.writeStore(pi);
+          out.writeStore(lambda);
+          out.writeStore(csize);
+          out.commit();
+        }
+        catch(IOException e) {
+          LOG.warning("Checkpoint failed: " + e.getMessage());
+        }
+      }
     }
     LOG.ensureCompleted(prog);
+    if(cp != null) {
+      cp.finish();
+    }
 
     return new PointerHierarchyRepresentationResult(ids, pi, lambda);
   }
@@ -319,8 +319,9 @@ public abstract class AbstractHDBSCAN<O, R extends Result> extends AbstractDista
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config); // distanceFunction
 
+      // minPts = 1 is allowed, and yields single-linkage clustering.
       IntParameter minptsP = new IntParameter(MIN_PTS_ID) //
-      .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
       if(config.grab(minptsP)) {
         minPts = minptsP.getValue();
       }
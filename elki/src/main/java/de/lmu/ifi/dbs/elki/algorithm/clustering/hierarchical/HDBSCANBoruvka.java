@@ -0,0 +1,513 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.ArrayTask;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.ConcurrentUnionFind;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Index-assisted implementation of HDBSCAN clustering, computing the minimum
+ * spanning tree with Borůvka's algorithm.
+ *
+ * In every round of Borůvka's algorithm, each point searches its nearest
+ * neighbor (with respect to mutual reachability distance) outside of its own
+ * component. This search is performed in parallel, and uses incremental kNN
+ * queries with a growing, but bounded k, so an index such as a cover tree or
+ * R*-tree makes the algorithm sub-quadratic on low to medium dimensional data.
+ * Points where the bounded query is inconclusive are resolved with a single
+ * pruned scan per component. The number of components at least halves with
+ * each round. The core distances are computed in parallel as well.
+ *
+ * Without an index, every kNN query is a linear scan; then the O(n²) Prim
+ * implementation in {@link HDBSCANLinearMemory} is preferable.
+ *
+ * With minPts = 1, all core distances are 0, and the result is the single-link
+ * hierarchy as computed by {@link SLINK}.
+ *
+ * Reference:
+ * <p>
+ * W. B. March, P. Ram, A. G. Gray<br />
+ * Fast Euclidean minimum spanning tree: algorithm, analysis, and
+ * applications<br />
+ * Proc. 16th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining
+ * (KDD '10)
+ * </p>
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.uses ConcurrentUnionFind
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "W. B. March, P. Ram, A. G. Gray", //
+title = "Fast Euclidean minimum spanning tree: algorithm, analysis, and applications", //
+booktitle = "Proc. 16th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining (KDD '10)", //
+url = "http://dx.doi.org/10.1145/1835804.1835882")
+public class HDBSCANBoruvka<O> extends AbstractHDBSCAN<O, PointerDensityHierarchyRepresentationResult> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(HDBSCANBoruvka.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param minPts Minimum number of points for density
+   */
+  public HDBSCANBoruvka(DistanceFunction<? super O> distanceFunction, int minPts) {
+    super(distanceFunction, minPts);
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerDensityHierarchyRepresentationResult run(Database db, Relation<O> relation) {
+    final DistanceQuery<O> distQ = db.getDistanceQuery(relation, getDistanceFunction());
+    final KNNQuery<O> knnQ = db.getKNNQuery(distQ, minPts);
+    // We need array addressing later.
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+
+    // Map DBIDs to array offsets; only read concurrently.
+    WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_DB, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+
+    // 1. Compute the core distances
+    final double[] core = new double[size];
+    FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Computing core sizes.", size, LOG) : null;
+    ParallelExecutor.run(ids, new ArrayTask() {
+      @Override
+      public void process(DBIDArrayIter it) {
+        core[it.getOffset()] = knnQ.getKNNForDBID(it, minPts).getKNNDistance();
+      }
+    }, cprog, LOG);
+    LOG.ensureCompleted(cprog);
+    final WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      coredists.putDouble(it, core[it.getOffset()]);
+    }
+
+    // 2. Build spanning tree.
+    final int numedges = size - 1;
+    DoubleLongHeap heap = new DoubleLongMinHeap(numedges > 0 ? numedges : 1);
+    FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges).", numedges > 0 ? numedges : 0, LOG) : null;
+    IndefiniteProgress rprog = LOG.isVerbose() ? new IndefiniteProgress("Boruvka rounds", LOG) : null;
+    final ConcurrentUnionFind uf = new ConcurrentUnionFind(size);
+    final ComponentNeighborSearch search = new ComponentNeighborSearch(knnQ, offsets, core, uf, minPts);
+    // Best outgoing edge of each component, stored at the root.
+    double[] cdist = new double[size];
+    int[] cfrom = new int[size], cto = new int[size];
+    int edges = 0;
+    while(edges < numedges) {
+      ParallelExecutor.run(ids, search);
+      Arrays.fill(cdist, Double.POSITIVE_INFINITY);
+      Arrays.fill(cto, -1);
+      for(int i = 0; i < size; i++) {
+        final int j = search.bestj[i];
+        if(j >= 0 && search.bestd[i] < cdist[uf.find(i)]) {
+          final int r = uf.find(i);
+          cdist[r] = search.bestd[i];
+          cfrom[r] = i;
+          cto[r] = j;
+        }
+      }
+      // Resolve capped queries, with one scan per component.
+      search.resolve(ids, distQ, cdist, cfrom, cto);
+      int added = 0;
+      for(int r = 0; r < size; r++) {
+        if(cto[r] >= 0 && uf.union(cfrom[r], cto[r])) {
+          heap.add(cdist[r], (((long) cfrom[r]) << 31) | cto[r]);
+          ++added;
+          LOG.incrementProcessed(mprog);
+        }
+      }
+      if(added == 0) {
+        break; // Should not happen, unless distances are infinite.
+      }
+      edges += added;
+      LOG.incrementProcessed(rprog);
+    }
+    LOG.ensureCompleted(mprog);
+    LOG.setCompleted(rprog);
+    offsets.destroy();
+
+    // Storage for pointer representation:
+    WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
+    convertToPointerRepresentation(ids, heap, pi, lambda);
+
+    return new PointerDensityHierarchyRepresentationResult(ids, pi, lambda, coredists);
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Find the nearest neighbor of each point outside of its own component, with
+   * respect to mutual reachability distance.
+   *
+   * Components only grow; so if the previous nearest neighbor is still in a
+   * different component, it is still the nearest, and no query is necessary.
+   *
+   * The query size is capped: a point deep inside a large component would
+   * otherwise need a query size close to the component size. Such points keep
+   * their best candidate and a lower bound for all other neighbors, and are
+   * resolved by {@link #resolve} with one scan per component, which only
+   * considers points whose bound is better than the best edge of the
+   * component.
+   *
+   * @author Erich Schubert
+   */
+  private static class ComponentNeighborSearch implements ArrayTask {
+    /**
+     * kNN query.
+     */
+    private final KNNQuery<?> knnQ;
+
+    /**
+     * Offset map.
+     */
+    private final IntegerDataStore offsets;
+
+    /**
+     * Core distances, by offset.
+     */
+    private final double[] core;
+
+    /**
+     * Current components.
+     */
+    private final ConcurrentUnionFind uf;
+
+    /**
+     * Current query size of each point.
+     */
+    private final int[] ks;
+
+    /**
+     * Maximum query size.
+     */
+    private final int kmax;
+
+    /**
+     * Nearest neighbor distance and offset (output).
+     */
+    final double[] bestd;
+
+    /**
+     * Nearest neighbor offset (output), -1 if none.
+     */
+    final int[] bestj;
+
+    /**
+     * Flag whether bestj is known to be the nearest neighbor.
+     */
+    private final boolean[] exact;
+
+    /**
+     * Lower bound for neighbors beyond the last query, if not exact.
+     */
+    private final double[] lower;
+
+    /**
+     * Scratch buffer for points to resolve.
+     */
+    private final int[] cand;
+
+    /**
+     * Constructor.
+     *
+     * @param knnQ kNN query
+     * @param offsets Offset map
+     * @param core Core distances
+     * @param uf Components
+     * @param minPts Initial query size
+     */
+    ComponentNeighborSearch(KNNQuery<?> knnQ, IntegerDataStore offsets, double[] core, ConcurrentUnionFind uf, int minPts) {
+      this.knnQ = knnQ;
+      this.offsets = offsets;
+      this.core = core;
+      this.uf = uf;
+      final int size = core.length;
+      final int kinit = Math.max(minPts << 1, 8);
+      this.kmax = kinit << 4;
+      this.ks = new int[size];
+      Arrays.fill(ks, kinit);
+      this.bestd = new double[size];
+      this.bestj = new int[size];
+      Arrays.fill(bestj, -1);
+      this.exact = new boolean[size];
+      this.lower = new double[size];
+      this.cand = new int[size];
+    }
+
+    @Override
+    public void process(DBIDArrayIter it) {
+      final int i = it.getOffset();
+      final int comp = uf.find(i);
+      if(exact[i] && bestj[i] >= 0 && uf.find(bestj[i]) != comp) {
+        return; // Still valid.
+      }
+      final double corei = core[i];
+      while(true) {
+        final int k = ks[i];
+        final KNNList knn = knnQ.getKNNForDBID(it, k);
+        double best = Double.POSITIVE_INFINITY, last = 0.;
+        int bj = -1;
+        boolean done = false;
+        for(DoubleDBIDListIter n = knn.iter(); n.valid(); n.advance()) {
+          last = n.doubleValue();
+          if((last > corei ? last : corei) >= best) {
+            done = true; // No better neighbors possible.
+            break;
+          }
+          final int j = offsets.intValue(n);
+          if(uf.find(j) == comp) {
+            continue;
+          }
+          double d = last > corei ? last : corei;
+          d = core[j] > d ? core[j] : d;
+          if(d < best) {
+            best = d;
+            bj = j;
+          }
+        }
+        bestd[i] = best;
+        bestj[i] = bj;
+        // Done, unless further neighbors may be better.
+        final double bound = last > corei ? last : corei;
+        if(done || knn.size() < k || bound >= best) {
+          exact[i] = true;
+          return;
+        }
+        if(k >= kmax) {
+          exact[i] = false;
+          lower[i] = bound;
+          return;
+        }
+        ks[i] = Math.min(k << 1, kmax);
+      }
+    }
+
+    /**
+     * Resolve the points where the capped query was inconclusive, and update
+     * the best edge of their components.
+     *
+     * @param ids Object ids
+     * @param distQ Distance query
+     * @param cdist Best edge length, by component root
+     * @param cfrom Best edge source, by component root
+     * @param cto Best edge target, by component root
+     */
+    void resolve(ArrayDBIDs ids, DistanceQuery<?> distQ, double[] cdist, int[] cfrom, int[] cto) {
+      int n = 0;
+      for(int i = 0; i < cand.length; i++) {
+        if(!exact[i] && lower[i] < cdist[uf.find(i)]) {
+          cand[n++] = i;
+        }
+      }
+      if(n == 0) {
+        return;
+      }
+      // Group by component, most promising points first.
+      IntegerArrayQuickSort.sort(cand, 0, n, new IntegerComparator() {
+        @Override
+        public int compare(int x, int y) {
+          final int rx = uf.find(x), ry = uf.find(y);
+          return rx != ry ? (rx < ry ? -1 : 1) : Double.compare(lower[x], lower[y]);
+        }
+      });
+      List<ComponentScan> tasks = new ArrayList<>();
+      for(int s = 0, e; s < n; s = e) {
+        final int r = uf.find(cand[s]);
+        for(e = s + 1; e < n && uf.find(cand[e]) == r; e++) {
+          // Find end of component.
+        }
+        tasks.add(new ComponentScan(ids, distQ, r, s, e, cdist, cfrom, cto));
+      }
+      ParallelExecutor.call(tasks);
+    }
+
+    /**
+     * Scan all other points once, to find the best edge of one component.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class ComponentScan implements Callable<Void> {
+      /**
+       * Object ids.
+       */
+      private final ArrayDBIDs ids;
+
+      /**
+       * Distance query.
+       */
+      private final DistanceQuery<?> distQ;
+
+      /**
+       * Component root.
+       */
+      private final int root;
+
+      /**
+       * Range of the candidates in {@link ComponentNeighborSearch#cand}.
+       */
+      private final int start, end;
+
+      /**
+       * Best edges, by component root.
+       */
+      private final double[] cdist;
+
+      /**
+       * Best edges, by component root.
+       */
+      private final int[] cfrom, cto;
+
+      /**
+       * Constructor.
+       *
+       * @param ids Object ids
+       * @param distQ Distance query
+       * @param root Component root
+       * @param start First candidate
+       * @param end End of candidates
+       * @param cdist Best edge length, by component root
+       * @param cfrom Best edge source, by component root
+       * @param cto Best edge target, by component root
+       */
+      ComponentScan(ArrayDBIDs ids, DistanceQuery<?> distQ, int root, int start, int end, double[] cdist, int[] cfrom, int[] cto) {
+        this.ids = ids;
+        this.distQ = distQ;
+        this.root = root;
+        this.start = start;
+        this.end = end;
+        this.cdist = cdist;
+        this.cfrom = cfrom;
+        this.cto = cto;
+      }
+
+      @Override
+      public Void call() {
+        double best = cdist[root];
+        int bf = cfrom[root], bt = cto[root];
+        int e = end;
+        DBIDArrayIter ii = ids.iter();
+        for(DBIDArrayIter ij = ids.iter(); ij.valid(); ij.advance()) {
+          // Candidates are sorted by their bound, drop those that cannot win.
+          while(e > start && lower[cand[e - 1]] >= best) {
+            --e;
+          }
+          if(e == start) {
+            break;
+          }
+          final int j = ij.getOffset();
+          final double corej = core[j];
+          if(corej >= best || uf.find(j) == root) {
+            continue;
+          }
+          for(int c = start; c < e; c++) {
+            final int i = cand[c];
+            double d = distQ.distance(ii.seek(i), ij);
+            d = d > core[i] ? d : core[i];
+            d = d > corej ? d : corej;
+            if(d < best) {
+              best = d;
+              bf = i;
+              bt = j;
+            }
+          }
+        }
+        cdist[root] = best;
+        cfrom[root] = bf;
+        cto[root] = bt;
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends AbstractHDBSCAN.Parameterizer<O> {
+    @Override
+    protected HDBSCANBoruvka<O> makeInstance() {
+      return new HDBSCANBoruvka<>(distanceFunction, minPts);
+    }
+  }
+}
@@ -54,6 +54,7 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
@@ -69,7 +70,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * @param <V> Vector type
  * @param <M> Cluster model type
  */
-public abstract class AbstractKMeans<V extends NumberVector, M extends Model> extends AbstractNumberVectorDistanceBasedAlgorithm<V, Clustering<M>> implements KMeans<V, M>, ClusteringAlgorithm<Clustering<M>> {
+public abstract class AbstractKMeans<V extends NumberVector, M extends Model> extends AbstractNumberVectorDistanceBasedAlgorithm<V, Clustering<M>> implements KMeans<V, M>, ClusteringAlgorithm<Clustering<M>>, Cloneable {
   /**
    * Number of cluster centers to initialize.
    */
@@ -303,6 +304,47 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> ex
     this.distanceFunction = distanceFunction;
   }
 
+  /**
+   * Test whether this variant can be copied with
+   * {@link #copyWithInitializer}, to run the copies concurrently.
+   *
+   * This method does not have side effects.
+   *
+   * @return {@code true} when copies can be run concurrently
+   */
+  protected boolean supportsConcurrentCopies() {
+    return true;
+  }
+
+  /**
+   * Copy this k-means configuration, but with a different initialization.
+   *
+   * The k-means variants keep all state of a run in local variables, so the
+   * copies can be run concurrently, e.g. for multiple restarts. A copy
+   * consumes the same random state as one sequential run would, so copies must
+   * be made in the order the sequential runs would happen.
+   *
+   * @param init Initialization to use in the copy
+   * @return Copy
+   * @throws UnsupportedOperationException if
+   *         {@link #supportsConcurrentCopies()} is false
+   */
+  protected AbstractKMeans<V, M> copyWithInitializer(KMeansInitialization<? super V> init) {
+    if(!supportsConcurrentCopies()) {
+      throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot be copied for concurrent runs.");
+    }
+    try {
+      @SuppressWarnings("unchecked")
+      AbstractKMeans<V, M> copy = (AbstractKMeans<V, M>) clone();
+      copy.initializer = init;
+      return copy;
+    }
+    catch(CloneNotSupportedException e) {
+      // Cannot happen, this class is Cloneable.
+      throw new AbortException("Cloning failed.", e);
+    }
+  }
+
   /**
    * Log statistics on the variance sum.
    *
@@ -23,7 +23,12 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.PredefinedInitialMeans;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.quality.KMeansQualityMeasure;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
@@ -36,6 +41,8 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunctio
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
@@ -47,6 +54,10 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 /**
  * Run K-Means multiple times, and keep the best run.
  *
+ * The trials are run concurrently when the inner k-means supports this. Only
+ * the best clustering found so far is kept, so the memory use grows with the
+ * number of threads rather than the number of trials.
+ *
  * @author Stephan Baier
  * @author Erich Schubert
  *
@@ -89,16 +100,22 @@ public class BestOfMultipleKMeans<V extends NumberVector, M extends MeanModel> e
   }
 
   @Override
-  public Clustering<M> run(Database database, Relation<V> relation) {
+  public Clustering<M> run(Database database, final Relation<V> relation) {
     if(!(innerkMeans.getDistanceFunction() instanceof PrimitiveDistanceFunction)) {
       throw new AbortException("K-Means results can only be evaluated for primitive distance functions, got: " + innerkMeans.getDistanceFunction().getClass());
     }
     @SuppressWarnings("unchecked")
     final NumberVectorDistanceFunction<? super NumberVector> df = (NumberVectorDistanceFunction<? super NumberVector>) innerkMeans.getDistanceFunction();
 
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("K-means iterations", trials, LOG) : null;
+    if(innerkMeans instanceof AbstractKMeans && ((AbstractKMeans<V, M>) innerkMeans).supportsConcurrentCopies()) {
+      Clustering<M> bestResult = runConcurrently(database, relation, (AbstractKMeans<V, M>) innerkMeans, df, prog);
+      LOG.ensureCompleted(prog);
+      return bestResult;
+    }
+
     Clustering<M> bestResult = null;
     double bestCost = Double.NaN;
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("K-means iterations", trials, LOG) : null;
     for(int i = 0; i < trials; i++) {
       Clustering<M> currentCandidate = innerkMeans.run(database, relation);
       double currentCost = qualityMeasure.quality(currentCandidate, df, relation);
@@ -118,6 +135,87 @@ public class BestOfMultipleKMeans<V extends NumberVector, M extends MeanModel> e
     return bestResult;
   }
 
+  /**
+   * Run the trials concurrently.
+   *
+   * The initial means of all trials are chosen up front, in order, so that
+   * every trial gets the same initialization as in a sequential run. Each
+   * trial is evaluated as soon as it completes, and only the best clustering
+   * found so far is kept.
+   *
+   * @param database Database
+   * @param relation Data relation
+   * @param inner Inner k-means
+   * @param df Distance function for evaluation
+   * @param prog Progress
+   * @return Best clustering
+   */
+  protected Clustering<M> runConcurrently(final Database database, final Relation<V> relation, AbstractKMeans<V, M> inner, final NumberVectorDistanceFunction<? super NumberVector> df, final FiniteProgress prog) {
+    final BestTrial best = new BestTrial();
+    List<Callable<Void>> tasks = new ArrayList<>(trials);
+    for(int i = 0; i < trials; i++) {
+      // Same order of random use as in a sequential run: initialize, then copy.
+      List<Vector> means = inner.initializer.chooseInitialMeans(database, relation, inner.k, inner.getDistanceFunction(), Vector.FACTORY);
+      final AbstractKMeans<V, M> trial = inner.copyWithInitializer(new PredefinedInitialMeans(means));
+      final int num = i;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          Clustering<M> currentCandidate = trial.run(database, relation);
+          double currentCost = qualityMeasure.quality(currentCandidate, df, relation);
+          if(LOG.isVerbose()) {
+            LOG.verbose("Cost of candidate " + num + ": " + currentCost);
+          }
+          best.offer(num, currentCandidate, currentCost);
+          LOG.incrementProcessed(prog);
+          return null;
+        }
+      });
+    }
+    ParallelExecutor.call(tasks);
+    return best.result;
+  }
+
+  /**
+   * Best trial of a concurrent run.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class BestTrial {
+    /**
+     * Best clustering so far.
+     */
+    Clustering<M> result = null;
+
+    /**
+     * Cost of the best clustering.
+     */
+    double cost = Double.NaN;
+
+    /**
+     * Trial number of the best clustering.
+     */
+    int num = -1;
+
+    /**
+     * Offer a new candidate. On equal cost, the earlier trial is kept, as in a
+     * sequential run.
+     *
+     * @param n Trial number
+     * @param candidate Candidate clustering
+     * @param c Cost of the candidate
+     */
+    synchronized void offer(int n, Clustering<M> candidate, double c) {
+      if(result == null || qualityMeasure.isBetter(c, cost) || (n < num && !qualityMeasure.isBetter(cost, c))) {
+        result = candidate;
+        cost = c;
+        num = n;
+      }
+    }
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return innerkMeans.getInputTypeRestriction();
@@ -1,6 +1,9 @@
 package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithmUtil;
 /*
@@ -45,6 +48,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -58,6 +62,8 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
  * sets based on PAM, partitioning around medoids ({@link KMedoidsPAM}) based on
  * sampling.
  * 
+ * The samples are drawn in order, but optimized concurrently.
+ * 
  * Reference:
  * <p>
  * L. Kaufman, P. J. Rousseeuw<br />
@@ -116,32 +122,47 @@ public class CLARA<V> extends KMedoidsPAM<V> {
     if(relation.size() <= 0) {
       return new Clustering<>("CLARA Clustering", "clara-clustering");
     }
-    DBIDs ids = relation.getDBIDs();
-    DistanceQuery<V> distQ = database.getDistanceQuery(relation, getDistanceFunction());
-
-    double best = Double.POSITIVE_INFINITY;
-    ArrayModifiableDBIDs bestmedoids = null;
-    WritableIntegerDataStore bestclusters = null;
+    final DBIDs ids = relation.getDBIDs();
+    final DistanceQuery<V> distQ = database.getDistanceQuery(relation, getDistanceFunction());
 
+    // Draw the samples and initial medoids in order, for reproducibility.
     Random rnd = random.getSingleThreadedRandom();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Random samples.", numsamples, LOG) : null;
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Random samples.", numsamples, LOG) : null;
+    List<Callable<ArrayModifiableDBIDs>> samples = new ArrayList<>(numsamples);
+    final double[] scores = new double[numsamples];
     for(int j = 0; j < numsamples; j++) {
-      DBIDs rids = DBIDUtil.randomSample(ids, sampling, rnd);
+      final DBIDs rids = DBIDUtil.randomSample(ids, sampling, rnd);
       // Choose initial medoids
-      ArrayModifiableDBIDs medoids = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, distQ));
-      // Setup cluster assignment store
-      WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
-      runPAMOptimization(distQ, rids, medoids, assignment);
-      double score = assignRemainingToNearestCluster(medoids, ids, rids, assignment, distQ);
-      if(score < best) {
-        best = score;
-        bestmedoids = medoids;
-        bestclusters = assignment;
-      }
-      LOG.incrementProcessed(prog);
+      final ArrayModifiableDBIDs medoids = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, distQ));
+      final int num = j;
+      samples.add(new Callable<ArrayModifiableDBIDs>() {
+        @Override
+        public ArrayModifiableDBIDs call() {
+          // Setup cluster assignment store
+          WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(rids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+          runPAMOptimization(distQ, rids, medoids, assignment);
+          scores[num] = assignRemainingToNearestCluster(medoids, ids, rids, null, distQ);
+          LOG.incrementProcessed(prog);
+          return medoids;
+        }
+      });
     }
+    // Optimize the samples concurrently.
+    List<ArrayModifiableDBIDs> results = ParallelExecutor.call(samples);
     LOG.ensureCompleted(prog);
 
+    double best = Double.POSITIVE_INFINITY;
+    ArrayModifiableDBIDs bestmedoids = null;
+    for(int j = 0; j < numsamples; j++) {
+      if(scores[j] < best) {
+        best = scores[j];
+        bestmedoids = results.get(j);
+      }
+    }
+    // Assign all objects to the best medoids.
+    WritableIntegerDataStore bestclusters = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+    assignRemainingToNearestCluster(bestmedoids, ids, DBIDUtil.EMPTYDBIDS, bestclusters, distQ);
+
     ArrayModifiableDBIDs[] clusters = ClusteringAlgorithmUtil.partitionsFromIntegerLabels(ids, bestclusters, k);
 
     // Wrap result
@@ -160,7 +181,8 @@ public class CLARA<V> extends KMedoidsPAM<V> {
    * @param means Object centroids
    * @param ids Object ids
    * @param rids Sample that was already assigned
-   * @param assignment cluster assignment
+   * @param assignment cluster assignment, may be {@code null} to only compute
+   *        the sum of distances
    * @param distQ distance query
    * @return Sum of distances.
    */
@@ -183,7 +205,9 @@ public class CLARA<V> extends KMedoidsPAM<V> {
         }
       }
       distsum += mindist;
-      assignment.put(iditer, minIndex);
+      if(assignment != null) {
+        assignment.put(iditer, minIndex);
+      }
     }
     return distsum;
   }
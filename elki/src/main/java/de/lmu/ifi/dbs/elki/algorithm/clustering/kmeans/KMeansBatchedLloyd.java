@@ -282,6 +282,14 @@ public class KMeansBatchedLloyd<V extends NumberVector> extends AbstractKMeans<V
     return LOG;
   }
 
+  @Override
+  protected KMeansBatchedLloyd<V> copyWithInitializer(KMeansInitialization<? super V> init) {
+    KMeansBatchedLloyd<V> copy = (KMeansBatchedLloyd<V>) super.copyWithInitializer(init);
+    // Use the seed the next sequential run would use for its partitioning.
+    copy.random = random.fork();
+    return copy;
+  }
+
   /**
    * Parameterization class.
    *
@@ -1,6 +1,9 @@
 package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithmUtil;
@@ -15,6 +18,8 @@ import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
@@ -23,7 +28,6 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
@@ -35,6 +39,8 @@ import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
@@ -54,6 +60,11 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * in: Statistical Data Analysis Based on the L1-Norm and Related Methods
  * </p>
  *
+ * The swap phase uses the distances to the nearest and second nearest medoid
+ * to evaluate the swaps with all medoids in a single pass over the data, and
+ * evaluates the candidates in parallel. The result is the same as with the
+ * original algorithm.
+ *
  * @author Erich Schubert
  *
  * @apiviz.has MedoidModel
@@ -173,76 +184,26 @@ public class KMedoidsPAM<V> extends AbstractDistanceBasedAlgorithm<V, Clustering
 
     IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("PAM iteration", LOG) : null;
     // Swap phase
-    DBIDVar bestid = DBIDUtil.newVar();
-    DBIDArrayIter m = medoids.iter();
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    List<SwapSearch> tasks = makeSwapSearches(distQ, aids, medoids, nearest, second, assignment);
     int iteration = 1;
-    double[] cost = new double[k];
     for(; maxiter <= 0 || iteration <= maxiter; iteration++) {
       LOG.incrementProcessed(prog);
-      // Try to swap a non-medoid with a medoid member:
+      // Try to swap a non-medoid with a medoid member, using all cores.
+      // Ties are resolved as in a sequential scan, by taking the first block.
       double best = Double.POSITIVE_INFINITY;
-      int bestcluster = -1;
-      // Iterate over all non-medoids:
-      for(DBIDIter h = ids.iter(); h.valid(); h.advance()) {
-        final int pm = assignment.intValue(h);
-        m.seek(pm);
-        double hdist = nearest.doubleValue(h); // Current assignment cost of h.
-        if(DBIDUtil.equal(m, h) || hdist <= 0.) {
-          continue; // Only consider non-selected items
-        }
-        // h is a non-medoid currently in cluster of medoid m.
-        Arrays.fill(cost, -hdist);
-        // Compute costs of reassigning other objects j:
-        for(DBIDIter j = ids.iter(); j.valid(); j.advance()) {
-          if(DBIDUtil.equal(h, j)) {
-            continue;
-          }
-          final int pj = assignment.intValue(j);
-          // distance(j, i) for pi == pj
-          final double distcur = nearest.doubleValue(j);
-          // second nearest, alternative reassignment
-          final double distsec = second.doubleValue(j);
-          // distance(j, h), the possible reassignment
-          final double dist_h = distQ.distance(h, j);
-          // We moved this distance computation out compared to original PAM.
-          if(dist_h < distcur) {
-            for(int pi = 0; pi < k; pi++) {
-              if(pi == pj) { // The current nearest is lost.
-                cost[pi] += ((dist_h < distsec) ? //
-                dist_h // Case 1b1) j is closer to h
-                : distsec // Case 1b2) j would switch to its second nearest
-                ) - distcur;
-              }
-              else { // Case 1c) j is closer to h than its current medoid
-                cost[pi] += dist_h - distcur;
-              } // else Case 1a): j is closer to i than h and m, so no change.
-            }
-          }
-          else { // Only need to consider pi == pj
-            if(dist_h < distsec) {
-              // Case 1b1) j is closer to h
-              cost[pj] += dist_h - distcur;
-            }
-            else {
-              // Case 1b2) j would switch to its second nearest
-              cost[pj] += distsec - distcur;
-            }
-          }
-        }
-
-        // Consider all possible swaps:
-        for(int pi = 0; pi < k; pi++) {
-          if(cost[pi] < best) {
-            best = cost[pi];
-            bestid.set(h);
-            bestcluster = pi;
-          }
+      SwapSearch bestswap = null;
+      for(SwapSearch res : ParallelExecutor.call(tasks)) {
+        if(res.best < best) {
+          best = res.best;
+          bestswap = res;
         }
       }
-      if(best >= 0.) {
+      if(bestswap == null || best >= 0.) {
         break;
       }
-      medoids.set(bestcluster, bestid);
+      DBIDArrayIter bestid = aids.iter().seek(bestswap.bestoffset);
+      medoids.set(bestswap.bestcluster, bestid);
       // Reassign
       double nc = assignToNearestCluster(medoids, ids, nearest, second, assignment, distQ);
       if(LOG.isStatistics()) {
@@ -265,6 +226,29 @@ public class KMedoidsPAM<V> extends AbstractDistanceBasedAlgorithm<V, Clustering
     }
   }
 
+  /**
+   * Split the swap candidates into blocks, for parallel evaluation.
+   *
+   * @param distQ Distance query
+   * @param ids IDs to process
+   * @param medoids Medoids list
+   * @param nearest Distance to nearest medoid
+   * @param second Distance to second nearest medoid
+   * @param assignment Cluster assignment
+   * @return Swap searches, one per block
+   */
+  protected List<SwapSearch> makeSwapSearches(DistanceQuery<V> distQ, ArrayDBIDs ids, ArrayDBIDs medoids, DoubleDataStore nearest, DoubleDataStore second, IntegerDataStore assignment) {
+    final int size = ids.size();
+    final int numparts = Math.max(Math.min(size, ParallelCore.getCore().getParallelism() << 2), 1);
+    final int blocksize = (size + (numparts - 1)) / numparts;
+    List<SwapSearch> tasks = new ArrayList<>(numparts);
+    for(int start = 0; start < size; start += blocksize) {
+      final int stop = (start + blocksize < size) ? start + blocksize : size;
+      tasks.add(new SwapSearch(distQ, ids, start, stop, medoids, nearest, second, assignment));
+    }
+    return tasks;
+  }
+
   /**
    * Returns a list of clusters. The k<sup>th</sup> cluster contains the ids of
    * those FeatureVectors, that are nearest to the k<sup>th</sup> mean.
@@ -317,6 +301,150 @@ public class KMedoidsPAM<V> extends AbstractDistanceBasedAlgorithm<V, Clustering
     return LOG;
   }
 
+  /**
+   * Find the best swap for a block of non-medoids.
+   *
+   * Rather than computing the change for every medoid separately, the change
+   * common to all medoids (objects that would move to the new medoid) is
+   * accumulated once, and only the cluster that the object currently belongs
+   * to is updated individually. This needs the distances to the nearest and
+   * second nearest medoid, and is k times faster than the original swap.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  protected class SwapSearch implements Callable<SwapSearch> {
+    /**
+     * Distance query.
+     */
+    final DistanceQuery<V> distQ;
+
+    /**
+     * Object IDs.
+     */
+    final ArrayDBIDs ids;
+
+    /**
+     * Block of candidates to process.
+     */
+    final int begin, end;
+
+    /**
+     * Current medoids.
+     */
+    final ArrayDBIDs medoids;
+
+    /**
+     * Distance to nearest and second nearest medoid.
+     */
+    final DoubleDataStore nearest, second;
+
+    /**
+     * Current cluster assignment.
+     */
+    final IntegerDataStore assignment;
+
+    /**
+     * Cost change for each medoid.
+     */
+    final double[] cost;
+
+    /**
+     * Best cost change found.
+     */
+    double best;
+
+    /**
+     * Offset of the best swap candidate.
+     */
+    int bestoffset;
+
+    /**
+     * Cluster of the best swap.
+     */
+    int bestcluster;
+
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param ids Object IDs
+     * @param begin First candidate offset
+     * @param end End candidate offset (exclusive)
+     * @param medoids Current medoids
+     * @param nearest Distance to nearest medoid
+     * @param second Distance to second nearest medoid
+     * @param assignment Cluster assignment
+     */
+    protected SwapSearch(DistanceQuery<V> distQ, ArrayDBIDs ids, int begin, int end, ArrayDBIDs medoids, DoubleDataStore nearest, DoubleDataStore second, IntegerDataStore assignment) {
+      this.distQ = distQ;
+      this.ids = ids;
+      this.begin = begin;
+      this.end = end;
+      this.medoids = medoids;
+      this.nearest = nearest;
+      this.second = second;
+      this.assignment = assignment;
+      this.cost = new double[k];
+    }
+
+    @Override
+    public SwapSearch call() {
+      best = Double.POSITIVE_INFINITY;
+      bestoffset = -1;
+      bestcluster = -1;
+      DBIDArrayIter m = medoids.iter();
+      DBIDArrayIter h = ids.iter(), j = ids.iter();
+      for(h.seek(begin); h.getOffset() < end; h.advance()) {
+        final int pm = assignment.intValue(h);
+        m.seek(pm);
+        double hdist = nearest.doubleValue(h); // Current assignment cost of h.
+        if(DBIDUtil.equal(m, h) || hdist <= 0.) {
+          continue; // Only consider non-selected items
+        }
+        // h is a non-medoid currently in cluster of medoid m.
+        Arrays.fill(cost, 0.);
+        // Change common to all medoids, starting with h becoming a medoid.
+        double acc = -hdist;
+        // Compute costs of reassigning other objects j:
+        for(j.seek(0); j.valid(); j.advance()) {
+          if(DBIDUtil.equal(h, j)) {
+            continue;
+          }
+          final int pj = assignment.intValue(j);
+          // distance(j, i) for pi == pj
+          final double distcur = nearest.doubleValue(j);
+          // distance(j, h), the possible reassignment
+          final double dist_h = distQ.distance(h, j);
+          if(dist_h < distcur) {
+            // Case 1b1) and 1c) j is closer to h, for every choice of pi
+            acc += dist_h - distcur;
+            continue;
+          }
+          // second nearest, alternative reassignment
+          final double distsec = second.doubleValue(j);
+          // Only need to consider pi == pj
+          cost[pj] += ((dist_h < distsec) ? //
+          dist_h // Case 1b1) j is closer to h
+          : distsec // Case 1b2) j would switch to its second nearest
+          ) - distcur;
+        }
+
+        // Consider all possible swaps:
+        for(int pi = 0; pi < k; pi++) {
+          final double c = cost[pi] + acc;
+          if(c < best) {
+            best = c;
+            bestoffset = h.getOffset();
+            bestcluster = pi;
+          }
+        }
+      }
+      return this;
+    }
+  }
+
   /**
    * Parameterization class.
    *
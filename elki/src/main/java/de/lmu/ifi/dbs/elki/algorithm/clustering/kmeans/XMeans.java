@@ -26,6 +26,7 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.PredefinedInitialMeans;
@@ -47,6 +48,7 @@ import de.lmu.ifi.dbs.elki.logging.progress.MutableProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
 import de.lmu.ifi.dbs.elki.math.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -66,6 +68,9 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
  * acceleration. Also note that k_max is not a hard threshold - the algorithm
  * can return up to 2*k_max clusters!
  *
+ * The candidate splits of each round are evaluated concurrently, if the inner
+ * k-means variant supports this.
+ *
  * Reference:<br>
  * <p>
  * D. Pelleg, A. Moore:<br />
@@ -171,9 +176,8 @@ public class XMeans<V extends NumberVector, M extends MeanModel> extends Abstrac
     while(clusters.size() <= k_max) {
       // Improve-Structure:
       ArrayList<Cluster<M>> nextClusters = new ArrayList<>();
-      for(Cluster<M> cluster : clusters) {
-        // Try to split this cluster:
-        List<Cluster<M>> childClusterList = splitCluster(cluster, database, relation);
+      // Try to split each cluster:
+      for(List<Cluster<M>> childClusterList : splitClusters(clusters, database, relation)) {
         nextClusters.addAll(childClusterList);
         if(childClusterList.size() > 1) {
           k += childClusterList.size() - 1;
@@ -211,6 +215,50 @@ public class XMeans<V extends NumberVector, M extends MeanModel> extends Abstrac
     return result;
   }
 
+  /**
+   * Conditionally split all clusters, concurrently if the inner k-means
+   * supports this.
+   *
+   * The initial centers of the splits are chosen up front, in order, so that
+   * the result does not depend on the order in which the splits finish.
+   *
+   * @param clusters Clusters to split
+   * @param database Database
+   * @param relation Data relation
+   * @return For each cluster, the cluster itself or its child clusters.
+   */
+  protected List<List<Cluster<M>>> splitClusters(List<Cluster<M>> clusters, final Database database, final Relation<V> relation) {
+    final AbstractKMeans<V, M> inner = (innerKMeans instanceof AbstractKMeans) ? (AbstractKMeans<V, M>) innerKMeans : null;
+    if(inner == null || !inner.supportsConcurrentCopies()) {
+      List<List<Cluster<M>>> result = new ArrayList<>(clusters.size());
+      for(Cluster<M> cluster : clusters) {
+        result.add(splitCluster(cluster, database, relation));
+      }
+      return result;
+    }
+    List<Callable<List<Cluster<M>>>> tasks = new ArrayList<>(clusters.size());
+    for(final Cluster<M> cluster : clusters) {
+      if(cluster.size() < 2) {
+        tasks.add(new Callable<List<Cluster<M>>>() {
+          @Override
+          public List<Cluster<M>> call() {
+            return splitCluster(cluster, database, relation);
+          }
+        });
+        continue;
+      }
+      final AbstractKMeans<V, M> split = inner.copyWithInitializer(new PredefinedInitialMeans(splitCentroid(cluster, relation)));
+      split.setK(2);
+      tasks.add(new Callable<List<Cluster<M>>>() {
+        @Override
+        public List<Cluster<M>> call() {
+          return splitCluster(cluster, split, database, relation);
+        }
+      });
+    }
+    return ParallelExecutor.call(tasks);
+  }
+
   /**
    * Conditionally splits the clusters based on the information criterion.
    *
@@ -221,21 +269,35 @@ public class XMeans<V extends NumberVector, M extends MeanModel> extends Abstrac
    *         clusters when split improves clustering.
    */
   protected List<Cluster<M>> splitCluster(Cluster<M> parentCluster, Database database, Relation<V> relation) {
-    // Transform parent cluster into a clustering
-    ArrayList<Cluster<M>> parentClusterList = new ArrayList<Cluster<M>>(1);
-    parentClusterList.add(parentCluster);
-    Clustering<M> parentClustering = new Clustering<>(parentCluster.getName(), parentCluster.getName(), parentClusterList);
-
     if(parentCluster.size() < 2) {
       // Split is not possbile
+      ArrayList<Cluster<M>> parentClusterList = new ArrayList<Cluster<M>>(1);
+      parentClusterList.add(parentCluster);
       return parentClusterList;
     }
-
-    ProxyDatabase proxyDB = new ProxyDatabase(parentCluster.getIDs(), database);
-
     splitInitializer.setInitialMeans(splitCentroid(parentCluster, relation));
     innerKMeans.setK(2);
-    Clustering<M> childClustering = innerKMeans.run(proxyDB);
+    return splitCluster(parentCluster, innerKMeans, database, relation);
+  }
+
+  /**
+   * Conditionally splits the clusters based on the information criterion.
+   *
+   * @param parentCluster Cluster to split
+   * @param splitKMeans K-means configured to split the cluster
+   * @param database Database
+   * @param relation Data relation
+   * @return Parent cluster when split decreases clustering quality or child
+   *         clusters when split improves clustering.
+   */
+  protected List<Cluster<M>> splitCluster(Cluster<M> parentCluster, KMeans<V, M> splitKMeans, Database database, Relation<V> relation) {
+    // Transform parent cluster into a clustering
+    ArrayList<Cluster<M>> parentClusterList = new ArrayList<Cluster<M>>(1);
+    parentClusterList.add(parentCluster);
+    Clustering<M> parentClustering = new Clustering<>(parentCluster.getName(), parentCluster.getName(), parentClusterList);
+
+    ProxyDatabase proxyDB = new ProxyDatabase(parentCluster.getIDs(), database);
+    Clustering<M> childClustering = splitKMeans.run(proxyDB);
 
     double parentEvaluation = informationCriterion.quality(parentClustering, getDistanceFunction(), relation);
     double childrenEvaluation = informationCriterion.quality(childClustering, getDistanceFunction(), relation);
@@ -279,6 +341,15 @@ public class XMeans<V extends NumberVector, M extends MeanModel> extends Abstrac
     return vecs;
   }
 
+  /**
+   * X-means modifies its own state and inner k-means while running, and thus
+   * cannot be copied for concurrent runs.
+   */
+  @Override
+  protected boolean supportsConcurrentCopies() {
+    return false;
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return innerKMeans.getInputTypeRestriction();
@@ -0,0 +1,336 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.math.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Scalable k-means++ initialization, also known as k-means||.
+ *
+ * Instead of choosing one center per pass over the data as in k-means++, a
+ * few rounds are performed, each of which samples about
+ * {@code oversampling * k} candidates. The distance updates of each round are
+ * computed in parallel. The candidates are then weighted by the number of
+ * objects closest to them, and reduced to k centers by a weighted k-means++
+ * run on the candidates only.
+ *
+ * Reference:
+ * <p>
+ * B. Bahmani, B. Moseley, A. Vattani, R. Kumar, S. Vassilvitskii<br />
+ * Scalable k-means++<br />
+ * In: Proc. of the VLDB Endowment 5(7)
+ * </p>
+ *
+ * @author Erich Schubert
+ *
+ * @param <O> Vector type
+ */
+@Reference(authors = "B. Bahmani, B. Moseley, A. Vattani, R. Kumar, S. Vassilvitskii", //
+title = "Scalable k-means++", //
+booktitle = "Proc. of the VLDB Endowment 5(7)", //
+url = "http://dx.doi.org/10.14778/2180912.2180915")
+public class KMeansParallelInitialMeans<O> extends AbstractKMeansInitialization<NumberVector> implements KMedoidsInitialization<O> {
+  /**
+   * Number of sampling rounds.
+   */
+  protected int rounds;
+
+  /**
+   * Oversampling factor, relative to k.
+   */
+  protected double oversampling;
+
+  /**
+   * Constructor.
+   *
+   * @param rnd Random generator.
+   * @param rounds Number of sampling rounds
+   * @param oversampling Oversampling factor, relative to k
+   */
+  public KMeansParallelInitialMeans(RandomFactory rnd, int rounds, double oversampling) {
+    super(rnd);
+    this.rounds = rounds;
+    this.oversampling = oversampling;
+  }
+
+  @Override
+  public <T extends NumberVector, V extends NumberVector> List<V> chooseInitialMeans(Database database, Relation<T> relation, int k, NumberVectorDistanceFunction<? super T> distanceFunction, NumberVector.Factory<V> factory) {
+    DistanceQuery<T> distQ = database.getDistanceQuery(relation, distanceFunction);
+    DBIDs chosen = chooseInitial(k, relation.getDBIDs(), distQ);
+    List<V> means = new ArrayList<>(k);
+    for(DBIDIter it = chosen.iter(); it.valid(); it.advance()) {
+      means.add(factory.newNumberVector(relation.get(it)));
+    }
+    return means;
+  }
+
+  @Override
+  public DBIDs chooseInitialMedoids(int k, DBIDs ids, DistanceQuery<? super O> distQ) {
+    return chooseInitial(k, ids, distQ);
+  }
+
+  /**
+   * Choose the initial centers from the data set.
+   *
+   * @param k Number of centers
+   * @param ids Object IDs
+   * @param distQ Distance query
+   * @return Chosen centers
+   */
+  protected DBIDs chooseInitial(int k, DBIDs ids, DistanceQuery<?> distQ) {
+    if(ids.size() <= k) {
+      throw new AbortException("Don't use k-means with k >= data set size.");
+    }
+    Random random = rnd.getSingleThreadedRandom();
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    // Distance to the nearest candidate, and the index of that candidate.
+    WritableDoubleDataStore mindist = DataStoreUtil.makeDoubleStorage(aids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    WritableIntegerDataStore nearest = DataStoreUtil.makeIntegerStorage(aids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    // Store all values once, so that the parallel updates only overwrite.
+    for(DBIDIter it = aids.iter(); it.valid(); it.advance()) {
+      mindist.putDouble(it, Double.POSITIVE_INFINITY);
+      nearest.putInt(it, -1);
+    }
+
+    ArrayModifiableDBIDs candidates = DBIDUtil.newArray();
+    candidates.add(DBIDUtil.randomSample(aids, random));
+    updateDistances(aids, candidates, 0, mindist, nearest, distQ);
+    final double l = oversampling * k;
+    for(int round = 0; round < rounds || candidates.size() < k; round++) {
+      double cost = 0.;
+      for(DBIDIter it = aids.iter(); it.valid(); it.advance()) {
+        cost += mindist.doubleValue(it);
+      }
+      if(!(cost > 0.) || cost == Double.POSITIVE_INFINITY) {
+        break; // No more distinct points, or infinite distances.
+      }
+      // Sample each point independently, with probability proportional to its
+      // cost. Chosen points have distance 0, and cannot be chosen again.
+      final int first = candidates.size();
+      for(DBIDIter it = aids.iter(); it.valid(); it.advance()) {
+        if(random.nextDouble() * cost < l * mindist.doubleValue(it)) {
+          candidates.add(it);
+        }
+      }
+      updateDistances(aids, candidates, first, mindist, nearest, distQ);
+    }
+    if(candidates.size() < k) {
+      throw new AbortException("Could not choose " + k + " distinct points for k-means|| - too few unique data points?");
+    }
+
+    // Weight the candidates by the number of points they are closest to.
+    double[] weights = new double[candidates.size()];
+    for(DBIDIter it = aids.iter(); it.valid(); it.advance()) {
+      weights[nearest.intValue(it)] += 1.;
+    }
+    mindist.destroy();
+    nearest.destroy();
+    return reduceCandidates(k, candidates, weights, random, distQ);
+  }
+
+  /**
+   * Update the distances to the nearest candidate, in parallel.
+   *
+   * @param ids Object IDs
+   * @param candidates Candidates
+   * @param first First new candidate
+   * @param mindist Distance to the nearest candidate
+   * @param nearest Index of the nearest candidate
+   * @param distQ Distance query
+   */
+  protected void updateDistances(ArrayDBIDs ids, final ArrayDBIDs candidates, final int first, final WritableDoubleDataStore mindist, final WritableIntegerDataStore nearest, final DistanceQuery<?> distQ) {
+    if(first >= candidates.size()) {
+      return;
+    }
+    ParallelExecutor.run(ids, new ParallelExecutor.ArrayTask() {
+      @Override
+      public void process(DBIDArrayIter it) {
+        double min = mindist.doubleValue(it);
+        int best = -1;
+        for(DBIDArrayIter c = candidates.iter().seek(first); c.valid(); c.advance()) {
+          double d = distQ.distance(c, it);
+          if(d < min) {
+            min = d;
+            best = c.getOffset();
+          }
+        }
+        if(best >= 0) {
+          mindist.putDouble(it, min);
+          nearest.putInt(it, best);
+        }
+      }
+    });
+  }
+
+  /**
+   * Reduce the weighted candidates to k centers, using weighted k-means++.
+   *
+   * @param k Number of centers
+   * @param candidates Candidates
+   * @param weights Candidate weights
+   * @param random Random generator
+   * @param distQ Distance query
+   * @return Chosen centers
+   */
+  protected DBIDs reduceCandidates(int k, ArrayDBIDs candidates, double[] weights, Random random, DistanceQuery<?> distQ) {
+    final int m = candidates.size();
+    if(m == k) {
+      return candidates;
+    }
+    ArrayModifiableDBIDs means = DBIDUtil.newArray(k);
+    DBIDArrayIter c = candidates.iter(), it = candidates.iter();
+    // Weighted distance to the nearest chosen center.
+    double[] wdist = weights.clone();
+    double weightsum = 0.;
+    for(int i = 0; i < m; i++) {
+      weightsum += wdist[i];
+    }
+    while(true) {
+      int pick = chooseWeighted(wdist, weightsum, random);
+      if(pick < 0) {
+        throw new AbortException("Could not choose " + k + " distinct points for k-means|| - too few unique data points?");
+      }
+      means.add(c.seek(pick));
+      if(means.size() >= k) {
+        break;
+      }
+      // Update weights:
+      wdist[pick] = 0.;
+      weightsum = 0.;
+      final boolean init = means.size() == 1;
+      for(it.seek(0); it.valid(); it.advance()) {
+        final int i = it.getOffset();
+        if(wdist[i] <= 0.) {
+          continue; // Already chosen.
+        }
+        double w = weights[i] * distQ.distance(c, it);
+        if(init || w < wdist[i]) {
+          wdist[i] = w;
+        }
+        weightsum += wdist[i];
+      }
+    }
+    return means;
+  }
+
+  /**
+   * Choose an index with probability proportional to its weight.
+   *
+   * @param weights Weights
+   * @param weightsum Sum of weights
+   * @param random Random generator
+   * @return Chosen index
+   */
+  private static int chooseWeighted(double[] weights, double weightsum, Random random) {
+    double r = random.nextDouble() * weightsum;
+    int last = -1;
+    for(int i = 0; i < weights.length; i++) {
+      if(weights[i] > 0.) {
+        last = i;
+        r -= weights[i];
+        if(r < 0.) {
+          return i;
+        }
+      }
+    }
+    return last; // Rare case, due to floating point math.
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V> extends AbstractKMeansInitialization.Parameterizer {
+    /**
+     * Number of sampling rounds.
+     */
+    public static final OptionID ROUNDS_ID = new OptionID("kmeans.parallel.rounds", "Number of sampling rounds of k-means||.");
+
+    /**
+     * Oversampling factor.
+     */
+    public static final OptionID OVERSAMPLING_ID = new OptionID("kmeans.parallel.oversampling", "Expected number of candidates sampled per round, relative to k.");
+
+    /**
+     * Number of sampling rounds.
+     */
+    protected int rounds;
+
+    /**
+     * Oversampling factor, relative to k.
+     */
+    protected double oversampling;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter roundsP = new IntParameter(ROUNDS_ID, 5) //
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(roundsP)) {
+        rounds = roundsP.intValue();
+      }
+
+      DoubleParameter oversamplingP = new DoubleParameter(OVERSAMPLING_ID, 2.) //
+      .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+      if(config.grab(oversamplingP)) {
+        oversampling = oversamplingP.doubleValue();
+      }
+    }
+
+    @Override
+    protected KMeansParallelInitialMeans<V> makeInstance() {
+      return new KMeansParallelInitialMeans<>(rnd, rounds, oversampling);
+    }
+  }
+}
@@ -157,7 +157,7 @@ public class FastOPTICS<V extends NumberVector> extends AbstractAlgorithm<Cluste
 
     // compute ordering as for OPTICS
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("OPTICS clustering.", ids.size(), LOG) : null;
-    processed = DBIDUtil.newHashSet(ids.size());
+    processed = DBIDUtil.newBitmapOrHashSet(ids);
     order = new ClusterOrder(ids, "FastOPTICS Cluster Order", "fast-optics");
     for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
       if(!processed.contains(it)) {
@@ -23,10 +23,14 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.optics;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.IOException;
+
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
@@ -39,10 +43,14 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.checkpoint.Checkpoint;
+import de.lmu.ifi.dbs.elki.utilities.checkpoint.CheckpointManager;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.Heap;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.UpdatableHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
  * The OPTICS algorithm for density-based hierarchical clustering.
@@ -129,6 +137,11 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
      */
     RangeQuery<O> rangeQuery;
 
+    /**
+     * Checkpoint, may be {@code null}.
+     */
+    Checkpoint checkpoint;
+
     /**
      * Constructor for a single data set.
      *
@@ -137,12 +150,13 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
      */
     public Instance(Database db, Relation<O> relation) {
       ids = relation.getDBIDs();
-      processedIDs = DBIDUtil.newHashSet(ids.size());
+      processedIDs = DBIDUtil.newBitmapOrHashSet(ids);
       clusterOrder = new ClusterOrder(ids, "OPTICS Clusterorder", "optics-clusterorder");
       progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", ids.size(), LOG) : null;
       DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
       rangeQuery = db.getRangeQuery(dq, epsilon);
       heap = new UpdatableHeap<>();
+      checkpoint = CheckpointManager.isEnabled() ? CheckpointManager.open(OPTICSHeap.class, DBIDUtil.ensureArray(ids)) : null;
     }
 
     /**
@@ -151,6 +165,12 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
      * @return Cluster order result.
      */
     public ClusterOrder run() {
+      if(checkpoint != null) {
+        restore();
+        if(!heap.isEmpty()) {
+          expandHeap();
+        }
+      }
       for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
         if(!processedIDs.contains(iditer)) {
           assert (heap.isEmpty());
@@ -158,6 +178,9 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
         }
       }
       LOG.ensureCompleted(progress);
+      if(checkpoint != null) {
+        checkpoint.finish();
+      }
       return clusterOrder;
     }
 
@@ -167,10 +190,16 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
      * @param objectID the currently processed object
      */
     protected void expandClusterOrder(DBIDRef objectID) {
-      ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList();
-      DoubleDBIDListIter neighbor = neighbors.iter();
       heap.add(new OPTICSHeapEntry(DBIDUtil.deref(objectID), null, Double.POSITIVE_INFINITY));
+      expandHeap();
+    }
 
+    /**
+     * Process the candidates in the heap, until the heap is empty.
+     */
+    protected void expandHeap() {
+      ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList();
+      DoubleDBIDListIter neighbor = neighbors.iter();
       while(!heap.isEmpty()) {
         final OPTICSHeapEntry current = heap.poll();
         clusterOrder.add(current.objectID, current.reachability, current.predecessorID);
@@ -191,6 +220,72 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
           }
         }
         LOG.incrementProcessed(progress);
+        if(checkpoint != null && checkpoint.due()) {
+          save();
+        }
+      }
+    }
+
+    /**
+     * Restore the cluster order and candidate heap from a checkpoint.
+     */
+    private void restore() {
+      try (Checkpoint.Reader in = checkpoint.restore()) {
+        if(in == null) {
+          return;
+        }
+        in.expectString("distance function", getDistanceFunction().getClass().getName());
+        if(in.readDouble() != epsilon || in.readInt() != minpts) {
+          throw new AbortException("Checkpoint was computed with different epsilon or minpts.");
+        }
+        for(int i = in.readInt(); i > 0; i--) {
+          DBID id = in.readDBID();
+          double reach = in.readDouble();
+          clusterOrder.add(id, reach, in.readDBID());
+          processedIDs.add(id);
+        }
+        // Adding in array order reproduces the exact heap layout.
+        for(int i = in.readInt(); i > 0; i--) {
+          DBID id = in.readDBID(), pre = in.readDBID();
+          heap.add(new OPTICSHeapEntry(id, pre, in.readDouble()));
+        }
+      }
+      catch(IOException e) {
+        throw new AbortException("Cannot resume from checkpoint.", e);
+      }
+      if(progress != null) {
+        progress.setProcessed(clusterOrder.size(), LOG);
+      }
+    }
+
+    /**
+     * Write the cluster order and candidate heap to a checkpoint.
+     */
+    private void save() {
+      try (Checkpoint.Writer out = checkpoint.write()) {
+        DBIDVar pre = DBIDUtil.newVar();
+        out.writeString(getDistanceFunction().getClass().getName());
+        out.writeDouble(epsilon);
+        out.writeInt(minpts);
+        out.writeInt(clusterOrder.size());
+        for(DBIDIter it = clusterOrder.iter(); it.valid(); it.advance()) {
+          out.writeDBID(it);
+          out.writeDouble(clusterOrder.getReachability(it));
+          pre.unset();
+          clusterOrder.getPredecessor(it, pre);
+          out.writeDBID(pre.isSet() ? pre : null);
+        }
+        out.writeInt(heap.size());
+        for(Heap<OPTICSHeapEntry>.UnorderedIter it = heap.unorderedIter(); it.valid(); it.advance()) {
+          OPTICSHeapEntry e = it.get();
+          out.writeDBID(e.objectID);
+          out.writeDBID(e.predecessorID);
+          out.writeDouble(e.reachability);
+        }
+        out.commit();
+      }
+      catch(IOException e) {
+        LOG.warning("Checkpoint failed: " + e.getMessage());
       }
     }
   }
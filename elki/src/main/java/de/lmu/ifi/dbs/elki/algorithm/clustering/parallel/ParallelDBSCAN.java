@@ -0,0 +1,374 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.DBSCAN;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.ArrayTask;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.ConcurrentUnionFind;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+
+/**
+ * Parallel version of DBSCAN, using a concurrent union-find data structure
+ * over the DBID offsets to merge core points into clusters.
+ * 
+ * The algorithm runs in three parallel phases:
+ * <ol>
+ * <li>The neighborhood of every object is computed, to decide which objects
+ * are core points. For non-core points, the (small) neighborhood is kept.</li>
+ * <li>The neighborhoods of core points are computed again, and core points are
+ * merged with their core neighbors using a lock-free union-find.</li>
+ * <li>Each non-core point is assigned to the first cluster (in database order)
+ * containing one of its core neighbors, or becomes noise.</li>
+ * </ol>
+ * Because the union-find always uses the smallest offset as representative,
+ * the clusters are produced in the same order, and border points are assigned
+ * to the same cluster as with the sequential {@link DBSCAN}; so the result is
+ * identical.
+ * 
+ * The range query must support concurrent use; this holds for linear scans,
+ * and for the in-memory index structures included with ELKI.
+ * 
+ * Reference:
+ * <p>
+ * M. M. A. Patwary, D. Palsetia, A. Agrawal, W.-k. Liao, F. Manne, A.
+ * Choudhary<br />
+ * A new scalable parallel DBSCAN algorithm using the disjoint-set data
+ * structure<br />
+ * Proc. Int. Conf. on High Performance Computing, Networking, Storage and
+ * Analysis (SC 2012)
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.uses ConcurrentUnionFind
+ * 
+ * @param <O> Object type
+ */
+@Title("Parallel DBSCAN")
+@Reference(authors = "M. M. A. Patwary, D. Palsetia, A. Agrawal, W.-k. Liao, F. Manne, A. Choudhary", //
+title = "A new scalable parallel DBSCAN algorithm using the disjoint-set data structure", //
+booktitle = "Proc. Int. Conf. on High Performance Computing, Networking, Storage and Analysis (SC 2012)", //
+url = "http://dx.doi.org/10.1109/SC.2012.9")
+public class ParallelDBSCAN<O> extends DBSCAN<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelDBSCAN.class);
+
+  /**
+   * Constructor with parameters.
+   * 
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   */
+  public ParallelDBSCAN(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts) {
+    super(distanceFunction, epsilon, minpts);
+  }
+
+  @Override
+  public Clustering<Model> run(Relation<O> relation) {
+    final RangeQuery<O> rangeQuery = QueryUtil.getRangeQuery(relation, getDistanceFunction());
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+
+    // Map DBIDs to array offsets; only read concurrently.
+    WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_DB, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+
+    StepProgress stepprog = LOG.isVerbose() ? new StepProgress("Parallel DBSCAN", 3) : null;
+    final boolean[] core = new boolean[size];
+    final int[][] neighbors = new int[size][];
+    final int[] assignment = new int[size];
+    final ConcurrentUnionFind uf = new ConcurrentUnionFind(size);
+    if(size >= minpts) {
+      if(stepprog != null) {
+        stepprog.beginStep(1, "Finding core points.", LOG);
+      }
+      FiniteProgress rprog = LOG.isVerbose() ? new FiniteProgress("Range queries.", size, LOG) : null;
+      ParallelExecutor.run(ids, new CoreTask(rangeQuery, offsets, core, neighbors), rprog, LOG);
+      LOG.ensureCompleted(rprog);
+      if(stepprog != null) {
+        stepprog.beginStep(2, "Merging core points.", LOG);
+      }
+      ParallelExecutor.run(ids, new MergeTask(rangeQuery, offsets, core, uf));
+      if(stepprog != null) {
+        stepprog.beginStep(3, "Assigning border points.", LOG);
+      }
+      ParallelExecutor.run(ids, new BorderTask(core, neighbors, uf, assignment));
+    }
+    else {
+      // There can't be any clusters
+      Arrays.fill(assignment, -1);
+    }
+    LOG.setCompleted(stepprog);
+    offsets.destroy();
+
+    // Build the clusters, ordered by their smallest member.
+    int[] cnum = new int[size];
+    List<ModifiableDBIDs> clusters = new ArrayList<>();
+    for(int i = 0; i < size; i++) {
+      if(core[i] && uf.isRoot(i)) {
+        cnum[i] = clusters.size();
+        clusters.add(DBIDUtil.newArray());
+      }
+    }
+    ModifiableDBIDs noise = DBIDUtil.newArray();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final int i = it.getOffset();
+      final int root = core[i] ? uf.find(i) : assignment[i];
+      (root < 0 ? noise : clusters.get(cnum[root])).add(it);
+    }
+
+    Clustering<Model> result = new Clustering<>("DBSCAN Clustering", "dbscan-clustering");
+    for(ModifiableDBIDs res : clusters) {
+      result.addToplevelCluster(new Cluster<Model>(res, ClusterModel.CLUSTER));
+    }
+    result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+    return result;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Phase 1: find the core points.
+   * 
+   * @author Erich Schubert
+   */
+  private class CoreTask implements ArrayTask {
+    /**
+     * Range query
+     */
+    private final RangeQuery<O> rangeQuery;
+
+    /**
+     * Offset map
+     */
+    private final IntegerDataStore offsets;
+
+    /**
+     * Core point flags (output)
+     */
+    private final boolean[] core;
+
+    /**
+     * Neighbors of non-core points (output)
+     */
+    private final int[][] neighbors;
+
+    /**
+     * Constructor.
+     * 
+     * @param rangeQuery Range query
+     * @param offsets Offset map
+     * @param core Core point flags (output)
+     * @param neighbors Neighbors of non-core points (output)
+     */
+    CoreTask(RangeQuery<O> rangeQuery, IntegerDataStore offsets, boolean[] core, int[][] neighbors) {
+      this.rangeQuery = rangeQuery;
+      this.offsets = offsets;
+      this.core = core;
+      this.neighbors = neighbors;
+    }
+
+    @Override
+    public void process(DBIDArrayIter it) {
+      final int i = it.getOffset();
+      DoubleDBIDList list = rangeQuery.getRangeForDBID(it, epsilon);
+      if(list.size() >= minpts) {
+        core[i] = true;
+        return;
+      }
+      int[] n = new int[list.size()];
+      int c = 0;
+      for(DBIDIter ni = list.iter(); ni.valid(); ni.advance()) {
+        n[c++] = offsets.intValue(ni);
+      }
+      neighbors[i] = n;
+    }
+  }
+
+  /**
+   * Phase 2: merge core points with their core neighbors.
+   * 
+   * @author Erich Schubert
+   */
+  private class MergeTask implements ArrayTask {
+    /**
+     * Range query
+     */
+    private final RangeQuery<O> rangeQuery;
+
+    /**
+     * Offset map
+     */
+    private final IntegerDataStore offsets;
+
+    /**
+     * Core point flags
+     */
+    private final boolean[] core;
+
+    /**
+     * Union-find (output)
+     */
+    private final ConcurrentUnionFind uf;
+
+    /**
+     * Constructor.
+     * 
+     * @param rangeQuery Range query
+     * @param offsets Offset map
+     * @param core Core point flags
+     * @param uf Union-find (output)
+     */
+    MergeTask(RangeQuery<O> rangeQuery, IntegerDataStore offsets, boolean[] core, ConcurrentUnionFind uf) {
+      this.rangeQuery = rangeQuery;
+      this.offsets = offsets;
+      this.core = core;
+      this.uf = uf;
+    }
+
+    @Override
+    public void process(DBIDArrayIter it) {
+      final int i = it.getOffset();
+      if(!core[i]) {
+        return;
+      }
+      for(DBIDIter ni = rangeQuery.getRangeForDBID(it, epsilon).iter(); ni.valid(); ni.advance()) {
+        final int j = offsets.intValue(ni);
+        if(core[j]) {
+          uf.union(i, j);
+        }
+      }
+    }
+  }
+
+  /**
+   * Phase 3: assign border points to the first cluster with a core neighbor.
+   * 
+   * @author Erich Schubert
+   */
+  private static class BorderTask implements ArrayTask {
+    /**
+     * Core point flags
+     */
+    private final boolean[] core;
+
+    /**
+     * Neighbors of non-core points (will be released)
+     */
+    private final int[][] neighbors;
+
+    /**
+     * Union-find
+     */
+    private final ConcurrentUnionFind uf;
+
+    /**
+     * Cluster assignment of non-core points (output)
+     */
+    private final int[] assignment;
+
+    /**
+     * Constructor.
+     * 
+     * @param core Core point flags
+     * @param neighbors Neighbors of non-core points (will be released)
+     * @param uf Union-find
+     * @param assignment Cluster assignment of non-core points (output)
+     */
+    BorderTask(boolean[] core, int[][] neighbors, ConcurrentUnionFind uf, int[] assignment) {
+      this.core = core;
+      this.neighbors = neighbors;
+      this.uf = uf;
+      this.assignment = assignment;
+    }
+
+    @Override
+    public void process(DBIDArrayIter it) {
+      final int i = it.getOffset();
+      if(core[i]) {
+        return;
+      }
+      int best = -1;
+      for(int j : neighbors[i]) {
+        if(core[j]) {
+          final int root = uf.find(j);
+          best = (best < 0 || root < best) ? root : best;
+        }
+      }
+      assignment[i] = best;
+      neighbors[i] = null;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends DBSCAN.Parameterizer<O> {
+    @Override
+    protected ParallelDBSCAN<O> makeInstance() {
+      return new ParallelDBSCAN<>(distanceFunction, epsilon, minpts);
+    }
+  }
+}
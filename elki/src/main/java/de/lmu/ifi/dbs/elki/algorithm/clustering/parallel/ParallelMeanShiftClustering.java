@@ -0,0 +1,635 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.NaiveMeanShiftClustering;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.MeanModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.WeightedNumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.math.statistics.kernelfunctions.KernelDensityFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.ArrayTask;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Parallel mean-shift clustering, seeded on a grid.
+ * 
+ * Instead of shifting every object as {@link NaiveMeanShiftClustering} does,
+ * the data is binned on a grid, and the mean of every sufficiently populated
+ * cell is used as seed. The seeds are shifted to their modes in parallel,
+ * using range queries, which benefit from index structures such as the R*-tree
+ * or the cover tree. Modes closer than the bandwidth are merged, keeping the
+ * mode with the larger support, and every object is assigned to the nearest
+ * mode within the bandwidth, or to noise otherwise. For Minkowski norms, a
+ * spatial hash on a grid with the bandwidth as cell size is used to find
+ * nearby modes.
+ * 
+ * As in the naive version, the kernel is evaluated at the distance relative to
+ * the bandwidth, i.e., the bandwidth is the support radius of the kernel.
+ * 
+ * The range query must support concurrent use; this holds for linear scans,
+ * and for the in-memory index structures included with ELKI.
+ * 
+ * Reference:
+ * <p>
+ * D. Comaniciu, P. Meer<br />
+ * Mean shift: a robust approach toward feature space analysis<br />
+ * IEEE Transactions on Pattern Analysis and Machine Intelligence 24-5
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.has ModeGrid
+ * 
+ * @param <V> Vector type
+ */
+@Title("Parallel Mean-shift Clustering")
+@Reference(authors = "D. Comaniciu, P. Meer", //
+title = "Mean shift: a robust approach toward feature space analysis", //
+booktitle = "IEEE Transactions on Pattern Analysis and Machine Intelligence 24-5", //
+url = "http://dx.doi.org/10.1109/34.1000236")
+public class ParallelMeanShiftClustering<V extends NumberVector> extends NaiveMeanShiftClustering<V> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelMeanShiftClustering.class);
+
+  /**
+   * Convergence tolerance, relative to the bandwidth.
+   */
+  protected static final double TOLERANCE = 1E-5;
+
+  /**
+   * Grid cell size for seeding.
+   */
+  protected double binsize;
+
+  /**
+   * Minimum number of objects in a grid cell to become a seed.
+   */
+  protected int minbinfreq;
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction Distance function
+   * @param kernel Kernel function
+   * @param range Kernel radius
+   * @param binsize Grid cell size for seeding, {@code <= 0} to use the range
+   * @param minbinfreq Minimum number of objects in a cell to become a seed
+   */
+  public ParallelMeanShiftClustering(DistanceFunction<? super V> distanceFunction, KernelDensityFunction kernel, double range, double binsize, int minbinfreq) {
+    super(distanceFunction, kernel, range);
+    this.binsize = binsize > 0 ? binsize : range;
+    this.minbinfreq = minbinfreq;
+  }
+
+  @Override
+  public Clustering<MeanModel> run(Database database, final Relation<V> relation) {
+    final DistanceQuery<V> distq = database.getDistanceQuery(relation, getDistanceFunction());
+    final RangeQuery<V> rangeq = database.getRangeQuery(distq);
+    final NumberVector.Factory<V> factory = RelationUtil.getNumberVectorFactory(relation);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int dim = RelationUtil.dimensionality(relation);
+
+    StepProgress stepprog = LOG.isVerbose() ? new StepProgress("Parallel mean-shift", 3) : null;
+    if(stepprog != null) {
+      stepprog.beginStep(1, "Seeding on grid, and seeking modes.", LOG);
+    }
+    final List<double[]> seeds = gridSeeds(relation, ids, dim);
+    if(LOG.isVerbose()) {
+      LOG.verbose("Number of seeds: " + seeds.size());
+    }
+    final double[][] modes = new double[seeds.size()][];
+    final int[] support = new int[seeds.size()];
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Mean-shift seeds", seeds.size(), LOG) : null;
+    // Shift the seeds in blocks, for load balancing.
+    final int numblocks = Math.max(Math.min(seeds.size(), ParallelCore.getCore().getParallelism() << 2), 1);
+    final int blocksize = (seeds.size() + numblocks - 1) / numblocks;
+    List<Callable<Void>> tasks = new ArrayList<>(numblocks);
+    for(int b = 0; b < seeds.size(); b += blocksize) {
+      final int start = b, end = Math.min(b + blocksize, seeds.size());
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for(int i = start; i < end; i++) {
+            modes[i] = seekMode(seeds.get(i), relation, distq, rangeq, factory, support, i);
+          }
+          if(prog != null) {
+            prog.incrementProcessed(end - start, LOG);
+          }
+          return null;
+        }
+      });
+    }
+    ParallelExecutor.call(tasks);
+    LOG.ensureCompleted(prog);
+
+    if(stepprog != null) {
+      stepprog.beginStep(2, "Merging modes.", LOG);
+    }
+    final ModeGrid grid = new ModeGrid(bandwidth, dim, isGridCompatible(getDistanceFunction()));
+    final List<V> centers = mergeModes(modes, support, distq, factory, grid);
+
+    if(stepprog != null) {
+      stepprog.beginStep(3, "Assigning objects to modes.", LOG);
+    }
+    final int[] assignment = new int[ids.size()];
+    ParallelExecutor.run(ids, new ArrayTask() {
+      @Override
+      public void process(DBIDArrayIter it) {
+        assignment[it.getOffset()] = nearestMode(relation.get(it), centers, distq, grid);
+      }
+    });
+    List<ModifiableDBIDs> members = new ArrayList<>(centers.size());
+    for(int i = 0; i < centers.size(); i++) {
+      members.add(DBIDUtil.newArray());
+    }
+    ModifiableDBIDs noise = DBIDUtil.newArray();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final int c = assignment[it.getOffset()];
+      (c >= 0 ? members.get(c) : noise).add(it);
+    }
+    LOG.setCompleted(stepprog);
+
+    ArrayList<Cluster<MeanModel>> cs = new ArrayList<>(centers.size() + 1);
+    for(int i = 0; i < centers.size(); i++) {
+      if(members.get(i).size() > 0) {
+        cs.add(new Cluster<>(members.get(i), new MeanModel(centers.get(i).getColumnVector())));
+      }
+    }
+    if(noise.size() > 0) {
+      cs.add(new Cluster<MeanModel>(noise, true));
+    }
+    return new Clustering<>("Mean-shift Clustering", "mean-shift-clustering", cs);
+  }
+
+  /**
+   * Bin the data on a grid, and use the means of the populated cells as seeds.
+   * 
+   * @param relation Data relation
+   * @param ids Object IDs
+   * @param dim Dimensionality
+   * @return Seeds, in order of first occurrence
+   */
+  private List<double[]> gridSeeds(Relation<V> relation, ArrayDBIDs ids, int dim) {
+    HashMap<Cell, double[]> bins = new HashMap<>();
+    List<double[]> sums = new ArrayList<>();
+    // The last component is used for counting.
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final NumberVector vec = relation.get(it);
+      Cell cell = new Cell(vec, binsize, dim);
+      double[] sum = bins.get(cell);
+      if(sum == null) {
+        sum = new double[dim + 1];
+        bins.put(cell, sum);
+        sums.add(sum);
+      }
+      for(int d = 0; d < dim; d++) {
+        sum[d] += vec.doubleValue(d);
+      }
+      sum[dim] += 1;
+    }
+    List<double[]> seeds = new ArrayList<>(sums.size());
+    for(double[] sum : sums) {
+      final double count = sum[dim];
+      if(count < minbinfreq) {
+        continue;
+      }
+      double[] seed = Arrays.copyOf(sum, dim);
+      for(int d = 0; d < dim; d++) {
+        seed[d] /= count;
+      }
+      seeds.add(seed);
+    }
+    return seeds;
+  }
+
+  /**
+   * Shift a seed to its mode.
+   * 
+   * @param seed Starting position
+   * @param relation Data relation
+   * @param distq Distance query
+   * @param rangeq Range query
+   * @param factory Vector factory
+   * @param support Output array for the number of objects supporting the mode
+   * @param i Seed number
+   * @return Mode, or {@code null} if the kernel weight vanished
+   */
+  private double[] seekMode(double[] seed, Relation<V> relation, DistanceQuery<V> distq, RangeQuery<V> rangeq, NumberVector.Factory<V> factory, int[] support, int i) {
+    final int dim = seed.length;
+    final double threshold = bandwidth * TOLERANCE;
+    double[] pos = seed;
+    V position = factory.newNumberVector(pos);
+    for(int j = 1; j <= MAXITER; j++) {
+      DoubleDBIDList neigh = rangeq.getRangeForObject(position, bandwidth);
+      double[] sum = new double[dim];
+      double wsum = 0.;
+      for(DoubleDBIDListIter niter = neigh.iter(); niter.valid(); niter.advance()) {
+        final double weight = kernel.density(niter.doubleValue() / bandwidth);
+        if(!(weight > 0)) {
+          continue;
+        }
+        final NumberVector vec = relation.get(niter);
+        for(int d = 0; d < dim; d++) {
+          sum[d] += weight * vec.doubleValue(d);
+        }
+        wsum += weight;
+      }
+      if(!(wsum > 0)) {
+        return null;
+      }
+      for(int d = 0; d < dim; d++) {
+        sum[d] /= wsum;
+      }
+      support[i] = neigh.size();
+      V newvec = factory.newNumberVector(sum);
+      final double delta = distq.distance(position, newvec);
+      pos = sum;
+      position = newvec;
+      if(delta < threshold) {
+        break;
+      }
+      if(j == MAXITER) {
+        LOG.warning("No convergence after " + MAXITER + " iterations. Distance: " + delta);
+      }
+    }
+    return pos;
+  }
+
+  /**
+   * Merge modes closer than the bandwidth, keeping the better supported mode.
+   * 
+   * @param modes Modes (may contain {@code null} values)
+   * @param support Support of each mode
+   * @param distq Distance query
+   * @param factory Vector factory
+   * @param grid Spatial hash to fill
+   * @return Remaining modes, by descending support
+   */
+  private List<V> mergeModes(double[][] modes, int[] support, DistanceQuery<V> distq, NumberVector.Factory<V> factory, ModeGrid grid) {
+    // Sort by descending support; ties are broken by seed order.
+    final int num = modes.length;
+    double[] keys = new double[num];
+    int[] order = new int[num];
+    for(int i = 0; i < num; i++) {
+      keys[i] = -support[i] * (double) num - (num - i);
+      order[i] = i;
+    }
+    DoubleIntegerArrayQuickSort.sort(keys, order, num);
+
+    List<V> centers = new ArrayList<>();
+    TIntArrayList candidates = new TIntArrayList();
+    modes: for(int i = 0; i < num; i++) {
+      final double[] mode = modes[order[i]];
+      if(mode == null) {
+        continue;
+      }
+      V vec = factory.newNumberVector(mode);
+      grid.candidates(mode, centers.size(), candidates);
+      for(int j = 0; j < candidates.size(); j++) {
+        if(distq.distance(vec, centers.get(candidates.get(j))) < bandwidth) {
+          continue modes;
+        }
+      }
+      grid.add(mode, centers.size());
+      centers.add(vec);
+    }
+    if(LOG.isVerbose()) {
+      LOG.verbose("Number of modes after merging: " + centers.size());
+    }
+    return centers;
+  }
+
+  /**
+   * Find the nearest mode within the bandwidth.
+   * 
+   * @param vec Object
+   * @param centers Modes
+   * @param distq Distance query
+   * @param grid Spatial hash of the modes
+   * @return Mode number, or -1
+   */
+  private int nearestMode(V vec, List<V> centers, DistanceQuery<V> distq, ModeGrid grid) {
+    final int dim = vec.getDimensionality();
+    double[] pos = new double[dim];
+    for(int d = 0; d < dim; d++) {
+      pos[d] = vec.doubleValue(d);
+    }
+    TIntArrayList candidates = new TIntArrayList();
+    grid.candidates(pos, centers.size(), candidates);
+    int best = -1;
+    double bestd = bandwidth;
+    for(int j = 0; j < candidates.size(); j++) {
+      final int c = candidates.get(j);
+      final double d = distq.distance(vec, centers.get(c));
+      if(d < bestd || (d == bestd && (best < 0 || c < best))) {
+        best = c;
+        bestd = d;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Test whether a distance function bounds the coordinate differences, such
+   * that the grid can be used to find neighbors.
+   * 
+   * @param df Distance function
+   * @return {@code true} when the grid can be used
+   */
+  private static boolean isGridCompatible(DistanceFunction<?> df) {
+    return df instanceof LPNormDistanceFunction && !(df instanceof WeightedNumberVectorDistanceFunction);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Grid cell, identified by its integer coordinates.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class Cell {
+    /**
+     * Cell coordinates
+     */
+    final int[] coords;
+
+    /**
+     * Hash code
+     */
+    final int hash;
+
+    /**
+     * Constructor.
+     * 
+     * @param coords Cell coordinates
+     */
+    Cell(int[] coords) {
+      this.coords = coords;
+      this.hash = Arrays.hashCode(coords);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param vec Vector
+     * @param size Cell size
+     * @param dim Dimensionality
+     */
+    Cell(NumberVector vec, double size, int dim) {
+      this(coordinates(vec, size, dim));
+    }
+
+    /**
+     * Compute the cell coordinates of a vector.
+     * 
+     * @param vec Vector
+     * @param size Cell size
+     * @param dim Dimensionality
+     * @return Cell coordinates
+     */
+    private static int[] coordinates(NumberVector vec, double size, int dim) {
+      int[] coords = new int[dim];
+      for(int d = 0; d < dim; d++) {
+        coords[d] = (int) Math.floor(vec.doubleValue(d) / size);
+      }
+      return coords;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(this == obj) {
+        return true;
+      }
+      if(obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      Cell other = (Cell) obj;
+      return hash == other.hash && Arrays.equals(coords, other.coords);
+    }
+  }
+
+  /**
+   * Spatial hash of the modes, on a grid with the bandwidth as cell size.
+   * 
+   * All modes within the bandwidth of a position are in the 3^d cells around
+   * the position's cell; if there are fewer modes than such cells, or if the
+   * distance function does not bound the coordinate differences, all modes are
+   * candidates instead.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class ModeGrid {
+    /**
+     * Cell size.
+     */
+    final double size;
+
+    /**
+     * Number of neighbor cells to inspect, or -1 to disable the grid.
+     */
+    final int numcells;
+
+    /**
+     * Modes per cell.
+     */
+    final HashMap<Cell, TIntArrayList> cells = new HashMap<>();
+
+    /**
+     * Constructor.
+     * 
+     * @param size Cell size
+     * @param dim Dimensionality
+     * @param usable Flag whether the distance function is compatible
+     */
+    ModeGrid(double size, int dim, boolean usable) {
+      this.size = size;
+      // 3^19 would already exceed any reasonable number of modes.
+      this.numcells = (usable && dim < 19) ? (int) Math.round(Math.pow(3, dim)) : -1;
+    }
+
+    /**
+     * Add a mode.
+     * 
+     * @param pos Mode position
+     * @param i Mode number
+     */
+    void add(double[] pos, int i) {
+      if(numcells < 0) {
+        return;
+      }
+      Cell cell = new Cell(cellOf(pos));
+      TIntArrayList list = cells.get(cell);
+      if(list == null) {
+        list = new TIntArrayList();
+        cells.put(cell, list);
+      }
+      list.add(i);
+    }
+
+    /**
+     * Collect candidate modes for a position, in ascending order.
+     * 
+     * @param pos Position
+     * @param num Number of modes
+     * @param out Output list, will be cleared
+     */
+    void candidates(double[] pos, int num, TIntArrayList out) {
+      out.resetQuick();
+      if(numcells < 0 || num <= numcells) {
+        for(int i = 0; i < num; i++) {
+          out.add(i);
+        }
+        return;
+      }
+      final int[] center = cellOf(pos), cur = new int[center.length];
+      for(int n = 0; n < numcells; n++) {
+        // Decode n in base 3 into offsets -1, 0, +1.
+        for(int d = 0, r = n; d < center.length; d++, r /= 3) {
+          cur[d] = center[d] + (r % 3) - 1;
+        }
+        TIntArrayList list = cells.get(new Cell(cur.clone()));
+        if(list != null) {
+          out.addAll(list);
+        }
+      }
+      out.sort();
+    }
+
+    /**
+     * Cell coordinates of a position.
+     * 
+     * @param pos Position
+     * @return Cell coordinates
+     */
+    private int[] cellOf(double[] pos) {
+      int[] coords = new int[pos.length];
+      for(int d = 0; d < pos.length; d++) {
+        coords[d] = (int) Math.floor(pos[d] / size);
+      }
+      return coords;
+    }
+  }
+
+  /**
+   * Parameterizer.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <V> Vector type
+   */
+  public static class Parameterizer<V extends NumberVector> extends NaiveMeanShiftClustering.Parameterizer<V> {
+    /**
+     * Parameter for the grid cell size used for seeding.
+     */
+    public static final OptionID BINSIZE_ID = new OptionID("meanshift.binsize", "Grid cell size for choosing the seeds. Defaults to the kernel bandwidth.");
+
+    /**
+     * Parameter for the minimum number of objects in a grid cell.
+     */
+    public static final OptionID MINBINFREQ_ID = new OptionID("meanshift.minbinfreq", "Minimum number of objects in a grid cell to use it as seed.");
+
+    /**
+     * Grid cell size.
+     */
+    protected double binsize = -1;
+
+    /**
+     * Minimum number of objects per cell.
+     */
+    protected int minbinfreq = 1;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      DoubleParameter binsizeP = new DoubleParameter(BINSIZE_ID);
+      binsizeP.setOptional(true);
+      binsizeP.addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+      if(config.grab(binsizeP)) {
+        binsize = binsizeP.doubleValue();
+      }
+      IntParameter minbinfreqP = new IntParameter(MINBINFREQ_ID, 1);
+      minbinfreqP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(minbinfreqP)) {
+        minbinfreq = minbinfreqP.intValue();
+      }
+    }
+
+    @Override
+    protected ParallelMeanShiftClustering<V> makeInstance() {
+      return new ParallelMeanShiftClustering<>(distanceFunction, kernel, range, binsize, minbinfreq);
+    }
+  }
+}
@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.subspace.clique.CLIQUESubspace;
@@ -50,6 +51,7 @@ import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.Centroid;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.Matrix;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.FormatUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -78,6 +80,12 @@ import de.lmu.ifi.dbs.elki.utilities.pairs.Pair;
  * for the clusters) is not (yet) implemented.
  * </p>
  * <p>
+ * The members of each unit are stored as bitmaps (if the DBIDs form a range),
+ * such that joining units reduces to a bitwise AND. The one-dimensional units
+ * are filled dimension by dimension, and the joins of the dense subspaces are
+ * computed concurrently.
+ * </p>
+ * <p>
  * Reference: <br>
  * R. Agrawal, J. Gehrke, D. Gunopulos, P. Raghavan: Automatic Subspace
  * Clustering of High Dimensional Data for Data Mining Applications. <br>
@@ -287,7 +295,7 @@ public class CLIQUE<V extends NumberVector> extends AbstractAlgorithm<Clustering
    * @param database the database to run the algorithm on
    * @return the created one dimensional units
    */
-  private Collection<CLIQUEUnit<V>> initOneDimensionalUnits(Relation<V> database) {
+  private List<CLIQUEUnit<V>> initOneDimensionalUnits(Relation<V> database) {
     int dimensionality = RelationUtil.dimensionality(database);
     // initialize minima and maxima
     double[] minima = new double[dimensionality];
@@ -341,7 +349,7 @@ public class CLIQUE<V extends NumberVector> extends AbstractAlgorithm<Clustering
     List<CLIQUEUnit<V>> units = new ArrayList<>((xsi * dimensionality));
     for(int x = 0; x < xsi; x++) {
       for(int d = 0; d < dimensionality; d++) {
-        units.add(new CLIQUEUnit<V>(new CLIQUEInterval(d, unit_bounds[x][d], unit_bounds[x + 1][d])));
+        units.add(new CLIQUEUnit<V>(new CLIQUEInterval(d, unit_bounds[x][d], unit_bounds[x + 1][d]), database.getDBIDs()));
       }
     }
 
@@ -380,20 +388,30 @@ public class CLIQUE<V extends NumberVector> extends AbstractAlgorithm<Clustering
    * Determines the one-dimensional dense subspace candidates by making a pass
    * over the database.
    * 
+   * Each dimension is processed by a separate task, which computes the interval
+   * index of every feature vector directly instead of testing all units.
+   * 
    * @param database the database to run the algorithm on
    * @return the one-dimensional dense subspace candidates reverse ordered by
    *         their coverage
    */
-  private List<CLIQUESubspace<V>> findOneDimensionalDenseSubspaceCandidates(Relation<V> database) {
-    Collection<CLIQUEUnit<V>> units = initOneDimensionalUnits(database);
+  private List<CLIQUESubspace<V>> findOneDimensionalDenseSubspaceCandidates(final Relation<V> database) {
+    final List<CLIQUEUnit<V>> units = initOneDimensionalUnits(database);
+    final int dimensionality = RelationUtil.dimensionality(database);
     // identify dense units
     double total = database.size();
-    for(DBIDIter it = database.iterDBIDs(); it.valid(); it.advance()) {
-      V featureVector = database.get(it);
-      for(CLIQUEUnit<V> unit : units) {
-        unit.addFeatureVector(it, featureVector);
-      }
+    List<Callable<Void>> tasks = new ArrayList<>(dimensionality);
+    for(int d = 0; d < dimensionality; d++) {
+      final int dim = d;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          assignToUnits(database, units, dimensionality, dim);
+          return null;
+        }
+      });
     }
+    ParallelExecutor.call(tasks);
 
     Collection<CLIQUEUnit<V>> denseUnits = new ArrayList<>();
     Map<Integer, CLIQUESubspace<V>> denseSubspaces = new HashMap<>();
@@ -424,6 +442,41 @@ public class CLIQUE<V extends NumberVector> extends AbstractAlgorithm<Clustering
     return subspaceCandidates;
   }
 
+  /**
+   * Adds all feature vectors to the one-dimensional units of a single
+   * dimension. The units are expected in the order produced by
+   * {@link #initOneDimensionalUnits}, i.e. unit {@code x} of dimension
+   * {@code d} is at position {@code x * dimensionality + d}.
+   * 
+   * @param database the database to run the algorithm on
+   * @param units the one-dimensional units of all dimensions
+   * @param dimensionality the dimensionality of the data
+   * @param d the dimension to process
+   */
+  private void assignToUnits(Relation<V> database, List<CLIQUEUnit<V>> units, int dimensionality, int d) {
+    double[] bounds = new double[xsi + 1];
+    for(int x = 0; x < xsi; x++) {
+      bounds[x] = units.get(x * dimensionality + d).getIntervals().get(0).getMin();
+    }
+    bounds[xsi] = units.get((xsi - 1) * dimensionality + d).getIntervals().get(0).getMax();
+    final double width = (bounds[xsi] - bounds[0]) / xsi;
+    for(DBIDIter it = database.iterDBIDs(); it.valid(); it.advance()) {
+      final double value = database.get(it).doubleValue(d);
+      int x = (int) ((value - bounds[0]) / width);
+      x = x < 0 ? 0 : x >= xsi ? xsi - 1 : x;
+      // Correct for rounding errors in the estimate.
+      while(x > 0 && value < bounds[x]) {
+        x--;
+      }
+      while(x < xsi - 1 && value >= bounds[x + 1]) {
+        x++;
+      }
+      if(bounds[x] <= value && value < bounds[x + 1]) {
+        units.get(x * dimensionality + d).addDBID(it);
+      }
+    }
+  }
+
   /**
    * Determines the {@code k}-dimensional dense subspace candidates from the
    * specified {@code (k-1)}-dimensional dense subspaces.
@@ -438,18 +491,31 @@ public class CLIQUE<V extends NumberVector> extends AbstractAlgorithm<Clustering
     List<CLIQUESubspace<V>> denseSubspacesByDimensions = new ArrayList<>(denseSubspaces);
     Collections.sort(denseSubspacesByDimensions, new Subspace.DimensionComparator());
 
-    // determine k-dimensional dense subspace candidates
-    double all = database.size();
-    List<CLIQUESubspace<V>> denseSubspaceCandidates = new ArrayList<>();
-
-    while(!denseSubspacesByDimensions.isEmpty()) {
-      CLIQUESubspace<V> s1 = denseSubspacesByDimensions.remove(0);
-      for(CLIQUESubspace<V> s2 : denseSubspacesByDimensions) {
-        CLIQUESubspace<V> s = s1.join(s2, all, tau);
-        if(s != null) {
-          denseSubspaceCandidates.add(s);
+    // determine k-dimensional dense subspace candidates, one task per left
+    // join partner; the results are concatenated in the sequential order.
+    final double all = database.size();
+    final List<CLIQUESubspace<V>> sorted = denseSubspacesByDimensions;
+    List<Callable<List<CLIQUESubspace<V>>>> tasks = new ArrayList<>(sorted.size());
+    for(int i = 0; i < sorted.size() - 1; i++) {
+      final int first = i;
+      tasks.add(new Callable<List<CLIQUESubspace<V>>>() {
+        @Override
+        public List<CLIQUESubspace<V>> call() {
+          CLIQUESubspace<V> s1 = sorted.get(first);
+          List<CLIQUESubspace<V>> joined = new ArrayList<>();
+          for(int j = first + 1; j < sorted.size(); j++) {
+            CLIQUESubspace<V> s = s1.join(sorted.get(j), all, tau);
+            if(s != null) {
+              joined.add(s);
+            }
+          }
+          return joined;
         }
-      }
+      });
+    }
+    List<CLIQUESubspace<V>> denseSubspaceCandidates = new ArrayList<>();
+    for(List<CLIQUESubspace<V>> joined : ParallelExecutor.call(tasks)) {
+      denseSubspaceCandidates.addAll(joined);
     }
 
     // sort reverse by coverage
@@ -23,7 +23,10 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.subspace;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.data.Cluster;
@@ -37,9 +40,12 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.SetDBIDs;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
@@ -51,6 +57,8 @@ import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.Centroid;
 import de.lmu.ifi.dbs.elki.math.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
@@ -70,6 +78,12 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
  * </p>
  * 
  * <p>
+ * The random samples are drawn sequentially, but the range queries of the
+ * trials of each seed point are run concurrently. The result is the same as
+ * with a sequential run for the same random seed.
+ * </p>
+ * 
+ * <p>
  * Reference: <br/>
  * C. M. Procopiuc, M. Jones, P. K. Agarwal, T. M. Murali<br />
  * A Monte Carlo algorithm for fast projective clustering. <br />
@@ -240,21 +254,33 @@ public class DOC<V extends NumberVector> extends AbstractAlgorithm<Clustering<Su
     // ModifiableHyperBoundingBox bounds = new ModifiableHyperBoundingBox(new
     // double[d], new double[d]);
 
-    // Weights for distance (= rectangle query)
-    SubspaceMaximumDistanceFunction df = new SubspaceMaximumDistanceFunction(BitsUtil.zero(d));
-    DistanceQuery<V> dq = database.getDistanceQuery(relation, df);
-    RangeQuery<V> rq = database.getRangeQuery(dq);
-
     // Inform the user about the progress in the current iteration.
     FiniteProgress iprogress = LOG.isVerbose() ? new FiniteProgress("Iteration progress for current cluster", m * n, LOG) : null;
 
+    // Set version of S, for fast intersection with the range query results.
+    SetDBIDs Sset = DBIDUtil.newHashSet(S);
+    // The range queries are evaluated concurrently, in blocks of trials. Each
+    // block has its own distance function (= rectangle query).
+    final int numparts = Math.max(Math.min(m, ParallelCore.getCore().getParallelism() << 2), 1);
+    final int blocksize = (m + numparts - 1) / numparts;
+    List<TrialBlock> blocks = new ArrayList<>(numparts);
+    for(int start = 0; start < m; start += blocksize) {
+      SubspaceMaximumDistanceFunction df = new SubspaceMaximumDistanceFunction(BitsUtil.zero(d));
+      DistanceQuery<V> dq = database.getDistanceQuery(relation, df);
+      blocks.add(new TrialBlock(start, Math.min(start + blocksize, m), df, database.getRangeQuery(dq), Sset, minClusterSize, iprogress));
+    }
+
     Random random = rnd.getSingleThreadedRandom();
     DBIDArrayIter iter = S.iter();
+    DBIDVar seed = DBIDUtil.newVar();
+    long[][] trials = new long[m][];
 
     for(int i = 0; i < n; ++i) {
       // Pick a random seed point.
       iter.seek(random.nextInt(S.size()));
+      seed.set(iter);
 
+      // The random samples are drawn sequentially, for reproducibility.
       for(int j = 0; j < m; ++j) {
         // Choose a set of random points.
         DBIDs randomSet = DBIDUtil.randomSample(S, r, random);
@@ -268,11 +294,142 @@ public class DOC<V extends NumberVector> extends AbstractAlgorithm<Clustering<Su
             BitsUtil.setI(nD, k);
           }
         }
+        trials[j] = nD;
+      }
+      for(TrialBlock block : blocks) {
+        block.prepare(seed, trials);
+      }
+      // Better cluster than before? Blocks are checked in order, so ties are
+      // resolved as in a sequential run.
+      for(TrialBlock block : ParallelExecutor.call(blocks)) {
+        if(block.bestC != null && block.bestQuality > quality) {
+          if(LOG.isDebuggingFiner()) {
+            LOG.finer("New best cluster: " + block.bestQuality + " vs. " + quality);
+          }
+          C = block.bestC;
+          D = block.bestD;
+          quality = block.bestQuality;
+        }
+      }
+    }
+    LOG.ensureCompleted(iprogress);
+
+    return (C != null) ? makeCluster(relation, C, D) : null;
+  }
+
+  /**
+   * Evaluate a block of DOC trials for the same seed point, keeping the best
+   * cluster candidate of the block.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class TrialBlock implements Callable<TrialBlock> {
+    /**
+     * Trial range.
+     */
+    final int begin, end;
+
+    /**
+     * Distance function of this block.
+     */
+    final SubspaceMaximumDistanceFunction df;
+
+    /**
+     * Range query using {@link #df}.
+     */
+    final RangeQuery<V> rq;
+
+    /**
+     * Points we are working on.
+     */
+    final SetDBIDs S;
+
+    /**
+     * Minimum size a cluster must have to be accepted.
+     */
+    final int minClusterSize;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    final FiniteProgress prog;
+
+    /**
+     * Current seed point.
+     */
+    DBIDRef seed;
+
+    /**
+     * Relevant dimensions of each trial.
+     */
+    long[][] trials;
+
+    /**
+     * Best cluster of this block.
+     */
+    DBIDs bestC;
+
+    /**
+     * Relevant attributes of the best cluster.
+     */
+    long[] bestD;
+
+    /**
+     * Quality of the best cluster.
+     */
+    double bestQuality;
+
+    /**
+     * Constructor.
+     * 
+     * @param begin First trial
+     * @param end End trial (exclusive)
+     * @param df Distance function
+     * @param rq Range query
+     * @param S Points we are working on
+     * @param minClusterSize Minimum cluster size
+     * @param prog Progress
+     */
+    TrialBlock(int begin, int end, SubspaceMaximumDistanceFunction df, RangeQuery<V> rq, SetDBIDs S, int minClusterSize, FiniteProgress prog) {
+      this.begin = begin;
+      this.end = end;
+      this.df = df;
+      this.rq = rq;
+      this.S = S;
+      this.minClusterSize = minClusterSize;
+      this.prog = prog;
+    }
+
+    /**
+     * Prepare the next round.
+     * 
+     * @param seed Seed point
+     * @param trials Relevant dimensions of each trial
+     */
+    void prepare(DBIDRef seed, long[][] trials) {
+      this.seed = seed;
+      this.trials = trials;
+      this.bestC = null;
+      this.bestD = null;
+      this.bestQuality = Double.NEGATIVE_INFINITY;
+    }
+
+    @Override
+    public TrialBlock call() {
+      for(int j = begin; j < end; j++) {
+        final long[] nD = trials[j];
         if(BitsUtil.cardinality(nD) > 0) {
           // Get all points in the box.
           df.setSelectedDimensions(nD);
           // TODO: add filtering capabilities into query API!
-          DBIDs nC = DBIDUtil.intersection(S, rq.getRangeForDBID(iter, w));
+          ModifiableDBIDs nC = DBIDUtil.newHashSet();
+          for(DBIDIter it = rq.getRangeForDBID(seed, w).iter(); it.valid(); it.advance()) {
+            if(S.contains(it)) {
+              nC.add(it);
+            }
+          }
 
           if(LOG.isDebuggingFiner()) {
             LOG.finer("Testing a cluster candidate, |C| = " + nC.size() + ", |D| = " + BitsUtil.cardinality(nD));
@@ -288,13 +445,10 @@ public class DOC<V extends NumberVector> extends AbstractAlgorithm<Clustering<Su
           else {
             // Better cluster than before?
             double nQuality = computeClusterQuality(nC.size(), BitsUtil.cardinality(nD));
-            if(nQuality > quality) {
-              if(LOG.isDebuggingFiner()) {
-                LOG.finer("... and it's the best so far: " + nQuality + " vs. " + quality);
-              }
-              C = nC;
-              D = nD;
-              quality = nQuality;
+            if(nQuality > bestQuality) {
+              bestC = nC;
+              bestD = nD;
+              bestQuality = nQuality;
             }
             else {
               if(LOG.isDebuggingFiner()) {
@@ -303,12 +457,12 @@ public class DOC<V extends NumberVector> extends AbstractAlgorithm<Clustering<Su
             }
           }
         }
-        LOG.incrementProcessed(iprogress);
       }
+      if(prog != null) {
+        prog.incrementProcessed(end - begin, LOG);
+      }
+      return this;
     }
-    LOG.ensureCompleted(iprogress);
-
-    return (C != null) ? makeCluster(relation, C, D) : null;
   }
 
   /**
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.em.EM;
@@ -37,7 +38,6 @@ import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.Subspace;
 import de.lmu.ifi.dbs.elki.data.VectorUtil;
-import de.lmu.ifi.dbs.elki.data.VectorUtil.SortDBIDsBySingleDimension;
 import de.lmu.ifi.dbs.elki.data.model.SubspaceModel;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
@@ -66,6 +66,7 @@ import de.lmu.ifi.dbs.elki.math.linearalgebra.VMath;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
 import de.lmu.ifi.dbs.elki.math.statistics.distribution.ChiSquaredDistribution;
 import de.lmu.ifi.dbs.elki.math.statistics.distribution.PoissonDistribution;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.FormatUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -178,27 +179,36 @@ public class P3C<V extends NumberVector> extends AbstractAlgorithm<Clustering<Su
 
     // Set markers for each attribute until they're all deemed uniform.
     final long[][] markers = new long[dim][];
+    List<Callable<Void>> tasks = new ArrayList<>(dim);
     for(int d = 0; d < dim; d++) {
       final SetDBIDs[] parts = partitions[d];
       if(parts == null) {
         continue; // Never mark any on constant dimensions.
       }
-      final long[] marked = markers[d] = BitsUtil.zero(binCount);
-      int card = 0;
-      while(card < dim - 1) {
-        // Find bin with largest support, test only the dimensions that were not
-        // previously marked.
-        int bestBin = chiSquaredUniformTest(parts, marked, card);
-        if(bestBin < 0) {
-          break; // Uniform
+      final int d0 = d;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          final long[] marked = markers[d0] = BitsUtil.zero(binCount);
+          int card = 0;
+          while(card < dim - 1) {
+            // Find bin with largest support, test only the dimensions that
+            // were not previously marked.
+            int bestBin = chiSquaredUniformTest(parts, marked, card);
+            if(bestBin < 0) {
+              break; // Uniform
+            }
+            BitsUtil.setI(marked, bestBin);
+            card++;
+          }
+          if(LOG.isDebugging()) {
+            LOG.debug("Marked bins in dim " + d0 + ": " + BitsUtil.toString(marked, binCount));
+          }
+          return null;
         }
-        BitsUtil.setI(marked, bestBin);
-        card++;
-      }
-      if(LOG.isDebugging()) {
-        LOG.debug("Marked bins in dim " + d + ": " + BitsUtil.toString(marked, binCount));
-      }
+      });
     }
+    ParallelExecutor.call(tasks);
 
     if(stepProgress != null) {
       stepProgress.beginStep(3, "Merging marked bins to 1-signatures.", LOG);
@@ -378,9 +388,22 @@ public class P3C<V extends NumberVector> extends AbstractAlgorithm<Clustering<Su
     for(int i = 0; i < clusterCores.size(); i++) {
       final Signature parent = clusterCores.get(i);
       final int end = parent.getFirstDim();
+      // The merges with one parent are independent of each other, so their
+      // supports are computed concurrently, then applied in order.
+      List<Callable<Signature>> tasks = new ArrayList<>();
       for(int j = 0; j < signatures.size() && firstdim[j] < end; j++) {
         final Signature onesig = signatures.get(j);
-        final Signature merge = mergeSignatures(parent, onesig, binCount);
+        tasks.add(new Callable<Signature>() {
+          @Override
+          public Signature call() {
+            return mergeSignatures(parent, onesig, binCount);
+          }
+        });
+      }
+      List<Signature> merges = ParallelExecutor.call(tasks);
+      for(int j = 0; j < merges.size(); j++) {
+        final Signature onesig = signatures.get(j);
+        final Signature merge = merges.get(j);
         if(merge != null) {
           // We add each potential core to the list to allow remaining
           // 1-signatures to try merging with this p-signature as well.
@@ -441,46 +464,66 @@ public class P3C<V extends NumberVector> extends AbstractAlgorithm<Clustering<Su
    */
   private SetDBIDs[][] partitionData(final Relation<V> relation, final int bins) {
     final int dim = RelationUtil.dimensionality(relation);
-    SetDBIDs[][] partitions = new SetDBIDs[dim][bins];
+    final SetDBIDs[][] partitions = new SetDBIDs[dim][bins];
+    // The dimensions are independent, and are partitioned concurrently.
+    List<Callable<Void>> tasks = new ArrayList<>(dim);
+    for(int d = 0; d < dim; d++) {
+      final int d0 = d;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          partitionDimension(relation, d0, partitions);
+          return null;
+        }
+      });
+    }
+    ParallelExecutor.call(tasks);
+    return partitions;
+  }
+
+  /**
+   * Partition a single dimension into bins.
+   * 
+   * @param relation Data relation to partition
+   * @param d Dimension to partition
+   * @param partitions Output partitions; the row of dimension {@code d} is
+   *        filled, or set to {@code null} if the dimension is constant.
+   */
+  private void partitionDimension(final Relation<V> relation, int d, SetDBIDs[][] partitions) {
     ArrayModifiableDBIDs ids = DBIDUtil.newArray(relation.getDBIDs());
     DBIDArrayIter iter = ids.iter(); // will be reused.
-    SortDBIDsBySingleDimension sorter = new VectorUtil.SortDBIDsBySingleDimension(relation, 0);
-    for(int d = 0; d < dim; d++) {
-      sorter.setDimension(d);
-      ids.sort(sorter);
-      // Minimum:
-      iter.seek(0);
-      double min = relation.get(iter).doubleValue(d);
-      // Extend:
-      iter.seek(ids.size() - 1);
-      double delta = (relation.get(iter).doubleValue(d) - min) / bins;
-      if(delta > 0.) {
-        SetDBIDs[] dimparts = partitions[d];
-        double split = min + delta;
-        HashSetModifiableDBIDs pids = DBIDUtil.newHashSet();
-        dimparts[0] = pids;
-        int i = 0;
-        for(iter.seek(0); iter.valid(); iter.advance()) {
-          final double v = relation.get(iter).doubleValue(d);
-          if(v <= split || i == dimparts.length - 1) {
-            pids.add(iter);
-          }
-          else {
-            i++;
-            split += delta;
-            pids = DBIDUtil.newHashSet();
-            dimparts[i] = pids;
-          }
+    ids.sort(new VectorUtil.SortDBIDsBySingleDimension(relation, d));
+    // Minimum:
+    iter.seek(0);
+    double min = relation.get(iter).doubleValue(d);
+    // Extend:
+    iter.seek(ids.size() - 1);
+    SetDBIDs[] dimparts = partitions[d];
+    double delta = (relation.get(iter).doubleValue(d) - min) / dimparts.length;
+    if(delta > 0.) {
+      double split = min + delta;
+      HashSetModifiableDBIDs pids = DBIDUtil.newHashSet();
+      dimparts[0] = pids;
+      int i = 0;
+      for(iter.seek(0); iter.valid(); iter.advance()) {
+        final double v = relation.get(iter).doubleValue(d);
+        if(v <= split || i == dimparts.length - 1) {
+          pids.add(iter);
         }
-        for(++i; i < dimparts.length; ++i) {
+        else {
+          i++;
+          split += delta;
+          pids = DBIDUtil.newHashSet();
           dimparts[i] = pids;
         }
       }
-      else {
-        partitions[d] = null; // Flag whole dimension as bad
+      for(++i; i < dimparts.length; ++i) {
+        dimparts[i] = pids;
       }
     }
-    return partitions;
+    else {
+      partitions[d] = null; // Flag whole dimension as bad
+    }
   }
 
   /**
@@ -726,9 +769,8 @@ public class P3C<V extends NumberVector> extends AbstractAlgorithm<Clustering<Su
     }
 
     // Definition 3, Condition 1:
-    // True support:
-    final ModifiableDBIDs intersection = DBIDUtil.intersection(first.ids, second.ids);
-    final int support = intersection.size();
+    // True support (the intersection is only materialized on success):
+    final int support = DBIDUtil.intersectionSize(first.ids, second.ids);
     // Interval width, computed using selected number of bins / total bins
     double width = (second.spec[d2 + 1] - second.spec[d2] + 1.) / (double) numBins;
     // Expected size thus:
@@ -745,7 +787,7 @@ public class P3C<V extends NumberVector> extends AbstractAlgorithm<Clustering<Su
     spec[d2] = second.spec[d2];
     spec[d2 + 1] = second.spec[d2];
 
-    final Signature newsig = new Signature(spec, intersection);
+    final Signature newsig = new Signature(spec, DBIDUtil.intersection(first.ids, second.ids));
     if(LOG.isDebugging()) {
       LOG.debug(newsig.toString());
     }
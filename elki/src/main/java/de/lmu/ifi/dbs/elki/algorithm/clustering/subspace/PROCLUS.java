@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractProjectedClustering;
 import de.lmu.ifi.dbs.elki.data.Cluster;
@@ -64,6 +65,7 @@ import de.lmu.ifi.dbs.elki.math.Mean;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.Centroid;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
 import de.lmu.ifi.dbs.elki.math.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -355,29 +357,41 @@ public class PROCLUS<V extends NumberVector> extends AbstractProjectedClustering
    * @param distFunc the distance function
    * @return a mapping of the medoid's id to its locality
    */
-  private DataStore<DoubleDBIDList> getLocalities(DBIDs medoids, Relation<V> database, DistanceQuery<V> distFunc, RangeQuery<V> rangeQuery) {
-    WritableDataStore<DoubleDBIDList> result = DataStoreUtil.makeStorage(medoids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, DoubleDBIDList.class);
-
-    for(DBIDIter iter = medoids.iter(); iter.valid(); iter.advance()) {
-      // determine minimum distance between current medoid m and any other
-      // medoid m_i
-      double minDist = Double.POSITIVE_INFINITY;
-      for(DBIDIter iter2 = medoids.iter(); iter2.valid(); iter2.advance()) {
-        if(DBIDUtil.equal(iter, iter2)) {
-          continue;
-        }
-        double currentDist = distFunc.distance(iter, iter2);
-        if(currentDist < minDist) {
-          minDist = currentDist;
+  private DataStore<DoubleDBIDList> getLocalities(final ArrayDBIDs medoids, Relation<V> database, final DistanceQuery<V> distFunc, final RangeQuery<V> rangeQuery) {
+    // The range queries of the medoids are run concurrently.
+    List<Callable<DoubleDBIDList>> tasks = new ArrayList<>(medoids.size());
+    for(int i = 0; i < medoids.size(); i++) {
+      final int off = i;
+      tasks.add(new Callable<DoubleDBIDList>() {
+        @Override
+        public DoubleDBIDList call() {
+          DBIDArrayIter iter = medoids.iter().seek(off);
+          // determine minimum distance between current medoid m and any other
+          // medoid m_i
+          double minDist = Double.POSITIVE_INFINITY;
+          for(DBIDIter iter2 = medoids.iter(); iter2.valid(); iter2.advance()) {
+            if(DBIDUtil.equal(iter, iter2)) {
+              continue;
+            }
+            double currentDist = distFunc.distance(iter, iter2);
+            if(currentDist < minDist) {
+              minDist = currentDist;
+            }
+          }
+
+          // determine points in sphere centered at m with radius minDist
+          assert minDist != Double.POSITIVE_INFINITY;
+          return rangeQuery.getRangeForDBID(iter, minDist);
         }
-      }
-
-      // determine points in sphere centered at m with radius minDist
-      assert minDist != Double.POSITIVE_INFINITY;
-      DoubleDBIDList qr = rangeQuery.getRangeForDBID(iter, minDist);
-      result.put(iter, qr);
+      });
     }
+    List<DoubleDBIDList> ranges = ParallelExecutor.call(tasks);
 
+    WritableDataStore<DoubleDBIDList> result = DataStoreUtil.makeStorage(medoids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, DoubleDBIDList.class);
+    int i = 0;
+    for(DBIDIter iter = medoids.iter(); iter.valid(); iter.advance(), i++) {
+      result.put(iter, ranges.get(i));
+    }
     return result;
   }
 
@@ -391,34 +405,32 @@ public class PROCLUS<V extends NumberVector> extends AbstractProjectedClustering
    * @return the set of correlated dimensions for each medoid in the specified
    *         medoid set
    */
-  private long[][] findDimensions(ArrayDBIDs medoids, Relation<V> database, DistanceQuery<V> distFunc, RangeQuery<V> rangeQuery) {
+  private long[][] findDimensions(ArrayDBIDs medoids, final Relation<V> database, DistanceQuery<V> distFunc, RangeQuery<V> rangeQuery) {
     // get localities
     DataStore<DoubleDBIDList> localities = getLocalities(medoids, database, distFunc, rangeQuery);
 
     // compute x_ij = avg distance from points in l_i to medoid m_i
     final int dim = RelationUtil.dimensionality(database);
-    double[][] averageDistances = new double[medoids.size()][];
-
-    int i = 0;
-    for(DBIDArrayIter iter = medoids.iter(); iter.valid(); iter.advance(), i++) {
-      V medoid_i = database.get(iter);
-      DoubleDBIDList l_i = localities.get(iter);
-      double[] x_i = new double[dim];
-      for(DBIDIter qr = l_i.iter(); qr.valid(); qr.advance()) {
-        V o = database.get(qr);
-        for(int d = 0; d < dim; d++) {
-          x_i[d] += Math.abs(medoid_i.doubleValue(d) - o.doubleValue(d));
+    final double[][] averageDistances = new double[medoids.size()][];
+
+    List<Callable<Void>> tasks = new ArrayList<>(medoids.size());
+    for(DBIDArrayIter iter = medoids.iter(); iter.valid(); iter.advance()) {
+      final int off = iter.getOffset();
+      final V medoid_i = database.get(iter);
+      final DoubleDBIDList l_i = localities.get(iter);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          averageDistances[off] = averageDistances(medoid_i, l_i, database, dim);
+          return null;
         }
-      }
-      for(int d = 0; d < dim; d++) {
-        x_i[d] /= l_i.size();
-      }
-      averageDistances[i] = x_i;
+      });
     }
+    ParallelExecutor.call(tasks);
 
     long[][] dimensionMap = new long[medoids.size()][((dim - 1) >> 6) + 1];
     List<DoubleIntInt> z_ijs = new ArrayList<>();
-    for(i = 0; i < medoids.size(); i++) {
+    for(int i = 0; i < medoids.size(); i++) {
       double[] x_i = averageDistances[i];
       // y_i
       double y_i = 0;
@@ -468,26 +480,25 @@ public class PROCLUS<V extends NumberVector> extends AbstractProjectedClustering
    * @return the set of correlated dimensions for each specified cluster
    *         centroid
    */
-  private List<Pair<Vector, long[]>> findDimensions(ArrayList<PROCLUSCluster> clusters, Relation<V> database) {
+  private List<Pair<Vector, long[]>> findDimensions(ArrayList<PROCLUSCluster> clusters, final Relation<V> database) {
     // compute x_ij = avg distance from points in c_i to c_i.centroid
     final int dim = RelationUtil.dimensionality(database);
     final int numc = clusters.size();
-    double[][] averageDistances = new double[numc][];
+    final double[][] averageDistances = new double[numc][];
 
+    List<Callable<Void>> tasks = new ArrayList<>(numc);
     for(int i = 0; i < numc; i++) {
-      PROCLUSCluster c_i = clusters.get(i);
-      double[] x_i = new double[dim];
-      for(DBIDIter iter = c_i.objectIDs.iter(); iter.valid(); iter.advance()) {
-        V o = database.get(iter);
-        for(int d = 0; d < dim; d++) {
-          x_i[d] += Math.abs(c_i.centroid.doubleValue(d) - o.doubleValue(d));
+      final int off = i;
+      final PROCLUSCluster c_i = clusters.get(i);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          averageDistances[off] = averageDistances(c_i.centroid, c_i.objectIDs, database, dim);
+          return null;
         }
-      }
-      for(int d = 0; d < dim; d++) {
-        x_i[d] /= c_i.objectIDs.size();
-      }
-      averageDistances[i] = x_i;
+      });
     }
+    ParallelExecutor.call(tasks);
 
     List<DoubleIntInt> z_ijs = new ArrayList<>();
     for(int i = 0; i < numc; i++) {
@@ -544,6 +555,30 @@ public class PROCLUS<V extends NumberVector> extends AbstractProjectedClustering
     return result;
   }
 
+  /**
+   * Computes the average distance of the objects to a center in each
+   * dimension.
+   * 
+   * @param center the center
+   * @param ids the objects
+   * @param database the database containing the objects
+   * @param dim the dimensionality
+   * @return the average distance in each dimension
+   */
+  private double[] averageDistances(NumberVector center, DBIDs ids, Relation<V> database, int dim) {
+    double[] x_i = new double[dim];
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      V o = database.get(iter);
+      for(int d = 0; d < dim; d++) {
+        x_i[d] += Math.abs(center.doubleValue(d) - o.doubleValue(d));
+      }
+    }
+    for(int d = 0; d < dim; d++) {
+      x_i[d] /= ids.size();
+    }
+    return x_i;
+  }
+
   /**
    * Assigns the objects to the clusters.
    * 
@@ -553,29 +588,38 @@ public class PROCLUS<V extends NumberVector> extends AbstractProjectedClustering
    * @param database the database containing the objects
    * @return the assignments of the object to the clusters
    */
-  private ArrayList<PROCLUSCluster> assignPoints(ArrayDBIDs m_current, long[][] dimensions, Relation<V> database) {
+  private ArrayList<PROCLUSCluster> assignPoints(ArrayDBIDs m_current, final long[][] dimensions, final Relation<V> database) {
     ModifiableDBIDs[] clusterIDs = new ModifiableDBIDs[dimensions.length];
     for(int i = 0; i < m_current.size(); i++) {
       clusterIDs[i] = DBIDUtil.newHashSet();
     }
 
-    DBIDArrayIter m_i = m_current.iter();
-    for(DBIDIter it = database.iterDBIDs(); it.valid(); it.advance()) {
-      V p = database.get(it);
-      double minDist = Double.NaN;
-      int best = -1, i = 0;
-      for(m_i.seek(0); m_i.valid(); m_i.advance(), i++) {
-        V m = database.get(m_i);
-        double currentDist = manhattanSegmentalDistance(p, m, dimensions[i]);
-        if(!(minDist <= currentDist)) {
-          minDist = currentDist;
-          best = i;
+    final List<V> medoids = new ArrayList<>(m_current.size());
+    for(DBIDIter m_i = m_current.iter(); m_i.valid(); m_i.advance()) {
+      medoids.add(database.get(m_i));
+    }
+    ArrayDBIDs ids = DBIDUtil.ensureArray(database.getDBIDs());
+    final int[] assignment = new int[ids.size()];
+    ParallelExecutor.run(ids, new ParallelExecutor.ArrayTask() {
+      @Override
+      public void process(DBIDArrayIter it) {
+        V p = database.get(it);
+        double minDist = Double.NaN;
+        int best = -1;
+        for(int i = 0; i < medoids.size(); i++) {
+          double currentDist = manhattanSegmentalDistance(p, medoids.get(i), dimensions[i]);
+          if(!(minDist <= currentDist)) {
+            minDist = currentDist;
+            best = i;
+          }
         }
+        assert best >= 0;
+        assignment[it.getOffset()] = best;
       }
-      // add p to cluster with mindist
-      assert best >= 0;
-      ModifiableDBIDs ids = clusterIDs[best];
-      ids.add(it);
+    });
+    // add each p to cluster with mindist, in the original order
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      clusterIDs[assignment[it.getOffset()]].add(it);
     }
 
     ArrayList<PROCLUSCluster> clusters = new ArrayList<>(m_current.size());
@@ -608,30 +652,37 @@ public class PROCLUS<V extends NumberVector> extends AbstractProjectedClustering
    * @param database the database containing the objects
    * @return the assignments of the object to the clusters
    */
-  private List<PROCLUSCluster> finalAssignment(List<Pair<Vector, long[]>> dimensions, Relation<V> database) {
+  private List<PROCLUSCluster> finalAssignment(final List<Pair<Vector, long[]>> dimensions, final Relation<V> database) {
     Map<Integer, ModifiableDBIDs> clusterIDs = new HashMap<>();
     for(int i = 0; i < dimensions.size(); i++) {
       clusterIDs.put(i, DBIDUtil.newHashSet());
     }
 
-    for(DBIDIter it = database.iterDBIDs(); it.valid(); it.advance()) {
-      V p = database.get(it);
-      double minDist = Double.POSITIVE_INFINITY;
-      int best = -1;
-      for(int i = 0; i < dimensions.size(); i++) {
-        Pair<Vector, long[]> pair_i = dimensions.get(i);
-        Vector c_i = pair_i.first;
-        long[] dimensions_i = pair_i.second;
-        double currentDist = manhattanSegmentalDistance(p, c_i, dimensions_i);
-        if(best < 0 || currentDist < minDist) {
-          minDist = currentDist;
-          best = i;
+    ArrayDBIDs ids = DBIDUtil.ensureArray(database.getDBIDs());
+    final int[] assignment = new int[ids.size()];
+    ParallelExecutor.run(ids, new ParallelExecutor.ArrayTask() {
+      @Override
+      public void process(DBIDArrayIter it) {
+        V p = database.get(it);
+        double minDist = Double.POSITIVE_INFINITY;
+        int best = -1;
+        for(int i = 0; i < dimensions.size(); i++) {
+          Pair<Vector, long[]> pair_i = dimensions.get(i);
+          Vector c_i = pair_i.first;
+          long[] dimensions_i = pair_i.second;
+          double currentDist = manhattanSegmentalDistance(p, c_i, dimensions_i);
+          if(best < 0 || currentDist < minDist) {
+            minDist = currentDist;
+            best = i;
+          }
         }
+        assert minDist >= 0.;
+        assignment[it.getOffset()] = best;
       }
-      // add p to cluster with mindist
-      assert minDist >= 0.;
-      ModifiableDBIDs ids = clusterIDs.get(best);
-      ids.add(it);
+    });
+    // add each p to cluster with mindist, in the original order
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      clusterIDs.get(assignment[it.getOffset()]).add(it);
     }
 
     List<PROCLUSCluster> clusters = new ArrayList<>();
@@ -682,20 +733,29 @@ public class PROCLUS<V extends NumberVector> extends AbstractProjectedClustering
    * @param database the database holding the objects
    * @return a measure for the cluster quality
    */
-  private double evaluateClusters(ArrayList<PROCLUSCluster> clusters, long[][] dimensions, Relation<V> database) {
-    double result = 0;
+  private double evaluateClusters(final ArrayList<PROCLUSCluster> clusters, final long[][] dimensions, final Relation<V> database) {
+    // The clusters are evaluated concurrently, then summed up in order.
+    List<Callable<Double>> tasks = new ArrayList<>(dimensions.length);
     for(int i = 0; i < dimensions.length; i++) {
-      PROCLUSCluster c_i = clusters.get(i);
-      Vector centroid_i = c_i.centroid;
-
-      long[] dims_i = dimensions[i];
-      double w_i = 0;
-      for(int d = BitsUtil.nextSetBit(dims_i, 0); d >= 0; d = BitsUtil.nextSetBit(dims_i, d + 1)) {
-        w_i += avgDistance(centroid_i, c_i.objectIDs, database, d);
-      }
-
-      w_i /= dimensions.length;
-      result += c_i.objectIDs.size() * w_i;
+      final PROCLUSCluster c_i = clusters.get(i);
+      final long[] dims_i = dimensions[i];
+      tasks.add(new Callable<Double>() {
+        @Override
+        public Double call() {
+          Vector centroid_i = c_i.centroid;
+          double w_i = 0;
+          for(int d = BitsUtil.nextSetBit(dims_i, 0); d >= 0; d = BitsUtil.nextSetBit(dims_i, d + 1)) {
+            w_i += avgDistance(centroid_i, c_i.objectIDs, database, d);
+          }
+
+          w_i /= dimensions.length;
+          return c_i.objectIDs.size() * w_i;
+        }
+      });
+    }
+    double result = 0;
+    for(Double w : ParallelExecutor.call(tasks)) {
+      result += w;
     }
 
     return result / database.size();
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.DBSCAN;
@@ -42,11 +43,13 @@ import de.lmu.ifi.dbs.elki.database.ProxyDatabase;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.subspace.AbstractDimensionsSelectingDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.subspace.DimensionSelectingSubspaceDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.subspace.SubspaceEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.Centroid;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -67,6 +70,11 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * subspace separately.
  * </p>
  * <p>
+ * The DBSCAN runs of all candidate subspaces of the same dimensionality are
+ * independent, and are executed concurrently when the distance function can be
+ * copied for each subspace.
+ * </p>
+ * <p>
  * Reference: <br>
  * K. Kailing, H.-P. Kriegel, P. Kröger:<br />
  * Density connected Subspace Clustering for High Dimensional Data<br />
@@ -166,7 +174,7 @@ public class SUBCLU<V extends NumberVector> extends AbstractAlgorithm<Clustering
    * @param relation Relation to process
    * @return Clustering result
    */
-  public Clustering<SubspaceModel> run(Relation<V> relation) {
+  public Clustering<SubspaceModel> run(final Relation<V> relation) {
     final int dimensionality = RelationUtil.dimensionality(relation);
 
     StepProgress stepprog = LOG.isVerbose() ? new StepProgress(dimensionality) : null;
@@ -182,11 +190,22 @@ public class SUBCLU<V extends NumberVector> extends AbstractAlgorithm<Clustering
     subspaceMap.put(0, s_1);
 
     // mapping of subspaces to list of clusters
-    TreeMap<Subspace, List<Cluster<Model>>> clusterMap = new TreeMap<>(new Subspace.DimensionComparator());
+    final TreeMap<Subspace, List<Cluster<Model>>> clusterMap = new TreeMap<>(new Subspace.DimensionComparator());
 
+    List<Callable<List<Cluster<Model>>>> tasks = new ArrayList<>(dimensionality);
+    for(int d = 0; d < dimensionality; d++) {
+      final Subspace currentSubspace = new Subspace(d);
+      tasks.add(new Callable<List<Cluster<Model>>>() {
+        @Override
+        public List<Cluster<Model>> call() {
+          return runDBSCAN(relation, null, currentSubspace);
+        }
+      });
+    }
+    List<List<Cluster<Model>>> results = runTasks(tasks);
     for(int d = 0; d < dimensionality; d++) {
       Subspace currentSubspace = new Subspace(d);
-      List<Cluster<Model>> clusters = runDBSCAN(relation, null, currentSubspace);
+      List<Cluster<Model>> clusters = results.get(d);
 
       if(LOG.isDebuggingFiner()) {
         StringBuilder msg = new StringBuilder();
@@ -209,7 +228,7 @@ public class SUBCLU<V extends NumberVector> extends AbstractAlgorithm<Clustering
         stepprog.beginStep(d + 2, "Generate " + (d + 2) + "-dimensional clusters from " + (d + 1) + "-dimensional clusters.", LOG);
       }
 
-      List<Subspace> subspaces = subspaceMap.get(d);
+      final List<Subspace> subspaces = subspaceMap.get(d);
       if(subspaces == null || subspaces.isEmpty()) {
         if(stepprog != null) {
           for(int dim = d + 1; dim < dimensionality - 1; dim++) {
@@ -222,20 +241,35 @@ public class SUBCLU<V extends NumberVector> extends AbstractAlgorithm<Clustering
       List<Subspace> candidates = generateSubspaceCandidates(subspaces);
       List<Subspace> s_d = new ArrayList<>();
 
-      for(Subspace candidate : candidates) {
-        Subspace bestSubspace = bestSubspace(subspaces, candidate, clusterMap);
-        if(LOG.isDebuggingFine()) {
-          LOG.debugFine("best subspace of " + candidate.dimensonsToString() + ": " + bestSubspace.dimensonsToString());
-        }
+      // The candidates only depend on the clusters of the previous level, so
+      // they can be processed concurrently.
+      List<Callable<List<Cluster<Model>>>> candtasks = new ArrayList<>(candidates.size());
+      for(final Subspace candidate : candidates) {
+        candtasks.add(new Callable<List<Cluster<Model>>>() {
+          @Override
+          public List<Cluster<Model>> call() {
+            Subspace bestSubspace = bestSubspace(subspaces, candidate, clusterMap);
+            if(LOG.isDebuggingFine()) {
+              LOG.debugFine("best subspace of " + candidate.dimensonsToString() + ": " + bestSubspace.dimensonsToString());
+            }
 
-        List<Cluster<Model>> bestSubspaceClusters = clusterMap.get(bestSubspace);
-        List<Cluster<Model>> clusters = new ArrayList<>();
-        for(Cluster<Model> cluster : bestSubspaceClusters) {
-          List<Cluster<Model>> candidateClusters = runDBSCAN(relation, cluster.getIDs(), candidate);
-          if(!candidateClusters.isEmpty()) {
-            clusters.addAll(candidateClusters);
+            List<Cluster<Model>> bestSubspaceClusters = clusterMap.get(bestSubspace);
+            List<Cluster<Model>> clusters = new ArrayList<>();
+            for(Cluster<Model> cluster : bestSubspaceClusters) {
+              List<Cluster<Model>> candidateClusters = runDBSCAN(relation, cluster.getIDs(), candidate);
+              if(!candidateClusters.isEmpty()) {
+                clusters.addAll(candidateClusters);
+              }
+            }
+            return clusters;
           }
-        }
+        });
+      }
+      List<List<Cluster<Model>>> candresults = runTasks(candtasks);
+
+      for(int i = 0; i < candidates.size(); i++) {
+        Subspace candidate = candidates.get(i);
+        List<Cluster<Model>> clusters = candresults.get(i);
 
         if(LOG.isDebuggingFine()) {
           StringBuilder msg = new StringBuilder();
@@ -297,7 +331,7 @@ public class SUBCLU<V extends NumberVector> extends AbstractAlgorithm<Clustering
    */
   private List<Cluster<Model>> runDBSCAN(Relation<V> relation, DBIDs ids, Subspace subspace) {
     // distance function
-    distanceFunction.setSelectedDimensions(subspace.getDimensions());
+    DimensionSelectingSubspaceDistanceFunction<V> subspaceDistance = subspaceDistanceFunction(subspace);
 
     ProxyDatabase proxy;
     if(ids == null) {
@@ -308,7 +342,7 @@ public class SUBCLU<V extends NumberVector> extends AbstractAlgorithm<Clustering
 
     proxy = new ProxyDatabase(ids, relation);
 
-    DBSCAN<V> dbscan = new DBSCAN<>(distanceFunction, epsilon, minpts);
+    DBSCAN<V> dbscan = new DBSCAN<>(subspaceDistance, epsilon, minpts);
     // run DBSCAN
     if(LOG.isVerbose()) {
       LOG.verbose("\nRun DBSCAN on subspace " + subspace.dimensonsToString());
@@ -326,6 +360,54 @@ public class SUBCLU<V extends NumberVector> extends AbstractAlgorithm<Clustering
     return clusters;
   }
 
+  /**
+   * Get the distance function for the given subspace.
+   * 
+   * If the configured distance function can be copied, a copy restricted to the
+   * subspace is returned, and the configured instance is not modified.
+   * Otherwise, the dimensions of the configured instance are changed.
+   * 
+   * @param subspace the subspace to run DBSCAN on
+   * @return Distance function
+   */
+  @SuppressWarnings("unchecked")
+  private DimensionSelectingSubspaceDistanceFunction<V> subspaceDistanceFunction(Subspace subspace) {
+    if(distanceFunction instanceof AbstractDimensionsSelectingDistanceFunction) {
+      AbstractDimensionsSelectingDistanceFunction<?> copy = ((AbstractDimensionsSelectingDistanceFunction<?>) distanceFunction).copyWithDimensions(subspace.getDimensions());
+      if(copy != null) {
+        return (DimensionSelectingSubspaceDistanceFunction<V>) copy;
+      }
+    }
+    distanceFunction.setSelectedDimensions(subspace.getDimensions());
+    return distanceFunction;
+  }
+
+  /**
+   * Run the DBSCAN tasks, concurrently if the distance function can be copied
+   * for each subspace, sequentially otherwise.
+   * 
+   * @param tasks Tasks to run
+   * @return Results, in the same order as the tasks
+   */
+  private List<List<Cluster<Model>>> runTasks(List<Callable<List<Cluster<Model>>>> tasks) {
+    if(distanceFunction instanceof AbstractDimensionsSelectingDistanceFunction) {
+      return ParallelExecutor.call(tasks);
+    }
+    List<List<Cluster<Model>>> results = new ArrayList<>(tasks.size());
+    for(Callable<List<Cluster<Model>>> task : tasks) {
+      try {
+        results.add(task.call());
+      }
+      catch(RuntimeException e) {
+        throw e;
+      }
+      catch(Exception e) {
+        throw new RuntimeException("DBSCAN execution failed.", e);
+      }
+    }
+    return results;
+  }
+
   /**
    * Generates {@code d+1}-dimensional subspace candidates from the specified
    * {@code d}-dimensional subspaces.
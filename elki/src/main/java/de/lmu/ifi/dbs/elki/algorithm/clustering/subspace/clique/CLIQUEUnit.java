@@ -30,7 +30,6 @@ import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 
 /**
@@ -77,9 +76,30 @@ public class CLIQUEUnit<V extends NumberVector> {
    * @param interval the interval belonging to this unit
    */
   public CLIQUEUnit(CLIQUEInterval interval) {
+    this(interval, DBIDUtil.newHashSet());
+  }
+
+  /**
+   * Creates a new one-dimensional unit for the given interval, storing its
+   * members as a bitmap if the domain is a range of DBIDs.
+   * 
+   * @param interval the interval belonging to this unit
+   * @param domain the DBIDs of all feature vectors
+   */
+  public CLIQUEUnit(CLIQUEInterval interval, DBIDs domain) {
+    this(interval, DBIDUtil.newBitmapOrHashSet(domain));
+  }
+
+  /**
+   * Creates a new one-dimensional unit for the given interval.
+   * 
+   * @param interval the interval belonging to this unit
+   * @param ids the (initially empty) storage for the member ids
+   */
+  private CLIQUEUnit(CLIQUEInterval interval, ModifiableDBIDs ids) {
     intervals = new ArrayList<>();
     intervals.add(interval);
-    ids = DBIDUtil.newHashSet();
+    this.ids = ids;
     assigned = false;
   }
 
@@ -118,6 +138,17 @@ public class CLIQUEUnit<V extends NumberVector> {
     return false;
   }
 
+  /**
+   * Adds the id of a feature vector to this unit, without testing for
+   * containment. The caller must ensure that the vector lies within the
+   * intervals of this unit.
+   * 
+   * @param id Vector id
+   */
+  public void addDBID(DBIDRef id) {
+    ids.add(id);
+  }
+
   /**
    * Returns the number of feature vectors this unit contains.
    * 
@@ -245,14 +276,12 @@ public class CLIQUEUnit<V extends NumberVector> {
     resultIntervals.add(this.intervals.get(this.intervals.size() - 1));
     resultIntervals.add(other.intervals.get(other.intervals.size() - 1));
 
-    HashSetModifiableDBIDs resultIDs = DBIDUtil.newHashSet(this.ids);
-    resultIDs.retainAll(other.ids);
-
-    if(resultIDs.size() / all >= tau) {
-      return new CLIQUEUnit<>(resultIntervals, resultIDs);
+    // Count first, so that non-dense candidates are never materialized.
+    // For bitmap units, this is a word-wise AND.
+    if(DBIDUtil.intersectionSize(this.ids, other.ids) / all < tau) {
+      return null;
     }
-
-    return null;
+    return new CLIQUEUnit<>(resultIntervals, DBIDUtil.intersection(this.ids, other.ids));
   }
 
   /**
@@ -32,10 +32,11 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.query.similarity.SimilarityQuery;
 import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
@@ -44,8 +45,11 @@ import de.lmu.ifi.dbs.elki.distance.similarityfunction.SimilarityFunction;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.KernelMatrix;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.PolynomialKernelFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.ArrayTask;
 import de.lmu.ifi.dbs.elki.result.outlier.InvertedOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
@@ -112,18 +116,27 @@ public class ABOD<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
    * @param relation Relation to process
    * @return Outlier detection result
    */
-  public OutlierResult run(Database db, Relation<V> relation) {
-    DBIDs ids = relation.getDBIDs();
+  public OutlierResult run(Database db, final Relation<V> relation) {
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
     // Build a kernel matrix, to make O(n^3) slightly less bad.
     SimilarityQuery<V> sq = db.getSimilarityQuery(relation, kernelFunction);
-    KernelMatrix kernelMatrix = new KernelMatrix(sq, relation, ids);
+    final KernelMatrix kernelMatrix = new KernelMatrix(sq, relation, ids);
+
+    // Objects are scored independently, in parallel.
+    final double[] scores = new double[ids.size()];
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Computing ABOF", ids.size(), LOG) : null;
+    ParallelExecutor.run(ids, new ArrayTask() {
+      @Override
+      public void process(DBIDArrayIter pA) {
+        scores[pA.getOffset()] = computeABOF(relation, kernelMatrix, pA, new MeanVariance());
+      }
+    }, prog, LOG);
+    LOG.ensureCompleted(prog);
 
     WritableDoubleDataStore abodvalues = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
     DoubleMinMax minmaxabod = new DoubleMinMax();
-
-    MeanVariance s = new MeanVariance();
-    for(DBIDIter pA = ids.iter(); pA.valid(); pA.advance()) {
-      final double abof = computeABOF(relation, kernelMatrix, pA, s);
+    for(DBIDArrayIter pA = ids.iter(); pA.valid(); pA.advance()) {
+      final double abof = scores[pA.getOffset()];
       minmaxabod.put(abof);
       abodvalues.putDouble(pA, abof);
     }
@@ -30,25 +30,36 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.DoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDPair;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.similarity.SimilarityQuery;
 import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.SimilarityFunction;
-import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.KernelMatrix;
+import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.LinearKernelFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.ArrayTask;
 import de.lmu.ifi.dbs.elki.result.outlier.InvertedOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
-import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMaxHeap;
-import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ObjectHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
@@ -61,6 +72,10 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
  * 
  * Fast-ABOD (approximateABOF) version.
  * 
+ * The nearest neighbors are found with a kNN query, so index structures can
+ * be used for kernels that induce a distance function (for the linear kernel,
+ * Euclidean distance is used). Objects are scored in parallel.
+ * 
  * Reference:
  * <p>
  * H.-P. Kriegel, M. Schubert, and A. Zimek:<br />
@@ -111,77 +126,192 @@ public class FastABOD<V extends NumberVector> extends ABOD<V> {
    */
   @Override
   public OutlierResult run(Database db, Relation<V> relation) {
-    DBIDs ids = relation.getDBIDs();
-    // Build a kernel matrix, to make O(n^3) slightly less bad.
-    SimilarityQuery<V> sq = db.getSimilarityQuery(relation, kernelFunction);
-    KernelMatrix kernelMatrix = new KernelMatrix(sq, relation, ids);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final SimilarityQuery<V> sq = db.getSimilarityQuery(relation, kernelFunction);
+    final DoubleDataStore selfsim = computeSelfSimilarities(sq, ids);
+    final KNNQuery<V> knnq = getKNNQuery(db, relation);
+
+    final double[] scores = new double[ids.size()];
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Computing approximate ABOF", ids.size(), LOG) : null;
+    ParallelExecutor.run(ids, new ArrayTask() {
+      @Override
+      public void process(DBIDArrayIter pA) {
+        scores[pA.getOffset()] = computeFastABOF(sq, selfsim, knnq, ids, pA, new MeanVariance());
+      }
+    }, prog, LOG);
+    LOG.ensureCompleted(prog);
 
     WritableDoubleDataStore abodvalues = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
     DoubleMinMax minmaxabod = new DoubleMinMax();
+    for(DBIDArrayIter pA = ids.iter(); pA.valid(); pA.advance()) {
+      final double abof = scores[pA.getOffset()];
+      minmaxabod.put(abof);
+      abodvalues.putDouble(pA, abof);
+    }
 
-    MeanVariance s = new MeanVariance();
-    for(DBIDIter pA = ids.iter(); pA.valid(); pA.advance()) {
-      s.reset();
-      final double simAA = kernelMatrix.getSimilarity(pA, pA);
+    // Build result representation.
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Angle-Based Outlier Degree", "abod-outlier", abodvalues, relation.getDBIDs());
+    OutlierScoreMeta scoreMeta = new InvertedOutlierScoreMeta(minmaxabod.getMin(), minmaxabod.getMax(), 0.0, Double.POSITIVE_INFINITY);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
 
-      // Choose the k-min nearest
-      ComparableMaxHeap<DoubleDBIDPair> nn = new ComparableMaxHeap<>(k);
-      for(DBIDIter nB = relation.iterDBIDs(); nB.valid(); nB.advance()) {
-        if(DBIDUtil.equal(nB, pA)) {
-          continue;
-        }
-        double simBB = kernelMatrix.getSimilarity(nB, nB);
-        double simAB = kernelMatrix.getSimilarity(pA, nB);
-        double sqdAB = simAA + simBB - simAB - simAB;
-        if(!(sqdAB > 0.)) {
-          continue;
-        }
-        if(nn.size() < k) {
-          nn.add(DBIDUtil.newPair(sqdAB, nB));
-        }
-        else if(sqdAB < nn.peek().doubleValue()) {
-          nn.replaceTopElement(DBIDUtil.newPair(sqdAB, nB));
-        }
+  /**
+   * Compute the self-similarities {@code <A,A>} of all objects, i.e. the
+   * squared norms in kernel space.
+   * 
+   * @param sq Similarity query
+   * @param ids Objects
+   * @return Self-similarities
+   */
+  protected static DoubleDataStore computeSelfSimilarities(final SimilarityQuery<?> sq, ArrayDBIDs ids) {
+    final double[] sims = new double[ids.size()];
+    ParallelExecutor.run(ids, new ArrayTask() {
+      @Override
+      public void process(DBIDArrayIter it) {
+        sims[it.getOffset()] = sq.similarity(it, it);
+      }
+    });
+    // The data store may not support concurrent writes.
+    WritableDoubleDataStore selfsim = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      selfsim.putDouble(it, sims[it.getOffset()]);
+    }
+    return selfsim;
+  }
+
+  /**
+   * Get a kNN query that finds the nearest neighbors in kernel space, so that
+   * index structures can be used.
+   * 
+   * @param db Database
+   * @param relation Relation
+   * @return kNN query, or {@code null} if the kernel does not induce a
+   *         distance function.
+   */
+  protected KNNQuery<V> getKNNQuery(Database db, Relation<V> relation) {
+    if(kernelFunction instanceof LinearKernelFunction) {
+      // Same neighbors; but indexes are usually built for Euclidean distance.
+      return db.getKNNQuery(db.getDistanceQuery(relation, EuclideanDistanceFunction.STATIC), k + 1);
+    }
+    if(kernelFunction instanceof DistanceFunction) {
+      @SuppressWarnings("unchecked")
+      final DistanceFunction<? super V> df = (DistanceFunction<? super V>) kernelFunction;
+      if(df.getInputTypeRestriction().isAssignableFromType(relation.getDataTypeInformation())) {
+        return db.getKNNQuery(db.getDistanceQuery(relation, df), k + 1);
       }
+    }
+    return null;
+  }
+
+  /**
+   * Compute the approximate ABOF of a single object, using its k nearest
+   * neighbors.
+   * 
+   * @param sq Similarity query
+   * @param selfsim Self-similarities
+   * @param knnq kNN query, may be {@code null} for a linear scan
+   * @param ids All objects
+   * @param pA Object
+   * @param s Statistics tracker
+   * @return Approximate ABOF
+   */
+  protected double computeFastABOF(SimilarityQuery<V> sq, DoubleDataStore selfsim, KNNQuery<V> knnq, DBIDs ids, DBIDRef pA, MeanVariance s) {
+    s.reset();
+    // Nearest neighbors, with cached similarities <A,B> and distances.
+    final ArrayModifiableDBIDs nn = DBIDUtil.newArray(k);
+    final double[] simA = new double[k], sqdA = new double[k];
+    final int n = knnq != null ? nearestNeighbors(sq, selfsim, knnq, ids.size(), pA, nn, simA, sqdA) : nearestNeighbors(sq, selfsim, ids, pA, nn, simA, sqdA);
 
-      for(ObjectHeap.UnsortedIter<DoubleDBIDPair> iB = nn.unsortedIter(); iB.valid(); iB.advance()) {
-        DoubleDBIDPair nB = iB.get();
-        double sqdAB = nB.doubleValue();
-        double simAB = kernelMatrix.getSimilarity(pA, nB);
+    DBIDArrayIter nB = nn.iter(), nC = nn.iter();
+    for(int i = 0; i < n; i++) {
+      nB.seek(i);
+      final double sqdAB = sqdA[i], simAB = simA[i];
+      for(int j = i; j < n; j++) {
+        final double sqdAC = sqdA[j], simAC = simA[j];
+        // Exploit bilinearity of scalar product:
+        // <B-A, C-A> = <B, C-A> - <A,C-A>
+        // = <B,C> - <B,A> - <A,C> + <A,A>
+        // For computing variance, AA is a constant and can be ignored.
+        double simBC = sq.similarity(nB, nC.seek(j));
+        double numerator = simBC - simAB - simAC; // + simAA;
+        double val = numerator / (sqdAB * sqdAC);
+        s.put(val, 1. / Math.sqrt(sqdAB * sqdAC));
+      }
+    }
+    // Sample variance probably would be correct, but the ABOD publication
+    // uses the naive variance.
+    return s.getNaiveVariance();
+  }
+
+  /**
+   * Find the k nearest neighbors with non-zero distance, using a kNN query.
+   * 
+   * @param sq Similarity query
+   * @param selfsim Self-similarities
+   * @param knnq kNN query
+   * @param size Data set size
+   * @param pA Query object
+   * @param nn Output neighbors
+   * @param simA Output similarities to the query object
+   * @param sqdA Output squared distances to the query object
+   * @return Number of neighbors found
+   */
+  private int nearestNeighbors(SimilarityQuery<V> sq, DoubleDataStore selfsim, KNNQuery<V> knnq, int size, DBIDRef pA, ArrayModifiableDBIDs nn, double[] simA, double[] sqdA) {
+    final double simAA = selfsim.doubleValue(pA);
+    // Duplicates are skipped, so we may need to ask for more neighbors.
+    for(int kk = k + 1;; kk = Math.min(kk << 1, size)) {
+      final KNNList knns = knnq.getKNNForDBID(pA, kk);
+      nn.clear();
+      for(DBIDIter nB = knns.iter(); nB.valid() && nn.size() < k; nB.advance()) {
+        final double simAB = sq.similarity(pA, nB);
+        final double sqdAB = simAA + selfsim.doubleValue(nB) - simAB - simAB;
         if(!(sqdAB > 0.)) {
           continue;
         }
-        for(ObjectHeap.UnsortedIter<DoubleDBIDPair> iC = nn.unsortedIter(); iC.valid(); iC.advance()) {
-          DoubleDBIDPair nC = iC.get();
-          if(DBIDUtil.compare(nC, nB) < 0) {
-            continue;
-          }
-          double sqdAC = nC.doubleValue();
-          double simAC = kernelMatrix.getSimilarity(pA, nC);
-          if(!(sqdAC > 0.)) {
-            continue;
-          }
-          // Exploit bilinearity of scalar product:
-          // <B-A, C-A> = <B, C-A> - <A,C-A>
-          // = <B,C> - <B,A> - <A,C> + <A,A>
-          // For computing variance, AA is a constant and can be ignored.
-          double simBC = kernelMatrix.getSimilarity(nB, nC);
-          double numerator = simBC - simAB - simAC; // + simAA;
-          double val = numerator / (sqdAB * sqdAC);
-          s.put(val, 1. / Math.sqrt(sqdAB * sqdAC));
-        }
+        simA[nn.size()] = simAB;
+        sqdA[nn.size()] = sqdAB;
+        nn.add(nB);
+      }
+      if(nn.size() >= k || knns.size() < kk || kk >= size) {
+        return nn.size();
       }
-      // Sample variance probably would be correct, but the ABOD publication
-      // uses the naive variance.
-      final double abof = s.getNaiveVariance();
-      minmaxabod.put(abof);
-      abodvalues.putDouble(pA, abof);
     }
+  }
 
-    // Build result representation.
-    DoubleRelation scoreResult = new MaterializedDoubleRelation("Angle-Based Outlier Degree", "abod-outlier", abodvalues, relation.getDBIDs());
-    OutlierScoreMeta scoreMeta = new InvertedOutlierScoreMeta(minmaxabod.getMin(), minmaxabod.getMax(), 0.0, Double.POSITIVE_INFINITY);
-    return new OutlierResult(scoreMeta, scoreResult);
+  /**
+   * Find the k nearest neighbors with non-zero distance, by a linear scan.
+   * 
+   * @param sq Similarity query
+   * @param selfsim Self-similarities
+   * @param ids All objects
+   * @param pA Query object
+   * @param nn Output neighbors
+   * @param simA Output similarities to the query object
+   * @param sqdA Output squared distances to the query object
+   * @return Number of neighbors found
+   */
+  private int nearestNeighbors(SimilarityQuery<V> sq, DoubleDataStore selfsim, DBIDs ids, DBIDRef pA, ArrayModifiableDBIDs nn, double[] simA, double[] sqdA) {
+    final double simAA = selfsim.doubleValue(pA);
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    for(DBIDIter nB = ids.iter(); nB.valid(); nB.advance()) {
+      if(DBIDUtil.equal(nB, pA)) {
+        continue;
+      }
+      double simAB = sq.similarity(pA, nB);
+      double sqdAB = simAA + selfsim.doubleValue(nB) - simAB - simAB;
+      if(!(sqdAB > 0.)) {
+        continue;
+      }
+      heap.insert(sqdAB, nB);
+    }
+    nn.clear();
+    for(DoubleDBIDListIter nB = heap.toKNNList().iter(); nB.valid() && nn.size() < k; nB.advance()) {
+      final double simAB = sq.similarity(pA, nB);
+      simA[nn.size()] = simAB;
+      sqdA[nn.size()] = nB.doubleValue();
+      nn.add(nB);
+    }
+    return nn.size();
   }
 
   @Override
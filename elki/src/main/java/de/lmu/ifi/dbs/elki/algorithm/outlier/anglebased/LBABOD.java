@@ -30,9 +30,11 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDPair;
 import de.lmu.ifi.dbs.elki.database.query.similarity.SimilarityQuery;
 import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
@@ -43,9 +45,12 @@ import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.KernelMatrix;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.Logging.Level;
 import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.ArrayTask;
 import de.lmu.ifi.dbs.elki.result.outlier.InvertedOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
@@ -121,92 +126,31 @@ public class LBABOD<V extends NumberVector> extends FastABOD<V> {
    * @return Outlier detection result
    */
   @Override
-  public OutlierResult run(Database db, Relation<V> relation) {
-    DBIDs ids = relation.getDBIDs();
+  public OutlierResult run(Database db, final Relation<V> relation) {
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
     SimilarityQuery<V> sq = db.getSimilarityQuery(relation, kernelFunction);
-    KernelMatrix kernelMatrix = new KernelMatrix(sq, relation, ids);
+    final KernelMatrix kernelMatrix = new KernelMatrix(sq, relation, ids);
 
     // Output storage.
     WritableDoubleDataStore abodvalues = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
     DoubleMinMax minmaxabod = new DoubleMinMax();
     double max = 0.;
 
-    // Storage for squared distances (will be reused!)
-    WritableDoubleDataStore sqDists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT);
-    // Nearest neighbor heap (will be reused!)
-    ComparableMaxHeap<DoubleDBIDPair> nn = new ComparableMaxHeap<>(k);
+    // get Candidate Ranking, in parallel.
+    final double[] lbabofs = new double[ids.size()];
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Computing LB-ABOF", ids.size(), LOG) : null;
+    ParallelExecutor.run(ids, new ArrayTask() {
+      @Override
+      public void process(DBIDArrayIter pA) {
+        lbabofs[pA.getOffset()] = computeLBABOF(relation, kernelMatrix, pA);
+      }
+    }, prog, LOG);
+    LOG.ensureCompleted(prog);
 
     // Priority queue for candidates
     ComparableMinHeap<DoubleDBIDPair> candidates = new ComparableMinHeap<>(relation.size());
-    // get Candidate Ranking
-    for(DBIDIter pA = relation.iterDBIDs(); pA.valid(); pA.advance()) {
-      // Compute nearest neighbors and distances.
-      nn.clear();
-      double simAA = kernelMatrix.getSimilarity(pA, pA);
-      // Sum of 1./(|AB|) and 1./(|AB|^2); for computing R2.
-      double sumid = 0., sumisqd = 0.;
-      for(DBIDIter nB = relation.iterDBIDs(); nB.valid(); nB.advance()) {
-        if(DBIDUtil.equal(nB, pA)) {
-          continue;
-        }
-        double simBB = kernelMatrix.getSimilarity(nB, nB);
-        double simAB = kernelMatrix.getSimilarity(pA, nB);
-        double sqdAB = simAA + simBB - simAB - simAB;
-        sqDists.putDouble(nB, sqdAB);
-        if(!(sqdAB > 0.)) {
-          continue;
-        }
-        sumid += 1. / Math.sqrt(sqdAB);
-        sumisqd += 1. / sqdAB;
-        // Update heap
-        if(nn.size() < k) {
-          nn.add(DBIDUtil.newPair(sqdAB, nB));
-        }
-        else if(sqdAB < nn.peek().doubleValue()) {
-          nn.replaceTopElement(DBIDUtil.newPair(sqdAB, nB));
-        }
-      }
-
-      // Compute FastABOD approximation, adjust for lower bound.
-      // LB-ABOF is defined via a numerically unstable formula.
-      // Variance as E(X^2)-E(X)^2 suffers from catastrophic cancellation!
-      // TODO: ensure numerical precision!
-      double nnsum = 0., nnsumsq = 0., nnsumisqd = 0.;
-      for(ObjectHeap.UnsortedIter<DoubleDBIDPair> iB = nn.unsortedIter(); iB.valid(); iB.advance()) {
-        DoubleDBIDPair nB = iB.get();
-        double sqdAB = nB.doubleValue();
-        double simAB = kernelMatrix.getSimilarity(pA, nB);
-        if(!(sqdAB > 0.)) {
-          continue;
-        }
-        for(ObjectHeap.UnsortedIter<DoubleDBIDPair> iC = nn.unsortedIter(); iC.valid(); iC.advance()) {
-          DoubleDBIDPair nC = iC.get();
-          if(DBIDUtil.compare(nC, nB) < 0) {
-            continue;
-          }
-          double sqdAC = nC.doubleValue();
-          double simAC = kernelMatrix.getSimilarity(pA, nC);
-          if(!(sqdAC > 0.)) {
-            continue;
-          }
-          // Exploit bilinearity of scalar product:
-          // <B-A, C-A> = <B, C-A> - <A,C-A>
-          // = <B,C> - <B,A> - <A,C> + <A,A>
-          double simBC = kernelMatrix.getSimilarity(nB, nC);
-          double numerator = simBC - simAB - simAC + simAA;
-          double sqweight = 1. / (sqdAB * sqdAC);
-          double weight = Math.sqrt(sqweight);
-          double val = numerator * sqweight;
-          nnsum += val * weight;
-          nnsumsq += val * val * weight;
-          nnsumisqd += sqweight;
-        }
-      }
-      // Remaining weight, term R2:
-      double r2 = sumisqd * sumisqd - 2. * nnsumisqd;
-      double tmp = (2. * nnsum + r2) / (sumid * sumid);
-      double lbabof = 2. * nnsumsq / (sumid * sumid) - tmp * tmp;
-
+    for(DBIDArrayIter pA = ids.iter(); pA.valid(); pA.advance()) {
+      final double lbabof = lbabofs[pA.getOffset()];
       // Track maximum?
       if(lbabof > max) {
         max = lbabof;
@@ -251,6 +195,82 @@ public class LBABOD<V extends NumberVector> extends FastABOD<V> {
     return new OutlierResult(scoreMeta, scoreResult);
   }
 
+  /**
+   * Compute the lower-bound ABOF of a single object.
+   * 
+   * @param relation Relation
+   * @param kernelMatrix Kernel matrix
+   * @param pA Object A to compute LB-ABOF for
+   * @return LB-ABOF value
+   */
+  protected double computeLBABOF(Relation<V> relation, KernelMatrix kernelMatrix, DBIDRef pA) {
+    // Compute nearest neighbors and distances.
+    ComparableMaxHeap<DoubleDBIDPair> nn = new ComparableMaxHeap<>(k);
+    double simAA = kernelMatrix.getSimilarity(pA, pA);
+    // Sum of 1./(|AB|) and 1./(|AB|^2); for computing R2.
+    double sumid = 0., sumisqd = 0.;
+    for(DBIDIter nB = relation.iterDBIDs(); nB.valid(); nB.advance()) {
+      if(DBIDUtil.equal(nB, pA)) {
+        continue;
+      }
+      double simBB = kernelMatrix.getSimilarity(nB, nB);
+      double simAB = kernelMatrix.getSimilarity(pA, nB);
+      double sqdAB = simAA + simBB - simAB - simAB;
+      if(!(sqdAB > 0.)) {
+        continue;
+      }
+      sumid += 1. / Math.sqrt(sqdAB);
+      sumisqd += 1. / sqdAB;
+      // Update heap
+      if(nn.size() < k) {
+        nn.add(DBIDUtil.newPair(sqdAB, nB));
+      }
+      else if(sqdAB < nn.peek().doubleValue()) {
+        nn.replaceTopElement(DBIDUtil.newPair(sqdAB, nB));
+      }
+    }
+
+    // Compute FastABOD approximation, adjust for lower bound.
+    // LB-ABOF is defined via a numerically unstable formula.
+    // Variance as E(X^2)-E(X)^2 suffers from catastrophic cancellation!
+    // TODO: ensure numerical precision!
+    double nnsum = 0., nnsumsq = 0., nnsumisqd = 0.;
+    for(ObjectHeap.UnsortedIter<DoubleDBIDPair> iB = nn.unsortedIter(); iB.valid(); iB.advance()) {
+      DoubleDBIDPair nB = iB.get();
+      double sqdAB = nB.doubleValue();
+      double simAB = kernelMatrix.getSimilarity(pA, nB);
+      if(!(sqdAB > 0.)) {
+        continue;
+      }
+      for(ObjectHeap.UnsortedIter<DoubleDBIDPair> iC = nn.unsortedIter(); iC.valid(); iC.advance()) {
+        DoubleDBIDPair nC = iC.get();
+        if(DBIDUtil.compare(nC, nB) < 0) {
+          continue;
+        }
+        double sqdAC = nC.doubleValue();
+        double simAC = kernelMatrix.getSimilarity(pA, nC);
+        if(!(sqdAC > 0.)) {
+          continue;
+        }
+        // Exploit bilinearity of scalar product:
+        // <B-A, C-A> = <B, C-A> - <A,C-A>
+        // = <B,C> - <B,A> - <A,C> + <A,A>
+        double simBC = kernelMatrix.getSimilarity(nB, nC);
+        double numerator = simBC - simAB - simAC + simAA;
+        double sqweight = 1. / (sqdAB * sqdAC);
+        double weight = Math.sqrt(sqweight);
+        double val = numerator * sqweight;
+        nnsum += val * weight;
+        nnsumsq += val * val * weight;
+        nnsumisqd += sqweight;
+      }
+    }
+    // Remaining weight, term R2:
+    double r2 = sumisqd * sumisqd - 2. * nnsumisqd;
+    double tmp = (2. * nnsum + r2) / (sumid * sumid);
+    return 2. * nnsumsq / (sumid * sumid) - tmp * tmp;
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
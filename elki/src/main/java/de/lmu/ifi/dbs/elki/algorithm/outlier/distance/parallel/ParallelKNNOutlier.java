@@ -41,6 +41,7 @@ import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.parallel.processor.DoubleMinMaxProcessor;
@@ -135,7 +136,9 @@ public class ParallelKNNOutlier<O> extends AbstractDistanceBasedAlgorithm<O, Out
     DoubleMinMaxProcessor mmm = new DoubleMinMaxProcessor();
     mmm.connectInput(kdistv);
 
-    ParallelExecutor.run(ids, knnm, kdistm, storem, mmm);
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Computing kNN.", ids.size(), LOG) : null;
+    ParallelExecutor.run(ids, prog, LOG, knnm, kdistm, storem, mmm);
+    LOG.ensureCompleted(prog);
 
     DoubleMinMax minmax = mmm.getMinMax();
     DoubleRelation scoreres = new MaterializedDoubleRelation("kNN Outlier Score", "knn-outlier", store, ids);
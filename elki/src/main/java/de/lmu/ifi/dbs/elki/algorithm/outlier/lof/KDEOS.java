@@ -24,6 +24,7 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.lof;
  */
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.ThreadSafeAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.CombinedTypeInformation;
@@ -103,7 +104,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 title = "Generalized Outlier Detection with Flexible Kernel Density Estimates", //
 booktitle = "Proc. 14th SIAM International Conference on Data Mining (SDM), Philadelphia, PA, 2014", //
 url = "http://dx.doi.org/10.1137/1.9781611973440.63")
-public class KDEOS<O> extends AbstractDistanceBasedAlgorithm<O, OutlierResult>implements OutlierAlgorithm {
+public class KDEOS<O> extends AbstractDistanceBasedAlgorithm<O, OutlierResult> implements OutlierAlgorithm, ThreadSafeAlgorithm {
   /**
    * Class logger.
    */
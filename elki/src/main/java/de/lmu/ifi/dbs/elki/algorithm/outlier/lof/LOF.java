@@ -24,6 +24,7 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.lof;
  */
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.ThreadSafeAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
@@ -99,7 +100,7 @@ title = "LOF: Identifying Density-Based Local Outliers", //
 booktitle = "Proc. 2nd ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '00), Dallas, TX, 2000", //
 url = "http://dx.doi.org/10.1145/342009.335388")
 @Alias({ "de.lmu.ifi.dbs.elki.algorithm.outlier.LOF", "LOF" })
-public class LOF<O> extends AbstractDistanceBasedAlgorithm<O, OutlierResult> implements OutlierAlgorithm {
+public class LOF<O> extends AbstractDistanceBasedAlgorithm<O, OutlierResult> implements OutlierAlgorithm, ThreadSafeAlgorithm {
   /**
    * The logger for this class.
    */
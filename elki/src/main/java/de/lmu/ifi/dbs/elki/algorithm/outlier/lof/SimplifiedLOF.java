@@ -24,6 +24,7 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.lof;
  */
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.ThreadSafeAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
@@ -78,7 +79,7 @@ title = "Local Outlier Detection Reconsidered: a Generalized View on Locality wi
 booktitle = "Data Mining and Knowledge Discovery, 28(1): 190–237, 2014.", //
 url = "http://dx.doi.org/10.1007/s10618-012-0300-z")
 @Alias({ "SimplifiedLOF", "outlier.SimplifiedLOF", "de.lmu.ifi.dbs.elki.algorithm.outlier.SimplifiedLOF" })
-public class SimplifiedLOF<O> extends AbstractDistanceBasedAlgorithm<O, OutlierResult> implements OutlierAlgorithm {
+public class SimplifiedLOF<O> extends AbstractDistanceBasedAlgorithm<O, OutlierResult> implements OutlierAlgorithm, ThreadSafeAlgorithm {
   /**
    * The logger for this class.
    */
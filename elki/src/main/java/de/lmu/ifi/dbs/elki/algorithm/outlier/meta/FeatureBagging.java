@@ -24,7 +24,10 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.meta;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
@@ -36,16 +39,24 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.subspace.SubspaceEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.math.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.result.ResultHierarchy;
 import de.lmu.ifi.dbs.elki.result.outlier.BasicOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
@@ -59,7 +70,6 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameteriz
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
-import de.lmu.ifi.dbs.elki.utilities.pairs.Pair;
 
 /**
  * A simple ensemble method called "Feature bagging" for outlier detection.
@@ -71,6 +81,11 @@ import de.lmu.ifi.dbs.elki.utilities.pairs.Pair;
  * </p>
  * 
  * <p>
+ * The LOF instances run concurrently; repeated random subspaces are only
+ * computed once.
+ * </p>
+ * 
+ * <p>
  * Reference: <br>
  * A. Lazarevic, V. Kumar: Feature Bagging for Outlier Detection<br />
  * In: Proc. of the 11th ACM SIGKDD international conference on Knowledge
@@ -131,89 +146,173 @@ public class FeatureBagging extends AbstractAlgorithm<OutlierResult> implements
    * @param relation Relation to use
    * @return Outlier detection result
    */
-  public OutlierResult run(Database database, Relation<NumberVector> relation) {
+  public OutlierResult run(final Database database, final Relation<NumberVector> relation) {
     final int dbdim = RelationUtil.dimensionality(relation);
     final int mindim = dbdim >> 1;
     final int maxdim = dbdim - 1;
     final Random rand = rnd.getSingleThreadedRandom();
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
 
-    ArrayList<OutlierResult> results = new ArrayList<>(num);
-    {
-      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("LOF iterations", num, LOG) : null;
-      for(int i = 0; i < num; i++) {
-        long[] dimset = randomSubspace(dbdim, mindim, maxdim, rand);
-        SubspaceEuclideanDistanceFunction df = new SubspaceEuclideanDistanceFunction(dimset);
-        LOF<NumberVector> lof = new LOF<>(k, df);
-
-        // run LOF and collect the result
-        OutlierResult result = lof.run(database, relation);
-        results.add(result);
-        LOG.incrementProcessed(prog);
+    // Choose all subspaces first, for reproducibility. Repeated subspaces give
+    // identical results, and are computed only once.
+    ArrayList<long[]> subspaces = new ArrayList<>(num);
+    int[] multiplicity = new int[num];
+    subspaces: for(int i = 0; i < num; i++) {
+      long[] dimset = randomSubspace(dbdim, mindim, maxdim, rand);
+      for(int j = 0; j < subspaces.size(); j++) {
+        if(BitsUtil.equal(dimset, subspaces.get(j))) {
+          multiplicity[j]++;
+          continue subspaces;
+        }
       }
-      LOG.ensureCompleted(prog);
+      multiplicity[subspaces.size()] = 1;
+      subspaces.add(dimset);
+    }
+    if(LOG.isVerbose() && subspaces.size() < num) {
+      LOG.verbose("Distinct subspaces: " + subspaces.size());
     }
 
-    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
-    DoubleMinMax minmax = new DoubleMinMax();
+    // Offsets, for mapping the result orderings to array positions.
+    WritableIntegerDataStore offsets = null;
     if(breadth) {
-      FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Combining results", relation.size(), LOG) : null;
-      Pair<DBIDIter, DoubleRelation>[] IDVectorOntoScoreVector = Pair.newPairArray(results.size());
-
-      // Mapping score-sorted DBID-Iterators onto their corresponding scores.
-      // We need to initialize them now be able to iterate them "in parallel".
-      {
-        int i = 0;
-        for(OutlierResult r : results) {
-          IDVectorOntoScoreVector[i] = new Pair<DBIDIter, DoubleRelation>(r.getOrdering().order(relation.getDBIDs()).iter(), r.getScores());
-          i++;
+      offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+      for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        offsets.putInt(iter, iter.getOffset());
+      }
+    }
+
+    // Cumulative sums, or scores and orderings for breadth-first combination.
+    double[] sums = breadth ? null : new double[size];
+    double[][] allscores = breadth ? new double[subspaces.size()][] : null;
+    int[][] orders = breadth ? new int[subspaces.size()][] : null;
+
+    // The ensemble members run concurrently. To bound memory, they are
+    // processed in batches, and combined in order for reproducibility.
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("LOF iterations", num, LOG) : null;
+    final int batchsize = ParallelCore.getCore().getParallelism();
+    List<Callable<OutlierResult>> tasks = new ArrayList<>(batchsize);
+    for(int start = 0; start < subspaces.size(); start += batchsize) {
+      final int end = Math.min(start + batchsize, subspaces.size());
+      tasks.clear();
+      for(int i = start; i < end; i++) {
+        final long[] dimset = subspaces.get(i);
+        final int mult = multiplicity[i];
+        tasks.add(new Callable<OutlierResult>() {
+          @Override
+          public OutlierResult call() {
+            OutlierResult result = runLOF(database, relation, dimset);
+            if(prog != null) {
+              prog.incrementProcessed(mult, LOG);
+            }
+            return result;
+          }
+        });
+      }
+      List<OutlierResult> results = ParallelExecutor.call(tasks);
+      for(int i = start; i < end; i++) {
+        final OutlierResult r = results.get(i - start);
+        final DoubleRelation rscores = r.getScores();
+        if(breadth) {
+          double[] rs = allscores[i] = new double[size];
+          for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+            rs[iter.getOffset()] = rscores.doubleValue(iter);
+          }
+          int[] order = orders[i] = new int[size];
+          int j = 0;
+          for(DBIDIter iter = r.getOrdering().order(ids).iter(); iter.valid(); iter.advance(), j++) {
+            order[j] = offsets.intValue(iter);
+          }
+          if(j < size) {
+            LOG.warning("Incomplete result: Iterator does not contain |DB| DBIDs");
+            orders[i] = Arrays.copyOf(order, j);
+          }
+        }
+        else {
+          final int mult = multiplicity[i];
+          for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+            final double s = rscores.doubleValue(iter);
+            if(!Double.isNaN(s)) {
+              sums[iter.getOffset()] += mult == 1 ? s : mult * s;
+            }
+          }
         }
       }
+    }
+    LOG.ensureCompleted(prog);
 
+    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
+    DoubleMinMax minmax = new DoubleMinMax();
+    if(breadth) {
+      FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Combining results", size, LOG) : null;
+      // Repeated subspaces have the same ordering, and never contribute in
+      // breadth-first combination.
+      double[] combined = new double[size];
+      Arrays.fill(combined, Double.NaN);
       // Iterating over the *lines* of the AS_t(i)-matrix.
-      for(int i = 0; i < relation.size(); i++) {
+      for(int i = 0; i < size; i++) {
         // Iterating over the elements of a line (breadth-first).
-        for(Pair<DBIDIter, DoubleRelation> pair : IDVectorOntoScoreVector) {
-          DBIDIter iter = pair.first;
-          // Always true if every algorithm returns a complete result (one score
-          // for every DBID).
-          if(iter.valid()) {
-            double score = pair.second.doubleValue(iter);
-            if(Double.isNaN(scores.doubleValue(iter))) {
-              scores.putDouble(iter, score);
-              minmax.put(score);
-            }
-            iter.advance();
+        for(int j = 0; j < orders.length; j++) {
+          if(i >= orders[j].length) {
+            continue;
           }
-          else {
-            LOG.warning("Incomplete result: Iterator does not contain |DB| DBIDs");
+          final int off = orders[j][i];
+          if(Double.isNaN(combined[off])) {
+            combined[off] = allscores[j][off];
+            minmax.put(combined[off]);
           }
         }
-        // Progress does not take the initial mapping into account.
         LOG.incrementProcessed(cprog);
       }
       LOG.ensureCompleted(cprog);
+      for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        scores.putDouble(iter, combined[iter.getOffset()]);
+      }
     }
     else {
-      FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Combining results", relation.size(), LOG) : null;
-      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
-        double sum = 0.0;
-        for(OutlierResult r : results) {
-          final double s = r.getScores().doubleValue(iter);
-          if(!Double.isNaN(s)) {
-            sum += s;
-          }
-        }
+      for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        final double sum = sums[iter.getOffset()];
         scores.putDouble(iter, sum);
         minmax.put(sum);
-        LOG.incrementProcessed(cprog);
       }
-      LOG.ensureCompleted(cprog);
     }
     OutlierScoreMeta meta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax());
     DoubleRelation scoreres = new MaterializedDoubleRelation("Feature bagging", "fb-outlier", scores, relation.getDBIDs());
     return new OutlierResult(meta, scoreres);
   }
 
+  /**
+   * Run LOF in a single subspace.
+   * 
+   * The neighbors are materialized for this ensemble member only, and detached
+   * from the relation when the member completes, so that they are neither
+   * retained nor picked up by other algorithms.
+   * 
+   * @param database Database context
+   * @param relation Relation to use
+   * @param dimset Subspace
+   * @return LOF result
+   */
+  private OutlierResult runLOF(Database database, Relation<NumberVector> relation, long[] dimset) {
+    SubspaceEuclideanDistanceFunction df = new SubspaceEuclideanDistanceFunction(dimset);
+    LOF<NumberVector> lof = new LOF<>(k, df);
+    MaterializeKNNPreprocessor<NumberVector> preproc = new MaterializeKNNPreprocessor<>(relation, df, k + 1);
+    preproc.initialize();
+    final ResultHierarchy hier = relation.getHierarchy();
+    synchronized(hier) {
+      hier.add(relation, preproc);
+    }
+    try {
+      // run LOF and collect the result
+      return lof.run(database, relation);
+    }
+    finally {
+      synchronized(hier) {
+        hier.remove(relation, preproc);
+      }
+    }
+  }
+
   /**
    * Choose a random subspace.
    * 
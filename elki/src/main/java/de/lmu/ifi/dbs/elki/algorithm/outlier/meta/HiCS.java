@@ -24,6 +24,7 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.meta;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
@@ -31,13 +32,13 @@ import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.ThreadSafeAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
-import de.lmu.ifi.dbs.elki.data.VectorUtil;
-import de.lmu.ifi.dbs.elki.data.VectorUtil.SortDBIDsBySingleDimension;
 import de.lmu.ifi.dbs.elki.data.projection.NumericalFeatureSelection;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
@@ -46,7 +47,6 @@ import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -57,15 +57,18 @@ import de.lmu.ifi.dbs.elki.database.relation.ProjectedView;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.AbstractProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.math.random.RandomFactory;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.GoodnessOfFitTest;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.KolmogorovSmirnovTest;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.result.outlier.BasicOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.Heap;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.TopBoundedHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
@@ -92,6 +95,9 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
  * DC, USA
  * </p>
  * 
+ * If the outlier algorithm implements {@link ThreadSafeAlgorithm}, the
+ * subspaces are processed concurrently, otherwise sequentially.
+ * 
  * @author Jan Brusis
  * @author Erich Schubert
  * 
@@ -171,33 +177,39 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
    * @return The aggregated resulting scores that were assigned by the given
    *         outlier detection algorithm
    */
-  public OutlierResult run(Relation<V> relation) {
+  public OutlierResult run(final Relation<V> relation) {
     final DBIDs ids = relation.getDBIDs();
 
-    ArrayList<ArrayDBIDs> subspaceIndex = buildOneDimIndexes(relation);
-    Set<HiCSSubspace> subspaces = calculateSubspaces(relation, subspaceIndex, rnd.getSingleThreadedRandom());
+    SortedDimension[] subspaceIndex = buildOneDimIndexes(relation, DBIDUtil.ensureArray(ids));
+    Set<HiCSSubspace> subspaces = calculateSubspaces(subspaceIndex, rnd.getSingleThreadedRandom());
 
     if(LOG.isVerbose()) {
       LOG.verbose("Number of high-contrast subspaces: " + subspaces.size());
     }
-    List<DoubleRelation> results = new ArrayList<>();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Calculating Outlier scores for high Contrast subspaces", subspaces.size(), LOG) : null;
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Calculating Outlier scores for high Contrast subspaces", subspaces.size(), LOG) : null;
 
     // run outlier detection and collect the result
     // TODO extend so that any outlierAlgorithm can be used (use materialized
     // relation instead of SubspaceEuclideanDistanceFunction?)
-    for(HiCSSubspace dimset : subspaces) {
-      if(LOG.isVerbose()) {
-        LOG.verbose("Performing outlier detection in subspace " + dimset);
+    List<DoubleRelation> results;
+    if(outlierAlgorithm instanceof ThreadSafeAlgorithm) {
+      // The subspaces are independent, and are processed concurrently.
+      List<Callable<DoubleRelation>> tasks = new ArrayList<>(subspaces.size());
+      for(final HiCSSubspace dimset : subspaces) {
+        tasks.add(new Callable<DoubleRelation>() {
+          @Override
+          public DoubleRelation call() {
+            return runSubspace(relation, ids, dimset, prog);
+          }
+        });
+      }
+      results = ParallelExecutor.call(tasks);
+    }
+    else {
+      results = new ArrayList<>(subspaces.size());
+      for(HiCSSubspace dimset : subspaces) {
+        results.add(runSubspace(relation, ids, dimset, prog));
       }
-
-      ProxyDatabase pdb = new ProxyDatabase(ids);
-      pdb.addRelation(new ProjectedView<>(relation, new NumericalFeatureSelection<V>(dimset)));
-
-      // run LOF and collect the result
-      OutlierResult result = outlierAlgorithm.run(pdb);
-      results.add(result.getScores());
-      LOG.incrementProcessed(prog);
     }
     LOG.ensureCompleted(prog);
 
@@ -222,37 +234,69 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
   }
 
   /**
-   * Calculates "index structures" for every attribute, i.e. sorts a
-   * ModifiableArray of every DBID in the database for every dimension and
-   * stores them in a list
+   * Run the outlier detection algorithm in a single subspace.
+   * 
+   * @param relation Data relation
+   * @param ids Object ids
+   * @param dimset Subspace
+   * @param prog Progress
+   * @return Outlier scores in this subspace
+   */
+  private DoubleRelation runSubspace(Relation<V> relation, DBIDs ids, HiCSSubspace dimset, FiniteProgress prog) {
+    if(LOG.isVerbose()) {
+      LOG.verbose("Performing outlier detection in subspace " + dimset);
+    }
+
+    ProxyDatabase pdb = new ProxyDatabase(ids);
+    pdb.addRelation(new ProjectedView<>(relation, new NumericalFeatureSelection<V>(dimset)));
+
+    // run LOF and collect the result
+    OutlierResult result = outlierAlgorithm.run(pdb);
+    LOG.incrementProcessed(prog);
+    return result.getScores();
+  }
+
+  /**
+   * Calculates "index structures" for every attribute, i.e. sorts the objects
+   * by every dimension. The dimensions are sorted in parallel.
    * 
    * @param relation Relation to index
-   * @return List of sorted objects
+   * @param ids Object IDs, the offsets in this array are used for indexing
+   * @return Sorted index for every dimension
    */
-  private ArrayList<ArrayDBIDs> buildOneDimIndexes(Relation<? extends NumberVector> relation) {
+  private SortedDimension[] buildOneDimIndexes(final Relation<? extends NumberVector> relation, final ArrayDBIDs ids) {
     final int dim = RelationUtil.dimensionality(relation);
-    ArrayList<ArrayDBIDs> subspaceIndex = new ArrayList<>(dim + 1);
-
-    SortDBIDsBySingleDimension comp = new VectorUtil.SortDBIDsBySingleDimension(relation);
+    List<Callable<SortedDimension>> tasks = new ArrayList<>(dim);
     for(int i = 0; i < dim; i++) {
-      ArrayModifiableDBIDs amDBIDs = DBIDUtil.newArray(relation.getDBIDs());
-      comp.setDimension(i);
-      amDBIDs.sort(comp);
-      subspaceIndex.add(amDBIDs);
+      final int d = i;
+      tasks.add(new Callable<SortedDimension>() {
+        @Override
+        public SortedDimension call() {
+          final int size = ids.size();
+          double[] values = new double[size];
+          int[] order = new int[size];
+          for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+            final int off = iter.getOffset();
+            values[off] = relation.get(iter).doubleValue(d);
+            order[off] = off;
+          }
+          DoubleIntegerArrayQuickSort.sort(values, order, size);
+          return new SortedDimension(values, order);
+        }
+      });
     }
-
-    return subspaceIndex;
+    return ParallelExecutor.call(tasks).toArray(new SortedDimension[dim]);
   }
 
   /**
    * Identifies high contrast subspaces in a given full-dimensional database.
    * 
-   * @param relation the relation the HiCS should be evaluated for
    * @param subspaceIndex Subspace indexes
+   * @param random Random generator, to seed the Monte-Carlo iterations
    * @return a set of high contrast subspaces
    */
-  private Set<HiCSSubspace> calculateSubspaces(Relation<? extends NumberVector> relation, ArrayList<ArrayDBIDs> subspaceIndex, Random random) {
-    final int dbdim = RelationUtil.dimensionality(relation);
+  private Set<HiCSSubspace> calculateSubspaces(SortedDimension[] subspaceIndex, Random random) {
+    final int dbdim = subspaceIndex.length;
 
     FiniteProgress dprog = LOG.isVerbose() ? new FiniteProgress("Subspace dimensionality", dbdim, LOG) : null;
     if(dprog != null) {
@@ -263,16 +307,19 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
     TopBoundedHeap<HiCSSubspace> dDimensionalList = new TopBoundedHeap<>(cutoff, HiCSSubspace.SORT_BY_CONTRAST_ASC);
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Generating two-element subsets", (dbdim * (dbdim - 1)) >> 1, LOG) : null;
     // compute two-element sets of subspaces
+    ArrayList<HiCSSubspace> joined = new ArrayList<>((dbdim * (dbdim - 1)) >> 1);
     for(int i = 0; i < dbdim; i++) {
       for(int j = i + 1; j < dbdim; j++) {
         HiCSSubspace ts = new HiCSSubspace();
         ts.set(i);
         ts.set(j);
-        calculateContrast(relation, ts, subspaceIndex, random);
-        dDimensionalList.add(ts);
-        LOG.incrementProcessed(prog);
+        joined.add(ts);
       }
     }
+    calculateContrasts(joined, subspaceIndex, random, prog);
+    for(HiCSSubspace ts : joined) {
+      dDimensionalList.add(ts);
+    }
     LOG.ensureCompleted(prog);
 
     IndefiniteProgress qprog = LOG.isVerbose() ? new IndefiniteProgress("Testing subspace candidates", LOG) : null;
@@ -292,6 +339,7 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
       Collections.sort(candidateList, HiCSSubspace.SORT_BY_SUBSPACE);
 
       // TODO: optimize APRIORI style, by not even computing the bit set or?
+      joined.clear();
       for(int i = 0; i < candidateList.size() - 1; i++) {
         for(int j = i + 1; j < candidateList.size(); j++) {
           HiCSSubspace set1 = candidateList.get(i);
@@ -303,12 +351,13 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
           if(joinedSet.cardinality() != d) {
             continue;
           }
-
-          calculateContrast(relation, joinedSet, subspaceIndex, random);
-          dDimensionalList.add(joinedSet);
-          LOG.incrementProcessed(qprog);
+          joined.add(joinedSet);
         }
       }
+      calculateContrasts(joined, subspaceIndex, random, qprog);
+      for(HiCSSubspace joinedSet : joined) {
+        dDimensionalList.add(joinedSet);
+      }
       // Prune
       for(HiCSSubspace cand : candidateList) {
         for(Heap<HiCSSubspace>.UnorderedIter it = dDimensionalList.unorderedIter(); it.valid(); it.advance()) {
@@ -327,19 +376,50 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
     return subspaceList;
   }
 
+  /**
+   * Calculates the contrast of all candidate subspaces, in parallel.
+   * 
+   * Every candidate uses its own random generator, seeded from the given
+   * generator in candidate order, so the results do not depend on the thread
+   * scheduling.
+   * 
+   * @param candidates Candidate subspaces
+   * @param subspaceIndex Subspace indexes
+   * @param random Random generator, for seeding
+   * @param prog Progress to increment, may be {@code null}
+   */
+  private void calculateContrasts(List<HiCSSubspace> candidates, final SortedDimension[] subspaceIndex, Random random, final AbstractProgress prog) {
+    List<Callable<Void>> tasks = new ArrayList<>(candidates.size());
+    for(final HiCSSubspace cand : candidates) {
+      final long seed = random.nextLong();
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          calculateContrast(cand, subspaceIndex, new Random(seed));
+          LOG.incrementProcessed(prog);
+          return null;
+        }
+      });
+    }
+    ParallelExecutor.call(tasks);
+  }
+
   /**
    * Calculates the actual contrast of a given subspace.
    * 
-   * @param relation Relation to process
    * @param subspace Subspace
    * @param subspaceIndex Subspace indexes
+   * @param random Random generator
    */
-  private void calculateContrast(Relation<? extends NumberVector> relation, HiCSSubspace subspace, ArrayList<ArrayDBIDs> subspaceIndex, Random random) {
+  private void calculateContrast(HiCSSubspace subspace, SortedDimension[] subspaceIndex, Random random) {
+    final int size = subspaceIndex[0].order.length;
     final int card = subspace.cardinality();
     final double alpha1 = Math.pow(alpha, (1.0 / card));
-    final int windowsize = (int) (relation.size() * alpha1);
-    final FiniteProgress prog = LOG.isDebugging() ? new FiniteProgress("Monte-Carlo iterations", m, LOG) : null;
+    final int windowsize = (int) (size * alpha1);
 
+    // Conditioning dimensions, and their window starts.
+    int[] conddims = new int[card - 1], starts = new int[card - 1];
+    double[] sampleValues = new double[windowsize];
     int retries = 0;
     double deviationSum = 0.0;
     for(int i = 0; i < m; i++) {
@@ -348,25 +428,30 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
       for(int tmp = random.nextInt(card); tmp >= 0; tmp--) {
         chosen = subspace.nextSetBit(chosen + 1);
       }
-      // initialize sample
-      DBIDs conditionalSample = relation.getDBIDs();
-
-      for(int j = subspace.nextSetBit(0); j >= 0; j = subspace.nextSetBit(j + 1)) {
+      for(int j = subspace.nextSetBit(0), c = 0; j >= 0; j = subspace.nextSetBit(j + 1)) {
         if(j == chosen) {
           continue;
         }
-        ArrayDBIDs sortedIndices = subspaceIndex.get(j);
-        ArrayModifiableDBIDs indexBlock = DBIDUtil.newArray(windowsize);
-        // initialize index block
-        DBIDArrayIter iter = sortedIndices.iter();
-        iter.seek(random.nextInt(relation.size() - windowsize));
-        for(int k = 0; k < windowsize; k++, iter.advance()) {
-          indexBlock.add(iter); // select index block
+        conddims[c] = j;
+        starts[c] = random.nextInt(size - windowsize);
+        ++c;
+      }
+      // Conditional sample: objects within the windows of all conditioning
+      // dimensions. Scan the first window, and check the ranks of the others.
+      final SortedDimension full = subspaceIndex[chosen];
+      final int[] order = subspaceIndex[conddims[0]].order;
+      int samplesize = 0;
+      objects: for(int r = starts[0], end = starts[0] + windowsize; r < end; r++) {
+        final int off = order[r];
+        for(int c = 1; c < conddims.length; c++) {
+          final int rank = subspaceIndex[conddims[c]].rank[off] - starts[c];
+          if(rank < 0 || rank >= windowsize) {
+            continue objects;
+          }
         }
-
-        conditionalSample = DBIDUtil.intersection(conditionalSample, indexBlock);
+        sampleValues[samplesize++] = full.values[full.rank[off]];
       }
-      if(conditionalSample.size() < 10) {
+      if(samplesize < 10) {
         retries++;
         if(LOG.isDebugging()) {
           LOG.debug("Sample size very small. Retry no. " + retries);
@@ -379,34 +464,15 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
           continue;
         }
       }
-      // Project conditional set
-      double[] sampleValues = new double[conditionalSample.size()];
-      {
-        int l = 0;
-        for(DBIDIter iter = conditionalSample.iter(); iter.valid(); iter.advance()) {
-          sampleValues[l] = relation.get(iter).doubleValue(chosen);
-          l++;
-        }
-      }
-      // Project full set
-      double[] fullValues = new double[relation.size()];
-      {
-        int l = 0;
-        for(DBIDIter iter = subspaceIndex.get(chosen).iter(); iter.valid(); iter.advance()) {
-          fullValues[l] = relation.get(iter).doubleValue(chosen);
-          l++;
-        }
-      }
-      double contrast = statTest.deviation(fullValues, sampleValues);
+      // The tests may modify (sort) their input, so pass copies.
+      double contrast = statTest.deviation(full.values.clone(), Arrays.copyOf(sampleValues, samplesize));
       if(Double.isNaN(contrast)) {
         i--;
         LOG.warning("Contrast was NaN");
         continue;
       }
       deviationSum += contrast;
-      LOG.incrementProcessed(prog);
     }
-    LOG.ensureCompleted(prog);
     subspace.contrast = deviationSum / m;
   }
 
@@ -420,6 +486,45 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
     return LOG;
   }
 
+  /**
+   * Objects sorted by a single dimension, shared by all threads.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class SortedDimension {
+    /**
+     * Attribute values, in sorted order.
+     */
+    final double[] values;
+
+    /**
+     * Object offsets, in sorted order.
+     */
+    final int[] order;
+
+    /**
+     * Rank of each object (by offset) in the sorted order.
+     */
+    final int[] rank;
+
+    /**
+     * Constructor.
+     * 
+     * @param values Sorted values
+     * @param order Object offsets, in the same order
+     */
+    SortedDimension(double[] values, int[] order) {
+      this.values = values;
+      this.order = order;
+      this.rank = new int[order.length];
+      for(int i = 0; i < order.length; i++) {
+        rank[order[i]] = i;
+      }
+    }
+  }
+
   /**
    * BitSet that holds a contrast value as field. Used for the representation of
    * a subspace in HiCS
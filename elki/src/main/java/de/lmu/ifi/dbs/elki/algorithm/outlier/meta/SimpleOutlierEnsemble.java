@@ -26,9 +26,11 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.meta;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.Algorithm;
+import de.lmu.ifi.dbs.elki.algorithm.ThreadSafeAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
 import de.lmu.ifi.dbs.elki.data.type.CombinedTypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
@@ -45,11 +47,13 @@ import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.result.Result;
 import de.lmu.ifi.dbs.elki.result.ResultUtil;
 import de.lmu.ifi.dbs.elki.result.outlier.BasicOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
+import de.lmu.ifi.dbs.elki.utilities.DatabaseUtil;
 import de.lmu.ifi.dbs.elki.utilities.ensemble.EnsembleVoting;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
@@ -63,6 +67,12 @@ import de.lmu.ifi.dbs.elki.workflow.AlgorithmStep;
 /**
  * Simple outlier ensemble method.
  * 
+ * Members that implement {@link ThreadSafeAlgorithm} are run concurrently, all
+ * other members sequentially. Materialized kNN neighborhoods are shared
+ * between the members (see
+ * {@link de.lmu.ifi.dbs.elki.utilities.DatabaseUtil#beginKNNSharing}), and
+ * released when the ensemble completes.
+ * 
  * @author Erich Schubert
  * 
  * @apiviz.composedOf EnsembleVoting
@@ -97,24 +107,51 @@ public class SimpleOutlierEnsemble extends AbstractAlgorithm<OutlierResult> impl
   }
 
   @Override
-  public OutlierResult run(Database database) throws IllegalStateException {
+  public OutlierResult run(final Database database) throws IllegalStateException {
     int num = algorithms.size();
-    // Run inner outlier algorithms
+    // Run inner outlier algorithms. Members known to be thread safe run
+    // concurrently, the others sequentially; results are kept in order.
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Inner outlier algorithms", num, LOG) : null;
+    List<Callable<List<OutlierResult>>> tasks = new ArrayList<>(num);
+    List<Integer> concurrent = new ArrayList<>(num);
+    List<List<OutlierResult>> memberresults = new ArrayList<>(num);
+    DatabaseUtil.beginKNNSharing(database);
+    try {
+      for (int i = 0; i < num; i++) {
+        final Algorithm alg = algorithms.get(i);
+        memberresults.add(null);
+        if (!(alg instanceof ThreadSafeAlgorithm)) {
+          continue;
+        }
+        concurrent.add(i);
+        tasks.add(new Callable<List<OutlierResult>>() {
+          @Override
+          public List<OutlierResult> call() {
+            return runMember(alg, database, prog);
+          }
+        });
+      }
+      List<List<OutlierResult>> cresults = ParallelExecutor.call(tasks);
+      for (int j = 0; j < cresults.size(); j++) {
+        memberresults.set(concurrent.get(j), cresults.get(j));
+      }
+      for (int i = 0; i < num; i++) {
+        if (memberresults.get(i) == null) {
+          memberresults.set(i, runMember(algorithms.get(i), database, prog));
+        }
+      }
+    } finally {
+      DatabaseUtil.endKNNSharing(database);
+    }
     ModifiableDBIDs ids = DBIDUtil.newHashSet();
     ArrayList<OutlierResult> results = new ArrayList<>(num);
-    {
-      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Inner outlier algorithms", num, LOG) : null;
-      for (Algorithm alg : algorithms) {
-        Result res = alg.run(database);
-        List<OutlierResult> ors = ResultUtil.getOutlierResults(res);
-        for (OutlierResult or : ors) {
-          results.add(or);
-          ids.addDBIDs(or.getScores().getDBIDs());
-        }
-        LOG.incrementProcessed(prog);
+    for (List<OutlierResult> ors : memberresults) {
+      for (OutlierResult or : ors) {
+        results.add(or);
+        ids.addDBIDs(or.getScores().getDBIDs());
       }
-      LOG.ensureCompleted(prog);
     }
+    LOG.ensureCompleted(prog);
     // Combine
     WritableDoubleDataStore sumscore = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
     DoubleMinMax minmax = new DoubleMinMax();
@@ -152,6 +189,20 @@ public class SimpleOutlierEnsemble extends AbstractAlgorithm<OutlierResult> impl
     return new OutlierResult(meta, scores);
   }
 
+  /**
+   * Run a single ensemble member.
+   * 
+   * @param alg Algorithm to run
+   * @param database Database
+   * @param prog Progress
+   * @return Outlier results of the member
+   */
+  private static List<OutlierResult> runMember(Algorithm alg, Database database, FiniteProgress prog) {
+    Result res = alg.run(database);
+    LOG.incrementProcessed(prog);
+    return ResultUtil.getOutlierResults(res);
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -23,10 +23,21 @@ package de.lmu.ifi.dbs.elki.application;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.File;
+import java.io.IOException;
+
 import de.lmu.ifi.dbs.elki.KDDTask;
 import de.lmu.ifi.dbs.elki.algorithm.Algorithm;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.MetricsRegistry;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.checkpoint.CheckpointManager;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.workflow.OutputStep;
 
 /**
@@ -40,24 +51,101 @@ import de.lmu.ifi.dbs.elki.workflow.OutputStep;
  */
 @Alias({ "cli", "kddtask" })
 public class KDDCLIApplication extends AbstractApplication {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(KDDCLIApplication.class);
+
   /**
    * The KDD Task to perform.
    */
   KDDTask task;
 
+  /**
+   * Checkpoint directory, may be {@code null}.
+   */
+  File checkpoints;
+
+  /**
+   * Checkpoint interval in milliseconds.
+   */
+  long interval;
+
+  /**
+   * Resume from existing checkpoints.
+   */
+  boolean resume;
+
+  /**
+   * File to write metrics to, may be {@code null}.
+   */
+  File metrics;
+
+  /**
+   * Publish metrics via JMX.
+   */
+  boolean jmx;
+
   /**
    * Constructor.
    * 
    * @param task Task to run
    */
   public KDDCLIApplication(KDDTask task) {
+    this(task, null, 0L, false, null, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param task Task to run
+   * @param checkpoints Checkpoint directory, may be {@code null}
+   * @param interval Checkpoint interval in milliseconds
+   * @param resume Resume from existing checkpoints
+   * @param metrics File to write metrics to, may be {@code null}
+   * @param jmx Publish metrics via JMX
+   */
+  public KDDCLIApplication(KDDTask task, File checkpoints, long interval, boolean resume, File metrics, boolean jmx) {
     super();
     this.task = task;
+    this.checkpoints = checkpoints;
+    this.interval = interval;
+    this.resume = resume;
+    this.metrics = metrics;
+    this.jmx = jmx;
   }
 
   @Override
   public void run() {
-    task.run();
+    final boolean measure = metrics != null || jmx;
+    if(measure) {
+      MetricsRegistry.enable();
+      if(jmx) {
+        MetricsRegistry.registerJMX();
+      }
+    }
+    if(checkpoints != null) {
+      CheckpointManager.configure(checkpoints, interval, resume);
+    }
+    try {
+      task.run();
+    }
+    finally {
+      if(checkpoints != null) {
+        CheckpointManager.disable();
+      }
+      if(metrics != null) {
+        try {
+          MetricsRegistry.save(metrics);
+        }
+        catch(IOException e) {
+          LOG.exception("Could not write metrics to " + metrics, e);
+        }
+      }
+      if(measure) {
+        MetricsRegistry.disable();
+      }
+    }
   }
 
   /**
@@ -68,20 +156,93 @@ public class KDDCLIApplication extends AbstractApplication {
    * @apiviz.exclude
    */
   public static class Parameterizer extends AbstractApplication.Parameterizer {
+    /**
+     * Directory to store checkpoints of long-running algorithms in.
+     */
+    public static final OptionID CHECKPOINT_DIR_ID = new OptionID("checkpoint.dir", "Directory to store checkpoints of long-running algorithms in, to allow resuming an interrupted run.");
+
+    /**
+     * Minimum time between two checkpoints, in seconds.
+     */
+    public static final OptionID CHECKPOINT_INTERVAL_ID = new OptionID("checkpoint.interval", "Minimum time between two checkpoints, in seconds.");
+
+    /**
+     * Flag to resume from existing checkpoints.
+     */
+    public static final OptionID CHECKPOINT_RESUME_ID = new OptionID("checkpoint.resume", "Resume from existing checkpoints. The task must be configured exactly as the interrupted run.");
+
+    /**
+     * File to write runtime metrics to.
+     */
+    public static final OptionID METRICS_OUT_ID = new OptionID("metrics.out", "Collect runtime metrics (distance computations, page accesses, query latencies, runtimes), and write them to this file at the end of the run; as JSON if the file name ends with .json, as CSV otherwise.");
+
+    /**
+     * Flag to publish runtime metrics via JMX.
+     */
+    public static final OptionID METRICS_JMX_ID = new OptionID("metrics.jmx", "Collect runtime metrics, and publish them via JMX while running.");
+
     /**
      * The KDD Task to perform.
      */
     protected KDDTask task;
 
+    /**
+     * Checkpoint directory.
+     */
+    protected File checkpoints = null;
+
+    /**
+     * Checkpoint interval in milliseconds.
+     */
+    protected long interval = 0L;
+
+    /**
+     * Resume from existing checkpoints.
+     */
+    protected boolean resume = false;
+
+    /**
+     * Metrics output file.
+     */
+    protected File metrics = null;
+
+    /**
+     * Publish metrics via JMX.
+     */
+    protected boolean jmx = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
       task = config.tryInstantiate(KDDTask.class);
+      FileParameter dirP = new FileParameter(CHECKPOINT_DIR_ID, FileParameter.FileType.OUTPUT_FILE);
+      dirP.setOptional(true);
+      if(config.grab(dirP)) {
+        checkpoints = dirP.getValue();
+        DoubleParameter intervalP = new DoubleParameter(CHECKPOINT_INTERVAL_ID, 600.) //
+        .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE);
+        if(config.grab(intervalP)) {
+          interval = (long) (intervalP.doubleValue() * 1000.);
+        }
+        Flag resumeF = new Flag(CHECKPOINT_RESUME_ID);
+        if(config.grab(resumeF)) {
+          resume = resumeF.isTrue();
+        }
+      }
+      FileParameter metricsP = new FileParameter(METRICS_OUT_ID, FileParameter.FileType.OUTPUT_FILE);
+      metricsP.setOptional(true);
+      if(config.grab(metricsP)) {
+        metrics = metricsP.getValue();
+      }
+      Flag jmxF = new Flag(METRICS_JMX_ID);
+      if(config.grab(jmxF)) {
+        jmx = jmxF.isTrue();
+      }
     }
 
     @Override
     protected KDDCLIApplication makeInstance() {
-      return new KDDCLIApplication(task);
+      return new KDDCLIApplication(task, checkpoints, interval, resume, metrics, jmx);
     }
   }
 
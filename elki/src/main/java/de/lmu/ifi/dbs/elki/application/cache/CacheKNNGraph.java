@@ -0,0 +1,264 @@
+package de.lmu.ifi.dbs.elki.application.cache;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+
+import de.lmu.ifi.dbs.elki.application.AbstractApplication;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MappedKNNGraphIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.ArrayTask;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.workflow.InputStep;
+
+/**
+ * Precompute the k nearest neighbors into a binary kNN graph file with fixed
+ * width rows, which can be memory-mapped using {@link MappedKNNGraphIndex}.
+ * Neighbors are stored by their position in the relation.
+ * 
+ * The neighbors are computed in parallel, and written directly into the mapped
+ * output file.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.has DistanceFunction
+ * @apiviz.uses MappedKNNGraphIndex
+ * 
+ * @param <O> Object type
+ */
+public class CacheKNNGraph<O> extends AbstractApplication {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(CacheKNNGraph.class);
+
+  /**
+   * Data source to process.
+   */
+  private InputStep input;
+
+  /**
+   * Distance function that is to be cached.
+   */
+  private DistanceFunction<O> distance;
+
+  /**
+   * Number of neighbors to precompute.
+   */
+  private int k;
+
+  /**
+   * Store distances as float.
+   */
+  private boolean isfloat;
+
+  /**
+   * Output file.
+   */
+  private File out;
+
+  /**
+   * Constructor.
+   * 
+   * @param input Data source
+   * @param distance Distance function
+   * @param k Number of nearest neighbors
+   * @param isfloat Store distances as float
+   * @param out Graph output file
+   */
+  public CacheKNNGraph(InputStep input, DistanceFunction<O> distance, int k, boolean isfloat, File out) {
+    super();
+    this.input = input;
+    this.distance = distance;
+    this.k = k;
+    this.isfloat = isfloat;
+    this.out = out;
+  }
+
+  @Override
+  public void run() {
+    Database database = input.getDatabase();
+    Relation<O> relation = database.getRelation(distance.getInputTypeRestriction());
+    DistanceQuery<O> distanceQuery = database.getDistanceQuery(relation, distance);
+    final KNNQuery<O> knnQ = database.getKNNQuery(distanceQuery, k, DatabaseQuery.HINT_HEAVY_USE);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int n = ids.size(), dwidth = isfloat ? 4 : 8;
+    final int rowsize = MappedKNNGraphIndex.rowSize(k, dwidth);
+    final WritableIntegerDataStore rowmap = MappedKNNGraphIndex.makeRowMap(ids);
+
+    try (RandomAccessFile file = new RandomAccessFile(out, "rw");
+        FileChannel channel = file.getChannel();
+        // and acquire a file write lock
+        FileLock lock = channel.lock()) {
+      final long rowstart = MappedKNNGraphIndex.HEADER_SIZE;
+      file.setLength(rowstart + (long) rowsize * n);
+      file.writeInt(MappedKNNGraphIndex.KNN_GRAPH_MAGIC);
+      file.writeInt(dwidth);
+      file.writeInt(n);
+      file.writeInt(k);
+
+      final MappedByteBuffer[] rows = MappedKNNGraphIndex.mapRows(channel, MapMode.READ_WRITE, rowstart, n, rowsize);
+      final int per = MappedKNNGraphIndex.rowsPerBuffer(rowsize);
+      final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Computing kNN", n, LOG) : null;
+      // Rows have a fixed width, so every task writes to its own region.
+      ParallelExecutor.run(ids, new ArrayTask() {
+        @Override
+        public void process(DBIDArrayIter it) {
+          final KNNList nn = knnQ.getKNNForDBID(it, k);
+          final int row = it.getOffset(), size = Math.min(nn.size(), k);
+          final MappedByteBuffer buf = rows[row / per];
+          int p = (row % per) * rowsize;
+          buf.putInt(p, size);
+          p += 4;
+          int c = 0;
+          for(DoubleDBIDListIter ni = nn.iter(); ni.valid() && c < size; ni.advance(), c++) {
+            buf.putInt(p, rowmap.intValue(ni));
+            if(isfloat) {
+              buf.putFloat(p + 4, (float) ni.doubleValue());
+            }
+            else {
+              buf.putDouble(p + 4, ni.doubleValue());
+            }
+            p += 4 + dwidth;
+          }
+        }
+      }, prog, LOG);
+      LOG.ensureCompleted(prog);
+      for(MappedByteBuffer buf : rows) {
+        buf.force();
+      }
+      lock.release();
+    }
+    catch(IOException e) {
+      LOG.exception(e);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends AbstractApplication.Parameterizer {
+    /**
+     * Flag to store distances with float precision only.
+     * <p>
+     * Key: {@code -loader.float}
+     * </p>
+     */
+    public static final OptionID FLOAT_ID = new OptionID("loader.float", "Store distances with float precision, to reduce the file size.");
+
+    /**
+     * Data source to process.
+     */
+    private InputStep input = null;
+
+    /**
+     * Distance function that is to be cached.
+     */
+    private DistanceFunction<O> distance = null;
+
+    /**
+     * Number of neighbors to precompute.
+     */
+    private int k;
+
+    /**
+     * Store distances as float.
+     */
+    private boolean isfloat;
+
+    /**
+     * Output file.
+     */
+    private File out = null;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      input = config.tryInstantiate(InputStep.class);
+      // Distance function parameter
+      final ObjectParameter<DistanceFunction<O>> dpar = new ObjectParameter<>(CacheDoubleDistanceKNNLists.Parameterizer.DISTANCE_ID, DistanceFunction.class);
+      if(config.grab(dpar)) {
+        distance = dpar.instantiateClass(config);
+      }
+      final IntParameter kpar = new IntParameter(CacheDoubleDistanceKNNLists.Parameterizer.K_ID);
+      kpar.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(kpar)) {
+        k = kpar.intValue();
+      }
+      final Flag floatF = new Flag(FLOAT_ID);
+      if(config.grab(floatF)) {
+        isfloat = floatF.isTrue();
+      }
+      // Output file parameter
+      final FileParameter cpar = new FileParameter(CacheDoubleDistanceKNNLists.Parameterizer.CACHE_ID, FileParameter.FileType.OUTPUT_FILE);
+      if(config.grab(cpar)) {
+        out = cpar.getValue();
+      }
+    }
+
+    @Override
+    protected CacheKNNGraph<O> makeInstance() {
+      return new CacheKNNGraph<>(input, distance, k, isfloat, out);
+    }
+  }
+
+  /**
+   * Main method, delegate to super class.
+   * 
+   * @param args Command line arguments
+   */
+  public static void main(String[] args) {
+    runCLIApplication(CacheKNNGraph.class, args);
+  }
+}
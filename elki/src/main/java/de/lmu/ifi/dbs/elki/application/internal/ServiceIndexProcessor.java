@@ -0,0 +1,296 @@
+package de.lmu.ifi.dbs.elki.application.internal;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor to build the service index at compile time.
+ *
+ * For every class that the {@link de.lmu.ifi.dbs.elki.utilities.ELKIServiceScanner}
+ * would find by scanning the class path (i.e. non-abstract classes that have a
+ * public constructor without arguments or a parameterizer), the index file
+ * contains one line: the class name, the names of all its super classes and
+ * interfaces, and its aliases prefixed with {@code @}. At runtime, the index
+ * is read instead of loading and inspecting every class on the class path.
+ *
+ * When only some of the sources are recompiled, the existing index entries of
+ * the other classes are kept.
+ *
+ * This processor must be compiled before the remaining sources, see the
+ * compiler plugin configuration in the Maven build.
+ *
+ * @author Erich Schubert
+ */
+@SupportedAnnotationTypes("*")
+public class ServiceIndexProcessor extends AbstractProcessor {
+  /**
+   * Name of the index resource.
+   */
+  public static final String INDEX_RESOURCE = "META-INF/elki.index";
+
+  /**
+   * Parameterizer interface name.
+   */
+  private static final String PARAMETERIZER = "de.lmu.ifi.dbs.elki.utilities.optionhandling.Parameterizer";
+
+  /**
+   * Alias annotation name.
+   */
+  private static final String ALIAS = "de.lmu.ifi.dbs.elki.utilities.Alias";
+
+  /**
+   * Index entries, by class name.
+   */
+  private Map<String, String> index = new TreeMap<>();
+
+  /**
+   * Classes processed in this compilation.
+   */
+  private Set<String> processed = new LinkedHashSet<>();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    if(roundEnv.processingOver()) {
+      writeIndex();
+      return false;
+    }
+    for(Element e : roundEnv.getRootElements()) {
+      if(e instanceof TypeElement) {
+        processType((TypeElement) e);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Process a type, and its nested factory class.
+   *
+   * @param type Type
+   */
+  private void processType(TypeElement type) {
+    processed.add(binaryName(type));
+    // The scanner only considers top level classes and factories.
+    for(Element e : type.getEnclosedElements()) {
+      if(e instanceof TypeElement && e.getSimpleName().contentEquals("Factory")) {
+        processed.add(binaryName((TypeElement) e));
+        processClass((TypeElement) e);
+      }
+    }
+    processClass(type);
+  }
+
+  /**
+   * Add a class to the index, if it is instantiable.
+   *
+   * @param type Class
+   */
+  private void processClass(TypeElement type) {
+    if(type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT) || type.getModifiers().contains(Modifier.PRIVATE)) {
+      return;
+    }
+    if(type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+      return;
+    }
+    if(!hasPublicConstructor(type) && !hasParameterizer(type)) {
+      return;
+    }
+    StringBuilder buf = new StringBuilder(200).append(binaryName(type));
+    Set<String> ancestors = new LinkedHashSet<>();
+    collectAncestors(type.asType(), ancestors);
+    for(String a : ancestors) {
+      buf.append(' ').append(a);
+    }
+    for(AnnotationMirror am : type.getAnnotationMirrors()) {
+      if(!((TypeElement) am.getAnnotationType().asElement()).getQualifiedName().contentEquals(ALIAS)) {
+        continue;
+      }
+      for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> v : am.getElementValues().entrySet()) {
+        Object val = v.getValue().getValue();
+        if(val instanceof List) {
+          for(Object alias : (List<?>) val) {
+            buf.append(" @").append(((AnnotationValue) alias).getValue());
+          }
+        }
+      }
+    }
+    index.put(binaryName(type), buf.toString());
+  }
+
+  /**
+   * Test for a public constructor without arguments.
+   *
+   * @param type Class
+   * @return {@code true} if the class has a public constructor
+   */
+  private static boolean hasPublicConstructor(TypeElement type) {
+    if(!type.getModifiers().contains(Modifier.PUBLIC)) {
+      return false;
+    }
+    for(Element e : type.getEnclosedElements()) {
+      if(e.getKind() == ElementKind.CONSTRUCTOR && e.getModifiers().contains(Modifier.PUBLIC) && ((ExecutableElement) e).getParameters().isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Test for a nested parameterizer class.
+   *
+   * @param type Class
+   * @return {@code true} if the class has a parameterizer
+   */
+  private boolean hasParameterizer(TypeElement type) {
+    TypeElement par = processingEnv.getElementUtils().getTypeElement(PARAMETERIZER);
+    if(par == null) {
+      return false;
+    }
+    TypeMirror partype = processingEnv.getTypeUtils().erasure(par.asType());
+    for(Element e : type.getEnclosedElements()) {
+      if(e instanceof TypeElement && processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(e.asType()), partype)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Collect the names of all super classes and interfaces.
+   *
+   * @param type Type
+   * @param ancestors Output set
+   */
+  private void collectAncestors(TypeMirror type, Set<String> ancestors) {
+    for(TypeMirror sup : processingEnv.getTypeUtils().directSupertypes(type)) {
+      if(sup.getKind() != TypeKind.DECLARED) {
+        continue;
+      }
+      TypeElement supe = (TypeElement) ((DeclaredType) sup).asElement();
+      final String name = binaryName(supe);
+      if("java.lang.Object".equals(name)) {
+        continue; // Implicit.
+      }
+      if(ancestors.add(name)) {
+        collectAncestors(sup, ancestors);
+      }
+    }
+  }
+
+  /**
+   * Get the binary name of a class, as used by the class loader.
+   *
+   * @param type Type
+   * @return Binary name
+   */
+  private String binaryName(TypeElement type) {
+    return processingEnv.getElementUtils().getBinaryName(type).toString();
+  }
+
+  /**
+   * Write the index file, merging with existing entries of classes that were
+   * not compiled this time.
+   */
+  private void writeIndex() {
+    if(processed.isEmpty()) {
+      return;
+    }
+    try {
+      FileObject old = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+      try (BufferedReader r = new BufferedReader(new InputStreamReader(old.openInputStream(), StandardCharsets.UTF_8))) {
+        for(String line = r.readLine(); line != null; line = r.readLine()) {
+          int p = line.indexOf(' ');
+          String cname = p < 0 ? line : line.substring(0, p);
+          if(!processed.contains(cname) && !index.containsKey(cname) && classExists(cname)) {
+            index.put(cname, line);
+          }
+        }
+      }
+    }
+    catch(IOException e) {
+      // No previous index.
+    }
+    try {
+      FileObject out = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+      try (Writer w = out.openWriter()) {
+        for(String line : index.values()) {
+          w.append(line).append('\n');
+        }
+      }
+    }
+    catch(IOException e) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Could not write the service index: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Test if a class file exists in the output directory.
+   *
+   * @param cname Class name
+   * @return {@code true} if the class file exists
+   */
+  private boolean classExists(String cname) {
+    try {
+      FileObject f = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", cname.replace('.', '/') + ".class");
+      f.openInputStream().close();
+      return true;
+    }
+    catch(IOException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package de.lmu.ifi.dbs.elki.database.ids;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Compressed bitmap of DBIDs, over the offsets within a static
+ * {@link DBIDRange}.
+ * 
+ * Bitmaps are much more compact than hash sets for large subsets of the
+ * database, and set operations (union, intersection, difference) with other
+ * bitmaps over the same range operate on whole machine words.
+ * 
+ * @author Erich Schubert
+ */
+public interface BitmapDBIDs extends SetDBIDs {
+  /**
+   * Get the range the offsets refer to.
+   * 
+   * @return DBID range
+   */
+  DBIDRange getRange();
+
+  /**
+   * Compute the size of the intersection with another set of DBIDs.
+   * 
+   * @param other Other DBIDs
+   * @return Intersection size
+   */
+  int intersectionSize(DBIDs other);
+}
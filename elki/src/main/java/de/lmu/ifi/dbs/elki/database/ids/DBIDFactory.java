@@ -180,6 +180,23 @@ public interface DBIDFactory {
    */
   HashSetModifiableDBIDs newHashSet(DBIDs existing);
 
+  /**
+   * Make a new (modifiable) compressed bitmap of DBIDs.
+   * 
+   * @param range Range of valid DBIDs
+   * @return New bitmap
+   */
+  BitmapModifiableDBIDs newBitmapSet(DBIDRange range);
+
+  /**
+   * Make a new (modifiable) compressed bitmap of DBIDs.
+   * 
+   * @param range Range of valid DBIDs
+   * @param existing existing DBIDs to use
+   * @return New bitmap
+   */
+  BitmapModifiableDBIDs newBitmapSet(DBIDRange range, DBIDs existing);
+
   /**
    * Create an heap for kNN search.
    * 
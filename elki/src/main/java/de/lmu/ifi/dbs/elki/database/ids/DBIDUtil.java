@@ -293,6 +293,42 @@ public final class DBIDUtil {
     return DBIDFactory.FACTORY.newHashSet(existing);
   }
 
+  /**
+   * Make a new (modifiable) compressed bitmap of DBIDs.
+   * 
+   * @param range Range of valid DBIDs
+   * @return New bitmap
+   */
+  public static BitmapModifiableDBIDs newBitmapSet(DBIDRange range) {
+    return DBIDFactory.FACTORY.newBitmapSet(range);
+  }
+
+  /**
+   * Make a new (modifiable) compressed bitmap of DBIDs.
+   * 
+   * @param range Range of valid DBIDs
+   * @param existing Existing DBIDs, must be within the range
+   * @return New bitmap
+   */
+  public static BitmapModifiableDBIDs newBitmapSet(DBIDRange range, DBIDs existing) {
+    return DBIDFactory.FACTORY.newBitmapSet(range, existing);
+  }
+
+  /**
+   * Make a new (modifiable) set for subsets of the given DBIDs.
+   * 
+   * For static DBID ranges, this is a compressed bitmap; otherwise a hash set.
+   * 
+   * @param domain All DBIDs that may be added to the set
+   * @return New set
+   */
+  public static ModifiableDBIDs newBitmapOrHashSet(DBIDs domain) {
+    if(domain instanceof DBIDRange) {
+      return newBitmapSet((DBIDRange) domain);
+    }
+    return newHashSet();
+  }
+
   /**
    * Compute the set intersection of two sets.
    * 
@@ -302,6 +338,11 @@ public final class DBIDUtil {
    */
   // TODO: optimize better?
   public static ModifiableDBIDs intersection(DBIDs first, DBIDs second) {
+    if(first instanceof BitmapDBIDs && second instanceof BitmapDBIDs) {
+      BitmapModifiableDBIDs inter = newBitmapSet(((BitmapDBIDs) first).getRange(), first);
+      inter.retainAll(second);
+      return inter;
+    }
     if(first.size() > second.size()) {
       return intersection(second, first);
     }
@@ -322,6 +363,12 @@ public final class DBIDUtil {
    * @return size
    */
   public static int intersectionSize(DBIDs first, DBIDs second) {
+    if(first instanceof BitmapDBIDs) {
+      return ((BitmapDBIDs) first).intersectionSize(second);
+    }
+    if(second instanceof BitmapDBIDs) {
+      return ((BitmapDBIDs) second).intersectionSize(first);
+    }
     // If exactly one is a Set, use it as second parameter.
     if(second instanceof SetDBIDs) {
       if(!(first instanceof SetDBIDs)) {
@@ -399,6 +446,14 @@ public final class DBIDUtil {
    * @return the union of ids1 and ids2 without duplicates
    */
   public static ModifiableDBIDs union(DBIDs ids1, DBIDs ids2) {
+    if(ids1 instanceof BitmapDBIDs && ids2 instanceof BitmapDBIDs) {
+      final DBIDRange range = ((BitmapDBIDs) ids1).getRange();
+      if(sameRange(range, ((BitmapDBIDs) ids2).getRange())) {
+        BitmapModifiableDBIDs result = newBitmapSet(range, ids1);
+        result.addDBIDs(ids2);
+        return result;
+      }
+    }
     ModifiableDBIDs result = DBIDUtil.newHashSet(Math.max(ids1.size(), ids2.size()));
     result.addDBIDs(ids1);
     result.addDBIDs(ids2);
@@ -413,11 +468,30 @@ public final class DBIDUtil {
    * @return the difference of ids1 minus ids2
    */
   public static ModifiableDBIDs difference(DBIDs ids1, DBIDs ids2) {
+    if(ids1 instanceof BitmapDBIDs) {
+      BitmapModifiableDBIDs result = newBitmapSet(((BitmapDBIDs) ids1).getRange(), ids1);
+      result.removeDBIDs(ids2);
+      return result;
+    }
     ModifiableDBIDs result = DBIDUtil.newHashSet(ids1);
     result.removeDBIDs(ids2);
     return result;
   }
 
+  /**
+   * Test whether two ranges are the same.
+   * 
+   * @param r1 First range
+   * @param r2 Second range
+   * @return {@code true} when they contain the same DBIDs
+   */
+  private static boolean sameRange(DBIDRange r1, DBIDRange r2) {
+    if(r1 == r2) {
+      return true;
+    }
+    return r1.size() == r2.size() && (r1.size() == 0 || equal(r1.iter(), r2.iter()));
+  }
+
   /**
    * Wrap an existing DBIDs collection to be unmodifiable.
    * 
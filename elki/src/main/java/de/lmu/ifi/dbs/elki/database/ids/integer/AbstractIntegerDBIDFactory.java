@@ -23,9 +23,11 @@ package de.lmu.ifi.dbs.elki.database.ids.integer;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.BitmapModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDFactory;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDPair;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
@@ -121,6 +123,16 @@ abstract class AbstractIntegerDBIDFactory implements DBIDFactory {
     return new TroveHashSetModifiableDBIDs(existing);
   }
 
+  @Override
+  public BitmapModifiableDBIDs newBitmapSet(DBIDRange range) {
+    return new BitmapModifiableIntegerDBIDs(range);
+  }
+
+  @Override
+  public BitmapModifiableDBIDs newBitmapSet(DBIDRange range, DBIDs existing) {
+    return new BitmapModifiableIntegerDBIDs(range, existing);
+  }
+
   @Override
   public DBIDPair newPair(DBIDRef first, DBIDRef second) {
     return new IntegerDBIDPair(first.internalGetIndex(), second.internalGetIndex());
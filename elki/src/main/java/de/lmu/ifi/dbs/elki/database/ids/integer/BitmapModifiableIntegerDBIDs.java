@@ -0,0 +1,951 @@
+package de.lmu.ifi.dbs.elki.database.ids.integer;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.database.ids.BitmapModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDMIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+
+/**
+ * Compressed bitmap of DBIDs, using the container layout of "roaring" bitmaps.
+ * 
+ * The offsets within the range are split into the upper and lower 16 bits.
+ * For every upper half present, there is one container storing the lower
+ * halves: sparse containers use a sorted array of {@code char}, dense
+ * containers (more than 4096 elements) a plain bitmap of 1024 words.
+ * 
+ * Reference:
+ * <p>
+ * S. Chambi, D. Lemire, O. Kaser, R. Godin<br />
+ * Better bitmap performance with Roaring bitmaps<br />
+ * Software: Practice and Experience 46(5)
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.composedOf Container
+ * @apiviz.has Itr
+ */
+class BitmapModifiableIntegerDBIDs implements BitmapModifiableDBIDs, IntegerDBIDs {
+  /**
+   * Maximum size of array containers.
+   */
+  static final int ARRAY_MAX = 4096;
+
+  /**
+   * Number of words in a bitmap container.
+   */
+  static final int BITMAP_WORDS = 1024;
+
+  /**
+   * Range the offsets refer to.
+   */
+  private final DBIDRange range;
+
+  /**
+   * First integer DBID in the range.
+   */
+  private final int start;
+
+  /**
+   * Size of the range.
+   */
+  private final int len;
+
+  /**
+   * Upper 16 bits of the containers, sorted.
+   */
+  private char[] keys;
+
+  /**
+   * Containers.
+   */
+  private Container[] conts;
+
+  /**
+   * Number of containers in use.
+   */
+  private int ncont = 0;
+
+  /**
+   * Number of elements.
+   */
+  private int size = 0;
+
+  /**
+   * Constructor.
+   * 
+   * @param range DBID range
+   */
+  protected BitmapModifiableIntegerDBIDs(DBIDRange range) {
+    super();
+    this.range = range;
+    this.len = range.size();
+    this.start = len > 0 ? range.iter().internalGetIndex() : 0;
+    this.keys = new char[4];
+    this.conts = new Container[4];
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param range DBID range
+   * @param existing Existing IDs
+   */
+  protected BitmapModifiableIntegerDBIDs(DBIDRange range, DBIDs existing) {
+    this(range);
+    this.addDBIDs(existing);
+  }
+
+  @Override
+  public DBIDRange getRange() {
+    return range;
+  }
+
+  /**
+   * Get the offset of a DBID.
+   * 
+   * @param id DBID
+   * @return Offset, or -1 when not in the range.
+   */
+  private int offset(DBIDRef id) {
+    final int off = id.internalGetIndex() - start;
+    return (off >= 0 && off < len) ? off : -1;
+  }
+
+  /**
+   * Find the container for the given upper bits.
+   * 
+   * @param key Upper bits
+   * @return Container position, or {@code -(insertion point) - 1}.
+   */
+  private int find(char key) {
+    return Arrays.binarySearch(keys, 0, ncont, key);
+  }
+
+  /**
+   * Test whether another set is a bitmap over the same range.
+   * 
+   * @param ids Other set
+   * @return Compatible bitmap, or {@code null}
+   */
+  private BitmapModifiableIntegerDBIDs compatible(DBIDs ids) {
+    if(ids instanceof BitmapModifiableIntegerDBIDs) {
+      BitmapModifiableIntegerDBIDs other = (BitmapModifiableIntegerDBIDs) ids;
+      if(other.start == start && other.len == len) {
+        return other;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Insert a new container.
+   * 
+   * @param i Position
+   * @param key Upper bits
+   * @param c Container
+   */
+  private void insertContainer(int i, char key, Container c) {
+    if(ncont == keys.length) {
+      keys = Arrays.copyOf(keys, ncont << 1);
+      conts = Arrays.copyOf(conts, ncont << 1);
+    }
+    System.arraycopy(keys, i, keys, i + 1, ncont - i);
+    System.arraycopy(conts, i, conts, i + 1, ncont - i);
+    keys[i] = key;
+    conts[i] = c;
+    ++ncont;
+  }
+
+  /**
+   * Remove a container.
+   * 
+   * @param i Position
+   */
+  private void removeContainer(int i) {
+    --ncont;
+    System.arraycopy(keys, i + 1, keys, i, ncont - i);
+    System.arraycopy(conts, i + 1, conts, i, ncont - i);
+    conts[ncont] = null;
+  }
+
+  /**
+   * Update the element count after a bulk operation.
+   */
+  private void recount() {
+    int s = 0;
+    for(int i = 0; i < ncont; i++) {
+      s += conts[i].card;
+    }
+    size = s;
+  }
+
+  @Override
+  public boolean add(DBIDRef id) {
+    final int off = offset(id);
+    if(off < 0) {
+      throw new IllegalArgumentException("DBID " + id.internalGetIndex() + " is not in the range of this bitmap.");
+    }
+    final char key = (char) (off >>> 16);
+    int i = find(key);
+    if(i < 0) {
+      i = -i - 1;
+      insertContainer(i, key, new ArrayContainer(4));
+    }
+    final int before = conts[i].card;
+    conts[i] = conts[i].add(off & 0xFFFF);
+    if(conts[i].card == before) {
+      return false;
+    }
+    ++size;
+    return true;
+  }
+
+  @Override
+  public boolean remove(DBIDRef id) {
+    final int off = offset(id);
+    return off >= 0 && removeOffset((char) (off >>> 16), off & 0xFFFF);
+  }
+
+  /**
+   * Remove an offset.
+   * 
+   * @param key Upper bits
+   * @param low Lower bits
+   * @return {@code true} when removed
+   */
+  private boolean removeOffset(char key, int low) {
+    final int i = find(key);
+    if(i < 0) {
+      return false;
+    }
+    final int before = conts[i].card;
+    conts[i] = conts[i].remove(low);
+    if(conts[i].card == before) {
+      return false;
+    }
+    --size;
+    if(conts[i].card == 0) {
+      removeContainer(i);
+    }
+    return true;
+  }
+
+  @Override
+  public boolean contains(DBIDRef o) {
+    final int off = offset(o);
+    if(off < 0) {
+      return false;
+    }
+    final int i = find((char) (off >>> 16));
+    return i >= 0 && conts[i].contains(off & 0xFFFF);
+  }
+
+  @Override
+  public boolean addDBIDs(DBIDs ids) {
+    final BitmapModifiableIntegerDBIDs other = compatible(ids);
+    if(other == null) {
+      boolean success = false;
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        success |= add(iter);
+      }
+      return success;
+    }
+    final int before = size;
+    for(int j = 0; j < other.ncont; j++) {
+      int i = find(other.keys[j]);
+      if(i < 0) {
+        insertContainer(-i - 1, other.keys[j], other.conts[j].copy());
+      }
+      else {
+        conts[i] = conts[i].or(other.conts[j]);
+      }
+    }
+    recount();
+    return size != before;
+  }
+
+  @Override
+  public boolean removeDBIDs(DBIDs ids) {
+    final BitmapModifiableIntegerDBIDs other = compatible(ids);
+    if(other == null) {
+      boolean success = false;
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        success |= remove(iter);
+      }
+      return success;
+    }
+    final int before = size;
+    for(int j = 0; j < other.ncont; j++) {
+      final int i = find(other.keys[j]);
+      if(i >= 0) {
+        conts[i] = conts[i].andNot(other.conts[j]);
+        if(conts[i].card == 0) {
+          removeContainer(i);
+        }
+      }
+    }
+    recount();
+    return size != before;
+  }
+
+  @Override
+  public boolean retainAll(DBIDs set) {
+    final BitmapModifiableIntegerDBIDs other = compatible(set);
+    if(other == null) {
+      boolean modified = false;
+      for(DBIDMIter it = iter(); it.valid(); it.advance()) {
+        if(!set.contains(it)) {
+          it.remove();
+          modified = true;
+        }
+      }
+      return modified;
+    }
+    final int before = size;
+    for(int i = ncont - 1; i >= 0; i--) {
+      final int j = other.find(keys[i]);
+      if(j >= 0) {
+        conts[i] = conts[i].and(other.conts[j]);
+      }
+      if(j < 0 || conts[i].card == 0) {
+        removeContainer(i);
+      }
+    }
+    recount();
+    return size != before;
+  }
+
+  @Override
+  public int intersectionSize(DBIDs ids) {
+    final BitmapModifiableIntegerDBIDs other = compatible(ids);
+    int c = 0;
+    if(other == null) {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        if(contains(iter)) {
+          c++;
+        }
+      }
+      return c;
+    }
+    for(int i = 0, j = 0; i < ncont && j < other.ncont;) {
+      if(keys[i] < other.keys[j]) {
+        ++i;
+      }
+      else if(keys[i] > other.keys[j]) {
+        ++j;
+      }
+      else {
+        c += conts[i++].andCardinality(other.conts[j++]);
+      }
+    }
+    return c;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(conts, 0, ncont, null);
+    ncont = 0;
+    size = 0;
+  }
+
+  @Override
+  public void pop(DBIDVar outvar) {
+    if(size == 0) {
+      throw new ArrayIndexOutOfBoundsException("Cannot pop() from an empty array.");
+    }
+    final char key = keys[ncont - 1];
+    final int low = conts[ncont - 1].last();
+    final int val = start + ((key << 16) | low);
+    if(outvar instanceof IntegerDBIDVar) {
+      ((IntegerDBIDVar) outvar).internalSetIndex(val);
+    }
+    else { // Fallback, should not happen (more expensive).
+      outvar.set(DBIDUtil.importInteger(val));
+    }
+    removeOffset(key, low);
+  }
+
+  @Override
+  public Itr iter() {
+    return new Itr();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buf = new StringBuilder();
+    buf.append('[');
+    for(DBIDIter iter = iter(); iter.valid(); iter.advance()) {
+      if(buf.length() > 1) {
+        buf.append(", ");
+      }
+      buf.append(iter.toString());
+    }
+    buf.append(']');
+    return buf.toString();
+  }
+
+  /**
+   * Iterator over the bitmap, in ascending order.
+   * 
+   * The iterator stores the current value, not positions, so it remains valid
+   * when the current element is removed.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  protected class Itr implements IntegerDBIDMIter {
+    /**
+     * Container position (hint)
+     */
+    private int ci;
+
+    /**
+     * Upper bits of the current value.
+     */
+    private char key;
+
+    /**
+     * Lower bits of the current value, -1 when invalid.
+     */
+    private int low = -1;
+
+    /**
+     * Constructor.
+     */
+    protected Itr() {
+      super();
+      seek(0, 0);
+    }
+
+    /**
+     * Seek to the next value.
+     * 
+     * @param i First container to check
+     * @param from First lower value to accept in container i
+     */
+    private void seek(int i, int from) {
+      for(; i < ncont; i++, from = 0) {
+        final int next = conts[i].next(from);
+        if(next >= 0) {
+          ci = i;
+          key = keys[i];
+          low = next;
+          return;
+        }
+      }
+      ci = ncont;
+      low = -1;
+    }
+
+    @Override
+    public boolean valid() {
+      return low >= 0;
+    }
+
+    @Override
+    public Itr advance() {
+      int i = ci, from = low + 1;
+      if(i >= ncont || keys[i] != key) {
+        // Containers were modified, e.g. by remove().
+        i = find(key);
+        if(i < 0) {
+          i = -i - 1;
+          from = 0;
+        }
+      }
+      seek(i, from);
+      return this;
+    }
+
+    @Override
+    public int internalGetIndex() {
+      return start + ((key << 16) | low);
+    }
+
+    @Override
+    public void remove() {
+      removeOffset(key, low);
+    }
+
+    @Override
+    public String toString() {
+      return Integer.toString(internalGetIndex());
+    }
+  }
+
+  /**
+   * Container for the lower 16 bits.
+   * 
+   * Operations may modify the container, and return a replacement container
+   * of a different type.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static abstract class Container {
+    /**
+     * Number of elements.
+     */
+    int card;
+
+    /**
+     * Test for a value.
+     * 
+     * @param low Value
+     * @return {@code true} when present
+     */
+    abstract boolean contains(int low);
+
+    /**
+     * Add a value.
+     * 
+     * @param low Value
+     * @return Container
+     */
+    abstract Container add(int low);
+
+    /**
+     * Remove a value.
+     * 
+     * @param low Value
+     * @return Container
+     */
+    abstract Container remove(int low);
+
+    /**
+     * Find the next value.
+     * 
+     * @param from Minimum value
+     * @return Smallest value {@code >= from}, or -1
+     */
+    abstract int next(int from);
+
+    /**
+     * Largest value.
+     * 
+     * @return Largest value
+     */
+    abstract int last();
+
+    /**
+     * Union with another container, which is not modified.
+     * 
+     * @param o Other container
+     * @return Container
+     */
+    abstract Container or(Container o);
+
+    /**
+     * Intersection with another container, which is not modified.
+     * 
+     * @param o Other container
+     * @return Container
+     */
+    abstract Container and(Container o);
+
+    /**
+     * Difference with another container, which is not modified.
+     * 
+     * @param o Other container
+     * @return Container
+     */
+    abstract Container andNot(Container o);
+
+    /**
+     * Intersection size.
+     * 
+     * @param o Other container
+     * @return Number of common values
+     */
+    abstract int andCardinality(Container o);
+
+    /**
+     * Copy the container.
+     * 
+     * @return Copy
+     */
+    abstract Container copy();
+  }
+
+  /**
+   * Sparse container, as sorted array.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static final class ArrayContainer extends Container {
+    /**
+     * Values, sorted.
+     */
+    char[] vals;
+
+    /**
+     * Constructor.
+     * 
+     * @param capacity Initial capacity
+     */
+    ArrayContainer(int capacity) {
+      super();
+      this.vals = new char[capacity];
+    }
+
+    /**
+     * Find the position of a value.
+     * 
+     * @param low Value
+     * @return Position, or {@code -(insertion point) - 1}
+     */
+    private int indexOf(int low) {
+      if(low > 0xFFFF) {
+        return -card - 1; // Beyond all values, do not wrap around.
+      }
+      return Arrays.binarySearch(vals, 0, card, (char) low);
+    }
+
+    @Override
+    boolean contains(int low) {
+      return indexOf(low) >= 0;
+    }
+
+    @Override
+    Container add(int low) {
+      int i = indexOf(low);
+      if(i >= 0) {
+        return this;
+      }
+      if(card >= ARRAY_MAX) {
+        return toBitmap().add(low);
+      }
+      i = -i - 1;
+      if(card == vals.length) {
+        vals = Arrays.copyOf(vals, Math.min(Math.max(card << 1, 4), ARRAY_MAX));
+      }
+      System.arraycopy(vals, i, vals, i + 1, card - i);
+      vals[i] = (char) low;
+      ++card;
+      return this;
+    }
+
+    @Override
+    Container remove(int low) {
+      final int i = indexOf(low);
+      if(i >= 0) {
+        System.arraycopy(vals, i + 1, vals, i, card - i - 1);
+        --card;
+      }
+      return this;
+    }
+
+    @Override
+    int next(int from) {
+      if(from > 0xFFFF) {
+        return -1;
+      }
+      int i = indexOf(from);
+      i = i >= 0 ? i : -i - 1;
+      return i < card ? vals[i] : -1;
+    }
+
+    @Override
+    int last() {
+      return vals[card - 1];
+    }
+
+    @Override
+    Container or(Container o) {
+      if(!(o instanceof ArrayContainer)) {
+        return o.copy().or(this);
+      }
+      final ArrayContainer a = (ArrayContainer) o;
+      if(card + a.card > ARRAY_MAX) {
+        return toBitmap().or(o);
+      }
+      // Merge the sorted arrays.
+      final char[] merged = new char[Math.max(card + a.card, 4)];
+      int i = 0, j = 0, k = 0;
+      while(i < card && j < a.card) {
+        final char v1 = vals[i], v2 = a.vals[j];
+        merged[k++] = v1 <= v2 ? v1 : v2;
+        i += v1 <= v2 ? 1 : 0;
+        j += v2 <= v1 ? 1 : 0;
+      }
+      while(i < card) {
+        merged[k++] = vals[i++];
+      }
+      while(j < a.card) {
+        merged[k++] = a.vals[j++];
+      }
+      vals = merged;
+      card = k;
+      return this;
+    }
+
+    @Override
+    Container and(Container o) {
+      int k = 0;
+      for(int i = 0; i < card; i++) {
+        if(o.contains(vals[i])) {
+          vals[k++] = vals[i];
+        }
+      }
+      card = k;
+      return this;
+    }
+
+    @Override
+    Container andNot(Container o) {
+      int k = 0;
+      for(int i = 0; i < card; i++) {
+        if(!o.contains(vals[i])) {
+          vals[k++] = vals[i];
+        }
+      }
+      card = k;
+      return this;
+    }
+
+    @Override
+    int andCardinality(Container o) {
+      int c = 0;
+      for(int i = 0; i < card; i++) {
+        if(o.contains(vals[i])) {
+          ++c;
+        }
+      }
+      return c;
+    }
+
+    @Override
+    Container copy() {
+      ArrayContainer c = new ArrayContainer(0);
+      c.vals = Arrays.copyOf(vals, Math.max(card, 4));
+      c.card = card;
+      return c;
+    }
+
+    /**
+     * Convert to a bitmap container.
+     * 
+     * @return Bitmap container
+     */
+    BitmapContainer toBitmap() {
+      BitmapContainer b = new BitmapContainer();
+      final long[] words = b.words;
+      for(int i = 0; i < card; i++) {
+        words[vals[i] >>> 6] |= 1L << vals[i];
+      }
+      b.card = card;
+      return b;
+    }
+  }
+
+  /**
+   * Dense container, as bitmap.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static final class BitmapContainer extends Container {
+    /**
+     * Bitmap words.
+     */
+    final long[] words = new long[BITMAP_WORDS];
+
+    @Override
+    boolean contains(int low) {
+      return (words[low >>> 6] & (1L << low)) != 0;
+    }
+
+    @Override
+    Container add(int low) {
+      final long bit = 1L << low;
+      if((words[low >>> 6] & bit) == 0) {
+        words[low >>> 6] |= bit;
+        ++card;
+      }
+      return this;
+    }
+
+    @Override
+    Container remove(int low) {
+      final long bit = 1L << low;
+      if((words[low >>> 6] & bit) != 0) {
+        words[low >>> 6] &= ~bit;
+        --card;
+        // Convert with hysteresis, to avoid converting back and forth.
+        if(card <= ARRAY_MAX >>> 1) {
+          return toArray();
+        }
+      }
+      return this;
+    }
+
+    @Override
+    int next(int from) {
+      int w = from >>> 6;
+      if(w >= BITMAP_WORDS) {
+        return -1;
+      }
+      long word = words[w] & (-1L << from);
+      while(word == 0) {
+        if(++w == BITMAP_WORDS) {
+          return -1;
+        }
+        word = words[w];
+      }
+      return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    @Override
+    int last() {
+      for(int w = BITMAP_WORDS - 1; w >= 0; w--) {
+        if(words[w] != 0) {
+          return (w << 6) + 63 - Long.numberOfLeadingZeros(words[w]);
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Container or(Container o) {
+      if(o instanceof BitmapContainer) {
+        final long[] other = ((BitmapContainer) o).words;
+        for(int w = 0; w < BITMAP_WORDS; w++) {
+          words[w] |= other[w];
+        }
+      }
+      else {
+        final ArrayContainer a = (ArrayContainer) o;
+        for(int i = 0; i < a.card; i++) {
+          words[a.vals[i] >>> 6] |= 1L << a.vals[i];
+        }
+      }
+      recount();
+      return this;
+    }
+
+    @Override
+    Container and(Container o) {
+      if(!(o instanceof BitmapContainer)) {
+        return o.copy().and(this);
+      }
+      final long[] other = ((BitmapContainer) o).words;
+      for(int w = 0; w < BITMAP_WORDS; w++) {
+        words[w] &= other[w];
+      }
+      recount();
+      return card <= ARRAY_MAX ? toArray() : this;
+    }
+
+    @Override
+    Container andNot(Container o) {
+      if(o instanceof BitmapContainer) {
+        final long[] other = ((BitmapContainer) o).words;
+        for(int w = 0; w < BITMAP_WORDS; w++) {
+          words[w] &= ~other[w];
+        }
+      }
+      else {
+        final ArrayContainer a = (ArrayContainer) o;
+        for(int i = 0; i < a.card; i++) {
+          words[a.vals[i] >>> 6] &= ~(1L << a.vals[i]);
+        }
+      }
+      recount();
+      return card <= ARRAY_MAX ? toArray() : this;
+    }
+
+    @Override
+    int andCardinality(Container o) {
+      if(!(o instanceof BitmapContainer)) {
+        return o.andCardinality(this);
+      }
+      final long[] other = ((BitmapContainer) o).words;
+      int c = 0;
+      for(int w = 0; w < BITMAP_WORDS; w++) {
+        c += Long.bitCount(words[w] & other[w]);
+      }
+      return c;
+    }
+
+    @Override
+    Container copy() {
+      BitmapContainer c = new BitmapContainer();
+      System.arraycopy(words, 0, c.words, 0, BITMAP_WORDS);
+      c.card = card;
+      return c;
+    }
+
+    /**
+     * Recompute the cardinality.
+     */
+    private void recount() {
+      int c = 0;
+      for(int w = 0; w < BITMAP_WORDS; w++) {
+        c += Long.bitCount(words[w]);
+      }
+      card = c;
+    }
+
+    /**
+     * Convert to an array container.
+     * 
+     * @return Array container
+     */
+    ArrayContainer toArray() {
+      ArrayContainer a = new ArrayContainer(Math.max(card, 4));
+      int k = 0;
+      for(int w = 0; w < BITMAP_WORDS; w++) {
+        for(long word = words[w]; word != 0; word &= word - 1) {
+          a.vals[k++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+        }
+      }
+      a.card = k;
+      return a;
+    }
+  }
+}
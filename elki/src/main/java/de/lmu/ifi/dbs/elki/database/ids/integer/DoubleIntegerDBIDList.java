@@ -142,7 +142,7 @@ class DoubleIntegerDBIDList implements ModifiableDoubleDBIDList, IntegerDBIDs {
       return;
     }
     final int len = dists.length;
-    final int newlength = len + (len >> 1);
+    final int newlength = len < INITIAL_SIZE ? INITIAL_SIZE : len + (len >> 1);
     double[] odists = dists;
     dists = new double[newlength];
     System.arraycopy(odists, 0, dists, 0, odists.length);
@@ -0,0 +1,43 @@
+package de.lmu.ifi.dbs.elki.database.query;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Interface for queries that may be safe to use from multiple threads at the
+ * same time, depending on the underlying index.
+ * 
+ * Queries that do not implement this interface (and are not a
+ * {@link LinearScanQuery}) should be used from a single thread only.
+ * 
+ * @author Erich Schubert
+ */
+public interface ConcurrentQuery extends DatabaseQuery {
+  /**
+   * Test whether this query may currently be used concurrently, for read-only
+   * access from multiple threads.
+   * 
+   * @return {@code true} if concurrent use is safe
+   */
+  boolean allowsConcurrentUse();
+}
@@ -27,6 +27,8 @@ import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DBIDDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.MetricsRegistry;
 
 /**
  * Run a distance query based on DBIDs
@@ -42,6 +44,11 @@ public class DBIDDistanceQuery extends AbstractDatabaseDistanceQuery<DBID> {
    */
   final protected DBIDDistanceFunction distanceFunction;
 
+  /**
+   * Distance computation counter, {@code null} unless metrics are enabled.
+   */
+  final protected Counter distcalc;
+
   /**
    * Constructor.
    * 
@@ -51,6 +58,7 @@ public class DBIDDistanceQuery extends AbstractDatabaseDistanceQuery<DBID> {
   public DBIDDistanceQuery(Relation<DBID> relation, DBIDDistanceFunction distanceFunction) {
     super(relation);
     this.distanceFunction = distanceFunction;
+    this.distcalc = MetricsRegistry.distanceCounter(distanceFunction);
   }
 
   @Override
@@ -61,6 +69,9 @@ public class DBIDDistanceQuery extends AbstractDatabaseDistanceQuery<DBID> {
     if(id2 == null) {
       throw new UnsupportedOperationException("This distance function can only be used for objects stored in the database.");
     }
+    if(distcalc != null) {
+      distcalc.increment();
+    }
     return distanceFunction.distance(id1, id2);
   }
 
@@ -64,6 +64,9 @@ public class DBIDRangeDistanceQuery extends DBIDDistanceQuery {
 
   @Override
   public double distance(DBIDRef id1, DBIDRef id2) {
+    if(distcalc != null) {
+      distcalc.increment();
+    }
     return distanceFunction.distance(range.getOffset(id1), range.getOffset(id2));
   }
 
@@ -26,6 +26,8 @@ package de.lmu.ifi.dbs.elki.database.query.distance;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.MetricsRegistry;
 
 /**
  * Run a database query in a database context.
@@ -43,6 +45,11 @@ public class PrimitiveDistanceQuery<O> extends AbstractDistanceQuery<O> {
    */
   final protected PrimitiveDistanceFunction<? super O> distanceFunction;
 
+  /**
+   * Distance computation counter, {@code null} unless metrics are enabled.
+   */
+  final protected Counter distcalc;
+
   /**
    * Constructor.
    * 
@@ -52,6 +59,7 @@ public class PrimitiveDistanceQuery<O> extends AbstractDistanceQuery<O> {
   public PrimitiveDistanceQuery(Relation<? extends O> relation, PrimitiveDistanceFunction<? super O> distanceFunction) {
     super(relation);
     this.distanceFunction = distanceFunction;
+    this.distcalc = MetricsRegistry.distanceCounter(distanceFunction);
   }
 
   @Override
@@ -81,6 +89,9 @@ public class PrimitiveDistanceQuery<O> extends AbstractDistanceQuery<O> {
     if(o2 == null) {
       throw new UnsupportedOperationException("This distance function can only be used for object instances.");
     }
+    if(distcalc != null) {
+      distcalc.increment();
+    }
     return distanceFunction.distance(o1, o2);
   }
 
@@ -88,6 +88,9 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
    * @return Heap
    */
   private KNNHeap linearScan(Relation<? extends O> relation, DBIDIter iter, final O obj, KNNHeap heap) {
+    if(distcalc != null) {
+      distcalc.increment(relation.size());
+    }
     double max = Double.POSITIVE_INFINITY;
     while(iter.valid()) {
       final double dist = SQUARED.distance(obj, relation.get(iter));
@@ -126,6 +129,9 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
   @Override
   protected void linearScanBatchKNN(List<O> objs, List<KNNHeap> heaps) {
     final int size = objs.size();
+    if(distcalc != null) {
+      distcalc.increment(size * (long) relation.size());
+    }
     // Linear scan style KNN.
     for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
       O candidate = relation.get(iter);
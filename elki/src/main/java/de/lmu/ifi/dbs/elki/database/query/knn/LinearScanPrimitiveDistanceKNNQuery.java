@@ -36,6 +36,8 @@ import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.MetricsRegistry;
 
 /**
  * Instance of this query for a particular database.
@@ -54,6 +56,11 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
    */
   private PrimitiveDistanceFunction<? super O> rawdist;
 
+  /**
+   * Distance computation counter, {@code null} unless metrics are enabled.
+   */
+  protected final Counter distcalc;
+
   /**
    * Constructor.
    * 
@@ -62,6 +69,7 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
   public LinearScanPrimitiveDistanceKNNQuery(PrimitiveDistanceQuery<O> distanceQuery) {
     super(distanceQuery);
     rawdist = distanceQuery.getDistanceFunction();
+    distcalc = MetricsRegistry.distanceCounter(rawdist);
   }
 
   @Override
@@ -84,6 +92,9 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
    * @return Heap
    */
   private KNNHeap linearScan(Relation<? extends O> relation, DBIDIter iter, final O obj, KNNHeap heap) {
+    if(distcalc != null) {
+      distcalc.increment(relation.size());
+    }
     double max = Double.POSITIVE_INFINITY;
     while(iter.valid()) {
       final double dist = rawdist.distance(obj, relation.get(iter));
@@ -121,6 +132,9 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
    */
   protected void linearScanBatchKNN(List<O> objs, List<KNNHeap> heaps) {
     final int size = objs.size();
+    if(distcalc != null) {
+      distcalc.increment(size * (long) relation.size());
+    }
     // Linear scan style KNN.
     for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
       O candidate = relation.get(iter);
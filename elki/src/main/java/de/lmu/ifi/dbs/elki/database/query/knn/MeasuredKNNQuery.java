@@ -0,0 +1,150 @@
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.logging.statistics.LatencyHistogram;
+import de.lmu.ifi.dbs.elki.logging.statistics.MetricsRegistry;
+
+/**
+ * Decorator recording the latency of kNN queries in the
+ * {@link MetricsRegistry}, keyed by the class of the decorated query.
+ * 
+ * Bulk queries are recorded as one entry per query object, using the average
+ * latency.
+ * 
+ * @author Erich Schubert
+ * 
+ * @param <O> Object type
+ */
+public class MeasuredKNNQuery<O> implements KNNQuery<O> {
+  /**
+   * Decorated query.
+   */
+  protected final KNNQuery<O> inner;
+
+  /**
+   * Latency histogram.
+   */
+  protected final LatencyHistogram latency;
+
+  /**
+   * Constructor.
+   * 
+   * @param inner Decorated query
+   * @param latency Latency histogram
+   */
+  protected MeasuredKNNQuery(KNNQuery<O> inner, LatencyHistogram latency) {
+    super();
+    this.inner = inner;
+    this.latency = latency;
+  }
+
+  /**
+   * Add latency measurements to a query, if metrics are enabled.
+   * 
+   * Queries answered from a preprocessor are not decorated, as they are mere
+   * lookups (and algorithms test for this class).
+   * 
+   * @param q Query, may be {@code null}
+   * @param <O> Object type
+   * @return Query
+   */
+  public static <O> KNNQuery<O> wrap(KNNQuery<O> q) {
+    if(q == null || !MetricsRegistry.isEnabled() || q instanceof PreprocessorKNNQuery || q instanceof MeasuredKNNQuery) {
+      return q;
+    }
+    LatencyHistogram latency = MetricsRegistry.latency(q.getClass().getName() + ".knn-latency");
+    return (q instanceof LinearScanQuery) ? new LinearScan<>(q, latency) : new MeasuredKNNQuery<>(q, latency);
+  }
+
+  /**
+   * Get the decorated query.
+   * 
+   * @return Query
+   */
+  public KNNQuery<O> getInner() {
+    return inner;
+  }
+
+  @Override
+  public KNNList getKNNForDBID(DBIDRef id, int k) {
+    final long begin = System.nanoTime();
+    KNNList res = inner.getKNNForDBID(id, k);
+    latency.record(System.nanoTime() - begin);
+    return res;
+  }
+
+  @Override
+  public List<? extends KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+    final long begin = System.nanoTime();
+    List<? extends KNNList> res = inner.getKNNForBulkDBIDs(ids, k);
+    final int size = ids.size();
+    if(size > 0) {
+      final long avg = (System.nanoTime() - begin) / size;
+      for(int i = 0; i < size; i++) {
+        latency.record(avg);
+      }
+    }
+    return res;
+  }
+
+  @Override
+  public KNNList getKNNForObject(O obj, int k) {
+    final long begin = System.nanoTime();
+    KNNList res = inner.getKNNForObject(obj, k);
+    latency.record(System.nanoTime() - begin);
+    return res;
+  }
+
+  @Override
+  public String toString() {
+    return inner.toString();
+  }
+
+  /**
+   * Decorator for linear scan queries, retaining the {@link LinearScanQuery}
+   * marker.
+   * 
+   * @author Erich Schubert
+   * 
+   * @param <O> Object type
+   */
+  public static class LinearScan<O> extends MeasuredKNNQuery<O> implements LinearScanQuery {
+    /**
+     * Constructor.
+     * 
+     * @param inner Decorated query
+     * @param latency Latency histogram
+     */
+    protected LinearScan(KNNQuery<O> inner, LatencyHistogram latency) {
+      super(inner, latency);
+    }
+  }
+}
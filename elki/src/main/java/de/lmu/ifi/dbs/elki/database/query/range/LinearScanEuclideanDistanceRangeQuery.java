@@ -95,6 +95,9 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
    * @param result Output data structure
    */
   private void linearScan(Relation<? extends O> relation, DBIDIter iter, O obj, double range, ModifiableDoubleDBIDList result) {
+    if(distcalc != null) {
+      distcalc.increment(relation.size());
+    }
     // Avoid a loss in numerical precision when using the squared radius:
     final double upper = range * 1.0000001;
     // This should be more precise, but slower:
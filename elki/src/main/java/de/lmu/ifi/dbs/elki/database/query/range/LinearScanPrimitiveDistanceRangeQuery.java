@@ -31,6 +31,8 @@ import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.MetricsRegistry;
 
 /**
  * Default linear scan range query class.
@@ -50,6 +52,11 @@ public class LinearScanPrimitiveDistanceRangeQuery<O> extends AbstractDistanceRa
    */
   private PrimitiveDistanceFunction<? super O> rawdist;
 
+  /**
+   * Distance computation counter, {@code null} unless metrics are enabled.
+   */
+  protected final Counter distcalc;
+
   /**
    * Constructor.
    * 
@@ -58,6 +65,7 @@ public class LinearScanPrimitiveDistanceRangeQuery<O> extends AbstractDistanceRa
   public LinearScanPrimitiveDistanceRangeQuery(PrimitiveDistanceQuery<O> distanceQuery) {
     super(distanceQuery);
     rawdist = distanceQuery.getDistanceFunction();
+    distcalc = MetricsRegistry.distanceCounter(rawdist);
   }
 
   @Override
@@ -98,6 +106,9 @@ public class LinearScanPrimitiveDistanceRangeQuery<O> extends AbstractDistanceRa
    * @param result Output data structure
    */
   private void linearScan(Relation<? extends O> relation, DBIDIter iter, O obj, double range, ModifiableDoubleDBIDList result) {
+    if(distcalc != null) {
+      distcalc.increment(relation.size());
+    }
     while(iter.valid()) {
       final double distance = rawdist.distance(obj, relation.get(iter));
       if(distance <= range) {
@@ -0,0 +1,142 @@
+package de.lmu.ifi.dbs.elki.database.query.range;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.logging.statistics.LatencyHistogram;
+import de.lmu.ifi.dbs.elki.logging.statistics.MetricsRegistry;
+
+/**
+ * Decorator recording the latency of range queries in the
+ * {@link MetricsRegistry}, keyed by the class of the decorated query.
+ * 
+ * @author Erich Schubert
+ * 
+ * @param <O> Object type
+ */
+public class MeasuredRangeQuery<O> implements RangeQuery<O> {
+  /**
+   * Decorated query.
+   */
+  protected final RangeQuery<O> inner;
+
+  /**
+   * Latency histogram.
+   */
+  protected final LatencyHistogram latency;
+
+  /**
+   * Constructor.
+   * 
+   * @param inner Decorated query
+   * @param latency Latency histogram
+   */
+  protected MeasuredRangeQuery(RangeQuery<O> inner, LatencyHistogram latency) {
+    super();
+    this.inner = inner;
+    this.latency = latency;
+  }
+
+  /**
+   * Add latency measurements to a query, if metrics are enabled.
+   * 
+   * @param q Query, may be {@code null}
+   * @param <O> Object type
+   * @return Query
+   */
+  public static <O> RangeQuery<O> wrap(RangeQuery<O> q) {
+    if(q == null || !MetricsRegistry.isEnabled() || q instanceof MeasuredRangeQuery) {
+      return q;
+    }
+    LatencyHistogram latency = MetricsRegistry.latency(q.getClass().getName() + ".range-latency");
+    return (q instanceof LinearScanQuery) ? new LinearScan<>(q, latency) : new MeasuredRangeQuery<>(q, latency);
+  }
+
+  /**
+   * Get the decorated query.
+   * 
+   * @return Query
+   */
+  public RangeQuery<O> getInner() {
+    return inner;
+  }
+
+  @Override
+  public DoubleDBIDList getRangeForDBID(DBIDRef id, double range) {
+    final long begin = System.nanoTime();
+    DoubleDBIDList res = inner.getRangeForDBID(id, range);
+    latency.record(System.nanoTime() - begin);
+    return res;
+  }
+
+  @Override
+  public DoubleDBIDList getRangeForObject(O obj, double range) {
+    final long begin = System.nanoTime();
+    DoubleDBIDList res = inner.getRangeForObject(obj, range);
+    latency.record(System.nanoTime() - begin);
+    return res;
+  }
+
+  @Override
+  public void getRangeForDBID(DBIDRef id, double range, ModifiableDoubleDBIDList result) {
+    final long begin = System.nanoTime();
+    inner.getRangeForDBID(id, range, result);
+    latency.record(System.nanoTime() - begin);
+  }
+
+  @Override
+  public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
+    final long begin = System.nanoTime();
+    inner.getRangeForObject(obj, range, result);
+    latency.record(System.nanoTime() - begin);
+  }
+
+  @Override
+  public String toString() {
+    return inner.toString();
+  }
+
+  /**
+   * Decorator for linear scan queries, retaining the {@link LinearScanQuery}
+   * marker.
+   * 
+   * @author Erich Schubert
+   * 
+   * @param <O> Object type
+   */
+  public static class LinearScan<O> extends MeasuredRangeQuery<O> implements LinearScanQuery {
+    /**
+     * Constructor.
+     * 
+     * @param inner Decorated query
+     * @param latency Latency histogram
+     */
+    protected LinearScan(RangeQuery<O> inner, LatencyHistogram latency) {
+      super(inner, latency);
+    }
+  }
+}
@@ -27,6 +27,8 @@ import de.lmu.ifi.dbs.elki.database.QueryUtil;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.MeasuredKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.MeasuredRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.rknn.LinearScanRKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
@@ -115,7 +117,7 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
         getLogger().debugFinest((q != null ? "Using" : "Not using") + " index for kNN query: " + knnIndex);
       }
       if(q != null) {
-        return q;
+        return MeasuredKNNQuery.wrap(q);
       }
     }
 
@@ -137,7 +139,7 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
       }
       getLogger().debugFinest(buf.toString());
     }
-    return QueryUtil.getLinearScanKNNQuery(distanceQuery);
+    return MeasuredKNNQuery.wrap(QueryUtil.getLinearScanKNNQuery(distanceQuery));
   }
 
   @Override
@@ -162,7 +164,7 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
         getLogger().debugFinest((q != null ? "Using" : "Not using") + " index for range query: " + rangeIndex);
       }
       if(q != null) {
-        return q;
+        return MeasuredRangeQuery.wrap(q);
       }
     }
 
@@ -184,7 +186,7 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
       }
       getLogger().debugFinest(buf.toString());
     }
-    return QueryUtil.getLinearScanRangeQuery(distanceQuery);
+    return MeasuredRangeQuery.wrap(QueryUtil.getLinearScanRangeQuery(distanceQuery));
   }
 
   @Override
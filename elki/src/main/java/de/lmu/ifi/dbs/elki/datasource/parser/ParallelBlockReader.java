@@ -0,0 +1,157 @@
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Helper for parallel text parsers: the input is read sequentially in large
+ * blocks of bytes, which are cut at line breaks and processed concurrently.
+ * The processed blocks are then passed on in input order.
+ *
+ * Blocks other than the first begin with an extra line break, so that header
+ * detection (e.g., of column names) only applies to the first line of the
+ * input. The input is expected to use an ASCII-compatible character set such
+ * as UTF-8, where line breaks can be detected bytewise.
+ *
+ * @author Erich Schubert
+ *
+ * @param <B> Block type
+ */
+public abstract class ParallelBlockReader<B> {
+  /**
+   * Size of the blocks to process in parallel.
+   */
+  private int blocksize;
+
+  /**
+   * Constructor.
+   *
+   * @param blocksize Size of the blocks to process in parallel, in bytes.
+   */
+  public ParallelBlockReader(int blocksize) {
+    super();
+    this.blocksize = blocksize;
+  }
+
+  /**
+   * Read the input stream, and process all blocks.
+   *
+   * @param in Input stream
+   */
+  public void read(InputStream in) {
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      final int maxpending = core.getParallelism() << 1;
+      ArrayDeque<Future<? extends B>> pending = new ArrayDeque<>(maxpending + 1);
+      // Position 0 is reserved for a line break, see above.
+      byte[] buf = new byte[blocksize + 1];
+      int fill = 1;
+      boolean first = true, eof = false;
+      while(!eof) {
+        final int read = in.read(buf, fill, buf.length - fill);
+        if(read < 0) {
+          eof = true;
+        }
+        else {
+          fill += read;
+          if(fill < buf.length) {
+            continue;
+          }
+        }
+        // Cut after the last line break.
+        int split = fill;
+        if(!eof) {
+          while(split > 1 && buf[split - 1] != '\n') {
+            --split;
+          }
+          if(split <= 1) { // Line longer than the buffer.
+            buf = Arrays.copyOf(buf, buf.length << 1);
+            continue;
+          }
+        }
+        if(split > 1) {
+          pending.add(core.submit(makeBlock(buf, first ? 1 : 0, split)));
+          first = false;
+        }
+        // Carry over the partial last line into a new buffer.
+        byte[] next = new byte[Math.max(blocksize, fill - split) + 1];
+        next[0] = '\n';
+        System.arraycopy(buf, split, next, 1, fill - split);
+        fill = fill - split + 1;
+        buf = next;
+        // Limit the memory in use by pending blocks.
+        while(pending.size() >= maxpending) {
+          processBlock(pending.removeFirst().get());
+        }
+      }
+      while(!pending.isEmpty()) {
+        processBlock(pending.removeFirst().get());
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Error while reading input.", e);
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException("Processor execution failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new RuntimeException("Parallel execution interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Make the task to process a single block. The task will be run
+   * concurrently with other blocks, and must not modify shared state.
+   *
+   * @param data Data buffer, owned by the block
+   * @param begin Begin of the range to process
+   * @param end End of the range to process
+   * @return Task producing the processed block
+   */
+  protected abstract Callable<? extends B> makeBlock(byte[] data, int begin, int end);
+
+  /**
+   * Consume a processed block; called sequentially, in input order.
+   *
+   * @param block Processed block
+   */
+  protected abstract void processBlock(B block);
+}
@@ -0,0 +1,352 @@
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource.Event;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntListParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel variant of the {@link NumberVectorLabelParser}.
+ *
+ * The input is read sequentially in large blocks of bytes, which are cut at
+ * line breaks (see {@link ParallelBlockReader}). The blocks are then parsed
+ * concurrently, each by its own {@link NumberVectorLabelParser} instance, and
+ * the results are concatenated in input order. The result is the same as with
+ * the sequential parser, but parsing, which usually dominates the time needed
+ * to load text files, scales with the number of processors.
+ *
+ * This parser is not a {@link StreamingParser}, because the parallel blocks
+ * need to be merged before the data can be passed on; thus stream filters will
+ * be applied after parsing. The input is expected to use an ASCII-compatible
+ * character set such as UTF-8, where line breaks can be detected bytewise.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.uses NumberVectorLabelParser
+ *
+ * @param <V> the type of NumberVector used
+ */
+public class ParallelNumberVectorLabelParser<V extends NumberVector> implements Parser {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNumberVectorLabelParser.class);
+
+  /**
+   * Default block size.
+   */
+  public static final int DEFAULT_BLOCKSIZE = 1 << 22;
+
+  /**
+   * Reader format.
+   */
+  private CSVReaderFormat format;
+
+  /**
+   * Keeps the indices of the attributes to be treated as a string label.
+   */
+  private long[] labelIndices;
+
+  /**
+   * Vector factory class.
+   */
+  private NumberVector.Factory<V> factory;
+
+  /**
+   * Size of the blocks to parse in parallel.
+   */
+  private int blocksize;
+
+  /**
+   * Constructor.
+   *
+   * @param format Input format
+   * @param labelIndices Column indexes that are not numeric.
+   * @param factory Vector factory
+   * @param blocksize Size of the blocks to parse in parallel, in bytes.
+   */
+  public ParallelNumberVectorLabelParser(CSVReaderFormat format, long[] labelIndices, NumberVector.Factory<V> factory, int blocksize) {
+    super();
+    this.format = format;
+    this.labelIndices = labelIndices;
+    this.factory = factory;
+    this.blocksize = blocksize;
+  }
+
+  /**
+   * Constructor with defaults.
+   *
+   * @param factory Vector factory
+   */
+  public ParallelNumberVectorLabelParser(NumberVector.Factory<V> factory) {
+    this(CSVReaderFormat.DEFAULT_FORMAT, null, factory, DEFAULT_BLOCKSIZE);
+  }
+
+  @Override
+  public MultipleObjectsBundle parse(InputStream in) {
+    final Block<V> result = new Block<>();
+    new ParallelBlockReader<Block<V>>(blocksize) {
+      @Override
+      protected Callable<Block<V>> makeBlock(byte[] data, int begin, int end) {
+        return new Block<V>(ParallelNumberVectorLabelParser.this, data, begin, end);
+      }
+
+      @Override
+      protected void processBlock(Block<V> block) {
+        result.append(block);
+      }
+    }.read(in);
+    return result.toBundle(this);
+  }
+
+  @Override
+  public void cleanup() {
+    // Nothing to do - the per-block parsers are discarded.
+  }
+
+  /**
+   * A block of the input file, and the parsing result.
+   *
+   * Blocks other than the first begin with an extra line break: the
+   * sequential parser treats the first line as header if it does not contain
+   * numerical values, and the empty line ensures this only happens for the
+   * first line of the input.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <V> Vector type
+   */
+  private static class Block<V extends NumberVector> implements Callable<Block<V>> {
+    /**
+     * Parent parser.
+     */
+    private ParallelNumberVectorLabelParser<V> parent;
+
+    /**
+     * Data to parse.
+     */
+    private byte[] data;
+
+    /**
+     * Data range to parse.
+     */
+    private int begin, end;
+
+    /**
+     * Parsed vectors.
+     */
+    ArrayList<V> vectors = new ArrayList<>();
+
+    /**
+     * Parsed labels.
+     */
+    ArrayList<LabelList> labels = new ArrayList<>();
+
+    /**
+     * Dimensionality observed.
+     */
+    int mindim = Integer.MAX_VALUE, maxdim = 0;
+
+    /**
+     * Whether or not the data has labels.
+     */
+    boolean haslabels = false;
+
+    /**
+     * Column names, from the header of the first block.
+     */
+    List<String> columnnames = null;
+
+    /**
+     * Constructor for the result accumulator.
+     */
+    Block() {
+      super();
+    }
+
+    /**
+     * Constructor for a block to parse.
+     *
+     * @param parent Parent parser
+     * @param data Data buffer
+     * @param begin Begin of the range to parse
+     * @param end End of the range to parse
+     */
+    Block(ParallelNumberVectorLabelParser<V> parent, byte[] data, int begin, int end) {
+      super();
+      this.parent = parent;
+      this.data = data;
+      this.begin = begin;
+      this.end = end;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Block<V> call() {
+      NumberVectorLabelParser<V> parser = parent.makeBlockParser();
+      parser.initStream(new ByteArrayInputStream(data, begin, end - begin));
+      data = null; // Allow garbage collection early.
+      for(Event ev = parser.nextEvent(); ev != Event.END_OF_STREAM; ev = parser.nextEvent()) {
+        if(ev == Event.NEXT_OBJECT) {
+          vectors.add((V) parser.data(0));
+          labels.add((LabelList) parser.data(1));
+        }
+      }
+      mindim = parser.mindim;
+      maxdim = parser.maxdim;
+      haslabels = parser.haslabels;
+      columnnames = parser.columnnames;
+      parser.cleanup();
+      return this;
+    }
+
+    /**
+     * Append the results of the next block.
+     *
+     * @param other Next block
+     */
+    void append(Block<V> other) {
+      if(columnnames == null) {
+        columnnames = other.columnnames;
+      }
+      vectors.addAll(other.vectors);
+      labels.addAll(other.labels);
+      mindim = Math.min(mindim, other.mindim);
+      maxdim = Math.max(maxdim, other.maxdim);
+      haslabels |= other.haslabels;
+    }
+
+    /**
+     * Produce the final result bundle.
+     *
+     * @param parent Parent parser
+     * @return Bundle
+     */
+    MultipleObjectsBundle toBundle(ParallelNumberVectorLabelParser<V> parent) {
+      NumberVectorLabelParser<V> proto = parent.makeBlockParser();
+      proto.columnnames = columnnames;
+      MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+      bundle.appendColumn(proto.getTypeInformation(mindim, maxdim), vectors);
+      if(haslabels) {
+        bundle.appendColumn(TypeUtil.LABELLIST, labels);
+      }
+      if(LOG.isStatistics()) {
+        LOG.statistics("Parsed objects: " + vectors.size());
+      }
+      return bundle;
+    }
+  }
+
+  /**
+   * Make a sequential parser for a single block.
+   *
+   * @return New parser instance
+   */
+  protected NumberVectorLabelParser<V> makeBlockParser() {
+    return new NumberVectorLabelParser<>(format, labelIndices, factory);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParameterizer {
+    /**
+     * Size of the blocks to parse in parallel, in bytes.
+     * <p>
+     * Key: {@code -parser.blocksize}<br />
+     * Default: 4 MiB
+     * </p>
+     */
+    public static final OptionID BLOCKSIZE_ID = new OptionID("parser.blocksize", "Size of the blocks to parse in parallel, in bytes.");
+
+    /**
+     * Reader format.
+     */
+    protected CSVReaderFormat format;
+
+    /**
+     * Keeps the indices of the attributes to be treated as a string label.
+     */
+    protected long[] labelIndices;
+
+    /**
+     * Factory object.
+     */
+    protected NumberVector.Factory<V> factory;
+
+    /**
+     * Block size.
+     */
+    protected int blocksize;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      format = ClassGenericsUtil.parameterizeOrAbort(CSVReaderFormat.class, config);
+      IntListParameter labelIndicesP = new IntListParameter(NumberVectorLabelParser.Parameterizer.LABEL_INDICES_ID, true);
+      if(config.grab(labelIndicesP)) {
+        labelIndices = labelIndicesP.getValueAsBitSet();
+      }
+      ObjectParameter<NumberVector.Factory<V>> factoryP = new ObjectParameter<>(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, NumberVector.Factory.class, DoubleVector.Factory.class);
+      if(config.grab(factoryP)) {
+        factory = factoryP.instantiateClass(config);
+      }
+      IntParameter blocksizeP = new IntParameter(BLOCKSIZE_ID, DEFAULT_BLOCKSIZE) //
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(blocksizeP)) {
+        blocksize = blocksizeP.intValue();
+      }
+    }
+
+    @Override
+    protected ParallelNumberVectorLabelParser<V> makeInstance() {
+      return new ParallelNumberVectorLabelParser<>(format, labelIndices, factory, blocksize);
+    }
+  }
+}
@@ -72,6 +72,11 @@ public class AsciiDistanceParser implements DistanceParser {
    */
   protected Tokenizer tokenizer;
 
+  /**
+   * Smallest and largest id seen by {@link #parseLines}.
+   */
+  protected int min, max;
+
   /**
    * Constructor.
    *
@@ -85,10 +90,23 @@ public class AsciiDistanceParser implements DistanceParser {
 
   @Override
   public void parse(InputStream in, DistanceCacheWriter cache) {
-    reader.reset(in);
-
-    int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
     IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Parsing distance matrix", LOG) : null;
+    parseLines(in, cache, prog);
+    LOG.setCompleted(prog);
+    checkComplete(cache, min, max);
+  }
+
+  /**
+   * Parse the input lines, and track the smallest and largest id.
+   *
+   * @param in Input stream
+   * @param cache Cache writer
+   * @param prog Progress (may be {@code null})
+   */
+  protected void parseLines(InputStream in, DistanceCacheWriter cache, IndefiniteProgress prog) {
+    reader.reset(in);
+    min = Integer.MAX_VALUE;
+    max = Integer.MIN_VALUE;
     try {
       while(reader.nextLineExceptComments()) {
         LOG.incrementProcessed(prog);
@@ -121,11 +139,11 @@ public class AsciiDistanceParser implements DistanceParser {
         // Track minimum and maximum
         if(id1 < id2) {
           min = (id1 < min) ? id1 : min;
-          max = (id2 > min) ? id2 : max;
+          max = (id2 > max) ? id2 : max;
         }
         else {
           min = (id2 < min) ? id2 : min;
-          max = (id1 > min) ? id1 : max;
+          max = (id1 > max) ? id1 : max;
         }
 
         try {
@@ -144,10 +162,16 @@ public class AsciiDistanceParser implements DistanceParser {
     catch(IOException e) {
       throw new IllegalArgumentException("Error while parsing line " + reader.getLineNumber() + ".");
     }
+  }
 
-    LOG.setCompleted(prog);
-
-    // check if all distance values are specified
+  /**
+   * Check that all distance values are specified.
+   *
+   * @param cache Cache writer
+   * @param min Smallest id
+   * @param max Largest id
+   */
+  protected static void checkComplete(DistanceCacheWriter cache, int min, int max) {
     for(int i1 = min; i1 <= max; i1++) {
       for(int i2 = i1 + 1; i2 <= max; i2++) {
         if(!cache.containsKey(i1, i2)) {
@@ -0,0 +1,132 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.external;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Parser for a dense binary distance matrix.
+ *
+ * The file begins with three big-endian integers: the magic number
+ * {@link #MAGIC}, the number of objects n, and the width of a distance value
+ * in bytes (4 for float, 8 for double). It is followed by the lower triangle
+ * of the matrix without the diagonal, row by row: for each {@code i} from 1 to
+ * n-1, the distances to the objects {@code 0} to {@code i-1}, as big-endian
+ * IEEE 754 values.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.uses DistanceCacheWriter
+ */
+@Title("Binary Distance Matrix Parser")
+@Description("Parser for dense binary distance matrixes, storing the lower triangle as float or double values.")
+public class BinaryDistanceParser implements DistanceParser {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(BinaryDistanceParser.class);
+
+  /**
+   * Magic number to identify files.
+   */
+  public static final int MAGIC = 0x44495354;
+
+  /**
+   * Size of the read buffer.
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Constructor.
+   */
+  public BinaryDistanceParser() {
+    super();
+  }
+
+  @Override
+  public void parse(InputStream in, DistanceCacheWriter cache) {
+    ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+    buf.flip(); // Start empty.
+    try {
+      fill(in, buf, 12);
+      if(buf.getInt() != MAGIC) {
+        throw new AbortException("Binary distance matrix magic number does not match.");
+      }
+      final int n = buf.getInt(), width = buf.getInt();
+      if(n < 0 || (width != 4 && width != 8)) {
+        throw new AbortException("Invalid binary distance matrix header.");
+      }
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Parsing distance matrix", n, LOG) : null;
+      LOG.incrementProcessed(prog); // First row is empty.
+      for(int i = 1; i < n; i++) {
+        for(int j = 0; j < i; j++) {
+          if(buf.remaining() < width) {
+            fill(in, buf, width);
+          }
+          cache.put(i, j, width == 4 ? buf.getFloat() : buf.getDouble());
+        }
+        LOG.incrementProcessed(prog);
+      }
+      LOG.ensureCompleted(prog);
+    }
+    catch(IOException e) {
+      throw new AbortException("Error while reading binary distance matrix.", e);
+    }
+  }
+
+  /**
+   * Refill the buffer, keeping unread data.
+   *
+   * @param in Input stream
+   * @param buf Buffer
+   * @param need Minimum number of bytes required
+   * @throws IOException on read errors, or on premature end of file
+   */
+  private static void fill(InputStream in, ByteBuffer buf, int need) throws IOException {
+    buf.compact();
+    while(buf.position() < need) {
+      int read = in.read(buf.array(), buf.position(), buf.remaining());
+      if(read < 0) {
+        throw new IOException("Unexpected end of binary distance matrix.");
+      }
+      buf.position(buf.position() + read);
+    }
+    // Read more data opportunistically, if available.
+    if(buf.hasRemaining() && in.available() > 0) {
+      int read = in.read(buf.array(), buf.position(), buf.remaining());
+      if(read > 0) {
+        buf.position(buf.position() + read);
+      }
+    }
+    buf.flip();
+  }
+}
@@ -23,14 +23,12 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.external;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import gnu.trove.map.TLongDoubleMap;
-import gnu.trove.map.hash.TLongDoubleHashMap;
-
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
@@ -54,7 +52,13 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * See {@link AsciiDistanceParser} for the default input format.
  *
- * TODO: use a {@code double[]} instead of the hash map.
+ * The distances are stored in a dense lower triangular matrix, split into
+ * blocks of 2<sup>24</sup> values, so the number of objects is only limited by
+ * the available memory: n(n-1)/2 doubles, i.e. 40 GB for 100000 objects. For
+ * larger data sets, use {@link DiskCacheBasedDoubleDistanceFunction}, which
+ * memory-maps the matrix.
+ *
+ * Pairs not contained in the file have distance 0.
  *
  * @author Elke Achtert
  * @author Erich Schubert
@@ -65,9 +69,30 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 @Description("Loads double distance values from an external text file.")
 public class FileBasedDoubleDistanceFunction extends AbstractDBIDRangeDistanceFunction {
   /**
-   * The distance cache
+   * The distance matrix, lower triangle without the diagonal, in blocks of
+   * {@link #BLOCK_SIZE}. Missing values are stored as NaN.
+   */
+  private double[][] cache;
+
+  /**
+   * Block size of the triangular storage, as power of two.
+   */
+  protected static final int BLOCK_SHIFT = 24;
+
+  /**
+   * Block size of the triangular storage.
+   */
+  protected static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+  /**
+   * Mask for the position within a block.
    */
-  private TLongDoubleMap cache;
+  protected static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+  /**
+   * Maximum size of the triangular storage.
+   */
+  protected static final long MAX_TRIANGLE_SIZE = ((long) (Integer.MAX_VALUE - 8)) << BLOCK_SHIFT;
 
   /**
    * Distance parser
@@ -106,51 +131,136 @@ public class FileBasedDoubleDistanceFunction extends AbstractDBIDRangeDistanceFu
 
   @Override
   public double distance(int i1, int i2) {
-    if(i1 == i2) {
+    if(i1 == i2 || (i1 | i2) < 0) {
       return 0.;
     }
-    return cache.get(makeKey(i1, i2));
+    final long idx = triangleIndex(i1, i2);
+    final int b = (int) (idx >>> BLOCK_SHIFT), o = (int) idx & BLOCK_MASK;
+    if(b >= cache.length || o >= cache[b].length) {
+      return 0.; // Not in the file.
+    }
+    final double d = cache[b][o];
+    return d == d ? d : 0.;
   }
 
   private void loadCache(DistanceParser parser, File matrixfile) throws IOException {
     InputStream in = new BufferedInputStream(FileUtil.tryGzipInput(new FileInputStream(matrixfile)));
-    cache = new TLongDoubleHashMap();
+    cache = new double[0][];
     parser.parse(in, new DistanceCacheWriter() {
       @Override
       public void put(int id1, int id2, double distance) {
-        cache.put(makeKey(id1, id2), distance);
+        if(id1 == id2) {
+          return;
+        }
+        final long idx = checkedTriangleIndex(id1, id2);
+        final int b = (int) (idx >>> BLOCK_SHIFT), o = (int) idx & BLOCK_MASK;
+        if(b >= cache.length) {
+          final int oldblocks = cache.length;
+          cache = Arrays.copyOf(cache, b + 1);
+          // All but the last block are full.
+          for(int i = Math.max(oldblocks - 1, 0); i < b; i++) {
+            cache[i] = grow(cache[i], BLOCK_SIZE);
+          }
+        }
+        if(cache[b] == null || o >= cache[b].length) {
+          cache[b] = grow(cache[b], o + 1);
+        }
+        cache[b][o] = distance;
       }
 
       @Override
       public boolean containsKey(int id1, int id2) {
-        return cache.containsKey(makeKey(id1, id2));
+        if(id1 == id2) {
+          return true;
+        }
+        final long idx = checkedTriangleIndex(id1, id2);
+        final int b = (int) (idx >>> BLOCK_SHIFT), o = (int) idx & BLOCK_MASK;
+        return b < cache.length && o < cache[b].length && cache[b][o] == cache[b][o];
       }
     });
   }
 
   /**
-   * Combine two integer ids into a long value.
+   * Grow a block of the triangular storage, filling new entries with NaN.
+   *
+   * @param block Block, may be {@code null}
+   * @param minsize Minimum size required
+   * @return Block of at least the requested size
+   */
+  private static double[] grow(double[] block, int minsize) {
+    final int oldsize = block != null ? block.length : 0;
+    if(oldsize >= minsize) {
+      return block;
+    }
+    final int newsize = grownBlockSize(oldsize, minsize);
+    double[] grown = block != null ? Arrays.copyOf(block, newsize) : new double[newsize];
+    Arrays.fill(grown, oldsize, newsize, Double.NaN);
+    return grown;
+  }
+
+  /**
+   * Position of a pair of (different, non-negative) ids in the triangular
+   * storage.
+   *
+   * @param i1 First id
+   * @param i2 Second id
+   * @return Position
+   */
+  protected static final long triangleIndex(int i1, int i2) {
+    return (i1 > i2) //
+    ? ((((long) i1) * (i1 - 1)) >>> 1) + i2 //
+    : ((((long) i2) * (i2 - 1)) >>> 1) + i1;
+  }
+
+  /**
+   * Position of a pair of (different) ids in the triangular storage, with
+   * range checks.
    *
    * @param i1 First id
    * @param i2 Second id
-   * @return Combined value
+   * @return Position
    */
-  protected static final long makeKey(int i1, int i2) {
-    return (i1 < i2) //
-    ? ((((long) i1) << 32) | i2)//
-    : ((((long) i2) << 32) | i1);
+  protected static final long checkedTriangleIndex(int i1, int i2) {
+    if(i1 < 0 || i2 < 0) {
+      throw new AbortException("Negative object ids are not supported by in-memory distance matrixes.");
+    }
+    final int m = Math.max(i1, i2);
+    if((((long) m) * (m + 1) >>> 1) > MAX_TRIANGLE_SIZE) {
+      throw new AbortException("Distance matrix too large for in-memory storage; use a disk cache based distance function instead.");
+    }
+    return triangleIndex(i1, i2);
+  }
+
+  /**
+   * Size to grow a block of the triangular storage to.
+   *
+   * @param cursize Current size
+   * @param minsize Minimum size required
+   * @return New size
+   */
+  protected static final int grownBlockSize(int cursize, int minsize) {
+    return (int) Math.min(BLOCK_SIZE, Math.max(minsize, (((long) cursize) << 1) + 1024));
   }
 
   @Override
   public boolean equals(Object obj) {
+    if(this == obj) {
+      return true;
+    }
     if(obj == null) {
       return false;
     }
     if(getClass() != obj.getClass()) {
       return false;
     }
+    // Compare the input, not the (expensive to compare) matrix contents.
     FileBasedDoubleDistanceFunction other = (FileBasedDoubleDistanceFunction) obj;
-    return this.cache.equals(other.cache);
+    return this.matrixfile.equals(other.matrixfile) && this.parser.getClass() == other.parser.getClass();
+  }
+
+  @Override
+  public int hashCode() {
+    return matrixfile.hashCode();
   }
 
   /**
@@ -23,14 +23,12 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.external;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import gnu.trove.map.TLongFloatMap;
-import gnu.trove.map.hash.TLongFloatHashMap;
-
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
@@ -53,7 +51,13 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * See {@link AsciiDistanceParser} for the default input format.
  *
- * TODO: use a {@code float[]} instead of the hash map.
+ * The distances are stored in a dense lower triangular matrix, split into
+ * blocks of 2<sup>24</sup> values, so the number of objects is only limited by
+ * the available memory: n(n-1)/2 floats, i.e. 20 GB for 100000 objects. For
+ * larger data sets, use {@link DiskCacheBasedFloatDistanceFunction}, which
+ * memory-maps the matrix.
+ *
+ * Pairs not contained in the file have distance 0.
  *
  * @author Elke Achtert
  * @author Erich Schubert
@@ -64,9 +68,10 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 @Description("Loads float distance values from an external text file.")
 public class FileBasedFloatDistanceFunction extends AbstractDBIDRangeDistanceFunction {
   /**
-   * The distance cache
+   * The distance matrix, lower triangle without the diagonal, in blocks.
+   * Missing values are stored as NaN.
    */
-  private TLongFloatMap cache;
+  private float[][] cache;
 
   /**
    * Distance parser
@@ -105,48 +110,92 @@ public class FileBasedFloatDistanceFunction extends AbstractDBIDRangeDistanceFun
 
   @Override
   public double distance(int i1, int i2) {
-    return (i1 == i2) ? 0. : cache.get(makeKey(i1, i2));
+    if(i1 == i2 || (i1 | i2) < 0) {
+      return 0.;
+    }
+    final long idx = FileBasedDoubleDistanceFunction.triangleIndex(i1, i2);
+    final int b = (int) (idx >>> FileBasedDoubleDistanceFunction.BLOCK_SHIFT), o = (int) idx & FileBasedDoubleDistanceFunction.BLOCK_MASK;
+    if(b >= cache.length || o >= cache[b].length) {
+      return 0.; // Not in the file.
+    }
+    final float d = cache[b][o];
+    return d == d ? d : 0.;
   }
 
   private void loadCache(DistanceParser parser, File matrixfile) throws IOException {
     InputStream in = new BufferedInputStream(FileUtil.tryGzipInput(new FileInputStream(matrixfile)));
-    cache = new TLongFloatHashMap();
+    cache = new float[0][];
     parser.parse(in, new DistanceCacheWriter() {
       @Override
       public void put(int id1, int id2, double distance) {
-        cache.put(makeKey(id1, id2), (float) distance);
+        if(id1 == id2) {
+          return;
+        }
+        final long idx = FileBasedDoubleDistanceFunction.checkedTriangleIndex(id1, id2);
+        final int b = (int) (idx >>> FileBasedDoubleDistanceFunction.BLOCK_SHIFT), o = (int) idx & FileBasedDoubleDistanceFunction.BLOCK_MASK;
+        if(b >= cache.length) {
+          final int oldblocks = cache.length;
+          cache = Arrays.copyOf(cache, b + 1);
+          // All but the last block are full.
+          for(int i = Math.max(oldblocks - 1, 0); i < b; i++) {
+            cache[i] = grow(cache[i], FileBasedDoubleDistanceFunction.BLOCK_SIZE);
+          }
+        }
+        if(cache[b] == null || o >= cache[b].length) {
+          cache[b] = grow(cache[b], o + 1);
+        }
+        cache[b][o] = (float) distance;
       }
 
       @Override
       public boolean containsKey(int id1, int id2) {
-        return cache.containsKey(makeKey(id1, id2));
+        if(id1 == id2) {
+          return true;
+        }
+        final long idx = FileBasedDoubleDistanceFunction.checkedTriangleIndex(id1, id2);
+        final int b = (int) (idx >>> FileBasedDoubleDistanceFunction.BLOCK_SHIFT), o = (int) idx & FileBasedDoubleDistanceFunction.BLOCK_MASK;
+        return b < cache.length && o < cache[b].length && cache[b][o] == cache[b][o];
       }
     });
   }
 
   /**
-   * Combine two integer ids into a long value.
+   * Grow a block of the triangular storage, filling new entries with NaN.
    *
-   * @param i1 First id
-   * @param i2 Second id
-   * @return Combined value
+   * @param block Block, may be {@code null}
+   * @param minsize Minimum size required
+   * @return Block of at least the requested size
    */
-  protected static final long makeKey(int i1, int i2) {
-    return (i1 < i2) //
-    ? ((((long) i1) << 32) | i2)//
-    : ((((long) i2) << 32) | i1);
+  private static float[] grow(float[] block, int minsize) {
+    final int oldsize = block != null ? block.length : 0;
+    if(oldsize >= minsize) {
+      return block;
+    }
+    final int newsize = FileBasedDoubleDistanceFunction.grownBlockSize(oldsize, minsize);
+    float[] grown = block != null ? Arrays.copyOf(block, newsize) : new float[newsize];
+    Arrays.fill(grown, oldsize, newsize, Float.NaN);
+    return grown;
   }
 
   @Override
   public boolean equals(Object obj) {
+    if(this == obj) {
+      return true;
+    }
     if(obj == null) {
       return false;
     }
     if(getClass() != obj.getClass()) {
       return false;
     }
+    // Compare the input, not the (expensive to compare) matrix contents.
     FileBasedFloatDistanceFunction other = (FileBasedFloatDistanceFunction) obj;
-    return this.cache.equals(other.cache);
+    return this.matrixfile.equals(other.matrixfile) && this.parser.getClass() == other.parser.getClass();
+  }
+
+  @Override
+  public int hashCode() {
+    return matrixfile.hashCode();
   }
 
   /**
@@ -0,0 +1,248 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.external;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import de.lmu.ifi.dbs.elki.datasource.parser.CSVReaderFormat;
+import de.lmu.ifi.dbs.elki.datasource.parser.ParallelBlockReader;
+import de.lmu.ifi.dbs.elki.datasource.parser.ParallelNumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Parallel variant of the {@link AsciiDistanceParser}.
+ *
+ * The input is read sequentially in large blocks of bytes, which are cut at
+ * line breaks and parsed concurrently (see {@link ParallelBlockReader}). The
+ * parsed values are then passed to the cache in input order, so the result is
+ * the same as with the sequential parser. Line numbers in error messages are
+ * relative to the block.
+ *
+ * @author Erich Schubert
+ *
+ * @apiviz.uses AsciiDistanceParser
+ */
+@Title("Parallel Number Distance Parser")
+@Description("Parallel parser for the following line format:\n" //
+    + "id1 id2 distanceValue, where id1 and is2 are integers representing the two ids belonging to the distance value.\n" //
+    + "The ids and the distance value are separated by whitespace. Empty lines and lines beginning with \"#\" will be ignored.")
+public class ParallelAsciiDistanceParser extends AsciiDistanceParser {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelAsciiDistanceParser.class);
+
+  /**
+   * Reader format.
+   */
+  private CSVReaderFormat format;
+
+  /**
+   * Size of the blocks to parse in parallel.
+   */
+  private int blocksize;
+
+  /**
+   * Constructor.
+   *
+   * @param format Input format
+   * @param blocksize Size of the blocks to parse in parallel, in bytes.
+   */
+  public ParallelAsciiDistanceParser(CSVReaderFormat format, int blocksize) {
+    super(format);
+    this.format = format;
+    this.blocksize = blocksize;
+  }
+
+  @Override
+  public void parse(InputStream in, final DistanceCacheWriter cache) {
+    final IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Parsing distance matrix", LOG) : null;
+    min = Integer.MAX_VALUE;
+    max = Integer.MIN_VALUE;
+    new ParallelBlockReader<Block>(blocksize) {
+      @Override
+      protected Callable<Block> makeBlock(byte[] data, int begin, int end) {
+        return new Block(format, data, begin, end);
+      }
+
+      @Override
+      protected void processBlock(Block b) {
+        b.writeTo(cache, prog);
+        min = Math.min(min, b.min);
+        max = Math.max(max, b.max);
+      }
+    }.read(in);
+    LOG.setCompleted(prog);
+    checkComplete(cache, min, max);
+  }
+
+  /**
+   * A block of the input file, and the parsed values.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class Block implements Callable<Block>, DistanceCacheWriter {
+    /**
+     * Input format.
+     */
+    private CSVReaderFormat format;
+
+    /**
+     * Data to parse.
+     */
+    private byte[] data;
+
+    /**
+     * Data range to parse.
+     */
+    private int begin, end;
+
+    /**
+     * Parsed ids.
+     */
+    private int[] id1 = new int[1024], id2 = new int[1024];
+
+    /**
+     * Parsed distances.
+     */
+    private double[] dist = new double[1024];
+
+    /**
+     * Number of values parsed.
+     */
+    private int size = 0;
+
+    /**
+     * Smallest and largest id.
+     */
+    int min, max;
+
+    /**
+     * Constructor.
+     *
+     * @param format Input format
+     * @param data Data buffer
+     * @param begin Begin of the range to parse
+     * @param end End of the range to parse
+     */
+    Block(CSVReaderFormat format, byte[] data, int begin, int end) {
+      super();
+      this.format = format;
+      this.data = data;
+      this.begin = begin;
+      this.end = end;
+    }
+
+    @Override
+    public Block call() {
+      AsciiDistanceParser parser = new AsciiDistanceParser(format);
+      parser.parseLines(new ByteArrayInputStream(data, begin, end - begin), this, null);
+      data = null; // Allow garbage collection early.
+      min = parser.min;
+      max = parser.max;
+      return this;
+    }
+
+    @Override
+    public void put(int i1, int i2, double distance) {
+      if(size == dist.length) {
+        final int newsize = size << 1;
+        id1 = Arrays.copyOf(id1, newsize);
+        id2 = Arrays.copyOf(id2, newsize);
+        dist = Arrays.copyOf(dist, newsize);
+      }
+      id1[size] = i1;
+      id2[size] = i2;
+      dist[size] = distance;
+      ++size;
+    }
+
+    @Override
+    public boolean containsKey(int i1, int i2) {
+      if(i1 == i2) {
+        return true;
+      }
+      // Linear scan, the block does not index its values.
+      for(int i = 0; i < size; i++) {
+        if((id1[i] == i1 && id2[i] == i2) || (id1[i] == i2 && id2[i] == i1)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Pass the parsed values on.
+     *
+     * @param cache Cache writer
+     * @param prog Progress (may be {@code null})
+     */
+    void writeTo(DistanceCacheWriter cache, IndefiniteProgress prog) {
+      for(int i = 0; i < size; i++) {
+        cache.put(id1[i], id2[i], dist[i]);
+        LOG.incrementProcessed(prog);
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AsciiDistanceParser.Parameterizer {
+    /**
+     * Block size.
+     */
+    protected int blocksize;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter blocksizeP = new IntParameter(ParallelNumberVectorLabelParser.Parameterizer.BLOCKSIZE_ID, ParallelNumberVectorLabelParser.DEFAULT_BLOCKSIZE);
+      blocksizeP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(blocksizeP)) {
+        blocksize = blocksizeP.intValue();
+      }
+    }
+
+    @Override
+    protected ParallelAsciiDistanceParser makeInstance() {
+      return new ParallelAsciiDistanceParser(format, blocksize);
+    }
+  }
+}
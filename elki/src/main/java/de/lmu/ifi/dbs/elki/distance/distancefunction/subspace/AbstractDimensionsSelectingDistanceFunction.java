@@ -41,7 +41,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntListParameter;
  * @author Elke Achtert
  * @param <V> the type of FeatureVector to compute the distances in between
  */
-public abstract class AbstractDimensionsSelectingDistanceFunction<V extends FeatureVector<?>> extends AbstractPrimitiveDistanceFunction<V> implements PrimitiveDistanceFunction<V>, DimensionSelectingSubspaceDistanceFunction<V> {
+public abstract class AbstractDimensionsSelectingDistanceFunction<V extends FeatureVector<?>> extends AbstractPrimitiveDistanceFunction<V> implements PrimitiveDistanceFunction<V>, DimensionSelectingSubspaceDistanceFunction<V>, Cloneable {
   /**
    * The dimensions to be considered for distance computation.
    */
@@ -77,6 +77,27 @@ public abstract class AbstractDimensionsSelectingDistanceFunction<V extends Feat
     BitsUtil.orI(this.dimensions, dimensions);
   }
 
+  /**
+   * Copy this distance function, but with a different dimension selection.
+   * 
+   * In contrast to {@link #setSelectedDimensions}, this instance is not
+   * modified, so the copies can be used concurrently for different subspaces.
+   * 
+   * @param dimensions a bit set designating the selected dimensions
+   * @return Copy, or {@code null} if this distance function cannot be copied
+   */
+  public AbstractDimensionsSelectingDistanceFunction<V> copyWithDimensions(long[] dimensions) {
+    try {
+      @SuppressWarnings("unchecked")
+      AbstractDimensionsSelectingDistanceFunction<V> copy = (AbstractDimensionsSelectingDistanceFunction<V>) clone();
+      copy.dimensions = dimensions.clone();
+      return copy;
+    }
+    catch(CloneNotSupportedException e) {
+      return null;
+    }
+  }
+
   @Override
   public boolean equals(Object obj) {
     if(obj == null) {
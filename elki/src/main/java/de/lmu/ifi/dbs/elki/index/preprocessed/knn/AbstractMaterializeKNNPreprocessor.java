@@ -99,6 +99,15 @@ public abstract class AbstractMaterializeKNNPreprocessor<O> extends AbstractPrep
     return k;
   }
 
+  /**
+   * Get the distance function used by this preprocessor.
+   *
+   * @return Distance function
+   */
+  public DistanceFunction<? super O> getDistanceFunction() {
+    return distanceFunction;
+  }
+
   /**
    * Perform the preprocessing step.
    */
@@ -139,6 +148,9 @@ public abstract class AbstractMaterializeKNNPreprocessor<O> extends AbstractPrep
 
   @Override
   public KNNQuery<O> getKNNQuery(DistanceQuery<O> distQ, Object... hints) {
+    if(!distanceFunction.equals(distQ.getDistanceFunction())) {
+      return null;
+    }
     // k max supported?
     for(Object hint : hints) {
       if(hint instanceof Integer) {
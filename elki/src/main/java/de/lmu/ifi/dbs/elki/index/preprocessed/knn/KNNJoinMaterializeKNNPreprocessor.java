@@ -31,7 +31,8 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 
 /**
- * Class to materialize the kNN using a spatial join on an R-tree.
+ * Class to materialize the kNN using a spatial join on an R-tree, or parallel
+ * bulk queries on other indexes (see {@link KNNJoin}).
  *
  * @author Erich Schubert
  *
@@ -0,0 +1,610 @@
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDPair;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * kNN index serving precomputed neighbors from a memory-mapped binary kNN
+ * graph file, as written by
+ * {@link de.lmu.ifi.dbs.elki.application.cache.CacheKNNGraph}.
+ * 
+ * The file consists of a header (magic number, distance width in bytes, number
+ * of objects n, number of neighbors k) and n rows of fixed width. Each row
+ * holds the number of neighbors stored, followed by k pairs of neighbor and
+ * distance (float or double). Because of the fixed width, rows can be accessed
+ * directly, and kNN lists are served as views on the mapped file without
+ * deserialization.
+ * 
+ * Objects are identified by their position in the relation, so the data must
+ * be loaded in the same order as when the file was written.
+ * 
+ * @author Erich Schubert
+ * 
+ * @param <O> Object type
+ */
+public class MappedKNNGraphIndex<O> implements KNNIndex<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedKNNGraphIndex.class);
+
+  /**
+   * Magic number to identify files.
+   */
+  public static final int KNN_GRAPH_MAGIC = 0x4B4E4E47;
+
+  /**
+   * Header size: magic, distance width, n, k.
+   */
+  public static final int HEADER_SIZE = 16;
+
+  /**
+   * Relation indexed.
+   */
+  private final Relation<O> relation;
+
+  /**
+   * Distance function the graph was computed with.
+   */
+  private final DistanceFunction<? super O> distanceFunction;
+
+  /**
+   * File to load.
+   */
+  private final File filename;
+
+  /**
+   * Number of neighbors stored per object.
+   */
+  private int k;
+
+  /**
+   * Store distances as float.
+   */
+  private boolean isfloat;
+
+  /**
+   * Row size in bytes.
+   */
+  private int rowsize;
+
+  /**
+   * Rows per mapped buffer.
+   */
+  private int rowsPerBuffer;
+
+  /**
+   * Mapped row buffers.
+   */
+  private ByteBuffer[] rows;
+
+  /**
+   * Objects, in row order.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Map from object to row number.
+   */
+  private WritableIntegerDataStore rowmap;
+
+  /**
+   * Constructor.
+   * 
+   * @param relation Relation to index
+   * @param distanceFunction Distance function
+   * @param filename File to load
+   */
+  public MappedKNNGraphIndex(Relation<O> relation, DistanceFunction<? super O> distanceFunction, File filename) {
+    super();
+    this.relation = relation;
+    this.distanceFunction = distanceFunction;
+    this.filename = filename;
+  }
+
+  @Override
+  public void initialize() {
+    try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+        FileChannel channel = file.getChannel()) {
+      if(file.length() < HEADER_SIZE) {
+        throw new AbortException("kNN graph file is too short.");
+      }
+      if(file.readInt() != KNN_GRAPH_MAGIC) {
+        throw new AbortException("kNN graph magic number does not match.");
+      }
+      final int dwidth = file.readInt();
+      if(dwidth != 4 && dwidth != 8) {
+        throw new AbortException("Unsupported distance width in kNN graph: " + dwidth);
+      }
+      isfloat = (dwidth == 4);
+      final int n = file.readInt();
+      k = file.readInt();
+      if(n != relation.size()) {
+        throw new AbortException("kNN graph size " + n + " does not match relation size " + relation.size());
+      }
+      rowsize = rowSize(k, dwidth);
+      if(file.length() != HEADER_SIZE + (long) rowsize * n) {
+        throw new AbortException("kNN graph file size does not match its header.");
+      }
+      ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      rowmap = makeRowMap(ids);
+      rowsPerBuffer = rowsPerBuffer(rowsize);
+      rows = mapRows(channel, MapMode.READ_ONLY, HEADER_SIZE, n, rowsize);
+    }
+    catch(IOException e) {
+      throw new AbortException("I/O error in loading kNN graph: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Map objects to their row numbers.
+   * 
+   * @param ids Objects, in row order
+   * @return Row numbers
+   */
+  public static WritableIntegerDataStore makeRowMap(ArrayDBIDs ids) {
+    WritableIntegerDataStore rowmap = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, -1);
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      rowmap.putInt(iter, iter.getOffset());
+    }
+    return rowmap;
+  }
+
+  /**
+   * Compute the size of a row.
+   * 
+   * @param k Number of neighbors
+   * @param dwidth Distance width (4 or 8)
+   * @return Row size in bytes
+   */
+  public static int rowSize(int k, int dwidth) {
+    return 4 + k * (4 + dwidth);
+  }
+
+  /**
+   * Number of rows mapped into a single buffer.
+   * 
+   * @param rowsize Row size
+   * @return Number of rows per buffer
+   */
+  public static int rowsPerBuffer(int rowsize) {
+    return Math.max(1, Integer.MAX_VALUE / rowsize);
+  }
+
+  /**
+   * Map the rows of a kNN graph file. Mapped buffers are limited to 2 GB, so
+   * large files are mapped in multiple chunks of
+   * {@link #rowsPerBuffer(int)} rows each.
+   * 
+   * @param channel File channel
+   * @param mode Map mode
+   * @param offset Offset of the first row
+   * @param n Number of rows
+   * @param rowsize Row size
+   * @return Mapped buffers
+   * @throws IOException on mapping errors
+   */
+  public static MappedByteBuffer[] mapRows(FileChannel channel, MapMode mode, long offset, int n, int rowsize) throws IOException {
+    final int per = rowsPerBuffer(rowsize);
+    MappedByteBuffer[] bufs = new MappedByteBuffer[(n + per - 1) / per];
+    for(int i = 0; i < bufs.length; i++) {
+      final int r = Math.min(per, n - i * per);
+      bufs[i] = channel.map(mode, offset + (long) i * per * rowsize, (long) r * rowsize);
+    }
+    return bufs;
+  }
+
+  /**
+   * Get the kNN list of an object.
+   * 
+   * @param id Object
+   * @return kNN list view
+   */
+  public KNNList get(DBIDRef id) {
+    final int row = rowmap.intValue(id);
+    if(row < 0) {
+      throw new AbortException("Object is not contained in the kNN graph.");
+    }
+    final ByteBuffer buf = rows[row / rowsPerBuffer];
+    final int off = (row % rowsPerBuffer) * rowsize;
+    return new MappedKNNList(buf, off + 4, buf.getInt(off), k, isfloat);
+  }
+
+  /**
+   * Get the number of neighbors stored per object.
+   * 
+   * @return k
+   */
+  public int getK() {
+    return k;
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    if(!distanceFunction.equals(distanceQuery.getDistanceFunction())) {
+      return null;
+    }
+    // k max supported?
+    for(Object hint : hints) {
+      if(hint instanceof Integer) {
+        if(((Integer) hint) > k) {
+          return null;
+        }
+        break;
+      }
+    }
+    return new MappedKNNQuery();
+  }
+
+  @Override
+  public void logStatistics() {
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".k", k));
+    }
+  }
+
+  @Override
+  public String getLongName() {
+    return "Memory-mapped kNN graph";
+  }
+
+  @Override
+  public String getShortName() {
+    return "mapped-knn";
+  }
+
+  /**
+   * kNN query served from the mapped file.
+   * 
+   * @author Erich Schubert
+   */
+  private class MappedKNNQuery implements KNNQuery<O> {
+    @Override
+    public KNNList getKNNForDBID(DBIDRef id, int k) {
+      if(k > MappedKNNGraphIndex.this.k) {
+        throw new AbortException("Requested more neighbors than stored in the kNN graph.");
+      }
+      KNNList list = get(id);
+      return (k < MappedKNNGraphIndex.this.k) ? DBIDUtil.subList(list, k) : list;
+    }
+
+    @Override
+    public List<? extends KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+      List<KNNList> result = new ArrayList<>(ids.size());
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        result.add(getKNNForDBID(iter, k));
+      }
+      return result;
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      throw new AbortException("Memory-mapped kNN graph only supports ID queries.");
+    }
+  }
+
+  /**
+   * kNN list backed by a row of a mapped kNN graph.
+   * 
+   * @author Erich Schubert
+   */
+  private class MappedKNNList implements KNNList {
+    /**
+     * Buffer containing the row.
+     */
+    private final ByteBuffer buf;
+
+    /**
+     * Offset of the first neighbor.
+     */
+    private final int off;
+
+    /**
+     * Number of neighbors stored.
+     */
+    private final int size;
+
+    /**
+     * Parameter k of the graph.
+     */
+    private final int k;
+
+    /**
+     * Distances are stored as float.
+     */
+    private final boolean isfloat;
+
+    /**
+     * Width of a single entry.
+     */
+    private final int width;
+
+    /**
+     * Constructor.
+     * 
+     * @param buf Buffer
+     * @param off Offset of the first neighbor
+     * @param size Number of neighbors
+     * @param k Parameter k of the graph
+     * @param isfloat Distances are stored as float
+     */
+    MappedKNNList(ByteBuffer buf, int off, int size, int k, boolean isfloat) {
+      this.buf = buf;
+      this.off = off;
+      this.size = size;
+      this.k = k;
+      this.isfloat = isfloat;
+      this.width = isfloat ? 8 : 12;
+    }
+
+    /**
+     * Get the row number of the neighbor at a position.
+     * 
+     * @param i Position
+     * @return Row number
+     */
+    int rowAt(int i) {
+      return buf.getInt(off + i * width);
+    }
+
+    /**
+     * Get the distance at a position.
+     * 
+     * @param i Position
+     * @return Distance
+     */
+    double distanceAt(int i) {
+      final int p = off + i * width + 4;
+      return isfloat ? buf.getFloat(p) : buf.getDouble(p);
+    }
+
+    @Override
+    public int getK() {
+      return k;
+    }
+
+    @Override
+    public DoubleDBIDPair get(int index) {
+      return DBIDUtil.newPair(distanceAt(index), ids.get(rowAt(index)));
+    }
+
+    @Override
+    public double getKNNDistance() {
+      return size > 0 ? distanceAt(size - 1) : Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public DoubleDBIDListIter iter() {
+      return new Itr();
+    }
+
+    @Override
+    public boolean contains(DBIDRef o) {
+      final int q = rowmap.intValue(o);
+      for(int i = 0; i < size; i++) {
+        if(rowAt(i) == q) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return size == 0;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Iterator over the mapped row.
+     * 
+     * @author Erich Schubert
+     * 
+     * @apiviz.exclude
+     */
+    private class Itr implements DoubleDBIDListIter {
+      /**
+       * Current position.
+       */
+      private int pos = 0;
+
+      /**
+       * Iterator to resolve row numbers.
+       */
+      private DBIDArrayIter ref = ids.iter();
+
+      @Override
+      public boolean valid() {
+        return pos < size && pos >= 0;
+      }
+
+      @Override
+      public Itr advance() {
+        pos++;
+        return this;
+      }
+
+      @Override
+      public double doubleValue() {
+        return distanceAt(pos);
+      }
+
+      @Override
+      public DoubleDBIDPair getPair() {
+        return get(pos);
+      }
+
+      @Override
+      public int internalGetIndex() {
+        return ref.seek(rowAt(pos)).internalGetIndex();
+      }
+
+      @Override
+      public int getOffset() {
+        return pos;
+      }
+
+      @Override
+      public Itr advance(int count) {
+        pos += count;
+        return this;
+      }
+
+      @Override
+      public Itr retract() {
+        --pos;
+        return this;
+      }
+
+      @Override
+      public Itr seek(int off) {
+        pos = off;
+        return this;
+      }
+    }
+  }
+
+  /**
+   * Index factory.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.stereotype factory
+   * @apiviz.uses MappedKNNGraphIndex oneway - - «create»
+   * 
+   * @param <O> Object type
+   */
+  public static class Factory<O> implements IndexFactory<O, KNNIndex<O>> {
+    /**
+     * Distance function the graph was computed with.
+     */
+    private DistanceFunction<? super O> distanceFunction;
+
+    /**
+     * File to load.
+     */
+    private File filename;
+
+    /**
+     * Constructor.
+     * 
+     * @param distanceFunction Distance function
+     * @param filename kNN graph file
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, File filename) {
+      super();
+      this.distanceFunction = distanceFunction;
+      this.filename = filename;
+    }
+
+    @Override
+    public MappedKNNGraphIndex<O> instantiate(Relation<O> relation) {
+      return new MappedKNNGraphIndex<>(relation, distanceFunction, filename);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distanceFunction.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterization class.
+     * 
+     * @author Erich Schubert
+     * 
+     * @apiviz.exclude
+     * 
+     * @param <O> Object type
+     */
+    public static class Parameterizer<O> extends AbstractParameterizer {
+      /**
+       * Distance function the graph was computed with.
+       */
+      private DistanceFunction<? super O> distanceFunction;
+
+      /**
+       * File to load.
+       */
+      private File filename;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        final ObjectParameter<DistanceFunction<? super O>> distP = new ObjectParameter<>(AbstractMaterializeKNNPreprocessor.Factory.DISTANCE_FUNCTION_ID, DistanceFunction.class, EuclideanDistanceFunction.class);
+        if(config.grab(distP)) {
+          distanceFunction = distP.instantiateClass(config);
+        }
+        final FileParameter fileP = new FileParameter(CachedDoubleDistanceKNNPreprocessor.Factory.Parameterizer.CACHE_ID, FileParameter.FileType.INPUT_FILE);
+        if(config.grab(fileP)) {
+          filename = fileP.getValue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(distanceFunction, filename);
+      }
+    }
+  }
+}
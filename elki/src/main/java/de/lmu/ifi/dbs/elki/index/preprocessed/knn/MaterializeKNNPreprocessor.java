@@ -23,12 +23,14 @@ package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.IOException;
 import java.util.List;
 
 import javax.swing.event.EventListenerList;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -36,7 +38,9 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.SetDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.ConcurrentQuery;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
@@ -46,8 +50,13 @@ import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.ArrayTask;
+import de.lmu.ifi.dbs.elki.utilities.checkpoint.Checkpoint;
+import de.lmu.ifi.dbs.elki.utilities.checkpoint.CheckpointManager;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
  * A preprocessor for annotation of the k nearest neighbors (and their
@@ -71,6 +80,11 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    */
   private static final Logging LOG = Logging.getLogger(MaterializeKNNPreprocessor.class);
 
+  /**
+   * Number of objects to process between two checkpoints.
+   */
+  private static final int CHECKPOINT_BLOCKSIZE = 4096;
+
   /**
    * Flag to use bulk operations.
    *
@@ -127,10 +141,38 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
       }
     }
     else {
-      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-        KNNList knn = knnQuery.getKNNForDBID(iter, k);
-        storage.put(iter, knn);
-        getLogger().incrementProcessed(progress);
+      // Queries are independent, so run them in parallel if the query allows
+      // concurrent use; the storage is filled afterwards, as it may not allow
+      // concurrent writes.
+      final boolean concurrent = allowsConcurrentUse(knnQuery);
+      final KNNList[] knns = new KNNList[ids.size()];
+      ArrayTask task = new ArrayTask() {
+        @Override
+        public void process(DBIDArrayIter it) {
+          knns[it.getOffset()] = knnQuery.getKNNForDBID(it, k);
+        }
+      };
+      Checkpoint cp = CheckpointManager.isEnabled() ? CheckpointManager.open(getClass(), ids) : null;
+      if(cp == null) {
+        run(ids, 0, knns.length, task, concurrent, progress);
+      }
+      else {
+        // Process in blocks, to be able to checkpoint the completed prefix.
+        int done = restoreCheckpoint(cp, knns);
+        if(progress != null) {
+          progress.setProcessed(done, getLogger());
+        }
+        for(int begin = done; begin < knns.length; begin += CHECKPOINT_BLOCKSIZE) {
+          final int end = Math.min(begin + CHECKPOINT_BLOCKSIZE, knns.length);
+          run(ids, begin, end, task, concurrent, progress);
+          if(end < knns.length && cp.due()) {
+            writeCheckpoint(cp, knns, end);
+          }
+        }
+        cp.finish();
+      }
+      for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        storage.put(iter, knns[iter.getOffset()]);
       }
     }
     getLogger().ensureCompleted(progress);
@@ -139,6 +181,93 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     }
   }
 
+  /**
+   * Test whether a kNN query may be used from multiple threads: linear scans,
+   * and indexes that document concurrent read-only queries as safe (e.g.,
+   * in-memory R*-trees and M-trees). Disk-based indexes without a cache use a
+   * shared file pointer, and must only be queried sequentially.
+   * 
+   * @param knnQuery kNN query
+   * @return {@code true} if the query may be run concurrently
+   */
+  private static boolean allowsConcurrentUse(KNNQuery<?> knnQuery) {
+    if(knnQuery instanceof LinearScanQuery) {
+      return true;
+    }
+    return knnQuery instanceof ConcurrentQuery && ((ConcurrentQuery) knnQuery).allowsConcurrentUse();
+  }
+
+  /**
+   * Run a task on the array positions {@code begin} (inclusive) to
+   * {@code end} (exclusive), either in parallel or sequentially.
+   * 
+   * @param ids IDs to process
+   * @param begin First position to process
+   * @param end End position (exclusive)
+   * @param task Task to run on every object
+   * @param concurrent Flag to run the task in parallel
+   * @param progress Progress to increment
+   */
+  private void run(ArrayDBIDs ids, int begin, int end, ArrayTask task, boolean concurrent, FiniteProgress progress) {
+    if(concurrent) {
+      ParallelExecutor.run(ids, begin, end, task, progress, getLogger());
+      return;
+    }
+    for(DBIDArrayIter iter = ids.iter().seek(begin); iter.getOffset() < end; iter.advance()) {
+      task.process(iter);
+      getLogger().incrementProcessed(progress);
+    }
+  }
+
+  /**
+   * Restore the kNN lists of the completed prefix from a checkpoint.
+   * 
+   * @param cp Checkpoint
+   * @param knns Output kNN lists
+   * @return Number of completed objects
+   */
+  private int restoreCheckpoint(Checkpoint cp, KNNList[] knns) {
+    try (Checkpoint.Reader in = cp.restore()) {
+      if(in == null) {
+        return 0;
+      }
+      if(in.readInt() != k) {
+        throw new AbortException("Checkpoint was computed with a different k.");
+      }
+      in.expectString("distance function", distanceFunction.getClass().getName());
+      final int done = in.readInt();
+      for(int i = 0; i < done; i++) {
+        knns[i] = in.readKNNList();
+      }
+      return done;
+    }
+    catch(IOException e) {
+      throw new AbortException("Cannot resume from checkpoint.", e);
+    }
+  }
+
+  /**
+   * Write the kNN lists of the completed prefix to a checkpoint.
+   * 
+   * @param cp Checkpoint
+   * @param knns kNN lists
+   * @param done Number of completed objects
+   */
+  private void writeCheckpoint(Checkpoint cp, KNNList[] knns, int done) {
+    try (Checkpoint.Writer out = cp.write()) {
+      out.writeInt(k);
+      out.writeString(distanceFunction.getClass().getName());
+      out.writeInt(done);
+      for(int i = 0; i < done; i++) {
+        out.writeKNNList(knns[i]);
+      }
+      out.commit();
+    }
+    catch(IOException e) {
+      getLogger().warning("Checkpoint failed: " + e.getMessage());
+    }
+  }
+
   @Override
   public final void insert(DBIDRef id) {
     objectsInserted(DBIDUtil.deref(id));
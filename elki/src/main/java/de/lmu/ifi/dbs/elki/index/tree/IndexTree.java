@@ -26,6 +26,7 @@ import de.lmu.ifi.dbs.elki.index.Index;
 
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.persistent.MemoryPageFile;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
@@ -102,6 +103,17 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
     rootEntry = createRootEntry();
   }
 
+  /**
+   * Test whether the tree may be queried from multiple threads concurrently.
+   * This is the case when the pages are kept in a {@link MemoryPageFile},
+   * as long as the tree is not modified at the same time.
+   *
+   * @return {@code true} if concurrent read-only queries are safe
+   */
+  public boolean allowsConcurrentQueries() {
+    return file instanceof MemoryPageFile;
+  }
+
   /**
    * Get the (STATIC) logger for this class.
    *
@@ -22,20 +22,44 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.LoggingUtil;
-import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -50,8 +74,14 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * @author Erich Schubert
  *
  * @param <O> Object type
+ * @param <N> Node type
  */
-public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
+public abstract class AbstractCoverTree<O, N extends AbstractCoverTree.AbstractNode<N>> extends AbstractIndex<O>implements DynamicIndex {
+  /**
+   * Do not use multiple threads for bulk loading below this size.
+   */
+  private static final int PARALLEL_MINIMUM_SIZE = 10000;
+
   /**
    * Constant expansion rate. 2 would be the intuitive value, but the original
    * version used 1.3, so we copy this. This means that in every level, the
@@ -82,13 +112,18 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
   /**
    * Distance computations performed.
    */
-  protected long distComputations = 0L;
+  protected final Counter distComputations;
 
   /**
    * Stop refining the tree at this size, but build a leaf.
    */
   protected int truncate = 10;
 
+  /**
+   * Tree root.
+   */
+  protected N root = null;
+
   /**
    * Constructor.
    *
@@ -105,6 +140,78 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
     this.expansion = expansion;
     this.invLogExpansion = 1. / Math.log(expansion);
     this.scaleBottom = (int) Math.ceil(Math.log(Double.MIN_NORMAL) * invLogExpansion);
+    Logging log = getLogger();
+    this.distComputations = log.isStatistics() ? log.newConcurrentCounter(this.getClass().getName() + ".distance-computations") : null;
+  }
+
+  /**
+   * Node base class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <N> Node type
+   */
+  protected abstract static class AbstractNode<N extends AbstractNode<N>> {
+    /**
+     * Maximum distance to descendants.
+     */
+    double maxDist = 0.;
+
+    /**
+     * Child nodes.
+     */
+    ArrayList<N> children;
+
+    /**
+     * Constructor.
+     *
+     * @param maxDist Maximum distance to any descendant.
+     * @param children Child nodes, {@code null} for a leaf.
+     */
+    protected AbstractNode(double maxDist, ArrayList<N> children) {
+      this.maxDist = maxDist;
+      this.children = children;
+    }
+
+    /**
+     * True, if the node is a leaf.
+     *
+     * @return {@code true}, if this is a leaf node.
+     */
+    public boolean isLeaf() {
+      return children == null || children.size() == 0;
+    }
+
+    /**
+     * Iterate over the objects of this node, starting with the routing object.
+     *
+     * @return Iterator
+     */
+    protected abstract DBIDArrayIter iter();
+
+    /**
+     * Number of objects in this node, including the routing object.
+     *
+     * @return Size
+     */
+    protected abstract int size();
+
+    /**
+     * Add a singleton.
+     *
+     * @param d Distance to the routing object
+     * @param id Object
+     */
+    protected abstract void add(double d, DBIDRef id);
+
+    /**
+     * Remove a singleton, replacing it with the last one.
+     *
+     * @param off Offset
+     */
+    protected abstract void removeSwap(int off);
   }
 
   /**
@@ -150,7 +257,7 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
    * @return Distance
    */
   protected double distance(DBIDRef a, DBIDRef b) {
-    ++distComputations;
+    countDistanceComputation();
     return distanceQuery.distance(a, b);
   }
 
@@ -162,10 +269,41 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
    * @return Distance
    */
   protected double distance(O a, DBIDRef b) {
-    ++distComputations;
+    countDistanceComputation();
     return distanceQuery.distance(a, b);
   }
 
+  /**
+   * Count a distance computation.
+   */
+  private void countDistanceComputation() {
+    if(distComputations != null) {
+      distComputations.increment();
+    }
+  }
+
+  /**
+   * Compute an upper bound for the k-nearest neighbor distance of a query
+   * object, from the neighbors of a previous (nearby) query object.
+   * 
+   * @param obj Query object
+   * @param prev Previous kNN result
+   * @param k Number of neighbors
+   * @return Upper bound for the kNN distance, or infinity.
+   */
+  protected double knnDistanceBound(O obj, KNNList prev, int k) {
+    if(prev == null || prev.size() < k) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double[] dists = new double[prev.size()];
+    int i = 0;
+    for(DoubleDBIDListIter it = prev.iter(); it.valid(); it.advance(), i++) {
+      dists[i] = distance(obj, it);
+    }
+    Arrays.sort(dists);
+    return dists[k - 1];
+  }
+
   /**
    * Retain all elements within the current cover.
    * 
@@ -209,9 +347,434 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
     }
   }
 
+  /**
+   * Bulk-load the index.
+   *
+   * @param ids IDs to load
+   */
+  public abstract void bulkLoad(DBIDs ids);
+
+  /**
+   * Create a leaf node containing a single object.
+   *
+   * @param id Object
+   * @return New node
+   */
+  protected abstract N newLeaf(DBIDRef id);
+
+  /**
+   * Build a new subtree, routed at the first object.
+   *
+   * @param ids Objects, the first is used as routing object.
+   * @param parent Parent node, {@code null} for the root
+   * @return New subtree
+   */
+  protected abstract N rebuild(ArrayDBIDs ids, N parent);
+
+  /**
+   * Test whether a child node may contain an object, given the distance of the
+   * object to the routing object of the parent node.
+   *
+   * @param child Child node
+   * @param d Distance to the routing object of the parent
+   * @return {@code false} if the object cannot be covered by the child.
+   */
+  protected boolean mayCover(N child, double d) {
+    return true;
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    if(root == null) {
+      root = newLeaf(id);
+      return;
+    }
+    N parent = null, cur = root;
+    double d = distance(id, cur.iter());
+    while(true) {
+      cur.maxDist = d > cur.maxDist ? d : cur.maxDist;
+      if(cur.isLeaf()) {
+        break;
+      }
+      // Descend into the closest child that already covers the new object:
+      final DBIDIter r = cur.iter();
+      N best = null;
+      double bestd = Double.POSITIVE_INFINITY;
+      for(N c : cur.children) {
+        if(!mayCover(c, d)) {
+          continue;
+        }
+        final DBIDIter f = c.iter();
+        final double dc = DBIDUtil.equal(f, r) ? d : distance(id, f);
+        if(dc <= c.maxDist && dc < bestd) {
+          best = c;
+          bestd = dc;
+        }
+      }
+      if(best == null) {
+        break; // Add as singleton
+      }
+      parent = cur;
+      cur = best;
+      d = bestd;
+    }
+    cur.add(d, id);
+    // Leaf has become too large, build a subtree instead:
+    if(cur.isLeaf() && cur.maxDist > 0 && cur.size() > truncate << 1) {
+      ArrayModifiableDBIDs ids = DBIDUtil.newArray(cur.size());
+      for(DBIDIter it = cur.iter(); it.valid(); it.advance()) {
+        ids.add(it);
+      }
+      replace(parent, cur, rebuild(ids, parent));
+    }
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    if(root == null) {
+      bulkLoad(ids);
+      return;
+    }
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      insert(it);
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    if(root == null) {
+      return false;
+    }
+    return delete(root, id, distance(id, root.iter()), new ArrayList<N>());
+  }
+
+  /**
+   * Delete an object from a subtree.
+   *
+   * @param cur Current node
+   * @param id Object to delete
+   * @param d Distance of the object to the routing object
+   * @param path Path to the current node
+   * @return {@code true} when the object was found.
+   */
+  private boolean delete(N cur, DBIDRef id, double d, ArrayList<N> path) {
+    if(d > cur.maxDist) {
+      return false; // Not covered.
+    }
+    path.add(cur);
+    DBIDArrayIter it = cur.iter();
+    if(DBIDUtil.equal(it, id)) {
+      // Routing object: rebuild subtree.
+      rebuildWithout(path, id);
+      return true;
+    }
+    for(it.advance(); it.valid(); it.advance()) {
+      if(DBIDUtil.equal(it, id)) {
+        cur.removeSwap(it.getOffset());
+        return true;
+      }
+    }
+    if(!cur.isLeaf()) {
+      final DBIDIter r = cur.iter();
+      for(N c : cur.children) {
+        if(!mayCover(c, d)) {
+          continue;
+        }
+        final DBIDIter f = c.iter();
+        if(delete(c, id, DBIDUtil.equal(f, r) ? d : distance(id, f), path)) {
+          return true;
+        }
+      }
+    }
+    path.remove(path.size() - 1);
+    return false;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      delete(it);
+    }
+  }
+
+  /**
+   * Rebuild the subtree routed at an object to be deleted.
+   *
+   * @param path Path to the node routed at the object
+   * @param id Object to remove
+   */
+  private void rebuildWithout(ArrayList<N> path, DBIDRef id) {
+    for(int i = path.size() - 1; i >= 0; i--) {
+      final N cur = path.get(i);
+      final N parent = i > 0 ? path.get(i - 1) : null;
+      ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+      collect(cur, id, ids);
+      if(ids.size() > 0) {
+        replace(parent, cur, rebuild(ids, parent));
+        return;
+      }
+      if(parent == null) {
+        root = null;
+        return;
+      }
+      if(parent.children.size() > 1) {
+        parent.children.remove(cur);
+        return;
+      }
+      // Parent would degenerate, rebuild the parent instead.
+    }
+  }
+
+  /**
+   * Collect all objects stored in a subtree.
+   *
+   * @param cur Subtree root
+   * @param exclude Object to exclude
+   * @param ids Output list
+   */
+  private void collect(N cur, DBIDRef exclude, ArrayModifiableDBIDs ids) {
+    DBIDIter it = cur.iter();
+    if(!cur.isLeaf()) {
+      it.advance(); // Routing object is stored in a child.
+      for(N c : cur.children) {
+        collect(c, exclude, ids);
+      }
+    }
+    for(; it.valid(); it.advance()) {
+      if(!DBIDUtil.equal(it, exclude)) {
+        ids.add(it);
+      }
+    }
+  }
+
+  /**
+   * Replace a child node.
+   *
+   * @param parent Parent node, {@code null} for the root
+   * @param old Old child
+   * @param rep Replacement
+   */
+  private void replace(N parent, N old, N rep) {
+    if(parent == null) {
+      root = rep;
+    }
+    else {
+      parent.children.set(parent.children.indexOf(old), rep);
+    }
+  }
+
+  /**
+   * Compute the order of the given objects in a depth-first traversal of the
+   * tree, to process nearby query objects consecutively.
+   *
+   * @param ids Objects
+   * @return Processing order
+   */
+  protected int[] treeOrder(ArrayDBIDs ids) {
+    WritableIntegerDataStore pos = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP, -1);
+    if(root != null) {
+      treeOrder(root, pos, 0);
+    }
+    final int[] order = new int[ids.size()], keys = new int[ids.size()];
+    DBIDArrayIter it = ids.iter();
+    for(int i = 0; i < order.length; i++) {
+      order[i] = i;
+      keys[i] = pos.intValue(it.seek(i));
+    }
+    pos.destroy();
+    IntegerArrayQuickSort.sort(order, new IntegerComparator() {
+      @Override
+      public int compare(int x, int y) {
+        return Integer.compare(keys[x], keys[y]);
+      }
+    });
+    return order;
+  }
+
+  /**
+   * Assign positions in depth-first order.
+   *
+   * @param cur Current node
+   * @param pos Output storage
+   * @param c Next position
+   * @return Next position
+   */
+  private int treeOrder(N cur, WritableIntegerDataStore pos, int c) {
+    DBIDIter it = cur.iter();
+    if(!cur.isLeaf()) {
+      it.advance(); // Routing object is stored in a child.
+      for(N chi : cur.children) {
+        c = treeOrder(chi, pos, c);
+      }
+    }
+    for(; it.valid(); it.advance()) {
+      pos.putInt(it, c++);
+    }
+    return c;
+  }
+
   @Override
   public void logStatistics() {
-    getLogger().statistics(new LongStatistic(this.getClass().getName() + ".distance-computations", distComputations));
+    if(distComputations != null) {
+      getLogger().statistics(distComputations);
+    }
+  }
+
+  /**
+   * Choose the minimum subtree size to build in a separate thread during bulk
+   * loading.
+   * 
+   * @param size Data set size
+   * @return Threshold, or {@code -1} to build in a single thread.
+   */
+  protected int parallelThreshold(int size) {
+    final int parallelism = ParallelCore.ALL_PROCESSORS;
+    if(parallelism <= 1 || size < PARALLEL_MINIMUM_SIZE) {
+      return -1;
+    }
+    // Aim at a few tasks per thread, for load balancing.
+    return Math.max(size / (parallelism << 2), truncate);
+  }
+
+  /**
+   * Helper for building subtrees concurrently during bulk loading.
+   * 
+   * The upper levels of the tree are partitioned by the calling thread, while
+   * sufficiently small subtrees are built by worker threads. Child positions
+   * are reserved, so that the resulting tree is identical to a sequential
+   * build.
+   * 
+   * @author Erich Schubert
+   *
+   * @param <N> Node type
+   */
+  protected static class ParallelBuild<N> {
+    /**
+     * Minimum size of subtrees to build in the calling thread.
+     */
+    final int threshold;
+
+    /**
+     * Pending subtree constructions.
+     */
+    private List<Future<N>> futures = new ArrayList<>();
+
+    /**
+     * Child lists to store the results in.
+     */
+    private List<List<N>> targets = new ArrayList<>();
+
+    /**
+     * Positions in the child lists.
+     */
+    private TIntArrayList positions = new TIntArrayList();
+
+    /**
+     * Parallel core.
+     */
+    private ParallelCore core = ParallelCore.getCore();
+
+    /**
+     * Constructor.
+     * 
+     * @param threshold Subtrees smaller than this are built by worker threads.
+     */
+    protected ParallelBuild(int threshold) {
+      super();
+      this.threshold = threshold;
+      core.connect();
+    }
+
+    /**
+     * Test whether a subtree of the given size is built by a worker.
+     * 
+     * @param size Subtree size
+     * @return {@code true} if it should be submitted.
+     */
+    protected boolean isSmall(int size) {
+      return size < threshold;
+    }
+
+    /**
+     * Submit a subtree for construction.
+     * 
+     * @param children Child list to add the subtree to
+     * @param task Task producing the subtree
+     */
+    protected void submit(List<N> children, Callable<N> task) {
+      targets.add(children);
+      positions.add(children.size());
+      children.add(null); // Placeholder
+      futures.add(core.submit(task));
+    }
+
+    /**
+     * Wait for all subtrees to finish, and insert them into the tree.
+     */
+    protected void finish() {
+      try {
+        for(int i = 0; i < futures.size(); i++) {
+          targets.get(i).set(positions.get(i), futures.get(i).get());
+        }
+      }
+      catch(ExecutionException e) {
+        throw new RuntimeException("Cover tree construction failed.", e);
+      }
+      catch(InterruptedException e) {
+        throw new RuntimeException("Parallel execution interrupted.");
+      }
+      finally {
+        core.disconnect();
+      }
+    }
+  }
+
+  /**
+   * Base class for kNN queries, processing bulk queries in tree order.
+   *
+   * @author Erich Schubert
+   */
+  public abstract class AbstractCoverTreeKNNQuery extends AbstractDistanceKNNQuery<O>implements KNNQuery<O> {
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance
+     */
+    public AbstractCoverTreeKNNQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+      final KNNList[] res = new KNNList[ids.size()];
+      DBIDArrayIter it = ids.iter();
+      KNNList prev = null;
+      for(int i : treeOrder(ids)) {
+        final O obj = relation.get(it.seek(i));
+        KNNList knn = getKNNForObject(obj, k, knnDistanceBound(obj, prev, k));
+        // Rounding in the distance reconstruction may prune at the bound:
+        if(knn.size() < k && prev != null) {
+          knn = getKNNForObject(obj, k, Double.POSITIVE_INFINITY);
+        }
+        prev = res[i] = knn;
+      }
+      return Arrays.asList(res);
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      return getKNNForObject(obj, k, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Perform a kNN search, given an upper bound of the kNN distance.
+     *
+     * @param obj Query object
+     * @param k Number of neighbors
+     * @param bound Upper bound of the kNN distance
+     * @return kNN result
+     */
+    protected abstract KNNList getKNNForObject(O obj, int k, double bound);
   }
 
   /**
@@ -238,7 +801,7 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
    *
    * @param <O> Object type
    */
-  public abstract static class Factory<O, I extends AbstractCoverTree<O>> implements IndexFactory<O, I> {
+  public abstract static class Factory<O, I extends AbstractCoverTree<O, ?>> implements IndexFactory<O, I> {
     /**
      * Holds the instance of the trees distance function.
      */
@@ -24,8 +24,11 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
  */
 
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
 
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -36,12 +39,12 @@ import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
-import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -67,7 +70,10 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * parent nodes. It thus needs more than twice the memory of
  * {@link SimplifiedCoverTree}, but computes fewer distances.
  *
- * TODO: allow insertions and removals, as in the original publication.
+ * Large trees are bulk loaded using multiple threads. Insertions descend into
+ * the closest covering child; removing a routing object rebuilds the affected
+ * subtree. Bulk kNN queries are processed in tree order, and use the previous
+ * result to obtain an initial bound for the next query.
  *
  * @author Erich Schubert
  *
@@ -78,17 +84,12 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 title = "Cover trees for nearest neighbor", //
 booktitle = "In Proc. 23rd International Conference on Machine Learning (ICML)", //
 url = "http://dx.doi.org/10.1145/1143844.1143857")
-public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O> {
+public class CoverTree<O> extends AbstractCoverTree<O, CoverTree.Node>implements RangeIndex<O>, KNNIndex<O>, DynamicIndex {
   /**
    * Class logger.
    */
   static final Logging LOG = Logging.getLogger(CoverTree.class);
 
-  /**
-   * Tree root.
-   */
-  private Node root = null;
-
   /**
    * Constructor.
    *
@@ -108,27 +109,17 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
    *
    * @apiviz.exclude
    */
-  private static final class Node {
+  static final class Node extends AbstractCoverTree.AbstractNode<Node> {
     /**
      * Objects in this node. Except for the first, which is the routing object.
      */
     ModifiableDoubleDBIDList singletons;
 
-    /**
-     * Maximum distance to descendants.
-     */
-    double maxDist = 0.;
-
     /**
      * Distance to parent.
      */
     double parentDist = 0.;
 
-    /**
-     * Child nodes.
-     */
-    ArrayList<Node> children;
-
     /**
      * Expansion scale.
      */
@@ -142,10 +133,9 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
      * @param parentDist Distance from parent.
      */
     public Node(DBIDRef r, double maxDist, double parentDist) {
+      super(maxDist, new ArrayList<Node>());
       this.singletons = DBIDUtil.newDistanceDBIDList();
       this.singletons.add(0., r);
-      this.children = new ArrayList<>();
-      this.maxDist = maxDist;
       this.parentDist = parentDist;
     }
 
@@ -158,24 +148,34 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
      * @param singletons Singletons.
      */
     public Node(DBIDRef r, double maxDist, double parentDist, DoubleDBIDList singletons) {
+      super(maxDist, null);
       assert(!singletons.contains(r));
       this.singletons = DBIDUtil.newDistanceDBIDList(singletons.size() + 1);
       this.singletons.add(0., r);
       for(DoubleDBIDListIter it = singletons.iter(); it.valid(); it.advance()) {
         this.singletons.add(it.doubleValue(), it);
       }
-      this.children = null;
-      this.maxDist = maxDist;
       this.parentDist = parentDist;
     }
 
-    /**
-     * True, if the node is a leaf.
-     *
-     * @return {@code true}, if this is a leaf node.
-     */
-    public boolean isLeaf() {
-      return children == null || children.size() == 0;
+    @Override
+    protected DBIDArrayIter iter() {
+      return singletons.iter();
+    }
+
+    @Override
+    protected int size() {
+      return singletons.size();
+    }
+
+    @Override
+    protected void add(double d, DBIDRef id) {
+      singletons.add(d, id);
+    }
+
+    @Override
+    protected void removeSwap(int off) {
+      singletons.removeSwap(off);
     }
   }
 
@@ -193,11 +193,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     }
   }
 
-  /**
-   * Bulk-load the index.
-   *
-   * @param ids IDs to load
-   */
+  @Override
   public void bulkLoad(DBIDs ids) {
     if(ids.size() == 0) {
       return;
@@ -210,7 +206,18 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     for(it.advance(); it.valid(); it.advance()) {
       candidates.add(distance(first, it), it);
     }
-    root = bulkConstruct(first, Integer.MAX_VALUE, 0., candidates);
+    final int threshold = parallelThreshold(ids.size());
+    if(threshold < 0) {
+      root = bulkConstruct(first, Integer.MAX_VALUE, 0., candidates, null);
+      return;
+    }
+    ParallelBuild<Node> par = new ParallelBuild<>(threshold);
+    try {
+      root = bulkConstruct(first, Integer.MAX_VALUE, 0., candidates, par);
+    }
+    finally {
+      par.finish();
+    }
   }
 
   /**
@@ -221,10 +228,12 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
    *
    * @param cur Current routing object
    * @param maxScale Maximum scale
+   * @param parentDist Distance to the parent routing object
    * @param elems Candidates
+   * @param par Parallel build helper, may be {@code null}
    * @return Root node of subtree
    */
-  protected Node bulkConstruct(DBIDRef cur, int maxScale, double parentDist, ModifiableDoubleDBIDList elems) {
+  protected Node bulkConstruct(DBIDRef cur, int maxScale, double parentDist, ModifiableDoubleDBIDList elems, ParallelBuild<Node> par) {
     assert(!elems.contains(cur));
     final double max = maxDistance(elems);
     final int scale = Math.min(distToScale(max) - 1, maxScale);
@@ -240,7 +249,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     // If no elements were not in the cover, build a compact tree:
     if(candidates.size() == 0) {
       LOG.warning("Scale not chosen appropriately? " + max + " " + scaleToDist(scale));
-      return bulkConstruct(cur, nextScale, parentDist, elems);
+      return bulkConstruct(cur, nextScale, parentDist, elems, par);
     }
     // We will have at least one other child, so build the parent:
     Node node = new Node(cur, max, parentDist);
@@ -248,7 +257,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     final boolean curSingleton = elems.size() == 0;
     if(!curSingleton) {
       // Add node for the routing object:
-      node.children.add(bulkConstruct(cur, nextScale, 0, elems));
+      addChild(node, cur, nextScale, 0., elems, par);
     }
     final double fmax = scaleToDist(nextScale);
     // Build additional cover nodes:
@@ -263,7 +272,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
       }
       else {
         // Build a full child node:
-        node.children.add(bulkConstruct(it, nextScale, it.doubleValue(), elems));
+        addChild(node, it, nextScale, it.doubleValue(), elems, par);
       }
       candidates.removeSwap(0);
     }
@@ -281,6 +290,58 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     return node;
   }
 
+  /**
+   * Build a child node, either directly or by a worker thread.
+   *
+   * @param node Parent node
+   * @param cur Routing object of the child
+   * @param scale Scale of the child
+   * @param parentDist Distance to the parent routing object
+   * @param elems Candidates (will be recycled by the caller!)
+   * @param par Parallel build helper, may be {@code null}
+   */
+  private void addChild(Node node, DBIDRef cur, final int scale, final double parentDist, ModifiableDoubleDBIDList elems, ParallelBuild<Node> par) {
+    if(par == null || !par.isSmall(elems.size())) {
+      node.children.add(bulkConstruct(cur, scale, parentDist, elems, par));
+      return;
+    }
+    // Copy, as the candidate lists are recycled by the caller.
+    final DBID r = DBIDUtil.deref(cur);
+    final ModifiableDoubleDBIDList copy = DBIDUtil.newDistanceDBIDList(elems.size());
+    for(DoubleDBIDListIter it = elems.iter(); it.valid(); it.advance()) {
+      copy.add(it.doubleValue(), it);
+    }
+    par.submit(node.children, new Callable<Node>() {
+      @Override
+      public Node call() {
+        return bulkConstruct(r, scale, parentDist, copy, null);
+      }
+    });
+  }
+
+  @Override
+  protected Node newLeaf(DBIDRef id) {
+    return new Node(id, 0., 0., DBIDUtil.newDistanceDBIDList(0));
+  }
+
+  @Override
+  protected Node rebuild(ArrayDBIDs ids, Node parent) {
+    DBIDArrayIter it = ids.iter();
+    DBID first = DBIDUtil.deref(it);
+    final double parentDist = parent != null ? distance(parent.singletons.iter(), first) : 0.;
+    ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList(ids.size() - 1);
+    for(it.advance(); it.valid(); it.advance()) {
+      candidates.add(distance(first, it), it);
+    }
+    return bulkConstruct(first, Integer.MAX_VALUE, parentDist, candidates, null);
+  }
+
+  @Override
+  protected boolean mayCover(Node child, double d) {
+    // Triangle inequality: child cannot cover the object.
+    return d - child.parentDist <= child.maxDist;
+  }
+
   /**
    * Collect some statistics on the tree.
    *
@@ -355,6 +416,9 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
 
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList ret) {
+      if(root == null) {
+        return;
+      }
       ArrayList<Node> open = new ArrayList<Node>(); // LIFO stack
       open.add(root);
       while(!open.isEmpty()) {
@@ -400,7 +464,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
    *
    * @author Erich Schubert
    */
-  public class CoverTreeKNNQuery extends AbstractDistanceKNNQuery<O>implements KNNQuery<O> {
+  public class CoverTreeKNNQuery extends AbstractCoverTreeKNNQuery {
     /**
      * Constructor.
      *
@@ -411,13 +475,16 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     }
 
     @Override
-    public KNNList getKNNForObject(O obj, int k) {
+    protected KNNList getKNNForObject(O obj, int k, double bound) {
       if(k < 1) {
         throw new IllegalArgumentException("At least one object has to be requested!");
       }
 
       KNNHeap knnList = DBIDUtil.newHeap(k);
-      double d_k = Double.POSITIVE_INFINITY;
+      double d_k = bound;
+      if(root == null) {
+        return knnList.toKNNList();
+      }
 
       final DoubleObjectMinHeap<Node> pq = new DoubleObjectMinHeap<>();
 
@@ -432,7 +499,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
         final double d = prio + cur.maxDist; // Restore distance to center.
         pq.poll(); // Remove
 
-        if(knnList.size() >= k && prio > d_k) {
+        if(prio > d_k) {
           continue;
         }
 
@@ -454,7 +521,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
         else { // Leaf node
           // Consider routing object, too:
           if(d <= d_k) {
-            d_k = knnList.insert(d, it); // First element is a candidate now
+            d_k = Math.min(d_k, knnList.insert(d, it)); // First element is a candidate now
           }
         }
         it.advance(); // Skip routing object.
@@ -463,7 +530,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
           if(d - it.doubleValue() <= d_k) {
             final double d2 = distance(obj, it);
             if(d2 <= d_k) {
-              d_k = knnList.insert(d2, it);
+              d_k = Math.min(d_k, knnList.insert(d2, it));
             }
           }
           it.advance();
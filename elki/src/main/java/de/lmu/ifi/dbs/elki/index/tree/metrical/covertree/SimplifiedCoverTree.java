@@ -24,9 +24,12 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
  */
 
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
 
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -38,12 +41,12 @@ import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
-import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -68,24 +71,22 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
  * In Proc. 23rd International Conference on Machine Learning (ICML).
  * </p>
  *
- * TODO: allow insertions and removals, as in the original publication.
+ * Large trees are bulk loaded using multiple threads. Insertions descend into
+ * the closest covering child; removing a routing object rebuilds the affected
+ * subtree. Bulk kNN queries are processed in tree order, and use the previous
+ * result to obtain an initial bound for the next query.
  *
  * @author Erich Schubert
  *
  * @apiviz.has CoverTreeRangeQuery
  * @apiviz.has CoverTreeKNNQuery
  */
-public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O> {
+public class SimplifiedCoverTree<O> extends AbstractCoverTree<O, SimplifiedCoverTree.Node>implements RangeIndex<O>, KNNIndex<O>, DynamicIndex {
   /**
    * Class logger.
    */
   private static final Logging LOG = Logging.getLogger(SimplifiedCoverTree.class);
 
-  /**
-   * Tree root.
-   */
-  private Node root = null;
-
   /**
    * Constructor.
    *
@@ -105,22 +106,12 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
    *
    * @apiviz.exclude
    */
-  private static final class Node {
+  static final class Node extends AbstractCoverTree.AbstractNode<Node> {
     /**
      * Objects in this node. Except for the first, which is the routing object.
      */
     ArrayModifiableDBIDs singletons;
 
-    /**
-     * Maximum distance to descendants.
-     */
-    double maxDist = 0.;
-
-    /**
-     * Child nodes.
-     */
-    ArrayList<Node> children;
-
     /**
      * Constructor.
      *
@@ -128,10 +119,9 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
      * @param maxDist Maximum distance to any descendant.
      */
     public Node(DBIDRef r, double maxDist) {
+      super(maxDist, new ArrayList<Node>());
       this.singletons = DBIDUtil.newArray();
       this.singletons.add(r);
-      this.children = new ArrayList<>();
-      this.maxDist = maxDist;
     }
 
     /**
@@ -142,21 +132,33 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
      * @param singletons Singletons.
      */
     public Node(DBIDRef r, double maxDist, DoubleDBIDList singletons) {
+      super(maxDist, null);
       assert(!singletons.contains(r));
       this.singletons = DBIDUtil.newArray(singletons.size() + 1);
       this.singletons.add(r);
       this.singletons.addDBIDs(singletons);
-      this.children = null;
-      this.maxDist = maxDist;
     }
 
-    /**
-     * True, if the node is a leaf.
-     *
-     * @return {@code true}, if this is a leaf node.
-     */
-    public boolean isLeaf() {
-      return children == null || children.size() == 0;
+    @Override
+    protected DBIDArrayIter iter() {
+      return singletons.iter();
+    }
+
+    @Override
+    protected int size() {
+      return singletons.size();
+    }
+
+    @Override
+    protected void add(double d, DBIDRef id) {
+      singletons.add(id);
+    }
+
+    @Override
+    protected void removeSwap(int off) {
+      final int last = singletons.size() - 1;
+      singletons.swap(off, last);
+      singletons.remove(last);
     }
   }
 
@@ -174,11 +176,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     }
   }
 
-  /**
-   * Bulk-load the index.
-   *
-   * @param ids IDs to load
-   */
+  @Override
   public void bulkLoad(DBIDs ids) {
     if(ids.size() == 0) {
       return;
@@ -191,7 +189,18 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     for(it.advance(); it.valid(); it.advance()) {
       candidates.add(distance(first, it), it);
     }
-    root = bulkConstruct(first, Integer.MAX_VALUE, candidates);
+    final int threshold = parallelThreshold(ids.size());
+    if(threshold < 0) {
+      root = bulkConstruct(first, Integer.MAX_VALUE, candidates, null);
+      return;
+    }
+    ParallelBuild<Node> par = new ParallelBuild<>(threshold);
+    try {
+      root = bulkConstruct(first, Integer.MAX_VALUE, candidates, par);
+    }
+    finally {
+      par.finish();
+    }
   }
 
   /**
@@ -203,9 +212,10 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
    * @param cur Current routing object
    * @param maxScale Maximum scale
    * @param elems Candidates
+   * @param par Parallel build helper, may be {@code null}
    * @return Root node of subtree
    */
-  protected Node bulkConstruct(DBIDRef cur, int maxScale, ModifiableDoubleDBIDList elems) {
+  protected Node bulkConstruct(DBIDRef cur, int maxScale, ModifiableDoubleDBIDList elems, ParallelBuild<Node> par) {
     assert(!elems.contains(cur));
     final double max = maxDistance(elems);
     final int scale = Math.min(distToScale(max) - 1, maxScale);
@@ -221,7 +231,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     // If no elements were not in the cover, build a compact tree:
     if(candidates.size() == 0) {
       LOG.warning("Scale not chosen appropriately? " + max + " " + scaleToDist(scale));
-      return bulkConstruct(cur, nextScale, elems);
+      return bulkConstruct(cur, nextScale, elems, par);
     }
     // We will have at least one other child, so build the parent:
     Node node = new Node(cur, max);
@@ -229,7 +239,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     final boolean curSingleton = elems.size() == 0;
     if(!curSingleton) {
       // Add node for the routing object:
-      node.children.add(bulkConstruct(cur, nextScale, elems));
+      addChild(node, cur, nextScale, elems, par);
     }
     final double fmax = scaleToDist(nextScale);
     // Build additional cover nodes:
@@ -244,7 +254,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
       }
       else {
         // Build a full child node:
-        node.children.add(bulkConstruct(it, nextScale, elems));
+        addChild(node, it, nextScale, elems, par);
       }
       candidates.removeSwap(0);
     }
@@ -262,6 +272,50 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     return node;
   }
 
+  /**
+   * Build a child node, either directly or by a worker thread.
+   *
+   * @param node Parent node
+   * @param cur Routing object of the child
+   * @param scale Scale of the child
+   * @param elems Candidates (will be recycled by the caller!)
+   * @param par Parallel build helper, may be {@code null}
+   */
+  private void addChild(Node node, DBIDRef cur, final int scale, ModifiableDoubleDBIDList elems, ParallelBuild<Node> par) {
+    if(par == null || !par.isSmall(elems.size())) {
+      node.children.add(bulkConstruct(cur, scale, elems, par));
+      return;
+    }
+    // Copy, as the candidate lists are recycled by the caller.
+    final DBID r = DBIDUtil.deref(cur);
+    final ModifiableDoubleDBIDList copy = DBIDUtil.newDistanceDBIDList(elems.size());
+    for(DoubleDBIDListIter it = elems.iter(); it.valid(); it.advance()) {
+      copy.add(it.doubleValue(), it);
+    }
+    par.submit(node.children, new Callable<Node>() {
+      @Override
+      public Node call() {
+        return bulkConstruct(r, scale, copy, null);
+      }
+    });
+  }
+
+  @Override
+  protected Node newLeaf(DBIDRef id) {
+    return new Node(id, 0., DBIDUtil.newDistanceDBIDList(0));
+  }
+
+  @Override
+  protected Node rebuild(ArrayDBIDs ids, Node parent) {
+    DBIDArrayIter it = ids.iter();
+    DBID first = DBIDUtil.deref(it);
+    ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList(ids.size() - 1);
+    for(it.advance(); it.valid(); it.advance()) {
+      candidates.add(distance(first, it), it);
+    }
+    return bulkConstruct(first, Integer.MAX_VALUE, candidates, null);
+  }
+
   /**
    * Collect some statistics on the tree.
    *
@@ -335,6 +389,9 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
 
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList ret) {
+      if(root == null) {
+        return;
+      }
       ArrayList<Node> open = new ArrayList<Node>(); // LIFO stack
       open.add(root);
       DBIDVar r = DBIDUtil.newVar();
@@ -374,7 +431,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
    *
    * @author Erich Schubert
    */
-  public class CoverTreeKNNQuery extends AbstractDistanceKNNQuery<O>implements KNNQuery<O> {
+  public class CoverTreeKNNQuery extends AbstractCoverTreeKNNQuery {
     /**
      * Constructor.
      *
@@ -385,13 +442,16 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     }
 
     @Override
-    public KNNList getKNNForObject(O obj, int k) {
+    protected KNNList getKNNForObject(O obj, int k, double bound) {
       if(k < 1) {
         throw new IllegalArgumentException("At least one object has to be requested!");
       }
 
       KNNHeap knnList = DBIDUtil.newHeap(k);
-      double d_k = Double.POSITIVE_INFINITY;
+      double d_k = bound;
+      if(root == null) {
+        return knnList.toKNNList();
+      }
 
       final DoubleObjectMinHeap<Node> pq = new DoubleObjectMinHeap<>();
 
@@ -406,7 +466,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
         final double d = prio + cur.maxDist; // Restore distance to center.
         pq.poll(); // Remove
 
-        if(knnList.size() >= k && prio > d_k) {
+        if(prio > d_k) {
           continue;
         }
 
@@ -425,7 +485,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
         else { // Leaf node
           // Consider routing object, too:
           if(d <= d_k) {
-            d_k = knnList.insert(d, it); // First element is a candidate now
+            d_k = Math.min(d_k, knnList.insert(d, it)); // First element is a candidate now
           }
         }
         it.advance(); // Skip routing object.
@@ -433,7 +493,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
         while(it.valid()) {
           final double d2 = distance(obj, it);
           if(d2 <= d_k) {
-            d_k = knnList.insert(d2, it);
+            d_k = Math.min(d_k, knnList.insert(d2, it));
           }
           it.advance();
         }
@@ -44,6 +44,10 @@ import de.lmu.ifi.dbs.elki.utilities.pairs.DoubleIntPair;
 /**
  * Abstract super class for all M-Tree variants.
  * 
+ * Concurrency: when backed by a {@link de.lmu.ifi.dbs.elki.persistent.MemoryPageFile},
+ * kNN and range queries may be executed concurrently from multiple threads
+ * once the tree has been built. Insertions and deletions are not thread safe.
+ * 
  * @author Elke Achtert
  * 
  * @apiviz.composedOf MTreeSettings
@@ -518,9 +522,9 @@ public abstract class AbstractMTree<O, N extends AbstractMTreeNode<O, N, E>, E e
     public Statistics() {
       super();
       Logging log = getLogger();
-      distanceCalcs = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".distancecalcs") : null;
-      knnQueries = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".knnqueries") : null;
-      rangeQueries = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".rangequeries") : null;
+      distanceCalcs = log.isStatistics() ? log.newConcurrentCounter(this.getClass().getName() + ".distancecalcs") : null;
+      knnQueries = log.isStatistics() ? log.newConcurrentCounter(this.getClass().getName() + ".knnqueries") : null;
+      rangeQueries = log.isStatistics() ? log.newConcurrentCounter(this.getClass().getName() + ".rangequeries") : null;
     }
 
     /**
@@ -27,6 +27,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.ConcurrentQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
@@ -46,7 +47,7 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
  * 
  * @param <O> Object type
  */
-public class MetricalIndexKNNQuery<O> extends AbstractDistanceKNNQuery<O> {
+public class MetricalIndexKNNQuery<O> extends AbstractDistanceKNNQuery<O> implements ConcurrentQuery {
   /**
    * The index to use
    */
@@ -63,6 +64,11 @@ public class MetricalIndexKNNQuery<O> extends AbstractDistanceKNNQuery<O> {
     this.index = index;
   }
 
+  @Override
+  public boolean allowsConcurrentUse() {
+    return index.allowsConcurrentQueries();
+  }
+
   @Override
   public KNNList getKNNForObject(O q, int k) {
     if(k < 1) {
@@ -58,6 +58,10 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
  * Implementation Note: The restriction on NumberVector (as opposed to e.g.
  * FeatureVector) is intentional, because we have spatial requirements.
  *
+ * Concurrency: when backed by a {@link de.lmu.ifi.dbs.elki.persistent.MemoryPageFile},
+ * kNN and range queries may be executed concurrently from multiple threads
+ * once the tree has been built. Insertions and deletions are not thread safe.
+ *
  * @author Elke Achtert
  *
  * @apiviz.landmark
@@ -864,9 +868,9 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       super();
       Logging log = getLogger();
       final String prefix = AbstractRStarTree.this.getClass().getName();
-      distanceCalcs = log.isStatistics() ? log.newCounter(prefix + ".distancecalcs") : null;
-      knnQueries = log.isStatistics() ? log.newCounter(prefix + ".knnqueries") : null;
-      rangeQueries = log.isStatistics() ? log.newCounter(prefix + ".rangequeries") : null;
+      distanceCalcs = log.isStatistics() ? log.newConcurrentCounter(prefix + ".distancecalcs") : null;
+      knnQueries = log.isStatistics() ? log.newConcurrentCounter(prefix + ".knnqueries") : null;
+      rangeQueries = log.isStatistics() ? log.newConcurrentCounter(prefix + ".rangequeries") : null;
     }
 
     /**
@@ -40,6 +40,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.ConcurrentQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
@@ -74,7 +75,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 title = "Ranking in spatial databases", //
 booktitle = "Advances in Spatial Databases - 4th Symposium, SSD'95", //
 url = "http://dx.doi.org/10.1007/3-540-60159-7_6")
-public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<O> {
+public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<O>, ConcurrentQuery {
   /**
    * The index to use
    */
@@ -104,6 +105,11 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
     this.distanceFunction = distanceFunction;
   }
 
+  @Override
+  public boolean allowsConcurrentUse() {
+    return tree.allowsConcurrentQueries();
+  }
+
   @Override
   public KNNList getKNNForDBID(DBIDRef id, int k) {
     return getKNNForObject(relation.get(id), k);
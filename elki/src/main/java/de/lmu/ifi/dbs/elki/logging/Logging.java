@@ -33,8 +33,10 @@ import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.Progress;
 import de.lmu.ifi.dbs.elki.logging.progress.ProgressLogRecord;
 import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.logging.statistics.MetricsRegistry;
 import de.lmu.ifi.dbs.elki.logging.statistics.MillisTimeDuration;
 import de.lmu.ifi.dbs.elki.logging.statistics.Statistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.UnsynchronizedLongCounter;
@@ -613,6 +615,17 @@ public class Logging {
     return new UnsynchronizedLongCounter(key);
   }
 
+  /**
+   * Generate a new counter that may be incremented concurrently, e.g. by
+   * queries running in parallel on a shared index.
+   * 
+   * @param key Key to use
+   * @return Thread-safe counter.
+   */
+  public Counter newConcurrentCounter(String key) {
+    return new AtomicLongCounter(key);
+  }
+
   /**
    * Generate a new duration statistic.
    * 
@@ -690,6 +703,7 @@ public class Logging {
    * @param stats Statistics object to report.
    */
   public void statistics(Statistic stats) {
+    MetricsRegistry.record(stats);
     log(Level.STATISTICS, stats.getKey() + ": " + stats.formatValue());
   }
 
@@ -24,15 +24,28 @@ package de.lmu.ifi.dbs.elki.logging.progress;
  */
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import de.lmu.ifi.dbs.elki.logging.Logging;
 
 /**
  * Abstract base class for FiniteProgress objects.
  * 
+ * Progress objects may be shared by multiple threads. Rendering is rate
+ * limited, and only one thread will log per interval, so that threads do not
+ * queue up on the (synchronized) log handlers. Parallel code should further
+ * accumulate increments per thread, and use
+ * {@link #incrementProcessed(int, Logging)} to reduce contention on the
+ * counter; see {@link de.lmu.ifi.dbs.elki.parallel.ParallelExecutor}.
+ * 
  * @author Erich Schubert
  */
 public abstract class AbstractProgress implements Progress {
+  /**
+   * Minimum time between two log records, in nanoseconds.
+   */
+  protected static final long LOGGING_INTERVAL = 100000000L;
+
   /**
    * The number of items already processed at a time being.
    * 
@@ -46,9 +59,9 @@ public abstract class AbstractProgress implements Progress {
   private String task;
 
   /**
-   * For logging rate control.
+   * For logging rate control: time of the last log record.
    */
-  private long lastLogged = Long.MIN_VALUE;
+  private final AtomicLong lastLogged = new AtomicLong(System.nanoTime() - LOGGING_INTERVAL);
 
   /**
    * Default constructor.
@@ -134,20 +147,39 @@ public abstract class AbstractProgress implements Progress {
     }
   }
 
+  /**
+   * Increment the processed counter by more than one, e.g. for accumulated
+   * per-thread increments.
+   * 
+   * @param n Number of additional items processed
+   * @param logger Logger to report to.
+   */
+  public void incrementProcessed(int n, Logging logger) {
+    if(n <= 0) {
+      return;
+    }
+    this.processed.addAndGet(n);
+    if(testLoggingRate()) {
+      logger.progress(this);
+    }
+  }
+
   /**
    * Logging rate control.
    * 
+   * When multiple threads update the progress concurrently, at most one of them
+   * will be granted the logging in each interval.
+   * 
    * @return true when logging is sensible
    */
   protected boolean testLoggingRate() {
     if(isComplete() || getProcessed() < 10) {
       return true;
     }
-    final long now = System.nanoTime();
-    if(lastLogged > now - 1E8) {
+    final long now = System.nanoTime(), last = lastLogged.get();
+    if(now - last < LOGGING_INTERVAL) {
       return false;
     }
-    lastLogged = now;
-    return true;
+    return lastLogged.compareAndSet(last, now);
   }
 }
\ No newline at end of file
@@ -24,6 +24,7 @@ package de.lmu.ifi.dbs.elki.logging.progress;
  */
 
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.FormatUtil;
 
 /**
  * A progress object for a given overall number of items to process. The number
@@ -31,6 +32,8 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
  * 
  * The main feature of this class is to provide a String representation of the
  * progress suitable as a message for printing to the command line interface.
+ * Once the task has been running for a while, an estimate of the remaining
+ * time is included, extrapolated from the average rate so far.
  * 
  * @author Arthur Zimek
  */
@@ -46,6 +49,16 @@ public class FiniteProgress extends AbstractProgress {
   // TODO: move this to a console logging related class instead?
   private final int totalLength;
 
+  /**
+   * Only show an estimated time of arrival after this time (nanoseconds).
+   */
+  private static final long ETA_DELAY = 5000000000L;
+
+  /**
+   * Starting time, for estimating the remaining time.
+   */
+  private final long started = System.nanoTime();
+
   /**
    * Constructor.
    * 
@@ -115,9 +128,27 @@ public class FiniteProgress extends AbstractProgress {
     }
     buf.append(percentage);
     buf.append("%]");
+    appendETA(buf);
     return buf;
   }
 
+  /**
+   * Append the estimated remaining time, if available.
+   * 
+   * @param buf Buffer to serialize to
+   */
+  private void appendETA(StringBuilder buf) {
+    final int processed = getProcessed();
+    final long elapsed = System.nanoTime() - started;
+    if(processed <= 0 || processed >= total || elapsed < ETA_DELAY) {
+      return;
+    }
+    final long remaining = (long) (elapsed * ((total - processed) / (double) processed));
+    // Round to full seconds, the estimate is not more precise anyway.
+    final long secs = (remaining + 500000000L) / 1000000000L;
+    buf.append(" ETA ").append(FormatUtil.formatTimeDelta(Math.max(secs, 1) * 1000L, " "));
+  }
+
   /**
    * Test whether the progress was completed.
    */
@@ -0,0 +1,160 @@
+package de.lmu.ifi.dbs.elki.logging.statistics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies (in nanoseconds), e.g. of kNN queries.
+ * 
+ * Latencies are counted in 64 buckets of exponentially increasing width
+ * (powers of two), so quantiles are only accurate up to a factor of two, but
+ * recording is a single striped atomic increment.
+ * 
+ * @author Erich Schubert
+ */
+public class LatencyHistogram extends AbstractStatistic {
+  /**
+   * Number of buckets.
+   */
+  private static final int BUCKETS = 64;
+
+  /**
+   * Counts, per stripe and bucket.
+   */
+  private final AtomicLongArray counts;
+
+  /**
+   * Total latency.
+   */
+  private final StripedLongCounter total;
+
+  /**
+   * Mask to select a stripe.
+   */
+  private final int mask;
+
+  /**
+   * Constructor.
+   * 
+   * @param key Key to report.
+   */
+  public LatencyHistogram(String key) {
+    super(key);
+    this.mask = StripedLongCounter.stripes() - 1;
+    this.counts = new AtomicLongArray((mask + 1) * BUCKETS);
+    this.total = new StripedLongCounter(key + ".total");
+  }
+
+  /**
+   * Record a latency.
+   * 
+   * @param nanos Latency in nanoseconds.
+   */
+  public void record(long nanos) {
+    nanos = nanos > 0 ? nanos : 0;
+    final int stripe = (int) Thread.currentThread().getId() & mask;
+    counts.incrementAndGet(stripe * BUCKETS + BUCKETS - Long.numberOfLeadingZeros(nanos));
+    total.increment(nanos);
+  }
+
+  /**
+   * Get the bucket counts, summed over all stripes.
+   * 
+   * Bucket {@code b} counts latencies {@code l} with
+   * {@code 2^(b-1) <= l < 2^b}; bucket 0 counts zero latencies.
+   * 
+   * @return Counts
+   */
+  public long[] getCounts() {
+    long[] res = new long[BUCKETS];
+    for(int s = 0; s <= mask; s++) {
+      for(int b = 0; b < BUCKETS; b++) {
+        res[b] += counts.get(s * BUCKETS + b);
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Get the number of recorded latencies.
+   * 
+   * @return Count
+   */
+  public long getCount() {
+    long sum = 0;
+    for(long c : getCounts()) {
+      sum += c;
+    }
+    return sum;
+  }
+
+  /**
+   * Get the total of all latencies.
+   * 
+   * @return Total in nanoseconds
+   */
+  public long getTotal() {
+    return total.getValue();
+  }
+
+  /**
+   * Estimate a quantile, using the upper bound of the bucket.
+   * 
+   * @param q Quantile, in [0:1]
+   * @return Estimated latency in nanoseconds.
+   */
+  public long getQuantile(double q) {
+    long[] c = getCounts();
+    long sum = 0;
+    for(long v : c) {
+      sum += v;
+    }
+    final long target = (long) Math.ceil(q * sum);
+    long acc = 0;
+    for(int b = 0; b < BUCKETS; b++) {
+      acc += c[b];
+      if(acc >= target && acc > 0) {
+        return b == 0 ? 0L : (b < BUCKETS - 1 ? (1L << b) - 1 : Long.MAX_VALUE);
+      }
+    }
+    return 0L;
+  }
+
+  /**
+   * Reset the histogram.
+   */
+  public void reset() {
+    for(int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0L);
+    }
+    total.reset();
+  }
+
+  @Override
+  public String formatValue() {
+    final long count = getCount();
+    return count + " queries, mean " + (count > 0 ? getTotal() / count : 0) + " ns, median <= " + getQuantile(.5) + " ns, 99% <= " + getQuantile(.99) + " ns";
+  }
+}
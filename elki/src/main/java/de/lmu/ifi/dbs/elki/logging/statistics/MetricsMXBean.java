@@ -0,0 +1,53 @@
+package de.lmu.ifi.dbs.elki.logging.statistics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Map;
+
+/**
+ * JMX management interface of the {@link MetricsRegistry}.
+ * 
+ * @author Erich Schubert
+ */
+public interface MetricsMXBean {
+  /**
+   * Get all current metrics, formatted.
+   * 
+   * @return Map from metric key to formatted value
+   */
+  Map<String, String> getMetrics();
+
+  /**
+   * Get the value of a counter.
+   * 
+   * @param key Counter key
+   * @return Value, or -1 if there is no such counter.
+   */
+  long getCounter(String key);
+
+  /**
+   * Reset all metrics.
+   */
+  void reset();
+}
@@ -0,0 +1,415 @@
+package de.lmu.ifi.dbs.elki.logging.statistics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+
+/**
+ * Central registry of runtime metrics, to attribute the runtime of a job to
+ * distance computations, index I/O and queries.
+ * 
+ * While disabled (the default), {@link #counter} and {@link #latency} return
+ * {@code null}, and instrumented code skips all measurements. When enabled,
+ * the following are collected automatically:
+ * <ul>
+ * <li>{@code <distance>.distance-computations}: distance computations by
+ * primitive distance queries and linear scans,</li>
+ * <li>{@code <pagefile>.reads} and {@code .writes}: page file accesses,</li>
+ * <li>{@code <query>.knn-latency} and {@code .range-latency}: query latency
+ * histograms, by query class,</li>
+ * <li>all statistics logged via {@link Logging#statistics(Statistic)}, in
+ * particular algorithm runtimes and per-phase durations.</li>
+ * </ul>
+ * 
+ * Metrics can be exported as JSON or CSV, or inspected via JMX.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.has StripedLongCounter
+ * @apiviz.has LatencyHistogram
+ */
+public final class MetricsRegistry {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MetricsRegistry.class);
+
+  /**
+   * JMX object name.
+   */
+  public static final String JMX_NAME = "de.lmu.ifi.dbs.elki:type=Metrics";
+
+  /**
+   * Registry state.
+   */
+  private static volatile boolean enabled = false;
+
+  /**
+   * Registered metrics, sorted by key.
+   */
+  private static final ConcurrentSkipListMap<String, Statistic> METRICS = new ConcurrentSkipListMap<>();
+
+  /**
+   * JMX registration, if any.
+   */
+  private static ObjectName jmx = null;
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private MetricsRegistry() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Test whether metrics are collected.
+   * 
+   * @return {@code true} when enabled.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Enable collecting metrics.
+   */
+  public static void enable() {
+    enabled = true;
+  }
+
+  /**
+   * Disable collecting metrics, and unregister from JMX.
+   * 
+   * Counters that were already handed out remain functional.
+   */
+  public static synchronized void disable() {
+    enabled = false;
+    if(jmx != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(jmx);
+      }
+      catch(JMException e) {
+        LOG.warning("Could not unregister metrics from JMX: " + e.getMessage());
+      }
+      jmx = null;
+    }
+  }
+
+  /**
+   * Remove all metrics.
+   */
+  public static void reset() {
+    METRICS.clear();
+  }
+
+  /**
+   * Get a shared, thread-safe counter.
+   * 
+   * @param key Counter key
+   * @return Counter, or {@code null} if metrics are disabled.
+   */
+  public static Counter counter(String key) {
+    if(!enabled) {
+      return null;
+    }
+    Statistic s = METRICS.get(key);
+    if(s instanceof Counter) {
+      return (Counter) s;
+    }
+    StripedLongCounter c = new StripedLongCounter(key);
+    s = METRICS.putIfAbsent(key, c);
+    return (s instanceof Counter) ? (Counter) s : c;
+  }
+
+  /**
+   * Get the shared counter of distance computations for a distance function.
+   * 
+   * @param function Distance function
+   * @return Counter, or {@code null} if metrics are disabled.
+   */
+  public static Counter distanceCounter(Object function) {
+    return enabled ? counter(function.getClass().getName() + ".distance-computations") : null;
+  }
+
+  /**
+   * Get a shared latency histogram.
+   * 
+   * @param key Histogram key
+   * @return Histogram, or {@code null} if metrics are disabled.
+   */
+  public static LatencyHistogram latency(String key) {
+    if(!enabled) {
+      return null;
+    }
+    Statistic s = METRICS.get(key);
+    if(s instanceof LatencyHistogram) {
+      return (LatencyHistogram) s;
+    }
+    LatencyHistogram h = new LatencyHistogram(key);
+    s = METRICS.putIfAbsent(key, h);
+    return (s instanceof LatencyHistogram) ? (LatencyHistogram) s : h;
+  }
+
+  /**
+   * Record a statistic; replaces a previous statistic with the same key.
+   * 
+   * @param stat Statistic
+   */
+  public static void record(Statistic stat) {
+    if(enabled) {
+      METRICS.put(stat.getKey(), stat);
+    }
+  }
+
+  /**
+   * Get a statistic.
+   * 
+   * @param key Key
+   * @return Statistic, or {@code null}
+   */
+  public static Statistic get(String key) {
+    return METRICS.get(key);
+  }
+
+  /**
+   * Get all metrics, sorted by key.
+   * 
+   * @return Metrics
+   */
+  public static Collection<Statistic> getMetrics() {
+    return METRICS.values();
+  }
+
+  /**
+   * Register the registry with the platform JMX server.
+   */
+  public static synchronized void registerJMX() {
+    if(jmx != null) {
+      return;
+    }
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(JMX_NAME);
+      server.registerMBean(new Bean(), name);
+      jmx = name;
+    }
+    catch(JMException e) {
+      LOG.warning("Could not register metrics with JMX: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Write the metrics to a file, as JSON if the file name ends with
+   * {@code .json}, as CSV otherwise.
+   * 
+   * @param file Output file
+   * @throws IOException on write errors
+   */
+  public static void save(File file) throws IOException {
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+      if(file.getName().toLowerCase().endsWith(".json")) {
+        writeJSON(out);
+      }
+      else {
+        writeCSV(out);
+      }
+    }
+  }
+
+  /**
+   * Write the metrics as a JSON object.
+   * 
+   * @param out Output
+   * @throws IOException on write errors
+   */
+  public static void writeJSON(Appendable out) throws IOException {
+    out.append('{');
+    boolean first = true;
+    for(Statistic s : METRICS.values()) {
+      out.append(first ? "\n  \"" : ",\n  \"").append(jsonEscape(s.getKey())).append("\": ");
+      first = false;
+      if(s instanceof LatencyHistogram) {
+        LatencyHistogram h = (LatencyHistogram) s;
+        out.append("{\"count\": ").append(Long.toString(h.getCount())) //
+        .append(", \"total_ns\": ").append(Long.toString(h.getTotal())) //
+        .append(", \"p50_ns\": ").append(Long.toString(h.getQuantile(.5))) //
+        .append(", \"p90_ns\": ").append(Long.toString(h.getQuantile(.9))) //
+        .append(", \"p99_ns\": ").append(Long.toString(h.getQuantile(.99))).append('}');
+      }
+      else if(s instanceof Duration) {
+        out.append("{\"ms\": ").append(Double.toString(getMillis((Duration) s))).append('}');
+      }
+      else {
+        String num = numericValue(s);
+        if(num != null) {
+          out.append(num);
+        }
+        else {
+          out.append('"').append(jsonEscape(s.formatValue())).append('"');
+        }
+      }
+    }
+    out.append(first ? "}\n" : "\n}\n");
+  }
+
+  /**
+   * Write the metrics as CSV, with columns key, value and unit.
+   * 
+   * Latency histograms are written as multiple rows.
+   * 
+   * @param out Output
+   * @throws IOException on write errors
+   */
+  public static void writeCSV(Appendable out) throws IOException {
+    out.append("key,value,unit\n");
+    for(Statistic s : METRICS.values()) {
+      final String key = csvEscape(s.getKey());
+      if(s instanceof LatencyHistogram) {
+        LatencyHistogram h = (LatencyHistogram) s;
+        out.append(key).append(".count,").append(Long.toString(h.getCount())).append(",\n");
+        out.append(key).append(".total,").append(Long.toString(h.getTotal())).append(",ns\n");
+        out.append(key).append(".p50,").append(Long.toString(h.getQuantile(.5))).append(",ns\n");
+        out.append(key).append(".p90,").append(Long.toString(h.getQuantile(.9))).append(",ns\n");
+        out.append(key).append(".p99,").append(Long.toString(h.getQuantile(.99))).append(",ns\n");
+      }
+      else if(s instanceof Duration) {
+        out.append(key).append(',').append(Double.toString(getMillis((Duration) s))).append(",ms\n");
+      }
+      else {
+        String num = numericValue(s);
+        out.append(key).append(',').append(num != null ? num : csvEscape(s.formatValue())).append(",\n");
+      }
+    }
+  }
+
+  /**
+   * Get a duration in milliseconds.
+   * 
+   * @param d Duration
+   * @return Milliseconds
+   */
+  private static double getMillis(Duration d) {
+    return (d instanceof NanoDuration) ? d.getDuration() * 1e-6 : d.getDuration();
+  }
+
+  /**
+   * Get the numeric value of a statistic, if available.
+   * 
+   * @param s Statistic
+   * @return Value, or {@code null}
+   */
+  private static String numericValue(Statistic s) {
+    if(s instanceof Counter) {
+      return Long.toString(((Counter) s).getValue());
+    }
+    if(s instanceof LongStatistic) {
+      return Long.toString(((LongStatistic) s).value);
+    }
+    if(s instanceof DoubleStatistic) {
+      final double v = ((DoubleStatistic) s).value;
+      return (Double.isNaN(v) || Double.isInfinite(v)) ? null : Double.toString(v);
+    }
+    return null;
+  }
+
+  /**
+   * Escape a string for JSON.
+   * 
+   * @param s Input string
+   * @return Escaped string
+   */
+  private static String jsonEscape(String s) {
+    StringBuilder buf = new StringBuilder(s.length() + 8);
+    for(int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if(c == '"' || c == '\\') {
+        buf.append('\\').append(c);
+      }
+      else if(c < 0x20) {
+        buf.append(String.format("\\u%04x", (int) c));
+      }
+      else {
+        buf.append(c);
+      }
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Escape a string for CSV.
+   * 
+   * @param s Input string
+   * @return Escaped string
+   */
+  private static String csvEscape(String s) {
+    if(s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) {
+      return s;
+    }
+    return '"' + s.replace("\"", "\"\"") + '"';
+  }
+
+  /**
+   * JMX bean.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class Bean implements MetricsMXBean {
+    @Override
+    public Map<String, String> getMetrics() {
+      Map<String, String> res = new LinkedHashMap<>();
+      for(Statistic s : METRICS.values()) {
+        res.put(s.getKey(), s.formatValue());
+      }
+      return res;
+    }
+
+    @Override
+    public long getCounter(String key) {
+      Statistic s = METRICS.get(key);
+      return (s instanceof Counter) ? ((Counter) s).getValue() : -1L;
+    }
+
+    @Override
+    public void reset() {
+      MetricsRegistry.reset();
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package de.lmu.ifi.dbs.elki.logging.statistics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe counter for events that occur at a very high rate, such as
+ * distance computations in parallel algorithms.
+ * 
+ * Increments are spread over several padded cells, selected by the thread id,
+ * so concurrent threads rarely contend on the same cache line. Reading the
+ * value sums up all cells, and thus is more expensive than with
+ * {@link AtomicLongCounter}.
+ * 
+ * Note: for performance, the return values of the increment methods are the
+ * partial counts of the cell used by the calling thread only. Use
+ * {@link #getValue()} to obtain the total.
+ * 
+ * @author Erich Schubert
+ */
+public class StripedLongCounter extends AbstractStatistic implements Counter {
+  /**
+   * Padding: use one cell per 64 byte cache line.
+   */
+  private static final int PADDING = 3;
+
+  /**
+   * Counter cells.
+   */
+  private final AtomicLongArray cells;
+
+  /**
+   * Mask to select a cell.
+   */
+  private final int mask;
+
+  /**
+   * Constructor.
+   * 
+   * @param key Key to report.
+   */
+  public StripedLongCounter(String key) {
+    super(key);
+    this.mask = stripes() - 1;
+    this.cells = new AtomicLongArray((mask + 1) << PADDING);
+  }
+
+  /**
+   * Choose the number of stripes: a power of two, at least four times the number of
+   * processors.
+   * 
+   * @return Number of stripes
+   */
+  protected static int stripes() {
+    return Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) << 2);
+  }
+
+  /**
+   * Cell index for the current thread.
+   * 
+   * @return Index
+   */
+  private int cell() {
+    return ((int) Thread.currentThread().getId() & mask) << PADDING;
+  }
+
+  @Override
+  public long increment() {
+    return cells.incrementAndGet(cell());
+  }
+
+  @Override
+  public long decrement() {
+    return cells.decrementAndGet(cell());
+  }
+
+  @Override
+  public long increment(long i) {
+    return cells.addAndGet(cell(), i);
+  }
+
+  @Override
+  public long getValue() {
+    long sum = 0;
+    for(int i = 0; i <= mask; i++) {
+      sum += cells.get(i << PADDING);
+    }
+    return sum;
+  }
+
+  /**
+   * Reset the counter to zero.
+   */
+  public void reset() {
+    for(int i = 0; i <= mask; i++) {
+      cells.set(i << PADDING, 0L);
+    }
+  }
+
+  @Override
+  public String formatValue() {
+    return Long.toString(getValue());
+  }
+}
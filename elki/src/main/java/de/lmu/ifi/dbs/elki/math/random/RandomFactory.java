@@ -101,4 +101,16 @@ public class RandomFactory {
   public Random getSingleThreadedRandom() {
     return new FastNonThreadsafeRandom(seed++);
   }
+
+  /**
+   * Get a new factory, which produces the same generators as this factory
+   * would produce next. This factory advances as if one generator had been
+   * obtained, so forking in the order of a sequential computation reproduces
+   * its random generators exactly, e.g. in concurrent runs.
+   * 
+   * @return New random factory
+   */
+  public RandomFactory fork() {
+    return new RandomFactory(seed++);
+  }
 }
\ No newline at end of file
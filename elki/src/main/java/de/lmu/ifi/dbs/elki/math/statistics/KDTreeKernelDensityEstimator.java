@@ -0,0 +1,340 @@
+package de.lmu.ifi.dbs.elki.math.statistics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.math.statistics.kernelfunctions.KernelDensityFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.ArrayTask;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Multivariate kernel density estimation with a fixed bandwidth, accelerated
+ * by a kd-tree with bounding boxes, using Euclidean distance.
+ * 
+ * For every tree node, the kernel values at the minimum and maximum distance of
+ * the bounding box give bounds on the contribution of its objects. When these
+ * bounds are close enough, {@code kmax - kmin <= epsilon * (kmax + kmin)}, the
+ * node is approximated by the mean of both bounds. The error is then at most
+ * {@code epsilon} times the estimate, i.e. a relative error of at most
+ * {@code epsilon / (1 - epsilon)} of the true density; nodes beyond the kernel
+ * support are skipped. With
+ * {@code epsilon = 0}, the result is exact (up to rounding). The kernel must be
+ * non-increasing in the distance, which holds for all kernels included with
+ * ELKI.
+ * 
+ * The density is the sum of kernel values at the relative distances
+ * {@code |x-y|/h}, divided by {@code n * h^d}. This uses the one-dimensional
+ * kernel as radial profile, so for {@code d > 1} the density is only
+ * proportional to a normalized density, as with the kernel-based local outlier
+ * detectors.
+ * 
+ * Batch evaluation for many objects runs in parallel; the tree is read-only
+ * after construction.
+ * 
+ * This class is a building block for fixed-bandwidth density estimates. The
+ * kernel-based outlier detectors ({@code KDEOS}, {@code LDF},
+ * {@code SimpleKernelDensityLOF}) use a separate bandwidth for every object,
+ * derived from its k nearest neighbors, and thus cannot share one tree.
+ * 
+ * Reference:
+ * <p>
+ * A. G. Gray, A. W. Moore<br />
+ * Nonparametric density estimation: Toward computational tractability<br />
+ * Proc. SIAM Int. Conf. on Data Mining (SDM 2003)
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.composedOf Node
+ * @apiviz.uses KernelDensityFunction
+ */
+@Reference(authors = "A. G. Gray, A. W. Moore", //
+title = "Nonparametric density estimation: Toward computational tractability", //
+booktitle = "Proc. SIAM Int. Conf. on Data Mining (SDM 2003)", //
+url = "http://dx.doi.org/10.1137/1.9781611972733.19")
+public class KDTreeKernelDensityEstimator {
+  /**
+   * Default maximum leaf size.
+   */
+  public static final int DEFAULT_LEAFSIZE = 16;
+
+  /**
+   * Data points, in tree order.
+   */
+  private final double[][] data;
+
+  /**
+   * Tree root.
+   */
+  private final Node root;
+
+  /**
+   * Kernel function.
+   */
+  private final KernelDensityFunction kernel;
+
+  /**
+   * Kernel bandwidth.
+   */
+  private final double bandwidth;
+
+  /**
+   * Error tolerance.
+   */
+  private final double epsilon;
+
+  /**
+   * Normalization factor, {@code 1 / (n * h^d)}.
+   */
+  private final double norm;
+
+  /**
+   * Constructor.
+   * 
+   * @param data Data points (will be reordered, but not modified)
+   * @param kernel Kernel function
+   * @param bandwidth Kernel bandwidth
+   * @param epsilon Error tolerance, {@code 0} for exact results
+   * @param leafsize Maximum leaf size
+   */
+  public KDTreeKernelDensityEstimator(double[][] data, KernelDensityFunction kernel, double bandwidth, double epsilon, int leafsize) {
+    super();
+    if(data.length == 0) {
+      throw new IllegalArgumentException("Kernel density estimation needs at least one data point.");
+    }
+    this.data = data;
+    this.kernel = kernel;
+    this.bandwidth = bandwidth;
+    this.epsilon = epsilon;
+    final int dim = data[0].length;
+    this.norm = 1. / (data.length * Math.pow(bandwidth, dim));
+    int[] order = new int[data.length];
+    for(int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    this.root = build(order, 0, order.length, Math.max(leafsize, 1));
+    // Store the points in tree order, for locality.
+    double[][] copy = data.clone();
+    for(int i = 0; i < order.length; i++) {
+      data[i] = copy[order[i]];
+    }
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param relation Data relation
+   * @param kernel Kernel function
+   * @param bandwidth Kernel bandwidth
+   * @param epsilon Error tolerance, {@code 0} for exact results
+   */
+  public KDTreeKernelDensityEstimator(Relation<? extends NumberVector> relation, KernelDensityFunction kernel, double bandwidth, double epsilon) {
+    this(toArray(relation), kernel, bandwidth, epsilon, DEFAULT_LEAFSIZE);
+  }
+
+  /**
+   * Copy the relation into an array.
+   * 
+   * @param relation Data relation
+   * @return Data array
+   */
+  private static double[][] toArray(Relation<? extends NumberVector> relation) {
+    final int dim = RelationUtil.dimensionality(relation);
+    double[][] data = new double[relation.size()][dim];
+    int i = 0;
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance(), i++) {
+      final NumberVector vec = relation.get(it);
+      for(int d = 0; d < dim; d++) {
+        data[i][d] = vec.doubleValue(d);
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Recursively build the tree, splitting the widest dimension at the median.
+   * 
+   * @param order Point order (modified)
+   * @param begin First point
+   * @param end End (exclusive)
+   * @param leafsize Maximum leaf size
+   * @return Tree node
+   */
+  private Node build(int[] order, int begin, int end, int leafsize) {
+    final int dim = data[0].length;
+    double[] min = new double[dim], max = new double[dim];
+    System.arraycopy(data[order[begin]], 0, min, 0, dim);
+    System.arraycopy(data[order[begin]], 0, max, 0, dim);
+    for(int i = begin + 1; i < end; i++) {
+      final double[] v = data[order[i]];
+      for(int d = 0; d < dim; d++) {
+        min[d] = v[d] < min[d] ? v[d] : min[d];
+        max[d] = v[d] > max[d] ? v[d] : max[d];
+      }
+    }
+    Node node = new Node(begin, end, min, max);
+    if(end - begin <= leafsize) {
+      return node;
+    }
+    int split = 0;
+    for(int d = 1; d < dim; d++) {
+      split = (max[d] - min[d] > max[split] - min[split]) ? d : split;
+    }
+    if(!(max[split] > min[split])) {
+      return node; // All duplicates.
+    }
+    final int axis = split;
+    IntegerArrayQuickSort.sort(order, begin, end, new IntegerComparator() {
+      @Override
+      public int compare(int x, int y) {
+        return Double.compare(data[x][axis], data[y][axis]);
+      }
+    });
+    final int middle = (begin + end) >>> 1;
+    node.left = build(order, begin, middle, leafsize);
+    node.right = build(order, middle, end, leafsize);
+    return node;
+  }
+
+  /**
+   * Estimate the density at a single position.
+   * 
+   * @param query Query position
+   * @return Density
+   */
+  public double density(double[] query) {
+    return sum(root, query) * norm;
+  }
+
+  /**
+   * Estimate the density at all objects, in parallel.
+   * 
+   * @param relation Data relation
+   * @param ids Objects to evaluate
+   * @return Densities, by the offsets in {@code ids}
+   */
+  public double[] density(final Relation<? extends NumberVector> relation, ArrayDBIDs ids) {
+    final double[] dens = new double[ids.size()];
+    final int dim = data[0].length;
+    ParallelExecutor.run(ids, new ArrayTask() {
+      @Override
+      public void process(DBIDArrayIter it) {
+        final NumberVector vec = relation.get(it);
+        double[] query = new double[dim];
+        for(int d = 0; d < dim; d++) {
+          query[d] = vec.doubleValue(d);
+        }
+        dens[it.getOffset()] = density(query);
+      }
+    });
+    return dens;
+  }
+
+  /**
+   * Sum the kernel values of a subtree.
+   * 
+   * @param node Tree node
+   * @param query Query position
+   * @return Sum of kernel values
+   */
+  private double sum(Node node, double[] query) {
+    double mindist = 0., maxdist = 0.;
+    for(int d = 0; d < query.length; d++) {
+      final double lo = node.min[d] - query[d], hi = query[d] - node.max[d];
+      final double delta = lo > 0 ? lo : hi > 0 ? hi : 0.;
+      final double far = -lo > -hi ? -lo : -hi;
+      mindist += delta * delta;
+      maxdist += far * far;
+    }
+    final double kmax = kernel.density(Math.sqrt(mindist) / bandwidth);
+    if(!(kmax > 0)) {
+      return 0.; // Beyond the kernel support.
+    }
+    final double kmin = kernel.density(Math.sqrt(maxdist) / bandwidth);
+    if(kmax - kmin <= epsilon * (kmax + kmin)) {
+      return (node.end - node.begin) * .5 * (kmax + kmin);
+    }
+    if(node.left != null) {
+      return sum(node.left, query) + sum(node.right, query);
+    }
+    double sum = 0.;
+    for(int i = node.begin; i < node.end; i++) {
+      final double[] v = data[i];
+      double dist = 0.;
+      for(int d = 0; d < query.length; d++) {
+        final double delta = v[d] - query[d];
+        dist += delta * delta;
+      }
+      sum += kernel.density(Math.sqrt(dist) / bandwidth);
+    }
+    return sum;
+  }
+
+  /**
+   * Node of the kd-tree.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class Node {
+    /**
+     * Range of points in this node.
+     */
+    final int begin, end;
+
+    /**
+     * Bounding box.
+     */
+    final double[] min, max;
+
+    /**
+     * Children, {@code null} for leaves.
+     */
+    Node left, right;
+
+    /**
+     * Constructor.
+     * 
+     * @param begin First point
+     * @param end End (exclusive)
+     * @param min Bounding box minimum
+     * @param max Bounding box maximum
+     */
+    Node(int begin, int end, double[] min, double[] max) {
+      this.begin = begin;
+      this.end = end;
+      this.min = min;
+      this.max = max;
+    }
+  }
+}
@@ -26,6 +26,7 @@ package de.lmu.ifi.dbs.elki.parallel;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -33,9 +34,16 @@ import java.util.concurrent.atomic.AtomicInteger;
 /**
  * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
  * 
+ * Tasks running on the worker threads must not block on further tasks submitted
+ * to the same core, as this may deadlock once all workers are waiting. Use
+ * {@link #isWorkerThread()} to detect this situation, and run nested work in
+ * the calling thread instead.
+ * 
  * TODO: make configurable how many threads are used.
  * 
  * @author Erich Schubert
+ * 
+ * @apiviz.has Worker
  */
 public class ParallelCore {
   /**
@@ -63,6 +71,23 @@ public class ParallelCore {
    */
   private int processors;
 
+  /**
+   * Thread factory, to mark our worker threads.
+   */
+  private ThreadFactory factory = new ThreadFactory() {
+    /**
+     * Thread counter.
+     */
+    private AtomicInteger count = new AtomicInteger(0);
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Worker(r, "ELKI-worker-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  };
+
   /**
    * Constructor.
    */
@@ -86,7 +111,16 @@ public class ParallelCore {
    * @return Number of threads to run in parallel
    */
   public int getParallelism() {
-    return executor.getMaximumPoolSize();
+    return processors;
+  }
+
+  /**
+   * Test whether the current thread is one of the worker threads.
+   * 
+   * @return {@code true} when called from within a parallel task
+   */
+  public static boolean isWorkerThread() {
+    return Thread.currentThread() instanceof Worker;
   }
 
   /**
@@ -107,7 +141,7 @@ public class ParallelCore {
     if(executor == null) {
       synchronized(this) {
         if(executor == null) {
-          executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+          executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), factory);
           executor.allowCoreThreadTimeOut(true);
         }
       }
@@ -131,4 +165,21 @@ public class ParallelCore {
       }
     }
   }
+
+  /**
+   * Worker thread class, used to recognize nested parallelism.
+   * 
+   * @author Erich Schubert
+   */
+  private static class Worker extends Thread {
+    /**
+     * Constructor.
+     * 
+     * @param r Runnable
+     * @param name Thread name
+     */
+    public Worker(Runnable r, String name) {
+      super(r, name);
+    }
+  }
 }
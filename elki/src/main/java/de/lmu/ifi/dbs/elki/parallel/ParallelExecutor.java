@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
@@ -34,6 +35,8 @@ import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.AbstractProgress;
 import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
@@ -41,14 +44,23 @@ import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
 /**
  * Class to run processors in parallel, on all available cores.
  * 
- * TODO: add progress
+ * Progress can be reported by passing a progress object. The worker threads
+ * then accumulate their progress locally, and only add it to the shared counter
+ * every {@link #PROGRESS_BATCH} objects, so the tasks must not increment the
+ * progress themselves.
  * 
  * @author Erich Schubert
  * 
  * @apiviz.has BlockArrayRunner
+ * @apiviz.has BlockTaskRunner
  * @apiviz.uses ParallelCore
  */
 public class ParallelExecutor {
+  /**
+   * Number of objects a worker processes before reporting progress.
+   */
+  public static final int PROGRESS_BATCH = 64;
+
   /**
    * Run a task on all available CPUs.
    * 
@@ -56,27 +68,142 @@ public class ParallelExecutor {
    * @param procs Processors to run
    */
   public static final void run(DBIDs ids, Processor... procs) {
+    run(ids, null, null, procs);
+  }
+
+  /**
+   * Run a task on all available CPUs, with progress reporting.
+   * 
+   * @param ids IDs to process
+   * @param prog Progress to increment, may be {@code null}
+   * @param logger Logger to report progress to
+   * @param procs Processors to run
+   */
+  public static final void run(DBIDs ids, AbstractProgress prog, Logging logger, Processor... procs) {
     // TODO: try different strategies anyway!
     ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    final int size = aids.size();
+    int numparts = ParallelCore.getCore().getParallelism();
+    // TODO: are there better heuristics for choosing this?
+    numparts = (size > numparts * numparts * 16) ? Math.max(numparts * numparts - 1, numparts) : numparts;
+
+    final int blocksize = (size + (numparts - 1)) / numparts;
+    List<Callable<ArrayDBIDs>> parts = new ArrayList<>(numparts);
+    for(int i = 0; i < numparts; i++) {
+      final int start = i * blocksize;
+      final int end = (start + blocksize < size) ? start + blocksize : size;
+      parts.add(new BlockArrayRunner(aids, start, end, procs, prog, logger));
+    }
+    call(parts);
+  }
+
+  /**
+   * Run a task on all available CPUs, passing the array position along.
+   * 
+   * Unlike {@link #run(DBIDs, Processor...)}, the data is split into more
+   * blocks than there are threads, for better load balancing when the cost per
+   * object varies (e.g., with neighborhood sizes).
+   * 
+   * @param ids IDs to process
+   * @param task Task to run on every object
+   */
+  public static final void run(ArrayDBIDs ids, final ArrayTask task) {
+    run(ids, 0, ids.size(), task, null, null);
+  }
+
+  /**
+   * Run a task on all available CPUs, passing the array position along, with
+   * progress reporting.
+   * 
+   * @param ids IDs to process
+   * @param task Task to run on every object
+   * @param prog Progress to increment, may be {@code null}
+   * @param logger Logger to report progress to
+   */
+  public static final void run(ArrayDBIDs ids, final ArrayTask task, AbstractProgress prog, Logging logger) {
+    run(ids, 0, ids.size(), task, prog, logger);
+  }
+
+  /**
+   * Run a task on all available CPUs, for the array positions
+   * {@code begin} (inclusive) to {@code end} (exclusive) only.
+   * 
+   * @param ids IDs to process
+   * @param begin First position to process
+   * @param end End position (exclusive)
+   * @param task Task to run on every object
+   */
+  public static final void run(ArrayDBIDs ids, int begin, int end, final ArrayTask task) {
+    run(ids, begin, end, task, null, null);
+  }
+
+  /**
+   * Run a task on all available CPUs, for the array positions
+   * {@code begin} (inclusive) to {@code end} (exclusive) only, with progress
+   * reporting.
+   * 
+   * @param ids IDs to process
+   * @param begin First position to process
+   * @param end End position (exclusive)
+   * @param task Task to run on every object
+   * @param prog Progress to increment, may be {@code null}
+   * @param logger Logger to report progress to
+   */
+  public static final void run(ArrayDBIDs ids, int begin, int end, final ArrayTask task, AbstractProgress prog, Logging logger) {
+    final int size = end - begin;
+    final int numparts = Math.max(Math.min(size, ParallelCore.getCore().getParallelism() << 2), 1);
+    final int blocksize = (size + (numparts - 1)) / numparts;
+    List<Callable<ArrayDBIDs>> parts = new ArrayList<>(numparts);
+    for(int start = begin; start < end; start += blocksize) {
+      final int stop = (start + blocksize < end) ? start + blocksize : end;
+      parts.add(new BlockTaskRunner(ids, start, stop, task, prog, logger));
+    }
+    call(parts);
+  }
+
+  /**
+   * Run independent tasks on all available CPUs, and collect their results.
+   * 
+   * When called from within a parallel task, the tasks are run sequentially in
+   * the calling thread, to avoid waiting for the (possibly exhausted) worker
+   * pool.
+   * 
+   * @param tasks Tasks to run
+   * @param <T> Result type
+   * @return Results, in the same order as the tasks
+   */
+  public static final <T> List<T> call(List<? extends Callable<T>> tasks) {
+    List<T> results = new ArrayList<>(tasks.size());
+    if(tasks.size() <= 1 || ParallelCore.isWorkerThread()) {
+      try {
+        for(Callable<T> task : tasks) {
+          results.add(task.call());
+        }
+      }
+      catch(RuntimeException e) {
+        throw e;
+      }
+      catch(Exception e) {
+        throw new RuntimeException("Processor execution failed.", e);
+      }
+      return results;
+    }
     ParallelCore core = ParallelCore.getCore();
     try {
-      final int size = aids.size();
       core.connect();
-      int numparts = core.getParallelism();
-      // TODO: are there better heuristics for choosing this?
-      numparts = (size > numparts * numparts * 16) ? numparts * numparts - 1 : numparts;
-
-      final int blocksize = (size + (numparts - 1)) / numparts;
-      List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
-      for(int i = 0; i < numparts; i++) {
-        final int start = i * blocksize;
-        final int end = (start + blocksize < size) ? start + blocksize : size;
-        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs);
-        parts.add(core.submit(run));
+      List<Future<T>> parts = new ArrayList<>(tasks.size());
+      for(Callable<T> task : tasks) {
+        parts.add(core.submit(task));
       }
-
-      for(Future<ArrayDBIDs> fut : parts) {
-        fut.get();
+      try {
+        for(Future<T> fut : parts) {
+          results.add(fut.get());
+        }
+      }
+      finally {
+        if(results.size() < parts.size()) {
+          cancelAndWait(parts);
+        }
       }
     }
     catch(ExecutionException e) {
@@ -88,6 +215,128 @@ public class ParallelExecutor {
     finally {
       core.disconnect();
     }
+    return results;
+  }
+
+  /**
+   * Cancel the tasks that have not yet started, and wait for the running tasks
+   * to finish, so that a failed execution does not continue in the background.
+   * 
+   * @param parts Submitted tasks
+   */
+  private static <T> void cancelAndWait(List<Future<T>> parts) {
+    for(Future<T> fut : parts) {
+      fut.cancel(false);
+    }
+    for(Future<T> fut : parts) {
+      if(fut.isCancelled()) {
+        continue;
+      }
+      try {
+        fut.get();
+      }
+      catch(ExecutionException | CancellationException e) {
+        // Only the first failure is reported.
+      }
+      catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Simple task to run on each object of an array, in parallel.
+   * 
+   * Implementations must be thread-safe; writing to different array positions
+   * is fine.
+   * 
+   * @author Erich Schubert
+   */
+  public static interface ArrayTask {
+    /**
+     * Process a single object.
+     * 
+     * @param it Iterator, positioned at the object; use
+     *        {@link DBIDArrayIter#getOffset()} for array addressing. Do not
+     *        move the iterator.
+     */
+    void process(DBIDArrayIter it);
+  }
+
+  /**
+   * Run a simple task on an array part.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.uses ArrayTask
+   */
+  protected static class BlockTaskRunner implements Callable<ArrayDBIDs> {
+    /**
+     * Array IDs to process
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Start position
+     */
+    private int start;
+
+    /**
+     * End position
+     */
+    private int end;
+
+    /**
+     * Task to run
+     */
+    private ArrayTask task;
+
+    /**
+     * Progress to report to, may be {@code null}
+     */
+    private AbstractProgress prog;
+
+    /**
+     * Logger for progress reporting
+     */
+    private Logging logger;
+
+    /**
+     * Constructor.
+     * 
+     * @param ids IDs to process
+     * @param start Starting position
+     * @param end End position
+     * @param task Task to run
+     * @param prog Progress to report to, may be {@code null}
+     * @param logger Logger for progress reporting
+     */
+    protected BlockTaskRunner(ArrayDBIDs ids, int start, int end, ArrayTask task, AbstractProgress prog, Logging logger) {
+      super();
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+      this.task = task;
+      this.prog = prog;
+      this.logger = logger;
+    }
+
+    @Override
+    public ArrayDBIDs call() {
+      int pending = 0;
+      for(DBIDArrayIter iter = ids.iter().seek(start); iter.getOffset() < end; iter.advance()) {
+        task.process(iter);
+        if(prog != null && ++pending == PROGRESS_BATCH) {
+          prog.incrementProcessed(pending, logger);
+          pending = 0;
+        }
+      }
+      if(prog != null) {
+        prog.incrementProcessed(pending, logger);
+      }
+      return ids;
+    }
   }
 
   /**
@@ -123,6 +372,16 @@ public class ParallelExecutor {
      */
     private HashMap<SharedVariable<?>, SharedVariable.Instance<?>> variables = new HashMap<>();
 
+    /**
+     * Progress to report to, may be {@code null}
+     */
+    private AbstractProgress prog;
+
+    /**
+     * Logger for progress reporting
+     */
+    private Logging logger;
+
     /**
      * Constructor.
      * 
@@ -130,13 +389,17 @@ public class ParallelExecutor {
      * @param start Starting position
      * @param end End position
      * @param procs Processors to run
+     * @param prog Progress to report to, may be {@code null}
+     * @param logger Logger for progress reporting
      */
-    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs) {
+    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs, AbstractProgress prog, Logging logger) {
       super();
       this.ids = ids;
       this.start = start;
       this.end = end;
       this.procs = procs;
+      this.prog = prog;
+      this.logger = logger;
     }
 
     @Override
@@ -148,10 +411,18 @@ public class ParallelExecutor {
 
       DBIDArrayIter iter = ids.iter();
       iter.seek(start);
-      for(int c = end - start; iter.valid() && c >= 0; iter.advance(), c--) {
+      int pending = 0;
+      for(int c = end - start; iter.valid() && c > 0; iter.advance(), c--) {
         for(int i = 0; i < instances.length; i++) {
           instances[i].map(iter);
         }
+        if(prog != null && ++pending == PROGRESS_BATCH) {
+          prog.incrementProcessed(pending, logger);
+          pending = 0;
+        }
+      }
+      if(prog != null) {
+        prog.incrementProcessed(pending, logger);
       }
       for(int i = 0; i < instances.length; i++) {
         procs[i].cleanup(instances[i]);
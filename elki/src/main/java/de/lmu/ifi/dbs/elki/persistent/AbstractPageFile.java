@@ -2,6 +2,7 @@ package de.lmu.ifi.dbs.elki.persistent;
 
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.MetricsRegistry;
 
 /*
  This file is part of ELKI:
@@ -51,8 +52,14 @@ public abstract class AbstractPageFile<P extends Page> implements PageFile<P> {
   public AbstractPageFile() {
     super();
     Logging log = getLogger();
-    this.readAccess = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".reads") : null;
-    this.writeAccess = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".writes") : null;
+    if(MetricsRegistry.isEnabled()) {
+      // Shared by all page files of the same class.
+      this.readAccess = MetricsRegistry.counter(this.getClass().getName() + ".reads");
+      this.writeAccess = MetricsRegistry.counter(this.getClass().getName() + ".writes");
+      return;
+    }
+    this.readAccess = log.isStatistics() ? log.newConcurrentCounter(this.getClass().getName() + ".reads") : null;
+    this.writeAccess = log.isStatistics() ? log.newConcurrentCounter(this.getClass().getName() + ".writes") : null;
   }
 
   /**
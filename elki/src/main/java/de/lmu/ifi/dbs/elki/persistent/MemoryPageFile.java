@@ -23,13 +23,18 @@ package de.lmu.ifi.dbs.elki.persistent;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import gnu.trove.map.TIntObjectMap;
-import gnu.trove.map.hash.TIntObjectHashMap;
+import java.util.Arrays;
+
 import de.lmu.ifi.dbs.elki.logging.Logging;
 
 /**
  * A memory based implementation of a PageFile that simulates I/O-access.<br>
- * Implemented as a Map with keys representing the ids of the saved pages.
+ * Implemented as an array indexed by the (dense) page ids.
+ * 
+ * Reading pages is not synchronized: once the index has been built, any number
+ * of threads may read concurrently, for example to run kNN queries in parallel.
+ * Modifications are synchronized, but must not be interleaved with concurrent
+ * readers.
  * 
  * @author Elke Achtert
  * 
@@ -42,9 +47,14 @@ public class MemoryPageFile<P extends Page> extends AbstractStoringPageFile<P> {
   private static final Logging LOG = Logging.getLogger(MemoryPageFile.class);
 
   /**
-   * Holds the pages.
+   * Initial size of the page array.
+   */
+  private static final int INITIAL_SIZE = 64;
+
+  /**
+   * Holds the pages, indexed by page id.
    */
-  private final TIntObjectMap<P> file;
+  private volatile Object[] file;
 
   /**
    * Creates a new MemoryPageFile that is supported by a cache with the
@@ -54,19 +64,26 @@ public class MemoryPageFile<P extends Page> extends AbstractStoringPageFile<P> {
    */
   public MemoryPageFile(int pageSize) {
     super(pageSize);
-    this.file = new TIntObjectHashMap<>();
+    this.file = new Object[INITIAL_SIZE];
   }
 
+  @SuppressWarnings("unchecked")
   @Override
-  public synchronized P readPage(int pageID) {
+  public P readPage(int pageID) {
     countRead();
-    return file.get(pageID);
+    final Object[] pages = file;
+    return (pageID >= 0 && pageID < pages.length) ? (P) pages[pageID] : null;
   }
 
   @Override
-  protected void writePage(int pageID, P page) {
+  protected synchronized void writePage(int pageID, P page) {
     countWrite();
-    file.put(pageID, page);
+    Object[] pages = file;
+    if(pageID >= pages.length) {
+      pages = Arrays.copyOf(pages, Math.max(pageID + 1, pages.length << 1));
+    }
+    pages[pageID] = page;
+    file = pages;
     page.setDirty(false);
   }
 
@@ -78,12 +95,14 @@ public class MemoryPageFile<P extends Page> extends AbstractStoringPageFile<P> {
 
     // delete from file
     countWrite();
-    file.remove(pageID);
+    if(pageID < file.length) {
+      file[pageID] = null;
+    }
   }
 
   @Override
-  public void clear() {
-    file.clear();
+  public synchronized void clear() {
+    file = new Object[INITIAL_SIZE];
   }
 
   @Override
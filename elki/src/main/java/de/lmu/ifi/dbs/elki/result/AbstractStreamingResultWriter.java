@@ -0,0 +1,212 @@
+package de.lmu.ifi.dbs.elki.result;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+
+/**
+ * Abstract base class for result writers that stream outlier scores and
+ * cluster assignments into files, one file per result.
+ *
+ * Rather than formatting every object via the
+ * {@link de.lmu.ifi.dbs.elki.result.textwriter.TextWriter} handler lookup,
+ * the data is written into a large byte buffer, which is flushed to a file
+ * channel when full.
+ *
+ * @author Erich Schubert
+ */
+public abstract class AbstractStreamingResultWriter implements ResultHandler {
+  /**
+   * Size of the output buffer.
+   */
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  /**
+   * Output directory.
+   */
+  private File outdir;
+
+  /**
+   * File names already used.
+   */
+  private HashSet<String> used = new HashSet<>();
+
+  /**
+   * Output buffer.
+   */
+  protected ByteBuffer buffer;
+
+  /**
+   * Current output channel.
+   */
+  private FileChannel channel;
+
+  /**
+   * Constructor.
+   *
+   * @param outdir Output directory
+   */
+  public AbstractStreamingResultWriter(File outdir) {
+    super();
+    this.outdir = outdir;
+  }
+
+  @Override
+  public void processNewResult(ResultHierarchy hier, Result newResult) {
+    List<OutlierResult> ors = ResultUtil.getOutlierResults(newResult);
+    List<Clustering<? extends Model>> crs = ResultUtil.getClusteringResults(newResult);
+    if(ors.isEmpty() && crs.isEmpty()) {
+      return;
+    }
+    if(!outdir.exists() && !outdir.mkdirs()) {
+      throw new IllegalStateException("Could not create output directory: " + outdir);
+    }
+    buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    try {
+      for(OutlierResult or : ors) {
+        open(or);
+        writeOutlierResult(or);
+        close();
+      }
+      for(Clustering<?> c : crs) {
+        open(c);
+        writeClustering(c);
+        close();
+      }
+    }
+    catch(IOException e) {
+      throw new IllegalStateException("Input/Output error while writing result.", e);
+    }
+    finally {
+      if(channel != null) {
+        try {
+          channel.close();
+        }
+        catch(IOException e) {
+          getLogger().exception(e);
+        }
+        channel = null;
+      }
+      buffer = null;
+    }
+  }
+
+  /**
+   * Open the output file for a result.
+   *
+   * @param r Result
+   * @throws IOException on errors
+   */
+  private void open(Result r) throws IOException {
+    String name = r.getShortName();
+    for(int i = 1; !used.add(name); i++) {
+      name = r.getShortName() + "-" + i;
+    }
+    File f = new File(outdir, name + getExtension());
+    if(getLogger().isVerbose()) {
+      getLogger().verbose("Writing " + r.getLongName() + " to " + f);
+    }
+    channel = new FileOutputStream(f).getChannel();
+    buffer.clear();
+  }
+
+  /**
+   * Flush the buffer and close the current output file.
+   *
+   * @throws IOException on errors
+   */
+  private void close() throws IOException {
+    flush();
+    channel.close();
+    channel = null;
+  }
+
+  /**
+   * Write the buffer contents to the output channel.
+   *
+   * @throws IOException on errors
+   */
+  protected void flush() throws IOException {
+    buffer.flip();
+    while(buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Ensure that the buffer has room for the given number of bytes, flushing it
+   * if necessary.
+   *
+   * @param bytes Number of bytes
+   * @throws IOException on errors
+   */
+  protected void ensure(int bytes) throws IOException {
+    if(buffer.remaining() < bytes) {
+      flush();
+    }
+  }
+
+  /**
+   * Get the file name extension.
+   *
+   * @return File name extension
+   */
+  protected abstract String getExtension();
+
+  /**
+   * Write an outlier result.
+   *
+   * @param or Outlier result
+   * @throws IOException on errors
+   */
+  protected abstract void writeOutlierResult(OutlierResult or) throws IOException;
+
+  /**
+   * Write the cluster assignments of a clustering.
+   *
+   * @param c Clustering
+   * @throws IOException on errors
+   */
+  protected abstract void writeClustering(Clustering<?> c) throws IOException;
+
+  /**
+   * Get the class logger.
+   *
+   * @return Logger
+   */
+  protected abstract Logging getLogger();
+}
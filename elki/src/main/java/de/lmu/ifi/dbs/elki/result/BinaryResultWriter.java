@@ -0,0 +1,189 @@
+package de.lmu.ifi.dbs.elki.result;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+
+/**
+ * Write outlier scores and cluster assignments in a compact, columnar binary
+ * format, for fast loading into other tools.
+ *
+ * Each result is written to a separate file in the output directory. All
+ * values are little endian. A file begins with the header
+ * <code>int magic, int type, int n</code>, followed by the column of
+ * <code>n</code> integer DBIDs. For outlier results ({@link #TYPE_OUTLIER}),
+ * this is followed by the column of <code>n</code> double scores. For
+ * clusterings ({@link #TYPE_CLUSTERING}), it is followed by the column of
+ * <code>n</code> integer cluster numbers, the number of clusters
+ * <code>k</code>, and the <code>k</code> cluster names (as varint length and
+ * UTF-8 bytes). Objects contained in more than one cluster occur repeatedly.
+ *
+ * @author Erich Schubert
+ */
+public class BinaryResultWriter extends AbstractStreamingResultWriter {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(BinaryResultWriter.class);
+
+  /**
+   * Magic number of the file format ("ELKR").
+   */
+  public static final int MAGIC = 0x524B4C45;
+
+  /**
+   * Type code of outlier results.
+   */
+  public static final int TYPE_OUTLIER = 1;
+
+  /**
+   * Type code of clusterings.
+   */
+  public static final int TYPE_CLUSTERING = 2;
+
+  /**
+   * Constructor.
+   *
+   * @param outdir Output directory
+   */
+  public BinaryResultWriter(File outdir) {
+    super(outdir);
+  }
+
+  @Override
+  protected String getExtension() {
+    return ".bin";
+  }
+
+  @Override
+  protected void writeOutlierResult(OutlierResult or) throws IOException {
+    DoubleRelation scores = or.getScores();
+    writeHeader(TYPE_OUTLIER, scores.size());
+    for(DBIDIter iter = scores.iterDBIDs(); iter.valid(); iter.advance()) {
+      ensure(ByteArrayUtil.SIZE_INT);
+      buffer.putInt(DBIDUtil.asInteger(iter));
+    }
+    for(DBIDIter iter = scores.iterDBIDs(); iter.valid(); iter.advance()) {
+      ensure(ByteArrayUtil.SIZE_DOUBLE);
+      buffer.putDouble(scores.doubleValue(iter));
+    }
+  }
+
+  @Override
+  protected void writeClustering(Clustering<?> c) throws IOException {
+    List<? extends Cluster<?>> clusters = c.getAllClusters();
+    int n = 0;
+    for(Cluster<?> clu : clusters) {
+      n += clu.size();
+    }
+    writeHeader(TYPE_CLUSTERING, n);
+    for(Cluster<?> clu : clusters) {
+      for(DBIDIter iter = clu.getIDs().iter(); iter.valid(); iter.advance()) {
+        ensure(ByteArrayUtil.SIZE_INT);
+        buffer.putInt(DBIDUtil.asInteger(iter));
+      }
+    }
+    int cnum = 0;
+    for(Cluster<?> clu : clusters) {
+      for(int i = clu.size(); i > 0; i--) {
+        ensure(ByteArrayUtil.SIZE_INT);
+        buffer.putInt(cnum);
+      }
+      ++cnum;
+    }
+    ensure(ByteArrayUtil.SIZE_INT);
+    buffer.putInt(clusters.size());
+    for(Cluster<?> clu : clusters) {
+      String name = clu.getNameAutomatic();
+      // Varint length, and at most 3 bytes per UTF-16 character:
+      ensure(5 + 3 * name.length());
+      ByteArrayUtil.writeString(buffer, name);
+    }
+  }
+
+  /**
+   * Write the file header.
+   *
+   * @param type Result type
+   * @param n Number of rows
+   * @throws IOException on errors
+   */
+  private void writeHeader(int type, int n) throws IOException {
+    ensure(3 * ByteArrayUtil.SIZE_INT);
+    buffer.putInt(MAGIC).putInt(type).putInt(n);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    /**
+     * Output directory parameter.
+     */
+    public static final OptionID OUT_ID = new OptionID("binary.output", "Output directory for the binary result files.");
+
+    /**
+     * Output directory.
+     */
+    private File outdir;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      FileParameter outputP = new FileParameter(OUT_ID, FileParameter.FileType.OUTPUT_FILE);
+      if(config.grab(outputP)) {
+        outdir = outputP.getValue();
+      }
+    }
+
+    @Override
+    protected BinaryResultWriter makeInstance() {
+      return new BinaryResultWriter(outdir);
+    }
+  }
+}
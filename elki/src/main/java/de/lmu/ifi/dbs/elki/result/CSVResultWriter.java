@@ -0,0 +1,312 @@
+package de.lmu.ifi.dbs.elki.result;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+
+/**
+ * Write outlier scores and cluster assignments as CSV files, one file per
+ * result.
+ *
+ * Outlier results are written as rows <code>id,score</code>, clusterings as
+ * rows <code>id,cluster</code> with the cluster names given in comment lines.
+ * Numbers are formatted directly into the output buffer, without creating
+ * intermediate strings. Scores are written with 15 significant digits; use
+ * the {@link BinaryResultWriter} if the exact values are needed.
+ *
+ * @author Erich Schubert
+ */
+public class CSVResultWriter extends AbstractStreamingResultWriter {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(CSVResultWriter.class);
+
+  /**
+   * Number of significant digits.
+   */
+  private static final int DIGITS = 15;
+
+  /**
+   * Powers of ten that can be represented exactly as double.
+   */
+  private static final double[] POW10 = new double[23];
+
+  /**
+   * Powers of ten as long.
+   */
+  private static final long[] LPOW10 = new long[19];
+
+  static {
+    POW10[0] = 1.;
+    for(int i = 1; i < POW10.length; i++) {
+      POW10[i] = POW10[i - 1] * 10.;
+    }
+    LPOW10[0] = 1L;
+    for(int i = 1; i < LPOW10.length; i++) {
+      LPOW10[i] = LPOW10[i - 1] * 10L;
+    }
+  }
+
+  /**
+   * Scratch buffer for formatting numbers.
+   */
+  private byte[] digits = new byte[20];
+
+  /**
+   * Constructor.
+   *
+   * @param outdir Output directory
+   */
+  public CSVResultWriter(File outdir) {
+    super(outdir);
+  }
+
+  @Override
+  protected String getExtension() {
+    return ".csv";
+  }
+
+  @Override
+  protected void writeOutlierResult(OutlierResult or) throws IOException {
+    DoubleRelation scores = or.getScores();
+    writeASCII("id,score\n");
+    for(DBIDIter iter = scores.iterDBIDs(); iter.valid(); iter.advance()) {
+      ensure(48); // Sufficient for an integer, a double and separators.
+      writeLong(DBIDUtil.asInteger(iter));
+      buffer.put((byte) ',');
+      writeDouble(scores.doubleValue(iter));
+      buffer.put((byte) '\n');
+    }
+  }
+
+  @Override
+  protected void writeClustering(Clustering<?> c) throws IOException {
+    List<? extends Cluster<?>> clusters = c.getAllClusters();
+    writeASCII("id,cluster\n");
+    int cnum = 0;
+    for(Cluster<?> clu : clusters) {
+      byte[] name = clu.getNameAutomatic().getBytes(StandardCharsets.UTF_8);
+      ensure(name.length + 24);
+      buffer.put((byte) '#').put((byte) ' ');
+      writeLong(cnum++);
+      buffer.put((byte) ' ').put(name).put((byte) '\n');
+    }
+    cnum = 0;
+    for(Cluster<?> clu : clusters) {
+      for(DBIDIter iter = clu.getIDs().iter(); iter.valid(); iter.advance()) {
+        ensure(24);
+        writeLong(DBIDUtil.asInteger(iter));
+        buffer.put((byte) ',');
+        writeLong(cnum);
+        buffer.put((byte) '\n');
+      }
+      ++cnum;
+    }
+  }
+
+  /**
+   * Write an ASCII string.
+   *
+   * @param s String
+   * @throws IOException on errors
+   */
+  private void writeASCII(String s) throws IOException {
+    ensure(s.length());
+    for(int i = 0; i < s.length(); i++) {
+      buffer.put((byte) s.charAt(i));
+    }
+  }
+
+  /**
+   * Write a long value in decimal notation.
+   *
+   * @param v Value
+   */
+  private void writeLong(long v) {
+    if(v < 0) {
+      buffer.put((byte) '-');
+      if(v == Long.MIN_VALUE) {
+        // Cannot be negated.
+        buffer.put("9223372036854775808".getBytes(StandardCharsets.US_ASCII));
+        return;
+      }
+      v = -v;
+    }
+    int pos = digits.length;
+    do {
+      digits[--pos] = (byte) ('0' + (v % 10));
+      v /= 10;
+    }
+    while(v > 0);
+    buffer.put(digits, pos, digits.length - pos);
+  }
+
+  /**
+   * Write a double value, with {@link #DIGITS} significant digits.
+   *
+   * @param v Value
+   */
+  private void writeDouble(double v) {
+    if(v != v) {
+      buffer.put((byte) 'N').put((byte) 'a').put((byte) 'N');
+      return;
+    }
+    if(v < 0) {
+      buffer.put((byte) '-');
+      v = -v;
+    }
+    if(v == Double.POSITIVE_INFINITY) {
+      buffer.put("Infinity".getBytes(StandardCharsets.US_ASCII));
+      return;
+    }
+    if(v == 0.) {
+      buffer.put((byte) '0');
+      return;
+    }
+    // Decimal exponent, and the significant digits as long.
+    int e = (int) Math.floor(Math.log10(v));
+    long m = Math.round(scale(v, DIGITS - 1 - e));
+    if(m >= LPOW10[DIGITS]) { // log10 was too small, or rounding up
+      ++e;
+      m = Math.round(scale(v, DIGITS - 1 - e));
+    }
+    else if(m < LPOW10[DIGITS - 1]) { // log10 was too large
+      --e;
+      m = Math.round(scale(v, DIGITS - 1 - e));
+    }
+    // Strip trailing zeros.
+    int nd = DIGITS;
+    while(nd > 1 && m % 10 == 0) {
+      m /= 10;
+      --nd;
+    }
+    int pos = digits.length;
+    for(int i = 0; i < nd; i++) {
+      digits[--pos] = (byte) ('0' + (m % 10));
+      m /= 10;
+    }
+    if(e >= 0 && e < DIGITS) {
+      // Plain notation, with at least one digit before the decimal point.
+      if(e + 1 >= nd) {
+        buffer.put(digits, pos, nd);
+        for(int i = e + 1 - nd; i > 0; i--) {
+          buffer.put((byte) '0');
+        }
+      }
+      else {
+        buffer.put(digits, pos, e + 1).put((byte) '.').put(digits, pos + e + 1, nd - e - 1);
+      }
+    }
+    else if(e < 0 && e >= -4) {
+      // Plain notation, with leading zeros.
+      buffer.put((byte) '0').put((byte) '.');
+      for(int i = -e - 1; i > 0; i--) {
+        buffer.put((byte) '0');
+      }
+      buffer.put(digits, pos, nd);
+    }
+    else {
+      // Scientific notation.
+      buffer.put(digits[pos]);
+      if(nd > 1) {
+        buffer.put((byte) '.').put(digits, pos + 1, nd - 1);
+      }
+      buffer.put((byte) 'E');
+      writeLong(e);
+    }
+  }
+
+  /**
+   * Multiply by a power of ten.
+   *
+   * @param v Value
+   * @param p Power of ten
+   * @return Scaled value
+   */
+  private static double scale(double v, int p) {
+    // Avoid overflow of the power of ten for very small values.
+    while(p > 300) {
+      v *= 1e300;
+      p -= 300;
+    }
+    if(p >= 0) {
+      return v * (p < POW10.length ? POW10[p] : Math.pow(10, p));
+    }
+    return v / (-p < POW10.length ? POW10[-p] : Math.pow(10, -p));
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    /**
+     * Output directory parameter.
+     */
+    public static final OptionID OUT_ID = new OptionID("csv.output", "Output directory for the CSV result files.");
+
+    /**
+     * Output directory.
+     */
+    private File outdir;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      FileParameter outputP = new FileParameter(OUT_ID, FileParameter.FileType.OUTPUT_FILE);
+      if(config.grab(outputP)) {
+        outdir = outputP.getValue();
+      }
+    }
+
+    @Override
+    protected CSVResultWriter makeInstance() {
+      return new CSVResultWriter(outdir);
+    }
+  }
+}
@@ -23,6 +23,10 @@ package de.lmu.ifi.dbs.elki.utilities;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.regex.Pattern;
@@ -32,6 +36,7 @@ import de.lmu.ifi.dbs.elki.data.LabelList;
 import de.lmu.ifi.dbs.elki.data.type.NoSupportedDataTypeException;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -43,6 +48,7 @@ import de.lmu.ifi.dbs.elki.database.relation.ConvertToStringView;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.result.ResultHierarchy;
 
 /**
  * Class with Database-related utility functions such as centroid computation,
@@ -51,6 +57,11 @@ import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
  * @author Erich Schubert
  */
 public final class DatabaseUtil {
+  /**
+   * Open kNN sharing scopes, by database. Synchronize on this map for access.
+   */
+  private static final Map<Database, KNNSharingScope> KNN_SHARING = new IdentityHashMap<>();
+
   /**
    * Fake constructor: Do not instantiate!
    */
@@ -183,6 +194,17 @@ public final class DatabaseUtil {
   /**
    * Get (or create) a precomputed kNN query for the database.
    * 
+   * Within a kNN sharing scope (see {@link #beginKNNSharing}), a newly
+   * materialized kNN preprocessor is attached to the relation, so that later
+   * algorithms using the same distance function and the same or a smaller k
+   * reuse the materialized neighbors instead of computing them again. Closing
+   * the scope detaches these preprocessors again. Outside of a scope, existing
+   * preprocessors are reused, but new preprocessors are never attached.
+   * 
+   * The lookup and the sharing synchronize on the result hierarchy, so that
+   * this method can be used by algorithms running concurrently on the same
+   * relation (e.g., in ensembles).
+   * 
    * @param database Database
    * @param relation Relation
    * @param dq Distance query
@@ -190,14 +212,23 @@ public final class DatabaseUtil {
    * @return KNNQuery for the given relation, that is precomputed.
    */
   public static <O> KNNQuery<O> precomputedKNNQuery(Database database, Relation<O> relation, DistanceQuery<O> dq, int k) {
-    // "HEAVY" flag for knn query since it is used more than once
-    KNNQuery<O> knnq = database.getKNNQuery(dq, k, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_OPTIMIZED_ONLY, DatabaseQuery.HINT_NO_CACHE);
+    final ResultHierarchy hier = relation.getHierarchy();
+    KNNQuery<O> knnq;
+    synchronized(hier) {
+      // "HEAVY" flag for knn query since it is used more than once
+      knnq = database.getKNNQuery(dq, k, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_OPTIMIZED_ONLY, DatabaseQuery.HINT_NO_CACHE);
+    }
     // No optimized kNN query - use a preprocessor!
     if(knnq instanceof PreprocessorKNNQuery) {
       return knnq;
     }
     MaterializeKNNPreprocessor<O> preproc = new MaterializeKNNPreprocessor<>(relation, dq.getDistanceFunction(), k);
     preproc.initialize();
+    if(!(database instanceof UpdatableDatabase)) {
+      synchronized(hier) {
+        shareKNNPreprocessor(database, relation, preproc);
+      }
+    }
     return preproc.getKNNQuery(dq, k);
   }
 
@@ -211,15 +242,116 @@ public final class DatabaseUtil {
    * @return KNNQuery for the given relation, that is precomputed.
    */
   public static <O> KNNQuery<O> precomputedKNNQuery(Database database, Relation<O> relation, DistanceFunction<? super O> distf, int k) {
-    DistanceQuery<O> dq = database.getDistanceQuery(relation, distf);
-    // "HEAVY" flag for knn query since it is used more than once
-    KNNQuery<O> knnq = database.getKNNQuery(dq, k, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_OPTIMIZED_ONLY, DatabaseQuery.HINT_NO_CACHE);
-    // No optimized kNN query - use a preprocessor!
-    if(knnq instanceof PreprocessorKNNQuery) {
-      return knnq;
+    DistanceQuery<O> dq;
+    synchronized(relation.getHierarchy()) {
+      dq = database.getDistanceQuery(relation, distf);
     }
-    MaterializeKNNPreprocessor<O> preproc = new MaterializeKNNPreprocessor<>(relation, dq.getDistanceFunction(), k);
-    preproc.initialize();
-    return preproc.getKNNQuery(dq, k);
+    return precomputedKNNQuery(database, relation, dq, k);
+  }
+
+  /**
+   * Open a kNN sharing scope on a database: until the matching call of
+   * {@link #endKNNSharing}, kNN preprocessors materialized by
+   * {@link #precomputedKNNQuery} are shared with subsequent algorithms.
+   * 
+   * Scopes may be nested; the shared preprocessors are detached when the
+   * outermost scope is closed. Always close the scope in a {@code finally}
+   * block.
+   * 
+   * @param database Database
+   */
+  public static void beginKNNSharing(Database database) {
+    synchronized(KNN_SHARING) {
+      KNNSharingScope scope = KNN_SHARING.get(database);
+      if(scope != null) {
+        scope.depth++;
+        return;
+      }
+      KNN_SHARING.put(database, new KNNSharingScope());
+    }
+  }
+
+  /**
+   * Close a kNN sharing scope. When the outermost scope is closed, all
+   * preprocessors shared within the scope are detached from their relations.
+   * 
+   * @param database Database
+   */
+  public static void endKNNSharing(Database database) {
+    KNNSharingScope scope;
+    synchronized(KNN_SHARING) {
+      scope = KNN_SHARING.get(database);
+      if(scope == null) {
+        throw new IllegalStateException("No kNN sharing scope open on this database.");
+      }
+      if(--scope.depth > 0) {
+        return;
+      }
+      KNN_SHARING.remove(database);
+    }
+    for(int i = 0; i < scope.shared.size(); i++) {
+      final Relation<?> relation = scope.relations.get(i);
+      final ResultHierarchy hier = relation.getHierarchy();
+      synchronized(hier) {
+        hier.remove(relation, scope.shared.get(i));
+      }
+    }
+  }
+
+  /**
+   * Attach a materialized kNN preprocessor to a relation, if a kNN sharing
+   * scope is open, where it will be found by subsequent kNN queries.
+   * Preprocessors shared in the same scope for the same distance function
+   * with a smaller k are superseded, and thus removed.
+   * 
+   * The caller must synchronize on the result hierarchy.
+   * 
+   * @param database Database
+   * @param relation Relation
+   * @param preproc Preprocessor to share
+   */
+  private static <O> void shareKNNPreprocessor(Database database, Relation<O> relation, MaterializeKNNPreprocessor<O> preproc) {
+    ResultHierarchy hier = relation.getHierarchy();
+    synchronized(KNN_SHARING) {
+      KNNSharingScope scope = KNN_SHARING.get(database);
+      if(scope == null) {
+        return;
+      }
+      for(int i = scope.shared.size() - 1; i >= 0; i--) {
+        MaterializeKNNPreprocessor<?> other = scope.shared.get(i);
+        if(scope.relations.get(i) == relation && other.getK() <= preproc.getK() && other.getDistanceFunction().equals(preproc.getDistanceFunction())) {
+          hier.remove(relation, other);
+          scope.shared.remove(i);
+          scope.relations.remove(i);
+        }
+      }
+      hier.add(relation, preproc);
+      scope.shared.add(preproc);
+      scope.relations.add(relation);
+    }
+  }
+
+  /**
+   * An open kNN sharing scope.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class KNNSharingScope {
+    /**
+     * Nesting depth.
+     */
+    int depth = 1;
+
+    /**
+     * Relations the preprocessors are attached to.
+     */
+    List<Relation<?>> relations = new ArrayList<>();
+
+    /**
+     * Shared preprocessors.
+     */
+    List<MaterializeKNNPreprocessor<?>> shared = new ArrayList<>();
   }
 }
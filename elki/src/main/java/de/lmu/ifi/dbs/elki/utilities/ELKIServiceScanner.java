@@ -23,8 +23,10 @@ package de.lmu.ifi.dbs.elki.utilities;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.lang.reflect.Modifier;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -33,15 +35,23 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import de.lmu.ifi.dbs.elki.application.internal.ServiceIndexProcessor;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 
 /**
  * A collection of inspection-related utility functions.
  *
+ * Class path directories that contain a service index built by the
+ * {@link ServiceIndexProcessor} are not scanned; the index is used instead.
+ *
  * @author Erich Schubert
+ *
+ * @apiviz.uses ServiceIndexProcessor
  */
 public class ELKIServiceScanner {
   /**
@@ -64,6 +74,22 @@ public class ELKIServiceScanner {
    */
   private static List<Class<?>> MASTER_CACHE = null;
 
+  /**
+   * Classes found in directories without a service index.
+   */
+  private static List<Class<?>> UNINDEXED_CACHE = null;
+
+  /**
+   * Service index: implementations (class name and aliases) by ancestor class
+   * name.
+   */
+  private static Map<String, List<String[]>> INDEX = null;
+
+  /**
+   * All entries of the service index.
+   */
+  private static List<String[]> INDEX_ALL = null;
+
   /**
    * Static methods only.
    */
@@ -77,13 +103,23 @@ public class ELKIServiceScanner {
    * @param restrictionClass Class to find subclasses for.
    */
   public static void load(Class<?> restrictionClass) {
-    if(MASTER_CACHE == null) {
-      initialize();
+    if(INDEX == null) {
+      initializeIndex();
     }
-    if(MASTER_CACHE.size() == 0) {
+    // Classes from the service index are loaded lazily by the registry.
+    List<String[]> indexed = restrictionClass == Object.class ? INDEX_ALL : INDEX.get(restrictionClass.getName());
+    if(indexed != null) {
+      for(String[] entry : indexed) {
+        ELKIServiceRegistry.register(restrictionClass, entry[0]);
+        for(int i = 1; i < entry.length; i++) {
+          ELKIServiceRegistry.registerAlias(restrictionClass, entry[i], entry[0]);
+        }
+      }
+    }
+    if(UNINDEXED_CACHE.size() == 0) {
       return;
     }
-    Iterator<Class<?>> iter = MASTER_CACHE.iterator();
+    Iterator<Class<?>> iter = UNINDEXED_CACHE.iterator();
     while(iter.hasNext()) {
       Class<?> clazz = iter.next();
       // Skip other classes.
@@ -136,13 +172,93 @@ public class ELKIServiceScanner {
     if(MASTER_CACHE != null) {
       return;
     }
+    MASTER_CACHE = Collections.unmodifiableList(scan(false));
+    if(LOG.isDebuggingFinest() && MASTER_CACHE.size() > 0) {
+      LOG.debugFinest("Classes found by scanning the development classpath: " + MASTER_CACHE.size());
+    }
+  }
+
+  /**
+   * Read the service indexes, and scan only directories without an index.
+   */
+  private synchronized static void initializeIndex() {
+    if(INDEX != null) {
+      return;
+    }
+    HashMap<String, List<String[]>> index = new HashMap<>();
+    List<String[]> all = new ArrayList<>();
+    try {
+      Enumeration<URL> us = CLASSLOADER.getResources(ServiceIndexProcessor.INDEX_RESOURCE);
+      while(us.hasMoreElements()) {
+        URL u = us.nextElement();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(u.openStream(), "utf-8"))) {
+          for(String line = r.readLine(); line != null; line = r.readLine()) {
+            parseIndexLine(line, index, all);
+          }
+        }
+      }
+    }
+    catch(IOException e) {
+      LOG.exception("Error reading the service index.", e);
+    }
+    UNINDEXED_CACHE = Collections.unmodifiableList(scan(true));
+    INDEX_ALL = all;
+    INDEX = index;
+    if(LOG.isDebuggingFinest()) {
+      LOG.debugFinest("Classes in the service index: " + all.size() + " found by scanning: " + UNINDEXED_CACHE.size());
+    }
+  }
+
+  /**
+   * Parse a line of the service index.
+   *
+   * @param line Line: class name, ancestors, and aliases prefixed with @.
+   * @param index Index to add to
+   * @param all List of all entries
+   */
+  private static void parseIndexLine(String line, Map<String, List<String[]>> index, List<String[]> all) {
+    String[] tokens = line.split(" ");
+    if(tokens[0].isEmpty()) {
+      return;
+    }
+    int naliases = 0;
+    for(int i = 1; i < tokens.length; i++) {
+      naliases += tokens[i].startsWith("@") ? 1 : 0;
+    }
+    String[] entry = new String[1 + naliases];
+    entry[0] = tokens[0];
+    for(int i = 1, j = 1; i < tokens.length; i++) {
+      if(tokens[i].startsWith("@")) {
+        entry[j++] = tokens[i].substring(1);
+      }
+    }
+    all.add(entry);
+    for(int i = 1; i < tokens.length; i++) {
+      if(tokens[i].startsWith("@")) {
+        continue;
+      }
+      List<String[]> impls = index.get(tokens[i]);
+      if(impls == null) {
+        index.put(tokens[i], impls = new ArrayList<>());
+      }
+      impls.add(entry);
+    }
+  }
+
+  /**
+   * Scan the class path directories for classes.
+   *
+   * @param skipIndexed Skip directories that contain a service index.
+   * @return Classes found
+   */
+  private static List<Class<?>> scan(boolean skipIndexed) {
     Enumeration<URL> cps;
     try {
       cps = CLASSLOADER.getResources("");
     }
     catch(IOException e) {
       de.lmu.ifi.dbs.elki.logging.LoggingUtil.exception(e);
-      return;
+      return Collections.emptyList();
     }
     List<Class<?>> res = new ArrayList<>();
     while(cps.hasMoreElements()) {
@@ -159,6 +275,9 @@ public class ELKIServiceScanner {
         LOG.warning("Incorrect classpath entry: " + u);
         continue;
       }
+      if(skipIndexed && new File(path, ServiceIndexProcessor.INDEX_RESOURCE).exists()) {
+        continue;
+      }
       Iterator<String> it = new DirClassIterator(path);
       while(it.hasNext()) {
         String classname = it.next();
@@ -175,10 +294,7 @@ public class ELKIServiceScanner {
         }
       }
     }
-    MASTER_CACHE = Collections.unmodifiableList(res);
-    if(LOG.isDebuggingFinest() && MASTER_CACHE.size() > 0) {
-      LOG.debugFinest("Classes found by scanning the development classpath: " + MASTER_CACHE.size());
-    }
+    return res;
   }
 
   /**
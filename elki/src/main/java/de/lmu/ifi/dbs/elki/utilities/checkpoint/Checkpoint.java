@@ -0,0 +1,706 @@
+package de.lmu.ifi.dbs.elki.utilities.checkpoint;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+
+/**
+ * Handle to the checkpoint file of a single algorithm run.
+ * 
+ * A checkpoint is written to a temporary file first, and only replaces the
+ * previous checkpoint on {@link Writer#commit()}, so an interruption while
+ * writing never destroys the last consistent state. Object references are
+ * stored as offsets into the array of object IDs the checkpoint was opened
+ * with, as DBIDs are not stable across database instances.
+ * 
+ * Typical use:
+ * 
+ * <pre>
+ * Checkpoint cp = CheckpointManager.open(getClass(), ids);
+ * try (Checkpoint.Reader in = cp != null ? cp.restore() : null) {
+ *   if(in != null) {
+ *     // read state
+ *   }
+ * }
+ * // ...
+ * if(cp != null &amp;&amp; cp.due()) {
+ *   try (Checkpoint.Writer out = cp.write()) {
+ *     // write state
+ *     out.commit();
+ *   }
+ * }
+ * // ...
+ * if(cp != null) {
+ *   cp.finish();
+ * }
+ * </pre>
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.has Reader
+ * @apiviz.has Writer
+ */
+public class Checkpoint {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(Checkpoint.class);
+
+  /**
+   * Magic number, "ELKC".
+   */
+  public static final int CHECKPOINT_MAGIC = 0x454C4B43;
+
+  /**
+   * Checkpoint file.
+   */
+  private final File file;
+
+  /**
+   * Checkpoint name.
+   */
+  private final String name;
+
+  /**
+   * Object IDs.
+   */
+  private final ArrayDBIDs ids;
+
+  /**
+   * Map from object to its offset in {@link #ids}, built on demand.
+   */
+  private WritableIntegerDataStore offsets = null;
+
+  /**
+   * Checkpoint interval in milliseconds.
+   */
+  private final long interval;
+
+  /**
+   * Resume from an existing file.
+   */
+  private final boolean resume;
+
+  /**
+   * Time of the last checkpoint.
+   */
+  private long last;
+
+  /**
+   * Constructor, use {@link CheckpointManager#open}.
+   * 
+   * @param file Checkpoint file
+   * @param name Checkpoint name
+   * @param ids Object IDs
+   * @param interval Checkpoint interval in milliseconds
+   * @param resume Resume from an existing checkpoint
+   */
+  protected Checkpoint(File file, String name, ArrayDBIDs ids, long interval, boolean resume) {
+    super();
+    this.file = file;
+    this.name = name;
+    this.ids = ids;
+    this.interval = interval;
+    this.resume = resume;
+    this.last = System.currentTimeMillis();
+  }
+
+  /**
+   * Get the checkpoint file.
+   * 
+   * @return File
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Test whether the checkpoint interval has elapsed since the last checkpoint.
+   * 
+   * @return {@code true} when a checkpoint should be written.
+   */
+  public boolean due() {
+    return System.currentTimeMillis() - last >= interval;
+  }
+
+  /**
+   * Open the existing checkpoint for resuming.
+   * 
+   * @return Reader, or {@code null} if there is nothing to resume from.
+   * @throws IOException on read errors or when the checkpoint does not match
+   */
+  public Reader restore() throws IOException {
+    if(!resume || !file.exists()) {
+      return null;
+    }
+    Reader in = new Reader(new DataInputStream(new BufferedInputStream(new FileInputStream(file))));
+    try {
+      if(in.in.readInt() != CHECKPOINT_MAGIC) {
+        throw new IOException("Not a checkpoint file: " + file);
+      }
+      final String fname = in.in.readUTF();
+      if(!name.equals(fname)) {
+        throw new IOException("Checkpoint " + file + " was written by " + fname + ", not by " + name);
+      }
+      final int n = in.in.readInt();
+      if(n != ids.size()) {
+        throw new IOException("Checkpoint " + file + " is for " + n + " objects, but the relation has " + ids.size());
+      }
+    }
+    catch(IOException e) {
+      in.close();
+      throw e;
+    }
+    if(LOG.isVerbose()) {
+      LOG.verbose("Resuming from checkpoint " + file);
+    }
+    return in;
+  }
+
+  /**
+   * Begin writing a new checkpoint.
+   * 
+   * @return Writer, call {@link Writer#commit()} when complete.
+   * @throws IOException on write errors
+   */
+  public Writer write() throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    Writer out = new Writer(tmp, new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))));
+    try {
+      out.out.writeInt(CHECKPOINT_MAGIC);
+      out.out.writeUTF(name);
+      out.out.writeInt(ids.size());
+    }
+    catch(IOException e) {
+      out.close();
+      throw e;
+    }
+    return out;
+  }
+
+  /**
+   * Remove the checkpoint after the algorithm completed.
+   */
+  public void finish() {
+    if(file.exists() && !file.delete()) {
+      LOG.warning("Could not remove checkpoint " + file);
+    }
+  }
+
+  /**
+   * Get the offset map, building it if necessary.
+   * 
+   * @return Offset map
+   */
+  private WritableIntegerDataStore getOffsets() {
+    if(offsets == null) {
+      offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+      int i = 0;
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), i++) {
+        offsets.putInt(iter, i);
+      }
+    }
+    return offsets;
+  }
+
+  /**
+   * Writer for checkpoint data.
+   * 
+   * @author Erich Schubert
+   */
+  public class Writer implements Closeable {
+    /**
+     * Temporary file.
+     */
+    private File tmp;
+
+    /**
+     * Output stream.
+     */
+    private DataOutputStream out;
+
+    /**
+     * Constructor.
+     * 
+     * @param tmp Temporary file
+     * @param out Output stream
+     */
+    protected Writer(File tmp, DataOutputStream out) {
+      super();
+      this.tmp = tmp;
+      this.out = out;
+    }
+
+    /**
+     * Write a boolean.
+     * 
+     * @param v Value
+     * @throws IOException on write errors
+     */
+    public void writeBoolean(boolean v) throws IOException {
+      out.writeBoolean(v);
+    }
+
+    /**
+     * Write an integer.
+     * 
+     * @param v Value
+     * @throws IOException on write errors
+     */
+    public void writeInt(int v) throws IOException {
+      out.writeInt(v);
+    }
+
+    /**
+     * Write a long.
+     * 
+     * @param v Value
+     * @throws IOException on write errors
+     */
+    public void writeLong(long v) throws IOException {
+      out.writeLong(v);
+    }
+
+    /**
+     * Write a double.
+     * 
+     * @param v Value
+     * @throws IOException on write errors
+     */
+    public void writeDouble(double v) throws IOException {
+      out.writeDouble(v);
+    }
+
+    /**
+     * Write a string.
+     * 
+     * @param v Value
+     * @throws IOException on write errors
+     */
+    public void writeString(String v) throws IOException {
+      out.writeUTF(v);
+    }
+
+    /**
+     * Write a double array, including its length.
+     * 
+     * @param v Values
+     * @throws IOException on write errors
+     */
+    public void writeDoubles(double[] v) throws IOException {
+      out.writeInt(v.length);
+      for(double d : v) {
+        out.writeDouble(d);
+      }
+    }
+
+    /**
+     * Write an object reference.
+     * 
+     * @param id Object, may be {@code null}
+     * @throws IOException on write errors
+     */
+    public void writeDBID(DBIDRef id) throws IOException {
+      out.writeInt(id == null ? -1 : getOffsets().intValue(id));
+    }
+
+    /**
+     * Write a set of object references, including its size.
+     * 
+     * @param set Objects
+     * @throws IOException on write errors
+     */
+    public void writeDBIDs(DBIDs set) throws IOException {
+      final WritableIntegerDataStore offsets = getOffsets();
+      out.writeInt(set.size());
+      for(DBIDIter iter = set.iter(); iter.valid(); iter.advance()) {
+        out.writeInt(offsets.intValue(iter));
+      }
+    }
+
+    /**
+     * Write the contents of a double storage, for all objects.
+     * 
+     * @param store Storage
+     * @throws IOException on write errors
+     */
+    public void writeStore(DoubleDataStore store) throws IOException {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        out.writeDouble(store.doubleValue(iter));
+      }
+    }
+
+    /**
+     * Write the contents of an integer storage, for all objects.
+     * 
+     * @param store Storage
+     * @throws IOException on write errors
+     */
+    public void writeStore(IntegerDataStore store) throws IOException {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        out.writeInt(store.intValue(iter));
+      }
+    }
+
+    /**
+     * Write the contents of a DBID storage, for all objects.
+     * 
+     * @param store Storage
+     * @throws IOException on write errors
+     */
+    public void writeStore(DBIDDataStore store) throws IOException {
+      final WritableIntegerDataStore offsets = getOffsets();
+      DBIDVar var = DBIDUtil.newVar();
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        store.assignVar(iter, var);
+        out.writeInt(var.isSet() ? offsets.intValue(var) : -1);
+      }
+    }
+
+    /**
+     * Write the contents of a double array storage, for all objects.
+     * 
+     * @param store Storage
+     * @throws IOException on write errors
+     */
+    public void writeDoublesStore(DataStore<double[]> store) throws IOException {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        writeDoubles(store.get(iter));
+      }
+    }
+
+    /**
+     * Write a kNN list.
+     * 
+     * @param knn kNN list
+     * @throws IOException on write errors
+     */
+    public void writeKNNList(KNNList knn) throws IOException {
+      final WritableIntegerDataStore offsets = getOffsets();
+      out.writeInt(knn.getK());
+      out.writeInt(knn.size());
+      for(DoubleDBIDListIter iter = knn.iter(); iter.valid(); iter.advance()) {
+        out.writeInt(offsets.intValue(iter));
+        out.writeDouble(iter.doubleValue());
+      }
+    }
+
+    /**
+     * Complete the checkpoint, and replace the previous checkpoint.
+     * 
+     * @throws IOException on write errors
+     */
+    public void commit() throws IOException {
+      out.close();
+      out = null;
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      tmp = null;
+      last = System.currentTimeMillis();
+      if(LOG.isDebuggingFine()) {
+        LOG.debugFine("Wrote checkpoint " + file);
+      }
+    }
+
+    /**
+     * Close the writer, discarding an uncommitted checkpoint.
+     */
+    @Override
+    public void close() throws IOException {
+      if(out != null) {
+        out.close();
+        out = null;
+      }
+      if(tmp != null && tmp.exists() && !tmp.delete()) {
+        LOG.warning("Could not remove incomplete checkpoint " + tmp);
+      }
+      tmp = null;
+    }
+  }
+
+  /**
+   * Reader for checkpoint data.
+   * 
+   * @author Erich Schubert
+   */
+  public class Reader implements Closeable {
+    /**
+     * Input stream.
+     */
+    private DataInputStream in;
+
+    /**
+     * Iterator for resolving object references.
+     */
+    private DBIDArrayIter ref;
+
+    /**
+     * Constructor.
+     * 
+     * @param in Input stream
+     */
+    protected Reader(DataInputStream in) {
+      super();
+      this.in = in;
+      this.ref = ids.iter();
+    }
+
+    /**
+     * Read a boolean.
+     * 
+     * @return Value
+     * @throws IOException on read errors
+     */
+    public boolean readBoolean() throws IOException {
+      return in.readBoolean();
+    }
+
+    /**
+     * Read an integer.
+     * 
+     * @return Value
+     * @throws IOException on read errors
+     */
+    public int readInt() throws IOException {
+      return in.readInt();
+    }
+
+    /**
+     * Read a long.
+     * 
+     * @return Value
+     * @throws IOException on read errors
+     */
+    public long readLong() throws IOException {
+      return in.readLong();
+    }
+
+    /**
+     * Read a double.
+     * 
+     * @return Value
+     * @throws IOException on read errors
+     */
+    public double readDouble() throws IOException {
+      return in.readDouble();
+    }
+
+    /**
+     * Read a string.
+     * 
+     * @return Value
+     * @throws IOException on read errors
+     */
+    public String readString() throws IOException {
+      return in.readUTF();
+    }
+
+    /**
+     * Read a string, and verify that it matches the current configuration.
+     * 
+     * @param what Description of the value, for error reporting
+     * @param expected Expected value
+     * @throws IOException on read errors, or if the value does not match
+     */
+    public void expectString(String what, String expected) throws IOException {
+      final String v = in.readUTF();
+      if(!v.equals(expected)) {
+        throw new IOException("Checkpoint " + file + " was written with " + what + " " + v + ", not " + expected);
+      }
+    }
+
+    /**
+     * Read a double array.
+     * 
+     * @return Values
+     * @throws IOException on read errors
+     */
+    public double[] readDoubles() throws IOException {
+      final int len = in.readInt();
+      if(len < 0) {
+        throw new IOException("Corrupt checkpoint: negative array length.");
+      }
+      double[] v = new double[len];
+      for(int i = 0; i < len; i++) {
+        v[i] = in.readDouble();
+      }
+      return v;
+    }
+
+    /**
+     * Resolve an object reference.
+     * 
+     * @param off Offset
+     * @return Iterator positioned at the object, or {@code null}
+     * @throws IOException on invalid references
+     */
+    private DBIDArrayIter resolve(int off) throws IOException {
+      if(off == -1) {
+        return null;
+      }
+      if(off < 0 || off >= ids.size()) {
+        throw new IOException("Corrupt checkpoint: invalid object reference " + off);
+      }
+      return ref.seek(off);
+    }
+
+    /**
+     * Read an object reference.
+     * 
+     * @return Object, may be {@code null}
+     * @throws IOException on read errors
+     */
+    public DBID readDBID() throws IOException {
+      DBIDArrayIter it = resolve(in.readInt());
+      return it != null ? DBIDUtil.deref(it) : null;
+    }
+
+    /**
+     * Read a set of object references.
+     * 
+     * @param set Output set
+     * @throws IOException on read errors
+     */
+    public void readDBIDs(ModifiableDBIDs set) throws IOException {
+      for(int i = in.readInt(); i > 0; i--) {
+        DBIDArrayIter it = resolve(in.readInt());
+        if(it == null) {
+          throw new IOException("Corrupt checkpoint: missing object reference.");
+        }
+        set.add(it);
+      }
+    }
+
+    /**
+     * Read the contents of a double storage.
+     * 
+     * @param store Storage
+     * @throws IOException on read errors
+     */
+    public void readStore(WritableDoubleDataStore store) throws IOException {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        store.putDouble(iter, in.readDouble());
+      }
+    }
+
+    /**
+     * Read the contents of an integer storage.
+     * 
+     * @param store Storage
+     * @throws IOException on read errors
+     */
+    public void readStore(WritableIntegerDataStore store) throws IOException {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        store.putInt(iter, in.readInt());
+      }
+    }
+
+    /**
+     * Read the contents of a DBID storage. Unset references are skipped.
+     * 
+     * @param store Storage
+     * @throws IOException on read errors
+     */
+    public void readStore(WritableDBIDDataStore store) throws IOException {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        DBIDArrayIter it = resolve(in.readInt());
+        if(it != null) {
+          store.putDBID(iter, it);
+        }
+      }
+    }
+
+    /**
+     * Read the contents of a double array storage.
+     * 
+     * @param store Storage
+     * @throws IOException on read errors
+     */
+    public void readDoublesStore(WritableDataStore<double[]> store) throws IOException {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        store.put(iter, readDoubles());
+      }
+    }
+
+    /**
+     * Read a kNN list.
+     * 
+     * @return kNN list
+     * @throws IOException on read errors
+     */
+    public KNNList readKNNList() throws IOException {
+      final int k = in.readInt(), size = in.readInt();
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      for(int i = 0; i < size; i++) {
+        DBIDArrayIter it = resolve(in.readInt());
+        if(it == null) {
+          throw new IOException("Corrupt checkpoint: missing object reference.");
+        }
+        heap.insert(in.readDouble(), it);
+      }
+      return heap.toKNNList();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if(in != null) {
+        in.close();
+        in = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package de.lmu.ifi.dbs.elki.utilities.checkpoint;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.util.HashMap;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Global configuration of checkpointing.
+ * 
+ * Algorithms that support checkpointing request a {@link Checkpoint} handle via
+ * {@link #open}; if checkpointing is not enabled, they receive {@code null} and
+ * run without any overhead.
+ * 
+ * Checkpoint files are named after the requesting class and a sequence number,
+ * so that an experiment running the same algorithm multiple times will resume
+ * each run from its own file. Resuming therefore requires the same task
+ * configuration as the interrupted run.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.has Checkpoint
+ */
+public final class CheckpointManager {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(CheckpointManager.class);
+
+  /**
+   * File name suffix.
+   */
+  public static final String SUFFIX = ".ckpt";
+
+  /**
+   * Checkpoint directory, {@code null} when disabled.
+   */
+  private static File directory = null;
+
+  /**
+   * Checkpoint interval in milliseconds.
+   */
+  private static long interval = 600000L;
+
+  /**
+   * Resume from existing checkpoints.
+   */
+  private static boolean resume = false;
+
+  /**
+   * Sequence numbers of checkpoints, by name.
+   */
+  private static HashMap<String, Integer> sequence = new HashMap<>();
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private CheckpointManager() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Enable checkpointing.
+   * 
+   * @param dir Directory to store checkpoints in
+   * @param intervalms Minimum time between two checkpoints, in milliseconds
+   * @param resume Resume from existing checkpoints
+   */
+  public static synchronized void configure(File dir, long intervalms, boolean resume) {
+    if(!dir.isDirectory() && !dir.mkdirs()) {
+      throw new AbortException("Checkpoint directory does not exist and cannot be created: " + dir);
+    }
+    CheckpointManager.directory = dir;
+    CheckpointManager.interval = intervalms;
+    CheckpointManager.resume = resume;
+    sequence.clear();
+    if(LOG.isVerbose()) {
+      LOG.verbose("Checkpointing to " + dir + " every " + (intervalms / 1000.) + " s" + (resume ? ", resuming from existing checkpoints." : "."));
+    }
+  }
+
+  /**
+   * Disable checkpointing.
+   */
+  public static synchronized void disable() {
+    directory = null;
+    sequence.clear();
+  }
+
+  /**
+   * Test whether checkpointing is enabled.
+   * 
+   * @return {@code true} when enabled
+   */
+  public static synchronized boolean isEnabled() {
+    return directory != null;
+  }
+
+  /**
+   * Open the next checkpoint for the given class.
+   * 
+   * @param owner Class storing the checkpoint
+   * @param ids Object IDs, used to store object references compactly
+   * @return Checkpoint handle, or {@code null} if checkpointing is disabled.
+   */
+  public static synchronized Checkpoint open(Class<?> owner, ArrayDBIDs ids) {
+    if(directory == null) {
+      return null;
+    }
+    final String name = owner.getName();
+    Integer seq = sequence.get(name);
+    seq = (seq == null) ? 0 : seq + 1;
+    sequence.put(name, seq);
+    File file = new File(directory, name + "-" + seq + SUFFIX);
+    return new Checkpoint(file, name, ids, interval, resume);
+  }
+}
@@ -0,0 +1,164 @@
+package de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Lock-free union-find (disjoint set) structure over the integers
+ * {@code 0..size-1}, as used e.g. for merging components by array offset.
+ * 
+ * Components are always linked by attaching the larger root to the smaller
+ * root, using compare-and-swap. As a consequence, the representative of each
+ * component is its <em>smallest</em> member, which makes the results
+ * deterministic independent of the order in which unions were performed.
+ * {@link #find} uses path halving, and may be called concurrently with
+ * {@link #union}.
+ * 
+ * Reference:
+ * <p>
+ * R. J. Anderson, H. Woll<br />
+ * Wait-free parallel algorithms for the union-find problem<br />
+ * Proc. 23rd Annual ACM Symposium on Theory of Computing (STOC 1991)
+ * </p>
+ * 
+ * @author Erich Schubert
+ */
+@Reference(authors = "R. J. Anderson, H. Woll", //
+title = "Wait-free parallel algorithms for the union-find problem", //
+booktitle = "Proc. 23rd Annual ACM Symposium on Theory of Computing (STOC 1991)", //
+url = "http://dx.doi.org/10.1145/103418.103458")
+public class ConcurrentUnionFind {
+  /**
+   * Parent pointers. Invariant: {@code parent[i] <= i}.
+   */
+  private final AtomicIntegerArray parent;
+
+  /**
+   * Constructor.
+   * 
+   * @param size Number of elements
+   */
+  public ConcurrentUnionFind(int size) {
+    super();
+    this.parent = new AtomicIntegerArray(size);
+    for(int i = 0; i < size; i++) {
+      parent.lazySet(i, i);
+    }
+  }
+
+  /**
+   * Number of elements.
+   * 
+   * @return Size
+   */
+  public int size() {
+    return parent.length();
+  }
+
+  /**
+   * Find the representative (smallest member, once all unions have completed)
+   * of the component of {@code i}.
+   * 
+   * @param i Element
+   * @return Current root of the component
+   */
+  public int find(int i) {
+    while(true) {
+      final int p = parent.get(i);
+      if(p == i) {
+        return i;
+      }
+      final int gp = parent.get(p);
+      if(gp == p) {
+        return p;
+      }
+      // Path halving; failure is harmless, somebody else made progress.
+      parent.compareAndSet(i, p, gp);
+      i = gp;
+    }
+  }
+
+  /**
+   * Merge the components of {@code a} and {@code b}.
+   * 
+   * @param a First element
+   * @param b Second element
+   * @return {@code true} if two different components were merged
+   */
+  public boolean union(int a, int b) {
+    while(true) {
+      a = find(a);
+      b = find(b);
+      if(a == b) {
+        return false;
+      }
+      if(a < b) {
+        final int tmp = a;
+        a = b;
+        b = tmp;
+      }
+      // Link the larger root below the smaller root.
+      if(parent.compareAndSet(a, a, b)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Test if the element is the root of its component.
+   * 
+   * @param i Element
+   * @return {@code true} if it currently is a root
+   */
+  public boolean isRoot(int i) {
+    return parent.get(i) == i;
+  }
+
+  /**
+   * Test if two elements are in the same component.
+   * 
+   * Note: while unions are still in progress, a negative answer may be
+   * outdated immediately.
+   * 
+   * @param a First element
+   * @param b Second element
+   * @return {@code true} if they belong to the same component
+   */
+  public boolean isConnected(int a, int b) {
+    while(true) {
+      a = find(a);
+      b = find(b);
+      if(a == b) {
+        return true;
+      }
+      // Still roots - then they were not connected at this point in time.
+      if(parent.get(a) == a) {
+        return false;
+      }
+    }
+  }
+}
@@ -62,13 +62,36 @@ public class Tokenizer implements Iter {
     assert (colSep != null) : "Column separator may not be null.";
     this.matcher = colSep.matcher("");
     this.quoteChars = quoteChars != null ? quoteChars.toCharArray() : new char[0];
+    this.sepmode = detectSeparator(colSep);
   }
 
+  /**
+   * Separator mode: regular expression.
+   */
+  private static final char SEP_REGEXP = 0;
+
+  /**
+   * Separator mode: the default whitespace, comma or semicolon separator
+   * <code>\s*[,;\s]\s*</code>.
+   */
+  private static final char SEP_DEFAULT = 1;
+
   /**
    * Regular expression match helper.
    */
   private Matcher matcher;
 
+  /**
+   * Separator mode: {@link #SEP_REGEXP}, {@link #SEP_DEFAULT}, or the literal
+   * separator character.
+   */
+  private char sepmode;
+
+  /**
+   * Position of the last separator match, and the next search position.
+   */
+  private int mstart, mend, mnext;
+
   /**
    * Data currently processed.
    */
@@ -99,7 +122,10 @@ public class Tokenizer implements Iter {
   public void initialize(CharSequence input, int begin, int end) {
     this.input = input;
     this.send = end;
-    this.matcher.reset(input).region(begin, end);
+    if(sepmode == SEP_REGEXP) {
+      this.matcher.reset(input).region(begin, end);
+    }
+    this.mnext = begin;
     this.index = begin;
     advance();
   }
@@ -112,14 +138,14 @@ public class Tokenizer implements Iter {
   @Override
   public Tokenizer advance() {
     char inquote = isQuote(index);
-    while(matcher.find()) {
+    while(findSeparator()) {
       // Quoted code path vs. regular code path
       if(inquote != 0) {
         // Matching closing quote found?
-        if(matcher.start() > index + 1 && input.charAt(matcher.start() - 1) == inquote) {
+        if(mstart > index + 1 && input.charAt(mstart - 1) == inquote) {
           this.start = index + 1;
-          this.end = matcher.start() - 1;
-          this.index = matcher.end();
+          this.end = mstart - 1;
+          this.index = mend;
           this.quoted = true;
           return this;
         }
@@ -127,8 +153,8 @@ public class Tokenizer implements Iter {
       }
       else {
         this.start = index;
-        this.end = matcher.start();
-        this.index = matcher.end();
+        this.end = mstart;
+        this.index = mend;
         this.quoted = false;
         return this;
       }
@@ -152,6 +178,107 @@ public class Tokenizer implements Iter {
     return this;
   }
 
+  /**
+   * Find the next separator, setting {@link #mstart} and {@link #mend}.
+   * 
+   * For the common separators, this scans the characters directly, which is
+   * much cheaper than using the regular expression engine, but yields the same
+   * matches.
+   * 
+   * @return {@code true} when another separator was found.
+   */
+  private boolean findSeparator() {
+    if(sepmode == SEP_REGEXP) {
+      if(!matcher.find()) {
+        return false;
+      }
+      mstart = matcher.start();
+      mend = matcher.end();
+      return true;
+    }
+    final CharSequence input = this.input;
+    final int send = this.send;
+    if(sepmode == SEP_DEFAULT) {
+      for(int i = mnext; i < send; i++) {
+        final char c = input.charAt(i);
+        int j = i + 1;
+        if(isWhitespace(c)) {
+          while(j < send && isWhitespace(input.charAt(j))) {
+            ++j;
+          }
+          if(j == send || (input.charAt(j) != ',' && input.charAt(j) != ';')) {
+            mstart = i;
+            mend = mnext = j;
+            return true;
+          }
+          ++j; // Consume comma or semicolon
+        }
+        else if(c != ',' && c != ';') {
+          continue;
+        }
+        while(j < send && isWhitespace(input.charAt(j))) {
+          ++j;
+        }
+        mstart = i;
+        mend = mnext = j;
+        return true;
+      }
+      mnext = send;
+      return false;
+    }
+    // Single literal character.
+    for(int i = mnext; i < send; i++) {
+      if(input.charAt(i) == sepmode) {
+        mstart = i;
+        mend = mnext = i + 1;
+        return true;
+      }
+    }
+    mnext = send;
+    return false;
+  }
+
+  /**
+   * Test for whitespace, as in the regular expression character class
+   * <code>\s</code>.
+   * 
+   * @param c Character
+   * @return {@code true} for whitespace characters.
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+  }
+
+  /**
+   * Detect separator patterns that can be matched without the regular
+   * expression engine.
+   * 
+   * @param colSep Column separator pattern
+   * @return Separator mode
+   */
+  private static char detectSeparator(Pattern colSep) {
+    if(colSep.flags() != 0) {
+      return SEP_REGEXP;
+    }
+    final String pat = colSep.pattern();
+    if("\\s*[,;\\s]\\s*".equals(pat)) {
+      return SEP_DEFAULT;
+    }
+    if(pat.length() == 1) {
+      final char c = pat.charAt(0);
+      return ".$|()[]{}^?*+\\".indexOf(c) < 0 && c > SEP_DEFAULT ? c : SEP_REGEXP;
+    }
+    if(pat.length() == 2 && pat.charAt(0) == '\\') {
+      final char c = pat.charAt(1);
+      if(c == 't') {
+        return '\t';
+      }
+      // Escaped punctuation
+      return (c < 128 && !Character.isLetterOrDigit(c) && c > ' ') ? c : SEP_REGEXP;
+    }
+    return SEP_REGEXP;
+  }
+
   /**
    * Get the current part as substring
    * 
@@ -274,6 +401,8 @@ public class Tokenizer implements Iter {
    */
   public void cleanup() {
     input = null;
-    matcher.reset("");
+    if(sepmode == SEP_REGEXP) {
+      matcher.reset("");
+    }
   }
 }
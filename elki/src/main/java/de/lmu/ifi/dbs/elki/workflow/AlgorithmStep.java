@@ -31,9 +31,11 @@ import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.logging.statistics.MetricsRegistry;
 import de.lmu.ifi.dbs.elki.result.BasicResult;
 import de.lmu.ifi.dbs.elki.result.Result;
 import de.lmu.ifi.dbs.elki.result.ResultHierarchy;
+import de.lmu.ifi.dbs.elki.utilities.DatabaseUtil;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.hierarchy.Hierarchy.Iter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
@@ -79,6 +81,9 @@ public class AlgorithmStep implements WorkflowStep {
   /**
    * Run algorithms.
    *
+   * Materialized kNN preprocessors are shared between the algorithms, and
+   * detached when all algorithms have completed.
+   *
    * @param database Database
    * @return Algorithm result
    */
@@ -98,30 +103,37 @@ public class AlgorithmStep implements WorkflowStep {
       }
     }
     stepresult = new BasicResult("Algorithm Step", "algorithm-step");
-    for(Algorithm algorithm : algorithms) {
-      Thread.currentThread().setName(algorithm.toString());
-      Duration duration = LOG.isStatistics() ? LOG.newDuration(algorithm.getClass().getName() + ".runtime").begin() : null;
-      Result res = algorithm.run(database);
-      if(duration != null) {
-        LOG.statistics(duration.end());
-      }
-      if(LOG.isStatistics()) {
-        boolean first = true;
-        for(Iter<Result> it = hier.iterDescendants(database); it.valid(); it.advance()) {
-          if(!(it.get() instanceof Index)) {
-            continue;
-          }
-          if(first) {
-            LOG.statistics("Index statistics after running algorithm " + algorithm.toString() + ":");
-            first = false;
+    // Algorithms of this step share materialized kNN neighborhoods.
+    DatabaseUtil.beginKNNSharing(database);
+    try {
+      for(Algorithm algorithm : algorithms) {
+        Thread.currentThread().setName(algorithm.toString());
+        Duration duration = LOG.isStatistics() || MetricsRegistry.isEnabled() ? LOG.newDuration(algorithm.getClass().getName() + ".runtime").begin() : null;
+        Result res = algorithm.run(database);
+        if(duration != null) {
+          LOG.statistics(duration.end());
+        }
+        if(LOG.isStatistics()) {
+          boolean first = true;
+          for(Iter<Result> it = hier.iterDescendants(database); it.valid(); it.advance()) {
+            if(!(it.get() instanceof Index)) {
+              continue;
+            }
+            if(first) {
+              LOG.statistics("Index statistics after running algorithm " + algorithm.toString() + ":");
+              first = false;
+            }
+            ((Index) it.get()).logStatistics();
           }
-          ((Index) it.get()).logStatistics();
+        }
+        if(res != null) {
+          // Make sure the result is attached, but usually this is a noop:
+          hier.add(database, res);
         }
       }
-      if(res != null) {
-        // Make sure the result is attached, but usually this is a noop:
-        hier.add(database, res);
-      }
+    }
+    finally {
+      DatabaseUtil.endKNNSharing(database);
     }
     return stepresult;
   }
@@ -32,6 +32,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.trivial.ByLabelClustering;
 import de.lmu.ifi.dbs.elki.data.Cluster;
@@ -48,6 +50,7 @@ import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
 import de.lmu.ifi.dbs.elki.evaluation.clustering.ClusterContingencyTable;
 import de.lmu.ifi.dbs.elki.evaluation.outlier.OutlierROCCurve;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.Result;
 import de.lmu.ifi.dbs.elki.result.ResultHierarchy;
 import de.lmu.ifi.dbs.elki.result.ResultUtil;
@@ -187,6 +190,46 @@ public abstract class AbstractSimpleAlgorithmTest {
     }
   }
 
+  /**
+   * Validate that two clusterings have the same clusters, in any order.
+   *
+   * @param expected Expected clustering
+   * @param actual Actual clustering
+   */
+  protected void testSameClustering(Clustering<?> expected, Clustering<?> actual) {
+    List<? extends Cluster<?>> e = expected.getAllClusters(), a = actual.getAllClusters();
+    assertEquals("Number of clusters does not match.", e.size(), a.size());
+    for(Cluster<?> ec : e) {
+      int best = 0;
+      for(Cluster<?> ac : a) {
+        best = Math.max(best, DBIDUtil.intersectionSize(ec.getIDs(), ac.getIDs()));
+      }
+      assertEquals("No matching cluster of size " + ec.size(), ec.size(), best);
+    }
+  }
+
+  /**
+   * Run a computation on a worker thread, where nested parallel tasks are run
+   * sequentially.
+   *
+   * @param task Computation
+   * @param <T> Result type
+   * @return Result
+   */
+  protected static <T> T runSequentially(Callable<T> task) {
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      return core.submit(task).get();
+    }
+    catch(InterruptedException | ExecutionException e) {
+      throw new RuntimeException(e);
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
   /**
    * Test the AUC value for an outlier result.
    *
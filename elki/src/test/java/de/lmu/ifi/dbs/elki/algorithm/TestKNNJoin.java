@@ -45,6 +45,7 @@ import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.CoverTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.deliclu.DeLiCluTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.deliclu.DeLiCluTreeFactory;
@@ -163,6 +164,21 @@ public class TestKNNJoin implements JUnit4Test {
     doKNNJoin(spatparams);
   }
 
+  /**
+   * Test {@link CoverTree} (via bulk kNN queries) using a file based database
+   * connection.
+   * 
+   * @throws ParameterException on errors.
+   */
+  @Test
+  public void testKNNJoinCoverTree() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, CoverTree.Factory.class);
+    params.addParameter(CoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+
+    doKNNJoin(params);
+  }
+
   /**
    * Actual test routine.
    * 
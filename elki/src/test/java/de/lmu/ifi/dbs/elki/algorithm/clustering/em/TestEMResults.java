@@ -23,6 +23,8 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.concurrent.Callable;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.JUnit4Test;
@@ -30,7 +32,13 @@ import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ProxyDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.ParameterException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -66,4 +74,51 @@ public class TestEMResults extends AbstractSimpleAlgorithmTest implements JUnit4
     testFMeasure(db, result, 0.781737);
     testClusterSizes(result, new int[] { 2, 5, 17, 175, 200, 311 });
   }
-}
\ No newline at end of file
+
+  /**
+   * Run EM on a subset, which is not a DBID range, and compare to a sequential
+   * run.
+   */
+  @Test
+  public void testEMSubset() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    final Database sub = new ProxyDatabase(everyOther(db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD).getDBIDs()), db);
+
+    Clustering<?> expected = runSequentially(new Callable<Clustering<?>>() {
+      @Override
+      public Clustering<?> call() {
+        return makeEM().run(sub);
+      }
+    });
+    testSameClustering(expected, makeEM().run(sub));
+  }
+
+  /**
+   * Make the EM instance used for the subset test.
+   *
+   * @return EM instance
+   */
+  private static EM<DoubleVector, ?> makeEM() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 0);
+    params.addParameter(EM.Parameterizer.K_ID, 6);
+    return ClassGenericsUtil.parameterizeOrAbort(EM.class, params);
+  }
+
+  /**
+   * Take every other object.
+   *
+   * @param ids Object IDs
+   * @return Subset, not a DBID range
+   */
+  private static DBIDs everyOther(DBIDs ids) {
+    ArrayModifiableDBIDs sub = DBIDUtil.newArray(ids.size() >> 1);
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      if((i & 1) == 0) {
+        sub.add(it);
+      }
+    }
+    return sub;
+  }
+}
@@ -0,0 +1,143 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.CoverTree;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the Borůvka HDBSCAN variant, by comparing the spanning tree to the
+ * existing implementations.
+ *
+ * @author Erich Schubert
+ */
+public class TestHDBSCANBoruvka extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  /**
+   * Compare to Prim's algorithm, using a cover tree index.
+   */
+  @Test
+  public void testHDBSCANBoruvka() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, CoverTree.Factory.class);
+    params.addParameter(CoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330, params, null);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+
+    ListParameterization bparams = new ListParameterization();
+    bparams.addParameter(AbstractHDBSCAN.Parameterizer.MIN_PTS_ID, 5);
+    HDBSCANBoruvka<DoubleVector> boruvka = ClassGenericsUtil.parameterizeOrAbort(HDBSCANBoruvka.class, bparams);
+    testParameterizationOk(bparams);
+
+    PointerHierarchyRepresentationResult result = boruvka.run(db, rel);
+    PointerHierarchyRepresentationResult expected = new HDBSCANLinearMemory<DoubleVector>(EuclideanDistanceFunction.STATIC, 5).run(db, rel);
+    assertSameHeights(expected, result);
+  }
+
+  /**
+   * With minPts = 1, the result must be single-linkage.
+   */
+  @Test
+  public void testSingleLinkage() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+
+    PointerHierarchyRepresentationResult result = new HDBSCANBoruvka<DoubleVector>(EuclideanDistanceFunction.STATIC, 1).run(db, rel);
+    PointerHierarchyRepresentationResult expected = new SLINK<DoubleVector>(EuclideanDistanceFunction.STATIC).run(db, rel);
+    assertSameHeights(expected, result);
+  }
+
+  /**
+   * Well separated, large components, where the bounded kNN queries are
+   * inconclusive, and the components need to be scanned.
+   */
+  @Test
+  public void testLargeComponents() {
+    Random r = new Random(0L);
+    double[][] data = new double[1200][];
+    for(int i = 0; i < data.length; i++) {
+      final int c = i % 3;
+      data[i] = new double[] { c * 10. + r.nextDouble(), (c & 1) * 7. + r.nextDouble() };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+
+    PointerHierarchyRepresentationResult result = new HDBSCANBoruvka<NumberVector>(EuclideanDistanceFunction.STATIC, 4).run(db, rel);
+    PointerHierarchyRepresentationResult expected = new HDBSCANLinearMemory<NumberVector>(EuclideanDistanceFunction.STATIC, 4).run(db, rel);
+    assertSameHeights(expected, result);
+  }
+
+  /**
+   * Compare the merge heights of two hierarchies.
+   *
+   * @param expected Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameHeights(PointerHierarchyRepresentationResult expected, PointerHierarchyRepresentationResult actual) {
+    double[] e = heights(expected), a = heights(actual);
+    assertEquals("Number of objects differs.", e.length, a.length);
+    for(int i = 0; i < e.length; i++) {
+      assertEquals("Merge heights differ.", e[i], a[i], 1e-15);
+    }
+  }
+
+  /**
+   * Get the sorted merge heights.
+   *
+   * @param res Hierarchy
+   * @return Sorted heights
+   */
+  private static double[] heights(PointerHierarchyRepresentationResult res) {
+    DBIDs ids = res.getDBIDs();
+    DoubleDataStore lambda = res.getParentDistanceStore();
+    double[] h = new double[ids.size()];
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      h[i++] = lambda.doubleValue(it);
+    }
+    Arrays.sort(h);
+    return h;
+  }
+}
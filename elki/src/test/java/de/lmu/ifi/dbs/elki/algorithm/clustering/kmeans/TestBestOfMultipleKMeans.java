@@ -0,0 +1,91 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.RandomlyChosenInitialMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.quality.WithinClusterVarianceQualityMeasure;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.math.random.RandomFactory;
+
+/**
+ * Test that running the trials concurrently gives the same result as running
+ * them one after another.
+ *
+ * @author Erich Schubert
+ */
+public class TestBestOfMultipleKMeans extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  /**
+   * Batched k-means depends on the random partitioning of every trial; a
+   * shared random factory also checks the order of random use.
+   */
+  @Test
+  public void testConcurrentTrials() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    Clustering<KMeansModel> sequential = run(db, false);
+    Clustering<KMeansModel> concurrent = run(db, true);
+    // The order of clusters is not defined, so match them by their members.
+    List<Cluster<KMeansModel>> e = sequential.getAllClusters(), a = concurrent.getAllClusters();
+    assertEquals("Number of clusters differs.", e.size(), a.size());
+    for(Cluster<KMeansModel> ec : e) {
+      int best = 0;
+      for(Cluster<KMeansModel> ac : a) {
+        best = Math.max(best, DBIDUtil.intersectionSize(ec.getIDs(), ac.getIDs()));
+      }
+      assertEquals("No matching cluster.", ec.size(), best);
+    }
+  }
+
+  /**
+   * Run the best of 5 batched k-means.
+   *
+   * @param db Database
+   * @param concurrent Allow concurrent trials
+   * @return Best clustering
+   */
+  private static Clustering<KMeansModel> run(Database db, final boolean concurrent) {
+    RandomFactory rnd = new RandomFactory(3L);
+    KMeansBatchedLloyd<DoubleVector> inner = new KMeansBatchedLloyd<DoubleVector>(SquaredEuclideanDistanceFunction.STATIC, 5, 2, new RandomlyChosenInitialMeans<DoubleVector>(rnd), 4, rnd) {
+      @Override
+      protected boolean supportsConcurrentCopies() {
+        return concurrent;
+      }
+    };
+    return new BestOfMultipleKMeans<DoubleVector, KMeansModel>(5, inner, new WithinClusterVarianceQualityMeasure()).run(db);
+  }
+}
@@ -0,0 +1,101 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.DBSCAN;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Performs a full parallel DBSCAN run, and compares the result with the
+ * sequential DBSCAN, and a clustering derived from the data set labels.
+ * 
+ * @author Erich Schubert
+ */
+public class TestParallelDBSCAN extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  /**
+   * Run parallel DBSCAN with fixed parameters and compare the result to a
+   * golden standard.
+   */
+  @Test
+  public void testParallelDBSCANResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    // setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 0.04);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 20);
+    ParallelDBSCAN<DoubleVector> dbscan = ClassGenericsUtil.parameterizeOrAbort(ParallelDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    Clustering<Model> result = dbscan.run(db);
+    testFMeasure(db, result, 0.996413);
+    testClusterSizes(result, new int[] { 29, 50, 101, 150 });
+
+    // Must be identical to the sequential result, including cluster order.
+    Clustering<Model> expected = new DBSCAN<DoubleVector>(dbscan.getDistanceFunction(), 0.04, 20).run(db);
+    List<Cluster<Model>> ec = expected.getToplevelClusters(), rc = result.getToplevelClusters();
+    assertEquals("Number of clusters differs.", ec.size(), rc.size());
+    for(int i = 0; i < ec.size(); i++) {
+      assertEquals("Noise flag differs.", ec.get(i).isNoise(), rc.get(i).isNoise());
+      assertEquals("Cluster size differs.", ec.get(i).size(), rc.get(i).size());
+      assertTrue("Cluster members differ.", DBIDUtil.intersectionSize(ec.get(i).getIDs(), rc.get(i).getIDs()) == ec.get(i).size());
+    }
+  }
+
+  /**
+   * Run parallel DBSCAN with fixed parameters and compare the result to a
+   * golden standard.
+   */
+  @Test
+  public void testParallelDBSCANOnSingleLinkDataset() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 11.5);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 120);
+    ParallelDBSCAN<DoubleVector> dbscan = ClassGenericsUtil.parameterizeOrAbort(ParallelDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    Clustering<Model> result = dbscan.run(db);
+    testFMeasure(db, result, 0.954382);
+    testClusterSizes(result, new int[] { 11, 200, 203, 224 });
+  }
+}
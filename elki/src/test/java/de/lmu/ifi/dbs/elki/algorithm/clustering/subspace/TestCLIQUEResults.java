@@ -23,6 +23,8 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.subspace;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.JUnit4Test;
@@ -30,7 +32,11 @@ import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.model.SubspaceModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.ParameterException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -95,4 +101,31 @@ public class TestCLIQUEResults extends AbstractSimpleAlgorithmTest implements JU
     // testFMeasure(db, result, 0.433661);
     testClusterSizes(result, new int[] { 255, 409, 458, 458, 480 });
   }
-}
\ No newline at end of file
+
+  /**
+   * Run CLIQUE on a data set larger than one bitmap chunk (65536 objects),
+   * where the last object of the first chunk is the only object of that chunk
+   * in the dense top unit. This used to never terminate.
+   */
+  @Test(timeout = 60000)
+  public void testCLIQUEBitmapChunkBoundary() {
+    final int size = 70000, split = 0xFFFF;
+    double[][] data = new double[size][];
+    for(int i = 0; i < split; i++) {
+      // Regular grid in [0;0.9), dense in 1d, sparse in 2d.
+      data[i] = new double[] { .9 * ((i & 0xFF) + .5) / 256., .9 * ((i >>> 8) + .5) / 256. };
+    }
+    for(int i = split; i < size; i++) {
+      // Dense block in the top unit, beginning at the end of the first chunk.
+      final double off = (i - split) / (double) (size - split);
+      data[i] = new double[] { .95 + .05 * off, 1. - .05 * off };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertEquals("Database size does not match.", size, rel.size());
+
+    Clustering<SubspaceModel> result = new CLIQUE<DoubleVector>(10, 0.05, false).run(rel);
+    testClusterSizes(result, new int[] { size - split, size, size });
+  }
+}
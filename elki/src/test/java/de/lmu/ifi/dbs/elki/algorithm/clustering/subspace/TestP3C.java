@@ -23,13 +23,21 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.subspace;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.concurrent.Callable;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.JUnit4Test;
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ProxyDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
@@ -83,4 +91,48 @@ public class TestP3C extends AbstractSimpleAlgorithmTest implements JUnit4Test {
     testFMeasure(db, result, .99596185);
     testClusterSizes(result, new int[] { 4, 148, 300, 398 });
   }
-}
\ No newline at end of file
+
+  /**
+   * Run P3C on a subset, which is not a DBID range, and compare to a sequential
+   * run.
+   */
+  @Test
+  public void testP3CSubset() {
+    Database db = makeSimpleDatabase(UNITTEST + "subspace-simple.csv", 600);
+    final Database sub = new ProxyDatabase(everyOther(db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD).getDBIDs()), db);
+
+    Clustering<?> expected = runSequentially(new Callable<Clustering<?>>() {
+      @Override
+      public Clustering<?> call() {
+        return makeP3C().run(sub);
+      }
+    });
+    testSameClustering(expected, makeP3C().run(sub));
+  }
+
+  /**
+   * Make the P3C instance used for the subset test.
+   *
+   * @return P3C instance
+   */
+  private static P3C<DoubleVector> makeP3C() {
+    return ClassGenericsUtil.parameterizeOrAbort(P3C.class, new ListParameterization());
+  }
+
+  /**
+   * Take every other object.
+   *
+   * @param ids Object IDs
+   * @return Subset, not a DBID range
+   */
+  private static DBIDs everyOther(DBIDs ids) {
+    ArrayModifiableDBIDs sub = DBIDUtil.newArray(ids.size() >> 1);
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      if((i & 1) == 0) {
+        sub.add(it);
+      }
+    }
+    return sub;
+  }
+}
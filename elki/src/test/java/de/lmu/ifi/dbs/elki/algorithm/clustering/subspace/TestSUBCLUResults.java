@@ -23,14 +23,18 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.subspace;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertNull;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.JUnit4Test;
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.model.SubspaceModel;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.subspace.SubspaceEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.ParameterException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -95,4 +99,20 @@ public class TestSUBCLUResults extends AbstractSimpleAlgorithmTest implements JU
     // testFMeasure(db, result, 0.49279033);
     testClusterSizes(result, new int[] { 99, 247, 303, 323, 437, 459 });
   }
-}
\ No newline at end of file
+
+  /**
+   * Run SUBCLU twice with the same copyable distance function instance. The
+   * subspaces are then processed concurrently on copies, and the configured
+   * instance must not be modified.
+   */
+  @Test
+  public void testSUBCLUConcurrentSubspaces() {
+    Database db = makeSimpleDatabase(UNITTEST + "subspace-overlapping-3-4d.ascii", 850);
+
+    SubspaceEuclideanDistanceFunction dist = new SubspaceEuclideanDistanceFunction(null);
+    SUBCLU<NumberVector> subclu = new SUBCLU<>(dist, 0.04, 70);
+    testClusterSizes(subclu.run(db), new int[] { 99, 247, 303, 323, 437, 459 });
+    assertNull("Configured distance function was modified.", dist.getSelectedDimensions());
+    testClusterSizes(subclu.run(db), new int[] { 99, 247, 303, 323, 437, 459 });
+  }
+}
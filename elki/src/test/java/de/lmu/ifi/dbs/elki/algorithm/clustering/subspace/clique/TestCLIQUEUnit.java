@@ -0,0 +1,82 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.subspace.clique;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.database.ids.BitmapDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+
+/**
+ * Test the joining of CLIQUE units, with bitmap and hash set storage.
+ * 
+ * @author Erich Schubert
+ */
+public class TestCLIQUEUnit implements JUnit4Test {
+  /**
+   * Join units spanning several bitmap chunks, and compare to hash sets.
+   */
+  @Test
+  public void testJoinBitmapAndHash() {
+    final int size = 140000;
+    DBIDRange range = DBIDUtil.generateStaticDBIDRange(size);
+    CLIQUEUnit<DoubleVector> bx = new CLIQUEUnit<>(new CLIQUEInterval(0, 0., 1.), range);
+    CLIQUEUnit<DoubleVector> by = new CLIQUEUnit<>(new CLIQUEInterval(1, 0., 1.), range);
+    CLIQUEUnit<DoubleVector> hx = new CLIQUEUnit<>(new CLIQUEInterval(0, 0., 1.));
+    CLIQUEUnit<DoubleVector> hy = new CLIQUEUnit<>(new CLIQUEInterval(1, 0., 1.));
+    assertTrue("Unit on a DBID range should use a bitmap.", bx.getIds() instanceof BitmapDBIDs);
+    for(DBIDArrayIter it = range.iter(); it.valid(); it.advance()) {
+      final int i = it.getOffset();
+      if(i % 3 == 0 || i == 0xFFFE || i == 0x10001) {
+        bx.addDBID(it);
+        hx.addDBID(it);
+      }
+      if(i % 5 == 0 || i == 0xFFFE || i == 0x10001) {
+        by.addDBID(it);
+        hy.addDBID(it);
+      }
+    }
+    CLIQUEUnit<DoubleVector> bj = bx.join(by, size, 0.05);
+    CLIQUEUnit<DoubleVector> hj = hx.join(hy, size, 0.05);
+    final int expected = (size + 14) / 15 + 2;
+    assertEquals("Bitmap join size.", expected, bj.numberOfFeatureVectors());
+    assertEquals("Hash join size.", expected, hj.numberOfFeatureVectors());
+    DBIDs diff = DBIDUtil.difference(bj.getIds(), hj.getIds());
+    assertTrue("Joins differ.", diff.isEmpty());
+    assertEquals("Joined dimensionality.", 2, bj.getIntervals().size());
+
+    // Not dense enough:
+    assertNull("Sparse join not rejected.", bx.join(by, size, 0.1));
+    assertNull("Sparse join not rejected.", hx.join(hy, size, 0.1));
+  }
+}
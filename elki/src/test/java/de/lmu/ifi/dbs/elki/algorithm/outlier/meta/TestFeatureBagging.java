@@ -23,14 +23,22 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.meta;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.JUnit4Test;
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.AbstractMaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.result.Result;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.DatabaseUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.hierarchy.Hierarchy;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -81,4 +89,39 @@ public class TestFeatureBagging extends AbstractSimpleAlgorithmTest implements J
     testSingleScore(result, 1293, 1.321709879);
     testAUC(db, "Noise", result, 0.884212);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testFeatureBaggingDetachesNeighbors() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+    Relation<?> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+
+    // Parameterization
+    ListParameterization params = new ListParameterization();
+    params.addParameter(LOF.Parameterizer.K_ID, 10);
+    params.addParameter(FeatureBagging.Parameterizer.NUM_ID, 10);
+    params.addParameter(FeatureBagging.Parameterizer.SEED_ID, 1);
+
+    // setup Algorithm
+    FeatureBagging fb = ClassGenericsUtil.parameterizeOrAbort(FeatureBagging.class, params);
+    testParameterizationOk(params);
+
+    // Members must not leave their neighbors attached, even while sharing.
+    DatabaseUtil.beginKNNSharing(db);
+    try {
+      OutlierResult result = fb.run(db);
+      testSingleScore(result, 1293, 11.8295414);
+      assertEquals("kNN preprocessors left attached.", 0, countPreprocessors(rel));
+    }
+    finally {
+      DatabaseUtil.endKNNSharing(db);
+    }
+  }
+
+  private static int countPreprocessors(Relation<?> rel) {
+    int c = 0;
+    for(Hierarchy.Iter<Result> it = rel.getHierarchy().iterChildren(rel); it.valid(); it.advance()) {
+      c += (it.get() instanceof AbstractMaterializeKNNPreprocessor) ? 1 : 0;
+    }
+    return c;
+  }
+}
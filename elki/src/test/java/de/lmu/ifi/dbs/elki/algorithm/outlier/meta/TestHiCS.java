@@ -82,7 +82,7 @@ public class TestHiCS extends AbstractSimpleAlgorithmTest implements JUnit4Test
     // run HiCS on database
     OutlierResult result = fb.run(db);
 
-    testAUC(db, "Noise", result, 0.6255238);
-    testSingleScore(result, 1293, 2.542272);
+    testAUC(db, "Noise", result, 0.85340056);
+    testSingleScore(result, 1293, 4.935802);
   }
 }
\ No newline at end of file
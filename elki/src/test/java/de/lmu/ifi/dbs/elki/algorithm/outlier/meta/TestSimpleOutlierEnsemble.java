@@ -0,0 +1,83 @@
+package de.lmu.ifi.dbs.elki.algorithm.outlier.meta;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.outlier.distance.KNNOutlier;
+import de.lmu.ifi.dbs.elki.algorithm.outlier.distance.KNNWeightOutlier;
+import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.AbstractMaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.result.Result;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.hierarchy.Hierarchy;
+import de.lmu.ifi.dbs.elki.utilities.ensemble.EnsembleVotingMean;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.workflow.AlgorithmStep;
+
+/**
+ * Tests the simple outlier ensemble, with members sharing a kNN preprocessor.
+ * 
+ * @author Erich Schubert
+ */
+public class TestSimpleOutlierEnsemble extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  @Test
+  public void testSimpleOutlierEnsemble() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+
+    // Parameterization
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, LOF.class.getName() + "," + KNNOutlier.class.getName() + "," + KNNWeightOutlier.class.getName());
+    params.addParameter(LOF.Parameterizer.K_ID, 10);
+    params.addParameter(KNNOutlier.Parameterizer.K_ID, 10);
+    params.addParameter(KNNWeightOutlier.Parameterizer.K_ID, 10);
+    params.addParameter(SimpleOutlierEnsemble.Parameterizer.VOTING_ID, EnsembleVotingMean.class);
+
+    // setup Algorithm
+    SimpleOutlierEnsemble ens = ClassGenericsUtil.parameterizeOrAbort(SimpleOutlierEnsemble.class, params);
+    testParameterizationOk(params);
+
+    // run the ensemble on the database
+    OutlierResult result = ens.run(db);
+
+    testAUC(db, "Noise", result, 0.95381512);
+    testSingleScore(result, 1293, 38.160118);
+
+    // The shared neighbors are released when the ensemble completes.
+    Relation<?> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    int c = 0;
+    for(Hierarchy.Iter<Result> it = rel.getHierarchy().iterChildren(rel); it.valid(); it.advance()) {
+      c += (it.get() instanceof AbstractMaterializeKNNPreprocessor) ? 1 : 0;
+    }
+    assertEquals("kNN preprocessors left attached.", 0, c);
+  }
+}
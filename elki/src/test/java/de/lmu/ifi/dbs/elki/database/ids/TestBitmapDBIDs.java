@@ -0,0 +1,183 @@
+package de.lmu.ifi.dbs.elki.database.ids;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+
+/**
+ * Test the compressed bitmap DBIDs against hash sets.
+ * 
+ * @author Erich Schubert
+ */
+public class TestBitmapDBIDs implements JUnit4Test {
+  /**
+   * Range size; spans several containers, and the last is incomplete.
+   */
+  private static final int SIZE = 300000;
+
+  /**
+   * Fill a bitmap and a hash set with the same random subset.
+   * 
+   * @param range Range
+   * @param rate Inclusion probability
+   * @param rnd Random generator
+   * @param hash Output hash set
+   * @return Bitmap
+   */
+  private static BitmapModifiableDBIDs randomSet(DBIDRange range, double rate, Random rnd, HashSetModifiableDBIDs hash) {
+    BitmapModifiableDBIDs bitmap = DBIDUtil.newBitmapSet(range);
+    for(DBIDIter it = range.iter(); it.valid(); it.advance()) {
+      if(rnd.nextDouble() < rate) {
+        assertTrue(bitmap.add(it));
+        assertFalse(bitmap.add(it));
+        hash.add(it);
+      }
+    }
+    return bitmap;
+  }
+
+  /**
+   * Verify that bitmap and hash set agree.
+   * 
+   * @param hash Hash set
+   * @param bitmap Bitmap
+   */
+  private static void assertSameSet(HashSetModifiableDBIDs hash, DBIDs bitmap) {
+    assertEquals("Size differs.", hash.size(), bitmap.size());
+    int c = 0, prev = Integer.MIN_VALUE;
+    for(DBIDIter it = bitmap.iter(); it.valid(); it.advance(), c++) {
+      assertTrue("Element not in reference set.", hash.contains(it));
+      assertTrue("Not in ascending order.", DBIDUtil.asInteger(it) > prev);
+      prev = DBIDUtil.asInteger(it);
+    }
+    assertEquals("Iteration size differs.", hash.size(), c);
+  }
+
+  /**
+   * Test adding, removing and iterating, with sparse and dense containers.
+   */
+  @Test
+  public void testAddRemove() {
+    DBIDRange range = DBIDUtil.generateStaticDBIDRange(SIZE);
+    Random rnd = new Random(0L);
+    for(double rate : new double[] { 0.01, 0.5 }) {
+      HashSetModifiableDBIDs hash = DBIDUtil.newHashSet();
+      BitmapModifiableDBIDs bitmap = randomSet(range, rate, rnd, hash);
+      assertSameSet(hash, bitmap);
+      // Remove most objects via the iterator, including whole containers.
+      for(DBIDMIter it = bitmap.iter(); it.valid(); it.advance()) {
+        if(rnd.nextDouble() < .9) {
+          hash.remove(it);
+          it.remove();
+        }
+      }
+      assertSameSet(hash, bitmap);
+      for(DBIDIter it = range.iter(); it.valid(); it.advance()) {
+        assertEquals(hash.contains(it), bitmap.contains(it));
+      }
+      DBIDVar var = DBIDUtil.newVar();
+      while(!bitmap.isEmpty()) {
+        bitmap.pop(var);
+        assertTrue(hash.remove(var));
+      }
+      assertTrue(hash.isEmpty());
+    }
+  }
+
+  /**
+   * Test iteration across the last value of a sparse container, which must not
+   * wrap around to the first value of the same container.
+   */
+  @Test(timeout = 10000)
+  public void testContainerBoundary() {
+    DBIDRange range = DBIDUtil.generateStaticDBIDRange(140000);
+    HashSetModifiableDBIDs hash = DBIDUtil.newHashSet();
+    BitmapModifiableDBIDs bitmap = DBIDUtil.newBitmapSet(range);
+    for(int off : new int[] { 5, 0xFFFF, 0x10000 + 7, 0x1FFFF }) {
+      bitmap.add(range.get(off));
+      hash.add(range.get(off));
+    }
+    int c = 0;
+    for(DBIDIter it = bitmap.iter(); it.valid() && c <= hash.size(); it.advance()) {
+      c++;
+    }
+    assertEquals("Iteration does not terminate.", hash.size(), c);
+    assertSameSet(hash, bitmap);
+    // Removal via the iterator across the boundary:
+    for(DBIDMIter it = bitmap.iter(); it.valid(); it.advance()) {
+      if(range.getOffset(it) == 0xFFFF) {
+        hash.remove(it);
+        it.remove();
+      }
+    }
+    assertSameSet(hash, bitmap);
+  }
+
+  /**
+   * Test the set operations against hash sets.
+   */
+  @Test
+  public void testSetOperations() {
+    DBIDRange range = DBIDUtil.generateStaticDBIDRange(SIZE);
+    Random rnd = new Random(1L);
+    HashSetModifiableDBIDs h1 = DBIDUtil.newHashSet(), h2 = DBIDUtil.newHashSet();
+    BitmapModifiableDBIDs b1 = randomSet(range, 0.3, rnd, h1);
+    BitmapModifiableDBIDs b2 = randomSet(range, 0.01, rnd, h2);
+
+    assertEquals(DBIDUtil.intersectionSize(h1, h2), DBIDUtil.intersectionSize(b1, b2));
+    assertEquals(DBIDUtil.intersectionSize(h1, h2), DBIDUtil.intersectionSize(h1, b2));
+
+    HashSetModifiableDBIDs ref = DBIDUtil.newHashSet(h1);
+    ref.retainAll(h2);
+    assertSameSet(ref, DBIDUtil.intersection(b1, b2));
+
+    ref = DBIDUtil.newHashSet(h1);
+    ref.addDBIDs(h2);
+    assertSameSet(ref, DBIDUtil.union(b1, b2));
+
+    ref = DBIDUtil.newHashSet(h1);
+    ref.removeDBIDs(h2);
+    assertSameSet(ref, DBIDUtil.difference(b1, b2));
+    ref = DBIDUtil.newHashSet(h2);
+    ref.removeDBIDs(h1);
+    assertSameSet(ref, DBIDUtil.difference(b2, b1));
+
+    // Mixed: bitmap with hash sets.
+    BitmapModifiableDBIDs copy = DBIDUtil.newBitmapSet(range, b1);
+    copy.retainAll(h2);
+    ref = DBIDUtil.newHashSet(h1);
+    ref.retainAll(h2);
+    assertSameSet(ref, copy);
+    // Original unmodified:
+    assertSameSet(h1, b1);
+  }
+}
@@ -0,0 +1,94 @@
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.utilities.FileUtil;
+
+/**
+ * Test the parallel parser against the sequential parser.
+ *
+ * @author Erich Schubert
+ */
+public class TestParallelNumberVectorLabelParser implements JUnit4Test {
+  /** Test data set to use. */
+  public static String DATA = "data/testdata/unittests/hierarchical-2d.ascii";
+
+  @Test
+  public void testDataFile() throws IOException {
+    // Use tiny blocks, to produce many blocks.
+    for(int blocksize : new int[] { 1, 100, 1 << 20 }) {
+      MultipleObjectsBundle seq, par;
+      try (InputStream in = FileUtil.tryGzipInput(FileUtil.openSystemFile(DATA))) {
+        seq = new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(in);
+      }
+      try (InputStream in = FileUtil.tryGzipInput(FileUtil.openSystemFile(DATA))) {
+        par = new ParallelNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, null, DoubleVector.FACTORY, blocksize).parse(in);
+      }
+      assertBundleEquals(seq, par);
+    }
+  }
+
+  @Test
+  public void testHeaderAndComments() {
+    final String data = "x,y,label\n# comment\n1,2,a\n\n3;4 'b c'\r\n" //
+        + "// comment\n5 6 a\n7\t8\t\"d\"";
+    MultipleObjectsBundle seq = new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+    for(int blocksize = 1; blocksize < data.length() + 2; blocksize++) {
+      MultipleObjectsBundle par = new ParallelNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, null, DoubleVector.FACTORY, blocksize) //
+      .parse(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+      assertBundleEquals(seq, par);
+    }
+    assertEquals("Column names not detected.", "x", ((VectorFieldTypeInformation<?>) seq.meta(0)).getLabel(0));
+  }
+
+  /**
+   * Compare two bundles.
+   *
+   * @param exp Expected bundle
+   * @param act Actual bundle
+   */
+  private void assertBundleEquals(MultipleObjectsBundle exp, MultipleObjectsBundle act) {
+    assertEquals("Number of columns does not agree.", exp.metaLength(), act.metaLength());
+    assertEquals("Number of objects does not agree.", exp.dataLength(), act.dataLength());
+    for(int c = 0; c < exp.metaLength(); c++) {
+      assertEquals("Column types do not agree.", exp.meta(c).toString(), act.meta(c).toString());
+      for(int i = 0; i < exp.dataLength(); i++) {
+        assertEquals("Objects do not agree.", exp.data(i, c).toString(), act.data(i, c).toString());
+      }
+    }
+  }
+}
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Random;
 import java.util.regex.Pattern;
 
 import org.junit.Test;
@@ -92,6 +93,34 @@ public class TestTokenizer implements JUnit4Test {
     tokenizerTest(expect);
   }
 
+  @Test
+  public void testFastSeparators() {
+    // Equivalent patterns, but the second ones are not special-cased.
+    String[][] pats = { { CSVReaderFormat.DEFAULT_SEPARATOR, "(?:" + CSVReaderFormat.DEFAULT_SEPARATOR + ")" }, //
+    { ",", "[,]" }, { "\\t", "[\\t]" }, { "\\|", "[|]" } };
+    final String chars = " ,;\t|'\"ab1.";
+    Random r = new Random(0L);
+    for(String[] pat : pats) {
+      Tokenizer fast = new Tokenizer(Pattern.compile(pat[0]), "\"'");
+      Tokenizer slow = new Tokenizer(Pattern.compile(pat[1]), "\"'");
+      for(int i = 0; i < 1000; i++) {
+        StringBuilder buf = new StringBuilder();
+        for(int l = r.nextInt(20); l > 0; l--) {
+          buf.append(chars.charAt(r.nextInt(chars.length())));
+        }
+        final String input = buf.toString();
+        fast.initialize(input, 0, input.length());
+        slow.initialize(input, 0, input.length());
+        for(; slow.valid(); slow.advance(), fast.advance()) {
+          assertTrue("Tokenizer stopped early on: " + input, fast.valid());
+          assertEquals("Token mismatch on: " + input, slow.getSubstring(), fast.getSubstring());
+          assertEquals("Quoting mismatch on: " + input, slow.isQuoted(), fast.isQuoted());
+        }
+        assertTrue("Spurious data on: " + input, !fast.valid());
+      }
+    }
+  }
+
   private void tokenizerTest(Object[] expect) {
     for(int i = 0; i < expect.length; i++, t.advance()) {
       assertTrue("Tokenizer stopped early.", t.valid());
@@ -25,17 +25,34 @@ import org.junit.Test;
  You should have received a copy of the GNU Affero General Public License
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
 import de.lmu.ifi.dbs.elki.JUnit4Test;
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.SLINK;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.extraction.ExtractFlatClusteringFromHierarchy;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.model.DendrogramModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.DBIDRangeDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.parser.CSVReaderFormat;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.AbstractDBIDRangeDistanceFunction;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
@@ -65,4 +82,118 @@ public class TestFileBasedDoubleDistanceFunction extends AbstractSimpleAlgorithm
 
     testClusterSizes(c, new int[] { 2, 2 });
   }
+
+  @Test
+  public void testParallelParser() throws IOException {
+    DoubleMatrixCollector seq = new DoubleMatrixCollector();
+    new AsciiDistanceParser(CSVReaderFormat.DEFAULT_FORMAT).parse(new FileInputStream(FILENAME), seq);
+    DoubleMatrixCollector par = new DoubleMatrixCollector();
+    // Tiny blocks, to test block splitting.
+    new ParallelAsciiDistanceParser(CSVReaderFormat.DEFAULT_FORMAT, 10).parse(new FileInputStream(FILENAME), par);
+    assertEquals(seq.values, par.values);
+  }
+
+  @Test
+  public void testEquals() {
+    AsciiDistanceParser parser = new AsciiDistanceParser(CSVReaderFormat.DEFAULT_FORMAT);
+    FileBasedDoubleDistanceFunction a = new FileBasedDoubleDistanceFunction(parser, new File(FILENAME));
+    FileBasedDoubleDistanceFunction b = new FileBasedDoubleDistanceFunction(new AsciiDistanceParser(CSVReaderFormat.DEFAULT_FORMAT), new File(FILENAME));
+    FileBasedDoubleDistanceFunction c = new FileBasedDoubleDistanceFunction(parser, new File(FILENAME + ".other"));
+    assertTrue("Same input must be equal.", a.equals(b));
+    assertEquals("Hash codes differ.", a.hashCode(), b.hashCode());
+    assertFalse("Different files must not be equal.", a.equals(c));
+    assertFalse("Different parsers must not be equal.", a.equals(new FileBasedDoubleDistanceFunction(new BinaryDistanceParser(), new File(FILENAME))));
+    assertFalse("Float and double variants must not be equal.", a.equals(new FileBasedFloatDistanceFunction(parser, new File(FILENAME))));
+  }
+
+  @Test
+  public void testBinaryParser() throws IOException {
+    final int n = 4;
+    for(int width : new int[] { 4, 8 }) {
+      ByteBuffer buf = ByteBuffer.allocate(12 + (n * (n - 1) >> 1) * width);
+      buf.putInt(BinaryDistanceParser.MAGIC).putInt(n).putInt(width);
+      for(int i = 1; i < n; i++) {
+        for(int j = 0; j < i; j++) {
+          if(width == 4) {
+            buf.putFloat(i + j * .5f);
+          }
+          else {
+            buf.putDouble(i + j * .5);
+          }
+        }
+      }
+      DoubleMatrixCollector col = new DoubleMatrixCollector();
+      new BinaryDistanceParser().parse(new ByteArrayInputStream(buf.array()), col);
+      assertEquals(n * (n - 1) >> 1, col.values.size());
+      assertEquals(3 + 2 * .5, col.values.get(2L << 32 | 3), 0.);
+    }
+  }
+
+  @Test
+  public void testBlockedStorage() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, DBIDRangeDatabaseConnection.class);
+    params.addParameter(DBIDRangeDatabaseConnection.Parameterizer.COUNT_ID, 6002);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<DBID> rel = db.getRelation(TypeUtil.DBID);
+
+    FileBasedDoubleDistanceFunction ddf = new FileBasedDoubleDistanceFunction(new SparseParser(), new File(FILENAME));
+    ddf.instantiate(rel);
+    assertBlockedDistances(ddf);
+    FileBasedFloatDistanceFunction fdf = new FileBasedFloatDistanceFunction(new SparseParser(), new File(FILENAME));
+    fdf.instantiate(rel);
+    assertBlockedDistances(fdf);
+  }
+
+  /**
+   * Check the distances written by {@link SparseParser}.
+   *
+   * @param df Distance function
+   */
+  private static void assertBlockedDistances(AbstractDBIDRangeDistanceFunction df) {
+    assertEquals(1., df.distance(0, 1), 0.);
+    assertEquals(3., df.distance(2, 1), 0.);
+    assertEquals("Second block", 2., df.distance(5, 6000), 0.);
+    assertEquals("Missing pair", 0., df.distance(3, 2), 0.);
+    assertEquals("Beyond stored pairs", 0., df.distance(6001, 6000), 0.);
+    assertEquals("Beyond stored pairs", 0., df.distance(100000, 0), 0.);
+    assertEquals("Negative id", 0., df.distance(-1, 3), 0.);
+  }
+
+  /**
+   * Write a few pairs, the last one beyond the first storage block.
+   *
+   * @author Erich Schubert
+   */
+  private static class SparseParser implements DistanceParser {
+    @Override
+    public void parse(InputStream in, DistanceCacheWriter cache) {
+      cache.put(1, 0, 1.);
+      cache.put(6000, 5, 2.);
+      cache.put(2, 1, 3.);
+      assertTrue(cache.containsKey(5, 6000));
+      assertFalse(cache.containsKey(3, 2));
+      assertFalse(cache.containsKey(6001, 5));
+    }
+  }
+
+  /**
+   * Collect parsed values for comparison.
+   *
+   * @author Erich Schubert
+   */
+  private static class DoubleMatrixCollector implements DistanceCacheWriter {
+    Map<Long, Double> values = new HashMap<>();
+
+    @Override
+    public void put(int id1, int id2, double distance) {
+      values.put(id1 < id2 ? ((long) id1) << 32 | id2 : ((long) id2) << 32 | id1, distance);
+    }
+
+    @Override
+    public boolean containsKey(int id1, int id2) {
+      return values.containsKey(id1 < id2 ? ((long) id1) << 32 | id2 : ((long) id2) << 32 | id1);
+    }
+  }
 }
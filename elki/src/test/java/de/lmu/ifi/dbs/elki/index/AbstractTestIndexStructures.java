@@ -25,14 +25,26 @@ package de.lmu.ifi.dbs.elki.index;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import de.lmu.ifi.dbs.elki.JUnit4Test;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.ConcurrentQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
@@ -55,7 +67,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParamet
  */
 public abstract class AbstractTestIndexStructures implements JUnit4Test {
   // the following values depend on the data set used!
-  String dataset = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+  protected String dataset = "data/testdata/unittests/hierarchical-3d2d1d.csv";
 
   // size of the data set
   int shoulds = 600;
@@ -64,7 +76,7 @@ public abstract class AbstractTestIndexStructures implements JUnit4Test {
   double[] querypoint = new double[] { 0.5, 0.5, 0.5 };
 
   // number of kNN to query
-  int k = 10;
+  protected int k = 10;
 
   // the 10 next neighbors of the query point
   double[][] shouldc = new double[][] { //
@@ -223,4 +235,79 @@ public abstract class AbstractTestIndexStructures implements JUnit4Test {
       }
     }
   }
+
+  /**
+   * Test concurrent kNN and range queries against a single index instance, by
+   * comparing them to the results of sequential queries.
+   * 
+   * @param inputparams Parameters
+   * @param threads Number of threads to use
+   * @throws Exception on errors
+   */
+  protected void testConcurrentEuclidean(ListParameterization inputparams, int threads) throws Exception {
+    inputparams.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+
+    // get database
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, inputparams);
+    db.initialize();
+    final Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    final KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, k);
+    final RangeQuery<DoubleVector> rangeq = db.getRangeQuery(dist, eps);
+    assertTrue("Query does not allow concurrent use.", knnq instanceof ConcurrentQuery && ((ConcurrentQuery) knnq).allowsConcurrentUse());
+
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(rep.getDBIDs());
+    final KNNList[] knns = new KNNList[ids.size()];
+    final DoubleDBIDList[] ranges = new DoubleDBIDList[ids.size()];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      knns[it.getOffset()] = knnq.getKNNForDBID(it, k);
+      ranges[it.getOffset()] = rangeq.getRangeForDBID(it, eps);
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Integer>> futures = new ArrayList<>(threads);
+      for(int t = 0; t < threads; t++) {
+        final int offset = t;
+        futures.add(pool.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            int mismatches = 0;
+            // Each thread processes all objects, in a shifted order.
+            for(int i = 0; i < ids.size(); i++) {
+              DBIDArrayIter it = ids.iter().seek((i + offset * 97) % ids.size());
+              mismatches += matches(knns[it.getOffset()], knnq.getKNNForDBID(it, k)) ? 0 : 1;
+              mismatches += matches(ranges[it.getOffset()], rangeq.getRangeForDBID(it, eps)) ? 0 : 1;
+            }
+            return mismatches;
+          }
+        }));
+      }
+      for(Future<Integer> f : futures) {
+        assertEquals("Concurrent query results differ from sequential results.", 0, f.get().intValue());
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Compare two result lists by their distances.
+   * 
+   * @param expect Expected result
+   * @param actual Actual result
+   * @return {@code true} when the distances agree.
+   */
+  private static boolean matches(DoubleDBIDList expect, DoubleDBIDList actual) {
+    if(expect.size() != actual.size()) {
+      return false;
+    }
+    for(DoubleDBIDListIter e = expect.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+      if(e.doubleValue() != a.doubleValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
 }
@@ -0,0 +1,126 @@
+package de.lmu.ifi.dbs.elki.index.preprocessed;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.application.cache.CacheDoubleDistanceKNNLists;
+import de.lmu.ifi.dbs.elki.application.cache.CacheKNNGraph;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MappedKNNGraphIndex;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test writing and reading binary kNN graph files.
+ * 
+ * @author Erich Schubert
+ */
+public class TestMappedKNNGraphIndex implements JUnit4Test {
+  // the following values depend on the data set used!
+  static String dataset = "data/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // number of kNN to precompute
+  int k = 10;
+
+  @Test
+  public void testDoubleGraph() throws IOException {
+    testGraph(false);
+  }
+
+  @Test
+  public void testFloatGraph() throws IOException {
+    testGraph(true);
+  }
+
+  private void testGraph(boolean isfloat) throws IOException {
+    File tmp = File.createTempFile("elki-knngraph", ".bin");
+    tmp.deleteOnExit();
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    params.addParameter(CacheDoubleDistanceKNNLists.Parameterizer.DISTANCE_ID, EuclideanDistanceFunction.class);
+    params.addParameter(CacheDoubleDistanceKNNLists.Parameterizer.K_ID, k);
+    params.addParameter(CacheDoubleDistanceKNNLists.Parameterizer.CACHE_ID, tmp);
+    if(isfloat) {
+      params.addFlag(CacheKNNGraph.Parameterizer.FLOAT_ID);
+    }
+    CacheKNNGraph<?> app = ClassGenericsUtil.parameterizeOrAbort(CacheKNNGraph.class, params);
+    app.run();
+
+    ListParameterization dbparams = new ListParameterization();
+    dbparams.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, dbparams);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+
+    MappedKNNGraphIndex<DoubleVector> index = new MappedKNNGraphIndex.Factory<DoubleVector>(EuclideanDistanceFunction.STATIC, tmp).instantiate(rel);
+    index.initialize();
+    assertEquals(k, index.getK());
+    assertNull("Index must not serve larger k.", index.getKNNQuery(dq, k + 1));
+    assertNull("Index must not serve other distances.", index.getKNNQuery(db.getDistanceQuery(rel, ManhattanDistanceFunction.STATIC), k));
+    KNNQuery<DoubleVector> knnq = index.getKNNQuery(dq, k);
+    assertNotNull(knnq);
+
+    LinearScanDistanceKNNQuery<DoubleVector> lin = new LinearScanDistanceKNNQuery<>(dq);
+    final double tol = isfloat ? 1e-6 : 0.;
+    for(int qk : new int[] { k, k / 2 }) {
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+        KNNList exp = lin.getKNNForDBID(it, qk), got = knnq.getKNNForDBID(it, qk);
+        assertEquals("kNN sizes do not agree.", exp.size(), got.size());
+        DoubleDBIDListIter ei = exp.iter(), gi = got.iter();
+        for(; ei.valid(); ei.advance(), gi.advance()) {
+          assertTrue(gi.valid());
+          assertEquals("kNN distances do not agree.", ei.doubleValue(), gi.doubleValue(), tol * ei.doubleValue());
+          if(!isfloat) {
+            assertTrue("kNN ids do not agree.", DBIDUtil.equal(ei, gi) || ei.doubleValue() == gi.doubleValue());
+          }
+        }
+      }
+    }
+  }
+}
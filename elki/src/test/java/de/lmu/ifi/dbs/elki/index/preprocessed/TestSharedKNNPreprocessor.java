@@ -0,0 +1,150 @@
+package de.lmu.ifi.dbs.elki.index.preprocessed;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.PreprocessorKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.AbstractMaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.result.Result;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.DatabaseUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.hierarchy.Hierarchy;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test that materialized kNN preprocessors are shared between subsequent
+ * precomputed kNN queries on the same relation, within a sharing scope.
+ * 
+ * @author Erich Schubert
+ */
+public class TestSharedKNNPreprocessor implements JUnit4Test {
+  // the following values depend on the data set used!
+  static String dataset = "data/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  /**
+   * Actual test routine.
+   */
+  @Test
+  public void testSharing() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+
+    DatabaseUtil.beginKNNSharing(db);
+    try {
+
+      AbstractMaterializeKNNPreprocessor<?> p10 = getPreprocessor(DatabaseUtil.precomputedKNNQuery(db, rel, dq, 10));
+      assertEquals(1, countPreprocessors(rel));
+      // Smaller k: reuse.
+      KNNQuery<DoubleVector> knn5 = DatabaseUtil.precomputedKNNQuery(db, rel, EuclideanDistanceFunction.STATIC, 5);
+      assertSame("Preprocessor not reused.", p10, getPreprocessor(knn5));
+      // Other distance function: no reuse.
+      AbstractMaterializeKNNPreprocessor<?> pman = getPreprocessor(DatabaseUtil.precomputedKNNQuery(db, rel, ManhattanDistanceFunction.STATIC, 5));
+      assertTrue("Preprocessor reused for different distance.", p10 != pman);
+      assertEquals(2, countPreprocessors(rel));
+      // Larger k: replaces the smaller preprocessor.
+      AbstractMaterializeKNNPreprocessor<?> p20 = getPreprocessor(DatabaseUtil.precomputedKNNQuery(db, rel, dq, 20));
+      assertFalse("Preprocessor reused for larger k.", p10 == p20);
+      assertEquals(2, countPreprocessors(rel));
+      KNNQuery<DoubleVector> knn10 = DatabaseUtil.precomputedKNNQuery(db, rel, dq, 10);
+      assertSame("Preprocessor not reused.", p20, getPreprocessor(knn10));
+
+      // Served results must agree with a linear scan.
+      LinearScanDistanceKNNQuery<DoubleVector> lin = new LinearScanDistanceKNNQuery<>(dq);
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+        KNNList a = lin.getKNNForDBID(it, 10), b = knn10.getKNNForDBID(it, 10);
+        assertEquals("kNN sizes do not agree.", a.size(), b.size());
+        for(int j = 0; j < a.size(); j++) {
+          assertEquals("kNN distances do not agree.", a.get(j).doubleValue(), b.get(j).doubleValue(), 0.);
+        }
+      }
+    }
+    finally {
+      DatabaseUtil.endKNNSharing(db);
+    }
+    // Closing the scope detaches the shared preprocessors.
+    assertEquals(0, countPreprocessors(rel));
+  }
+
+  /**
+   * Outside of a sharing scope, preprocessors must not be attached.
+   */
+  @Test
+  public void testNoSharingOutsideScope() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+
+    getPreprocessor(DatabaseUtil.precomputedKNNQuery(db, rel, EuclideanDistanceFunction.STATIC, 10));
+    assertEquals(0, countPreprocessors(rel));
+
+    // Nested scopes: detached only when the outermost scope is closed.
+    DatabaseUtil.beginKNNSharing(db);
+    DatabaseUtil.beginKNNSharing(db);
+    AbstractMaterializeKNNPreprocessor<?> p10 = getPreprocessor(DatabaseUtil.precomputedKNNQuery(db, rel, EuclideanDistanceFunction.STATIC, 10));
+    DatabaseUtil.endKNNSharing(db);
+    assertEquals(1, countPreprocessors(rel));
+    assertSame("Preprocessor not reused.", p10, getPreprocessor(DatabaseUtil.precomputedKNNQuery(db, rel, EuclideanDistanceFunction.STATIC, 5)));
+    DatabaseUtil.endKNNSharing(db);
+    assertEquals(0, countPreprocessors(rel));
+  }
+
+  private static AbstractMaterializeKNNPreprocessor<?> getPreprocessor(KNNQuery<?> knnq) {
+    assertTrue("Not a preprocessor query: " + knnq.getClass(), knnq instanceof PreprocessorKNNQuery);
+    return ((PreprocessorKNNQuery<?>) knnq).getPreprocessor();
+  }
+
+  private static int countPreprocessors(Relation<?> rel) {
+    int c = 0;
+    for(Hierarchy.Iter<Result> it = rel.getHierarchy().iterChildren(rel); it.valid(); it.advance()) {
+      c += (it.get() instanceof AbstractMaterializeKNNPreprocessor) ? 1 : 0;
+    }
+    return c;
+  }
+}
@@ -0,0 +1,160 @@
+package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractTestIndexStructures;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the cover tree variants.
+ * 
+ * @author Erich Schubert
+ */
+public class TestCoverTree extends AbstractTestIndexStructures {
+  /**
+   * Test {@link CoverTree}.
+   */
+  @Test
+  public void testCoverTree() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, CoverTree.Factory.class);
+    params.addParameter(CoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+    testExactEuclidean(params, CoverTree.CoverTreeKNNQuery.class, CoverTree.CoverTreeRangeQuery.class);
+  }
+
+  /**
+   * Test {@link SimplifiedCoverTree}.
+   */
+  @Test
+  public void testSimplifiedCoverTree() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, SimplifiedCoverTree.Factory.class);
+    params.addParameter(SimplifiedCoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+    testExactEuclidean(params, SimplifiedCoverTree.CoverTreeKNNQuery.class, SimplifiedCoverTree.CoverTreeRangeQuery.class);
+  }
+
+  /**
+   * Test insertions and deletions, and bulk kNN queries.
+   */
+  @Test
+  public void testDynamic() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+
+    testDynamic(new CoverTree<>(rel, EuclideanDistanceFunction.STATIC, 1.3, 5), rel, dq);
+    testDynamic(new SimplifiedCoverTree<>(rel, EuclideanDistanceFunction.STATIC, 1.3, 5), rel, dq);
+  }
+
+  /**
+   * Test a dynamic index.
+   * 
+   * @param index Index to test
+   * @param rel Relation
+   * @param dq Distance query
+   */
+  private <I extends KNNIndex<DoubleVector> & DynamicIndex> void testDynamic(I index, Relation<DoubleVector> rel, DistanceQuery<DoubleVector> dq) {
+    ModifiableDBIDs present = DBIDUtil.newHashSet();
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      index.insert(it);
+      present.add(it);
+    }
+    KNNQuery<DoubleVector> knnq = index.getKNNQuery(dq, k);
+    assertKNNEquals(knnq, dq, present);
+
+    // Remove every other object, including routing objects.
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      if((i & 1) == 0) {
+        assertEquals("Object not found.", true, index.delete(it));
+        present.remove(it);
+      }
+    }
+    assertKNNEquals(knnq, dq, present);
+  }
+
+  /**
+   * Compare kNN results (single and bulk) to a linear scan.
+   * 
+   * @param knnq kNN query
+   * @param dq Distance query
+   * @param present Objects present in the index
+   */
+  private void assertKNNEquals(KNNQuery<DoubleVector> knnq, DistanceQuery<DoubleVector> dq, DBIDs present) {
+    ArrayDBIDs ids = DBIDUtil.ensureArray(present);
+    List<? extends KNNList> bulk = knnq.getKNNForBulkDBIDs(ids, k);
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      for(DBIDIter it2 = ids.iter(); it2.valid(); it2.advance()) {
+        heap.insert(dq.distance(it, it2), it2);
+      }
+      KNNList expect = heap.toKNNList();
+      assertDistancesEqual(expect, knnq.getKNNForDBID(it, k));
+      assertDistancesEqual(expect, bulk.get(i));
+    }
+  }
+
+  /**
+   * Compare the distances of two kNN lists.
+   * 
+   * @param expect Expected result
+   * @param actual Actual result
+   */
+  private void assertDistancesEqual(KNNList expect, KNNList actual) {
+    assertEquals("kNN result size does not match.", expect.size(), actual.size());
+    for(DoubleDBIDListIter e = expect.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+      assertEquals("kNN distance does not match.", e.doubleValue(), a.doubleValue(), 1e-15);
+    }
+  }
+}
@@ -48,4 +48,17 @@ public class TestMTree extends AbstractTestIndexStructures {
     metparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
     testExactEuclidean(metparams, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
   }
+
+  /**
+   * Test concurrent queries on a single {@link MTree}.
+   * 
+   * @throws Exception on errors
+   */
+  @Test
+  public void testMetricalConcurrent() throws Exception {
+    ListParameterization metparams = new ListParameterization();
+    metparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+    metparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testConcurrentEuclidean(metparams, 4);
+  }
 }
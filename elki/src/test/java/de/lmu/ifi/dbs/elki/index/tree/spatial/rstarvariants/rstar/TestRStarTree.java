@@ -23,16 +23,36 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.query.ConcurrentQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractTestIndexStructures;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeFactory;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.SortTileRecursiveBulkSplit;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.insert.ApproximativeLeastOverlapInsertionStrategy;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.PersistentPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -96,4 +116,48 @@ public class TestRStarTree extends AbstractTestIndexStructures {
     spatparams.addParameter(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class);
     testExactCosine(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
   }
+
+  /**
+   * Test concurrent queries on a single {@link RStarTree}.
+   * 
+   * @throws Exception on errors
+   */
+  @Test
+  public void testRStarTreeConcurrent() throws Exception {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testConcurrentEuclidean(spatparams, 4);
+  }
+
+  /**
+   * A disk-based {@link RStarTree} must not be queried concurrently, so the kNN
+   * preprocessor has to materialize the neighborhoods sequentially.
+   * 
+   * @throws IOException on errors
+   */
+  @Test
+  public void testRStarTreePersistent() throws IOException {
+    File file = File.createTempFile("elki-rstartree", ".idx");
+    file.delete();
+    file.deleteOnExit();
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, PersistentPageFileFactory.class);
+    spatparams.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, file.getPath());
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 1000);
+    spatparams.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, spatparams);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC), k);
+    assertTrue("Returned knn query is not of expected class.", knnq instanceof RStarTreeKNNQuery);
+    assertFalse("Disk-based tree must not allow concurrent queries.", ((ConcurrentQuery) knnq).allowsConcurrentUse());
+
+    MaterializeKNNPreprocessor<DoubleVector> preproc = new MaterializeKNNPreprocessor<>(rel, EuclideanDistanceFunction.STATIC, k);
+    preproc.initialize();
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      assertEquals("kNN distance does not match.", knnq.getKNNForDBID(it, k).getKNNDistance(), preproc.get(it).getKNNDistance(), 0.);
+    }
+  }
 }
@@ -0,0 +1,153 @@
+package de.lmu.ifi.dbs.elki.logging.statistics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+
+/**
+ * Test the metrics registry and the automatic instrumentation.
+ * 
+ * @author Erich Schubert
+ */
+public class TestMetricsRegistry extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  @After
+  public void tearDown() {
+    MetricsRegistry.disable();
+    MetricsRegistry.reset();
+  }
+
+  /**
+   * Disabled registries must not hand out counters.
+   */
+  @Test
+  public void testDisabled() {
+    assertNull(MetricsRegistry.counter("test"));
+    assertNull(MetricsRegistry.latency("test"));
+  }
+
+  /**
+   * Count distance computations and query latencies of linear scans.
+   */
+  @Test
+  public void testQueryInstrumentation() throws IOException {
+    MetricsRegistry.enable();
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, ManhattanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dq, 5);
+    assertTrue("Linear scan marker lost.", knnq instanceof LinearScanQuery);
+    RangeQuery<DoubleVector> rq = db.getRangeQuery(dq, 1.);
+    int queries = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid() && queries < 10; it.advance(), queries++) {
+      knnq.getKNNForDBID(it, 5);
+      rq.getRangeForDBID(it, 1.);
+      dq.distance(it, it);
+    }
+    Counter c = MetricsRegistry.distanceCounter(ManhattanDistanceFunction.STATIC);
+    assertEquals("Distance computations.", queries * (2L * rel.size() + 1), c.getValue());
+
+    int latencies = 0;
+    for(Statistic s : MetricsRegistry.getMetrics()) {
+      if(s instanceof LatencyHistogram) {
+        assertEquals(s.getKey(), queries, ((LatencyHistogram) s).getCount());
+        latencies++;
+      }
+    }
+    assertEquals("Expected kNN and range latencies.", 2, latencies);
+
+    MetricsRegistry.record(new DoubleStatistic("test.double", 1.5));
+    StringBuilder json = new StringBuilder(), csv = new StringBuilder();
+    MetricsRegistry.writeJSON(json);
+    MetricsRegistry.writeCSV(csv);
+    final String key = ManhattanDistanceFunction.class.getName() + ".distance-computations";
+    assertTrue(json.toString(), json.indexOf("\"" + key + "\": " + c.getValue()) >= 0);
+    assertTrue(json.toString(), json.indexOf("\"test.double\": 1.5") >= 0);
+    assertTrue(csv.toString(), csv.indexOf(key + "," + c.getValue() + ",\n") >= 0);
+  }
+
+  /**
+   * Concurrent increments must not be lost.
+   */
+  @Test
+  public void testStripedCounter() {
+    MetricsRegistry.enable();
+    final Counter c = MetricsRegistry.counter("test.counter");
+    assertTrue(c == MetricsRegistry.counter("test.counter"));
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    ParallelExecutor.run(DBIDUtil.ensureArray(rel.getDBIDs()), new ParallelExecutor.ArrayTask() {
+      @Override
+      public void process(DBIDArrayIter it) {
+        for(int i = 0; i < 1000; i++) {
+          c.increment();
+        }
+      }
+    });
+    assertEquals(330000L, c.getValue());
+  }
+
+  /**
+   * Metrics are available via JMX.
+   */
+  @Test
+  public void testJMX() throws JMException {
+    MetricsRegistry.enable();
+    MetricsRegistry.registerJMX();
+    MetricsRegistry.counter("test.jmx").increment(42);
+    ObjectName name = new ObjectName(MetricsRegistry.JMX_NAME);
+    Object v = ManagementFactory.getPlatformMBeanServer().invoke(name, "getCounter", new Object[] { "test.jmx" }, new String[] { String.class.getName() });
+    assertNotNull(v);
+    assertEquals(42L, ((Long) v).longValue());
+    MetricsRegistry.disable();
+    assertTrue(!ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+  }
+}
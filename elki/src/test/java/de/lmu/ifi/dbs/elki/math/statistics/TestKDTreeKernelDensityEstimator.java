@@ -0,0 +1,117 @@
+package de.lmu.ifi.dbs.elki.math.statistics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.math.statistics.kernelfunctions.EpanechnikovKernelDensityFunction;
+import de.lmu.ifi.dbs.elki.math.statistics.kernelfunctions.GaussianKernelDensityFunction;
+import de.lmu.ifi.dbs.elki.math.statistics.kernelfunctions.KernelDensityFunction;
+
+/**
+ * Compare the kd-tree kernel density estimation to the naive sum.
+ * 
+ * @author Erich Schubert
+ */
+public class TestKDTreeKernelDensityEstimator extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  @Test
+  public void testExactAndApproximate() {
+    final int size = 2000, dim = 3;
+    Random r = new Random(0L);
+    double[][] data = new double[size][dim];
+    for(int i = 0; i < size; i++) {
+      for(int d = 0; d < dim; d++) {
+        data[i][d] = (i & 1) == 0 ? r.nextGaussian() : 3 + r.nextDouble();
+      }
+    }
+    double[][] queries = new double[100][dim];
+    for(int i = 0; i < queries.length; i++) {
+      for(int d = 0; d < dim; d++) {
+        queries[i][d] = r.nextDouble() * 5 - 1;
+      }
+    }
+    for(KernelDensityFunction kernel : new KernelDensityFunction[] { EpanechnikovKernelDensityFunction.KERNEL, GaussianKernelDensityFunction.KERNEL }) {
+      for(double eps : new double[] { 0., 0.01, 0.2 }) {
+        KDTreeKernelDensityEstimator kde = new KDTreeKernelDensityEstimator(data.clone(), kernel, .5, eps, 8);
+        for(double[] q : queries) {
+          final double exact = naive(data, q, kernel, .5);
+          assertEquals("Density differs for " + kernel + " eps=" + eps, exact, kde.density(q), exact * eps / (1 - eps) + 1e-12);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testBatch() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    KernelDensityFunction kernel = EpanechnikovKernelDensityFunction.KERNEL;
+    KDTreeKernelDensityEstimator kde = new KDTreeKernelDensityEstimator(rel, kernel, .1, 0.);
+    double[] dens = kde.density(rel, ids);
+
+    double[][] data = new double[ids.size()][];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      data[it.getOffset()] = rel.get(it).getColumnVector().getArrayRef();
+    }
+    for(int i = 0; i < data.length; i++) {
+      final double exact = naive(data, data[i], kernel, .1);
+      assertEquals("Density differs.", exact, dens[i], exact * 1e-12);
+    }
+  }
+
+  /**
+   * Naive kernel density estimation.
+   * 
+   * @param data Data
+   * @param q Query
+   * @param kernel Kernel
+   * @param h Bandwidth
+   * @return Density
+   */
+  private static double naive(double[][] data, double[] q, KernelDensityFunction kernel, double h) {
+    double sum = 0.;
+    for(double[] v : data) {
+      double dist = 0.;
+      for(int d = 0; d < q.length; d++) {
+        dist += (v[d] - q[d]) * (v[d] - q[d]);
+      }
+      sum += kernel.density(Math.sqrt(dist) / h);
+    }
+    return sum / (data.length * Math.pow(h, q.length));
+  }
+}
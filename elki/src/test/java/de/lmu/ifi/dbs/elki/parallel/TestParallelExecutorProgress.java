@@ -0,0 +1,108 @@
+package de.lmu.ifi.dbs.elki.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor.ArrayTask;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+
+/**
+ * Test the progress reporting of the parallel executor.
+ * 
+ * @author Erich Schubert
+ */
+public class TestParallelExecutorProgress implements JUnit4Test {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(TestParallelExecutorProgress.class);
+
+  /**
+   * Data set size; not a multiple of the batch size.
+   */
+  private static final int SIZE = 10007;
+
+  /**
+   * Every object must be processed, and counted, exactly once.
+   */
+  @Test
+  public void testArrayTask() {
+    ArrayDBIDs ids = DBIDUtil.generateStaticDBIDRange(SIZE);
+    final int[] seen = new int[SIZE];
+    FiniteProgress prog = new FiniteProgress("Test", SIZE, LOG);
+    ParallelExecutor.run(ids, new ArrayTask() {
+      @Override
+      public void process(DBIDArrayIter it) {
+        seen[it.getOffset()]++;
+      }
+    }, prog, LOG);
+    assertEquals("Progress not complete.", SIZE, prog.getProcessed());
+    assertTrue("Progress not complete.", prog.isComplete());
+    for(int i = 0; i < SIZE; i++) {
+      assertEquals("Object processed a wrong number of times.", 1, seen[i]);
+    }
+  }
+
+  /**
+   * Every object must be processed, and counted, exactly once.
+   */
+  @Test
+  public void testProcessor() {
+    ArrayDBIDs ids = DBIDUtil.generateStaticDBIDRange(SIZE);
+    final AtomicInteger count = new AtomicInteger();
+    FiniteProgress prog = new FiniteProgress("Test", SIZE, LOG);
+    ParallelExecutor.run(ids, prog, LOG, new Processor() {
+      @Override
+      public Instance instantiate(Executor executor) {
+        return new Instance() {
+          @Override
+          public void map(DBIDRef id) {
+            count.incrementAndGet();
+          }
+        };
+      }
+
+      @Override
+      public void cleanup(Instance inst) {
+        // Nothing to do.
+      }
+    });
+    assertEquals("Objects processed a wrong number of times.", SIZE, count.get());
+    assertEquals("Progress not complete.", SIZE, prog.getProcessed());
+    assertTrue("Progress not complete.", prog.isComplete());
+  }
+}
@@ -0,0 +1,163 @@
+package de.lmu.ifi.dbs.elki.result;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedDoubleRelation;
+import de.lmu.ifi.dbs.elki.result.outlier.BasicOutlierScoreMeta;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+import de.lmu.ifi.dbs.elki.utilities.FormatUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Test the binary and CSV result writers by reading the output back.
+ *
+ * @author Erich Schubert
+ */
+public class TestStreamingResultWriters implements JUnit4Test {
+  /**
+   * Number of objects; more than fit into the output buffers.
+   */
+  private static final int SIZE = 100000;
+
+  @Test
+  public void testOutlierResult() throws IOException {
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(SIZE);
+    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_DB);
+    Random r = new Random(0L);
+    double[] special = { 0., -0., 1., -1., 0.1, 1e-5, 123456789012345678., 5e-324, 1.5e308, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final int i = it.getOffset();
+      scores.putDouble(it, i < special.length ? special[i] : r.nextGaussian() * Math.pow(10, r.nextInt(40) - 20));
+    }
+    OutlierResult or = new OutlierResult(new BasicOutlierScoreMeta(0, 1), new MaterializedDoubleRelation("Test", "test-outlier", scores, ids));
+
+    File dir = Files.createTempDirectory("elki-test").toFile();
+    try {
+      new BinaryResultWriter(dir).processNewResult(null, or);
+      ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(new File(dir, "test-outlier.bin").toPath())).order(ByteOrder.LITTLE_ENDIAN);
+      assertEquals("Magic", BinaryResultWriter.MAGIC, buf.getInt());
+      assertEquals("Type", BinaryResultWriter.TYPE_OUTLIER, buf.getInt());
+      assertEquals("Size", SIZE, buf.getInt());
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        assertEquals("DBID", DBIDUtil.asInteger(it), buf.getInt());
+      }
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        assertEquals("Score", scores.doubleValue(it), buf.getDouble(), 0.);
+      }
+      assertEquals("Trailing data", 0, buf.remaining());
+
+      new CSVResultWriter(dir).processNewResult(null, or);
+      List<String> lines = Files.readAllLines(new File(dir, "test-outlier.csv").toPath(), StandardCharsets.US_ASCII);
+      assertEquals("Lines", SIZE + 1, lines.size());
+      assertEquals("Header", "id,score", lines.get(0));
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        String line = lines.get(it.getOffset() + 1);
+        int p = line.indexOf(',');
+        assertEquals("DBID", DBIDUtil.asInteger(it), Integer.parseInt(line.substring(0, p)));
+        final double exp = scores.doubleValue(it), act = FormatUtil.parseDouble(line, p + 1, line.length());
+        assertEquals("Score " + line, exp, act, Math.abs(exp) * 1e-14);
+      }
+    }
+    finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testClustering() throws IOException {
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(SIZE);
+    Clustering<ClusterModel> c = new Clustering<>("Test", "test-clustering");
+    final int split = SIZE / 3;
+    c.addToplevelCluster(new Cluster<>("a", DBIDUtil.newArray(ids.slice(0, split)), ClusterModel.CLUSTER));
+    c.addToplevelCluster(new Cluster<>("b", DBIDUtil.newArray(ids.slice(split, SIZE)), ClusterModel.CLUSTER));
+    File dir = Files.createTempDirectory("elki-test").toFile();
+    try {
+      new BinaryResultWriter(dir).processNewResult(null, c);
+      ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(new File(dir, "test-clustering.bin").toPath())).order(ByteOrder.LITTLE_ENDIAN);
+      assertEquals("Magic", BinaryResultWriter.MAGIC, buf.getInt());
+      assertEquals("Type", BinaryResultWriter.TYPE_CLUSTERING, buf.getInt());
+      assertEquals("Size", SIZE, buf.getInt());
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        assertEquals("DBID", DBIDUtil.asInteger(it), buf.getInt());
+      }
+      for(int i = 0; i < SIZE; i++) {
+        assertEquals("Cluster", i < split ? 0 : 1, buf.getInt());
+      }
+      assertEquals("Clusters", 2, buf.getInt());
+      assertEquals("Name", "a", ByteArrayUtil.STRING_SERIALIZER.fromByteBuffer(buf));
+      assertEquals("Name", "b", ByteArrayUtil.STRING_SERIALIZER.fromByteBuffer(buf));
+      assertEquals("Trailing data", 0, buf.remaining());
+
+      new CSVResultWriter(dir).processNewResult(null, c);
+      List<String> lines = Files.readAllLines(new File(dir, "test-clustering.csv").toPath(), StandardCharsets.UTF_8);
+      assertEquals("Lines", SIZE + 3, lines.size());
+      assertEquals("Header", "id,cluster", lines.get(0));
+      assertEquals("Name", "# 0 a", lines.get(1));
+      assertEquals("Name", "# 1 b", lines.get(2));
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final int i = it.getOffset();
+        assertEquals("Row", DBIDUtil.asInteger(it) + "," + (i < split ? 0 : 1), lines.get(i + 3));
+      }
+    }
+    finally {
+      delete(dir);
+    }
+  }
+
+  /**
+   * Delete the temporary output directory.
+   *
+   * @param dir Directory
+   */
+  private static void delete(File dir) {
+    for(File f : dir.listFiles()) {
+      assertTrue("Could not delete " + f, f.delete());
+    }
+    assertTrue("Could not delete " + dir, dir.delete());
+  }
+}
@@ -0,0 +1,442 @@
+package de.lmu.ifi.dbs.elki.utilities.checkpoint;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.AGNES;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.LinkageMethod;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.PointerHierarchyRepresentationResult;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.WardLinkageMethod;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.optics.ClusterOrder;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.optics.OPTICSHeap;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.optics.OPTICSXi;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.AbstractNumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test writing and resuming from checkpoints.
+ * 
+ * @author Erich Schubert
+ */
+public class TestCheckpoint extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  /**
+   * Temporary checkpoint directory.
+   */
+  File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("elki-checkpoint").toFile();
+    InterruptingDistanceFunction.BUDGET.set(Long.MAX_VALUE);
+    InterruptingLinkage.budget = Long.MAX_VALUE;
+  }
+
+  @After
+  public void tearDown() {
+    CheckpointManager.disable();
+    for(File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  /**
+   * Write a checkpoint, and read it back.
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC), 5);
+
+    WritableDoubleDataStore dstore = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP);
+    WritableIntegerDataStore istore = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP);
+    WritableDBIDDataStore pstore = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_TEMP);
+    ArrayModifiableDBIDs sample = DBIDUtil.newArray();
+    DBIDArrayIter it = ids.iter(), prev = ids.iter();
+    for(; it.valid(); it.advance()) {
+      dstore.putDouble(it, rel.get(it).doubleValue(0));
+      istore.putInt(it, it.getOffset() * 7);
+      if(it.getOffset() > 0) {
+        pstore.putDBID(it, prev.seek(it.getOffset() - 1));
+      }
+      if(it.getOffset() % 10 == 0) {
+        sample.add(it);
+      }
+    }
+
+    CheckpointManager.configure(dir, 0L, false);
+    Checkpoint cp = CheckpointManager.open(TestCheckpoint.class, ids);
+    assertNull("Resume was not requested.", cp.restore());
+    assertTrue("Checkpoint should be due.", cp.due());
+    try (Checkpoint.Writer out = cp.write()) {
+      out.writeInt(42);
+      out.writeDoubles(new double[] { 1., 2., 3. });
+      out.writeStore(dstore);
+      out.writeStore(istore);
+      out.writeStore(pstore);
+      out.writeDBIDs(sample);
+      out.writeKNNList(knnq.getKNNForDBID(it.seek(17), 5));
+      out.commit();
+    }
+    assertTrue("Checkpoint not written.", cp.getFile().exists());
+
+    // Resume, into fresh storage:
+    CheckpointManager.configure(dir, 0L, true);
+    Checkpoint cp2 = CheckpointManager.open(TestCheckpoint.class, ids);
+    assertEquals("Checkpoint file differs.", cp.getFile(), cp2.getFile());
+    WritableDoubleDataStore dstore2 = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP);
+    WritableIntegerDataStore istore2 = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP);
+    WritableDBIDDataStore pstore2 = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_TEMP);
+    ArrayModifiableDBIDs sample2 = DBIDUtil.newArray();
+    KNNList knn;
+    try (Checkpoint.Reader in = cp2.restore()) {
+      assertNotNull("No checkpoint to resume from.", in);
+      assertEquals(42, in.readInt());
+      assertEquals(3, in.readDoubles().length);
+      in.readStore(dstore2);
+      in.readStore(istore2);
+      in.readStore(pstore2);
+      in.readDBIDs(sample2);
+      knn = in.readKNNList();
+    }
+    DBIDVar v1 = DBIDUtil.newVar(), v2 = DBIDUtil.newVar();
+    for(it.seek(0); it.valid(); it.advance()) {
+      assertEquals(dstore.doubleValue(it), dstore2.doubleValue(it), 0.);
+      assertEquals(istore.intValue(it), istore2.intValue(it));
+      if(it.getOffset() > 0) {
+        assertTrue(DBIDUtil.equal(pstore.assignVar(it, v1), pstore2.assignVar(it, v2)));
+      }
+    }
+    assertEquals(sample.size(), sample2.size());
+    for(DBIDArrayIter i1 = sample.iter(), i2 = sample2.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertTrue(DBIDUtil.equal(i1, i2));
+    }
+    KNNList ref = knnq.getKNNForDBID(it.seek(17), 5);
+    assertEquals(ref.size(), knn.size());
+    for(DoubleDBIDListIter i1 = ref.iter(), i2 = knn.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertEquals(i1.doubleValue(), i2.doubleValue(), 0.);
+    }
+    cp2.finish();
+    assertFalse("Checkpoint not removed.", cp2.getFile().exists());
+  }
+
+  /**
+   * Checkpointing after every object must not change the OPTICS result.
+   */
+  @Test
+  public void testOPTICSWithCheckpoints() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    CheckpointManager.configure(dir, 0L, true);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(OPTICSHeap.Parameterizer.MINPTS_ID, 18);
+    params.addParameter(OPTICSXi.Parameterizer.XI_ID, 0.038);
+    params.addParameter(OPTICSXi.Parameterizer.XIALG_ID, OPTICSHeap.class);
+    OPTICSXi opticsxi = ClassGenericsUtil.parameterizeOrAbort(OPTICSXi.class, params);
+    testParameterizationOk(params);
+
+    Clustering<?> clustering = opticsxi.run(db);
+    testFMeasure(db, clustering, 0.877117490049);
+    testClusterSizes(clustering, new int[] { 109, 121, 209, 271 });
+    assertEquals("Checkpoints not removed.", 0, dir.listFiles().length);
+  }
+
+  /**
+   * Interrupt OPTICS, and resume from the checkpoint: the cluster order must be
+   * the same as in an uninterrupted run.
+   */
+  @Test
+  public void testOPTICSResume() throws IOException {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    final long size = rel.size();
+    OPTICSHeap<NumberVector> optics = new OPTICSHeap<>(new InterruptingDistanceFunction(), Double.POSITIVE_INFINITY, 18);
+    ClusterOrder ref = optics.run(db, rel);
+
+    // Interrupt within a cluster, i.e., with a non-empty candidate heap.
+    CheckpointManager.configure(dir, 0L, false);
+    InterruptingDistanceFunction.BUDGET.set(300 * size + size / 2);
+    try {
+      optics.run(db, rel);
+      fail("Run was not interrupted.");
+    }
+    catch(SimulatedInterruption e) {
+      // Expected.
+    }
+    assertEquals("No checkpoint written.", 1, dir.listFiles().length);
+    CheckpointManager.configure(dir, 0L, true);
+    try (Checkpoint.Reader in = CheckpointManager.open(OPTICSHeap.class, DBIDUtil.ensureArray(rel.getDBIDs())).restore()) {
+      in.readString();
+      in.readDouble();
+      in.readInt();
+      final int done = in.readInt();
+      assertEquals("Checkpoint not written after the last object.", 300, done);
+      for(int i = 0; i < done; i++) {
+        in.readDBID();
+        in.readDouble();
+        in.readDBID();
+      }
+      assertTrue("Candidate heap is empty.", in.readInt() > 0);
+    }
+
+    // Resume:
+    CheckpointManager.configure(dir, 0L, true);
+    InterruptingDistanceFunction.BUDGET.set(Long.MAX_VALUE);
+    InterruptingDistanceFunction.COUNT.set(0);
+    ClusterOrder res = optics.run(db, rel);
+    assertEquals("Did not resume from the checkpoint.", (size - 300) * size, InterruptingDistanceFunction.COUNT.get());
+    assertEquals(ref.size(), res.size());
+    DBIDVar p1 = DBIDUtil.newVar(), p2 = DBIDUtil.newVar();
+    for(DBIDIter i1 = ref.iter(), i2 = res.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertTrue("Cluster order differs.", DBIDUtil.equal(i1, i2));
+      assertEquals("Reachability differs.", ref.getReachability(i1), res.getReachability(i2), 0.);
+      p1.unset();
+      p2.unset();
+      ref.getPredecessor(i1, p1);
+      res.getPredecessor(i2, p2);
+      assertEquals("Predecessor differs.", p1.isSet(), p2.isSet());
+      assertTrue("Predecessor differs.", !p1.isSet() || DBIDUtil.equal(p1, p2));
+    }
+    assertEquals("Checkpoints not removed.", 0, dir.listFiles().length);
+  }
+
+  /**
+   * Interrupt AGNES, and resume from the checkpoint: the pointer hierarchy must
+   * be the same as in an uninterrupted run. Resuming with a different linkage
+   * must be rejected.
+   */
+  @Test
+  public void testAGNESResume() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    AGNES<DoubleVector> agnes = new AGNES<>(EuclideanDistanceFunction.STATIC, new InterruptingLinkage());
+    InterruptingLinkage.count = 0;
+    PointerHierarchyRepresentationResult ref = agnes.run(db, rel);
+    final long full = InterruptingLinkage.count;
+
+    CheckpointManager.configure(dir, 0L, false);
+    InterruptingLinkage.budget = full / 2;
+    try {
+      agnes.run(db, rel);
+      fail("Run was not interrupted.");
+    }
+    catch(SimulatedInterruption e) {
+      // Expected.
+    }
+    assertEquals("No checkpoint written.", 1, dir.listFiles().length);
+
+    // Different linkage:
+    CheckpointManager.configure(dir, 0L, true);
+    try {
+      new AGNES<DoubleVector>(EuclideanDistanceFunction.STATIC, WardLinkageMethod.STATIC).run(db, rel);
+      fail("Checkpoint with a different linkage was accepted.");
+    }
+    catch(AbortException e) {
+      // Expected.
+    }
+
+    // Resume:
+    CheckpointManager.configure(dir, 0L, true);
+    InterruptingLinkage.budget = Long.MAX_VALUE;
+    InterruptingLinkage.count = 0;
+    PointerHierarchyRepresentationResult res = agnes.run(db, rel);
+    assertTrue("Did not resume from the checkpoint: " + InterruptingLinkage.count + " of " + full, InterruptingLinkage.count < full);
+    DBIDVar p1 = DBIDUtil.newVar(), p2 = DBIDUtil.newVar();
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      assertTrue("Parent differs.", DBIDUtil.equal(ref.getParentStore().assignVar(it, p1), res.getParentStore().assignVar(it, p2)));
+      assertEquals("Parent distance differs.", ref.getParentDistanceStore().doubleValue(it), res.getParentDistanceStore().doubleValue(it), 0.);
+    }
+    assertEquals("Checkpoints not removed.", 0, dir.listFiles().length);
+  }
+
+  /**
+   * Interrupt the kNN materialization, and resume from the checkpoint: the kNN
+   * lists must be the same as in an uninterrupted run. Resuming with a
+   * different distance function must be rejected.
+   */
+  @Test
+  public void testKNNPreprocessorResume() {
+    final int size = 6000, k = 10;
+    Random r = new Random(0L);
+    double[][] data = new double[size][];
+    for(int i = 0; i < size; i++) {
+      data[i] = new double[] { r.nextDouble(), r.nextDouble() };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    InterruptingDistanceFunction df = new InterruptingDistanceFunction();
+    MaterializeKNNPreprocessor<NumberVector> ref = new MaterializeKNNPreprocessor<>(rel, df, k);
+    ref.initialize();
+
+    // Interrupt in the second block.
+    CheckpointManager.configure(dir, 0L, false);
+    InterruptingDistanceFunction.BUDGET.set(5000L * size);
+    try {
+      new MaterializeKNNPreprocessor<>(rel, df, k).initialize();
+      fail("Run was not interrupted.");
+    }
+    catch(RuntimeException e) {
+      // Expected, possibly wrapped by the parallel executor.
+    }
+    assertEquals("No checkpoint written.", 1, dir.listFiles().length);
+
+    // Different distance function:
+    CheckpointManager.configure(dir, 0L, true);
+    try {
+      new MaterializeKNNPreprocessor<NumberVector>(rel, EuclideanDistanceFunction.STATIC, k).initialize();
+      fail("Checkpoint with a different distance function was accepted.");
+    }
+    catch(AbortException e) {
+      // Expected.
+    }
+
+    // Resume:
+    CheckpointManager.configure(dir, 0L, true);
+    InterruptingDistanceFunction.BUDGET.set(Long.MAX_VALUE);
+    InterruptingDistanceFunction.COUNT.set(0);
+    MaterializeKNNPreprocessor<NumberVector> res = new MaterializeKNNPreprocessor<>(rel, df, k);
+    res.initialize();
+    assertTrue("Did not resume from the checkpoint: " + InterruptingDistanceFunction.COUNT.get(), InterruptingDistanceFunction.COUNT.get() <= (size - 4096L) * size);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList a = ref.get(it), b = res.get(it);
+      assertEquals("kNN sizes differ.", a.size(), b.size());
+      for(DoubleDBIDListIter i1 = a.iter(), i2 = b.iter(); i1.valid(); i1.advance(), i2.advance()) {
+        assertTrue("kNN differ.", DBIDUtil.equal(i1, i2));
+        assertEquals("kNN distances differ.", i1.doubleValue(), i2.doubleValue(), 0.);
+      }
+    }
+    assertEquals("Checkpoints not removed.", 0, dir.listFiles().length);
+  }
+
+  /**
+   * Exception to simulate an interrupted run.
+   * 
+   * @author Erich Schubert
+   */
+  private static class SimulatedInterruption extends RuntimeException {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+  }
+
+  /**
+   * Euclidean distance, that fails after a number of computations.
+   * 
+   * @author Erich Schubert
+   */
+  public static class InterruptingDistanceFunction extends AbstractNumberVectorDistanceFunction {
+    /**
+     * Remaining number of distance computations.
+     */
+    static final AtomicLong BUDGET = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * Number of distance computations.
+     */
+    static final AtomicLong COUNT = new AtomicLong();
+
+    @Override
+    public double distance(NumberVector v1, NumberVector v2) {
+      COUNT.incrementAndGet();
+      if(BUDGET.decrementAndGet() < 0) {
+        throw new SimulatedInterruption();
+      }
+      return EuclideanDistanceFunction.STATIC.distance(v1, v2);
+    }
+  }
+
+  /**
+   * Ward linkage, that fails after a number of merges.
+   * 
+   * @author Erich Schubert
+   */
+  public static class InterruptingLinkage implements LinkageMethod {
+    /**
+     * Remaining number of linkage computations.
+     */
+    static long budget = Long.MAX_VALUE;
+
+    /**
+     * Number of linkage computations.
+     */
+    static long count = 0;
+
+    @Override
+    public double combine(int sizex, double dx, int sizey, double dy, int sizej, double dxy) {
+      count++;
+      if(--budget < 0) {
+        throw new SimulatedInterruption();
+      }
+      return WardLinkageMethod.STATIC.combine(sizex, dx, sizey, dy, sizej, dxy);
+    }
+  }
+}